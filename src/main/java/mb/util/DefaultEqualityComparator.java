@@ -2,12 +2,16 @@ package mb.util;
 
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Serializable;
+
 /**
  * The default equality comparator implementation that uses the
  * object's own {@link Object#equals(Object)} and {@link Object#hashCode()}
  * methods.
  */
-/* package private */ final class DefaultEqualityComparator<T> implements EqualityComparator<T> {
+/* package private */ final class DefaultEqualityComparator<T> implements EqualityComparator<T>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public static final DefaultEqualityComparator<?> INSTANCE = new DefaultEqualityComparator<>();
 
@@ -25,4 +29,9 @@ import org.jetbrains.annotations.Nullable;
         return obj != null ? obj.hashCode() : 0;
     }
 
+    private Object readResolve() {
+        // Preserve the singleton instance.
+        return INSTANCE;
+    }
+
 }
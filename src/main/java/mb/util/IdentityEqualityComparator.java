@@ -2,11 +2,15 @@ package mb.util;
 
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Serializable;
+
 /**
  * The identity equality comparator implementation that uses
  * object identity to compare objects.
  */
-/* package private */ final class IdentityEqualityComparator<T> implements EqualityComparator<T> {
+/* package private */ final class IdentityEqualityComparator<T> implements EqualityComparator<T>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public static final IdentityEqualityComparator<?> INSTANCE = new IdentityEqualityComparator<>();
 
@@ -22,4 +26,9 @@ import org.jetbrains.annotations.Nullable;
         return System.identityHashCode(obj);
     }
 
+    private Object readResolve() {
+        // Preserve the singleton instance.
+        return INSTANCE;
+    }
+
 }
@@ -0,0 +1,108 @@
+package mb.util.collections;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An unmodifiable view of a bag, also known as a multiset.
+ *
+ * A bag is a collection in which each element has a count: the number of times the element occurs.
+ * The {@link #size()} of a bag is the sum of the counts, whereas iterating over the bag
+ * returns each distinct element once. Use {@link #forEachCount} to visit the elements
+ * together with their counts without boxing the counts.
+ *
+ * Two bags are equal when they have the same distinct elements, each with the same count.
+ * The hash code of a bag is the sum, over its distinct elements, of the hash code of the element
+ * XOR its count.
+ *
+ * This interface is covariant.
+ *
+ * Changes to the underlying bag are visible through this view.
+ * To get an immutable bag, use one of the immutable interfaces.
+ *
+ * The implementation may not be thread-safe.
+ * To get a thread-safe implementation, use one of the immutable interfaces.
+ *
+ * @param <E> the type of elements in the bag
+ */
+public interface BagView<E> extends Iterable<E>, Serializable {
+
+    /**
+     * Gets the number of elements in the bag, including duplicates.
+     *
+     * @return the sum of the counts of the elements in the bag
+     */
+    int size();
+
+    /**
+     * Gets the number of distinct elements in the bag.
+     *
+     * @return the number of distinct elements in the bag
+     */
+    int distinctSize();
+
+    /**
+     * Gets whether the bag is empty.
+     *
+     * @return {@code true} when the bag is empty; otherwise, {@code false}
+     */
+    default boolean isEmpty() {
+        return distinctSize() == 0;
+    }
+
+    /**
+     * Gets the equality comparator used to compare the elements in this bag.
+     *
+     * @return the equality comparator
+     */
+    default EqualityComparator<? super E> getComparator() {
+        // Most implementations do not support custom equality comparators,
+        // and just use the equals() and hashCode() implementations of the objects by default.
+        return EqualityComparator.getDefault();
+    }
+
+    /**
+     * Gets the number of times the specified element occurs in the bag.
+     *
+     * @param element the element to look for
+     * @return the count of the element; or 0 when the bag does not contain the element
+     */
+    // Accepting Object instead of E allows this interface to be covariant in E.
+    int count(@Nullable Object element);
+
+    /**
+     * Determines whether the bag contains the specified element at least once.
+     *
+     * @param element the element to check
+     * @return {@code true} when the bag contains the specified element;
+     * otherwise, {@code false}
+     */
+    default boolean contains(@Nullable Object element) {
+        return count(element) > 0;
+    }
+
+    /**
+     * Returns an iterator over the distinct elements in the bag.
+     *
+     * @return the iterator
+     */
+    @Override
+    Iterator<E> iterator();
+
+    /**
+     * Performs the specified action for each distinct element in the bag and its count.
+     *
+     * @param action the action to perform
+     */
+    default void forEachCount(ObjIntConsumer<? super E> action) {
+        // Implementations should override this to avoid looking up each element again.
+        for (E element : this) {
+            action.accept(element, count(element));
+        }
+    }
+
+}
@@ -3,6 +3,8 @@ package mb.util.collections;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.ListIterator;
@@ -138,4 +140,16 @@ import java.util.stream.Stream;
     public String toString() {
         return "[]";
     }
+
+    // Serialization
+
+    private Object writeReplace() {
+        // The proxy resolves to the singleton instance.
+        return new SerializationProxy(new Object[0], 0, 0);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
 }
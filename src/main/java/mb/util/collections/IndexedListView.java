@@ -0,0 +1,225 @@
+package mb.util.collections;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.ListIterator;
+import java.util.Objects;
+
+/**
+ * An implementation of {@link ListView} that wraps a list that does not change,
+ * and builds a hash index of its elements once it has been searched often enough.
+ *
+ * Until the index is built, {@link #indexOf}, {@link #lastIndexOf}, and {@link #contains}
+ * scan the list. After the configured number of such lookups, the next lookup builds an index
+ * from each distinct element to its first and last index, in time linear in the size of the list,
+ * and from then on each lookup takes expected constant time.
+ *
+ * The index is an open-addressing hash table that is at most half full, with the element and three ints per slot,
+ * so it does not box the indices. The index is built by iterating over the list, and it holds the elements itself,
+ * so neither building nor using it calls {@link ListView#get}, which takes linear time on linked lists
+ * such as the persistent stacks and queues. The elements are compared using {@link Objects#equals},
+ * like the other implementations of {@link ListView}.
+ *
+ * The wrapped list must not change after this view is created, or the index will be stale.
+ * When the wrapped list is thread-safe, so is this view.
+ */
+/* package private */ final class IndexedListView<E> extends ListViewBase<E> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The default number of lookups after which the index is built. */
+    /* package private */ static final int DEFAULT_THRESHOLD = 8;
+    /** The size below which the list is never indexed, as scanning it is as fast. */
+    private static final int MIN_INDEXED_SIZE = 16;
+
+    /** The wrapped list. */
+    private final ListView<E> list;
+    /** The number of lookups after which the index is built. */
+    private final int threshold;
+    /** The number of lookups so far; only counted until the index is built. */
+    private transient int lookups;
+    /** The index; or {@code null} when it has not been built yet. */
+    // The index is immutable and its fields are final, so it is safely published without synchronization.
+    // At worst, multiple threads build an index concurrently and one of them wins.
+    @Nullable private transient Index index;
+
+    /* package private */ IndexedListView(ListView<E> list, int threshold) {
+        if (threshold < 0) throw new IllegalArgumentException("Threshold is negative: " + threshold);
+        this.list = list;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public int size() {
+        return this.list.size();
+    }
+
+    @Override
+    public E get(int index) {
+        return this.list.get(index);
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return indexOf(element) >= 0;
+    }
+
+    @Override
+    public int indexOf(@Nullable Object element) {
+        Index index = getIndex();
+        if (index == null) return this.list.indexOf(element);
+        int slot = index.slotOf(element);
+        return slot >= 0 ? index.firstIndices[slot] : -1;
+    }
+
+    @Override
+    public int lastIndexOf(@Nullable Object element) {
+        Index index = getIndex();
+        if (index == null) return this.list.lastIndexOf(element);
+        int slot = index.slotOf(element);
+        return slot >= 0 ? index.lastIndices[slot] : -1;
+    }
+
+    @Override
+    public ListView<E> indexed(int threshold) {
+        return this;
+    }
+
+    @NotNull
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        if (index < 0 || index > size())
+            throw new IndexOutOfBoundsException();
+
+        return new RandomAccessListIteratorBase<E>(index) {
+            @Override
+            protected int getSize() {
+                return size();
+            }
+
+            @Override
+            protected E getElement(int index) {
+                return get(index);
+            }
+        };
+    }
+
+    /**
+     * Gets the index, building it when this lookup reaches the threshold.
+     *
+     * @return the index; or {@code null} when the list should be scanned
+     */
+    private @Nullable Index getIndex() {
+        Index index = this.index;
+        if (index != null) return index;
+        if (this.list.size() < MIN_INDEXED_SIZE) return null;
+        if (this.lookups < this.threshold) {
+            // A lost update between threads only delays building the index.
+            this.lookups += 1;
+            return null;
+        }
+        index = Index.of(this.list);
+        this.index = index;
+        return index;
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        // The index is not serialized, and the deserialized list is not indexed.
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * A hash index from the distinct elements of a list to their first and last indices.
+     */
+    private static final class Index {
+
+        /** For each slot, its element. */
+        private final Object[] elements;
+        /** For each slot, the first index of its element in the list; or -1 when the slot is empty. */
+        private final int[] firstIndices;
+        /** For each slot, the last index of its element in the list. */
+        private final int[] lastIndices;
+        /** For each slot, the hash code of its element, to avoid most calls to equals(). */
+        private final int[] hashes;
+
+        private Index(Object[] elements, int[] firstIndices, int[] lastIndices, int[] hashes) {
+            this.elements = elements;
+            this.firstIndices = firstIndices;
+            this.lastIndices = lastIndices;
+            this.hashes = hashes;
+        }
+
+        /**
+         * Builds the index of the specified list.
+         */
+        private static Index of(ListView<?> list) {
+            int size = list.size();
+            // The table is at most half full.
+            int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+            Object[] elements = new Object[capacity];
+            int[] firstIndices = new int[capacity];
+            int[] lastIndices = new int[capacity];
+            int[] hashes = new int[capacity];
+            Arrays.fill(firstIndices, -1);
+            // This implementation iterates over the list, as not all lists have random access.
+            int i = 0;
+            for (Object element : list) {
+                int hash = hashOf(element);
+                int slot = find(elements, firstIndices, hashes, element, hash);
+                if (firstIndices[slot] < 0) {
+                    elements[slot] = element;
+                    firstIndices[slot] = i;
+                    hashes[slot] = hash;
+                }
+                lastIndices[slot] = i;
+                i += 1;
+            }
+            // The arrays are filled before the index is constructed, so that they are published with its final fields.
+            return new Index(elements, firstIndices, lastIndices, hashes);
+        }
+
+        /**
+         * Gets the slot of the specified element.
+         *
+         * @return the slot; or -1 when the element is not in the list
+         */
+        private int slotOf(@Nullable Object element) {
+            int slot = find(this.elements, this.firstIndices, this.hashes, element, hashOf(element));
+            return this.firstIndices[slot] >= 0 ? slot : -1;
+        }
+
+        /**
+         * Finds the slot of the specified element, or the empty slot where it would be inserted.
+         */
+        private static int find(Object[] elements, int[] firstIndices, int[] hashes, @Nullable Object element, int hash) {
+            int mask = firstIndices.length - 1;
+            int slot = hash & mask;
+            while (true) {
+                if (firstIndices[slot] < 0) return slot;
+                if (hashes[slot] == hash && Objects.equals(elements[slot], element)) return slot;
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        /**
+         * Spreads the hash code of an element, such that the low bits of similar hash codes differ.
+         */
+        private static int hashOf(@Nullable Object element) {
+            int h = Objects.hashCode(element) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+    }
+
+}
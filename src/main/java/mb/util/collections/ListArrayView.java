@@ -2,6 +2,8 @@ package mb.util.collections;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ListIterator;
 
@@ -45,4 +47,14 @@ import java.util.ListIterator;
         };
     }
 
+    // Serialization
+
+    private Object writeReplace() {
+        return new SerializationProxy(this.array, 0, this.array.length);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
 }
@@ -2,6 +2,8 @@ package mb.util.collections;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ListIterator;
 import java.util.Objects;
@@ -105,4 +107,14 @@ import java.util.stream.Stream;
         return "[" + (element == this ? "(this collection)" : element) + ']';
     }
 
+    // Serialization
+
+    private Object writeReplace() {
+        return new SerializationProxy(new Object[] { this.element }, 0, 1);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
 }
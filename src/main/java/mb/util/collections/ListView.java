@@ -201,6 +201,37 @@ public interface ListView<E> extends CollectionView<E>, Serializable {
         return new SubListView<>(this, fromIndex, toIndex - fromIndex);
     }
 
+    /**
+     * Returns a view of this list whose lookups use a hash index once the list has been searched often.
+     *
+     * After {@link IndexedListView#DEFAULT_THRESHOLD} calls to {@link #indexOf}, {@link #lastIndexOf},
+     * or {@link #contains}, the view builds an index of the elements of this list,
+     * and from then on each of these calls takes expected constant time instead of linear time.
+     *
+     * This list must not change after this call.
+     *
+     * @return the indexed view of this list
+     */
+    default ListView<E> indexed() {
+        return indexed(IndexedListView.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Returns a view of this list whose lookups use a hash index once the list has been searched often.
+     *
+     * After the specified number of calls to {@link #indexOf}, {@link #lastIndexOf},
+     * or {@link #contains}, the view builds an index of the elements of this list,
+     * and from then on each of these calls takes expected constant time instead of linear time.
+     *
+     * This list must not change after this call.
+     *
+     * @param threshold the number of lookups after which the index is built; or 0 to build it on the first lookup
+     * @return the indexed view of this list
+     */
+    default ListView<E> indexed(int threshold) {
+        return new IndexedListView<>(this, threshold);
+    }
+
     @Override List<E> asUnmodifiable();
 
 }
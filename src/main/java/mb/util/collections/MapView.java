@@ -0,0 +1,120 @@
+package mb.util.collections;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * An unmodifiable view of a map.
+ *
+ * This interface is covariant.
+ *
+ * Changes to the underlying map are visible through this view.
+ * To get an immutable map, use one of the immutable interfaces.
+ *
+ * The implementation may not be thread-safe.
+ * To get a thread-safe implementation, use one of the immutable interfaces.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public interface MapView<K, V> extends Iterable<Map.Entry<K, V>>, Serializable {
+
+    /**
+     * Gets the number of entries in the map.
+     *
+     * @return the number of entries in the map
+     */
+    int size();
+
+    /**
+     * Gets whether the map is empty.
+     *
+     * @return {@code true} when the map is empty; otherwise, {@code false}
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets the equality comparator used to compare the keys in this map.
+     *
+     * @return the equality comparator
+     */
+    default EqualityComparator<? super K> getComparator() {
+        // Most implementations do not support custom equality comparators,
+        // and just use the equals() and hashCode() implementations of the objects by default.
+        return EqualityComparator.getDefault();
+    }
+
+    /**
+     * Determines whether the map contains an entry with the specified key.
+     *
+     * @param key the key to check
+     * @return {@code true} when the map contains an entry with the specified key;
+     * otherwise, {@code false}
+     */
+    // Accepting Object instead of K is consistent with the Map<?, ?> interface,
+    // and allows this interface to be covariant in K.
+    boolean containsKey(@Nullable Object key);
+
+    /**
+     * Determines whether the map contains an entry with the specified value.
+     *
+     * @param value the value to check
+     * @return {@code true} when the map contains an entry with the specified value;
+     * otherwise, {@code false}
+     */
+    default boolean containsValue(@Nullable Object value) {
+        // This implementation allocates the iterator object,
+        // since maps, in general, are not indexed by value.
+        for (Map.Entry<K, V> entry : this) {
+            if (Objects.equals(entry.getValue(), value)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the value associated with the specified key.
+     *
+     * @param key the key to look for
+     * @return the associated value; or {@code null} when the map has no entry with the specified key
+     */
+    @Nullable V get(@Nullable Object key);
+
+    /**
+     * Gets the value associated with the specified key, or the specified default value.
+     *
+     * @param key the key to look for
+     * @param defaultValue the value to return when the map has no entry with the specified key
+     * @return the associated value; or the default value when the map has no entry with the specified key
+     */
+    default V getOrDefault(@Nullable Object key, V defaultValue) {
+        V value = get(key);
+        // Only when the value is null do we have to determine whether the key is actually in the map.
+        return value != null || containsKey(key) ? value : defaultValue;
+    }
+
+    /**
+     * Performs the specified action for each key and value in the map.
+     *
+     * @param action the action to perform
+     */
+    default void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Map.Entry<K, V> entry : this) {
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns this map as an unmodifiable object implementing {@link Map}.
+     *
+     * @return the unmodifiable map
+     */
+    Map<K, V> asUnmodifiable();
+
+}
@@ -0,0 +1,162 @@
+package mb.util.collections;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * The serialized form of the {@link ListView} implementations in this package.
+ *
+ * Instead of serializing the fields of each implementation, which would write
+ * the class descriptors of all implementation classes and, for example,
+ * the whole backing array of a sub list, the views replace themselves
+ * by this proxy. The proxy writes a compact tagged stream: a one-byte tag,
+ * the number of elements as a variable-length integer, and the elements.
+ * On deserialization the proxy resolves to the most specific implementation
+ * for the elements that were read.
+ */
+/* package private */ final class SerializationProxy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Tag for the empty list, which resolves to the singleton instance. */
+    private static final int TAG_EMPTY_LIST = 0;
+    /** Tag for a singleton list. */
+    private static final int TAG_SINGLETON_LIST = 1;
+    /** Tag for a list with any number of elements. */
+    private static final int TAG_ARRAY_LIST = 2;
+
+    /** The tag of the serialized form; only valid after a call to {@link #readObject}. */
+    private transient int tag;
+    /** The elements to write or that were read. */
+    private transient Object[] elements;
+    /** The zero-based offset of the first element in {@link #elements} to write. */
+    private transient int offset;
+    /** The number of elements in {@link #elements} to write. */
+    private transient int length;
+
+    /**
+     * Initializes a new instance of the {@link SerializationProxy} class.
+     *
+     * @param elements the elements to serialize
+     * @param offset the zero-based offset of the first element to serialize
+     * @param length the number of elements to serialize
+     */
+    /* package private */ SerializationProxy(Object[] elements, int offset, int length) {
+        assert offset >= 0 && length >= 0 && offset + length <= elements.length;
+        this.elements = elements;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Creates the serialized form of the specified list.
+     *
+     * @param list the list to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(ListView<?> list) {
+        // This implementation avoids allocating the iterator object.
+        int size = list.size();
+        Object[] elements = new Object[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = list.get(i);
+        }
+        return new SerializationProxy(elements, 0, size);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (length == 0) {
+            out.writeByte(TAG_EMPTY_LIST);
+        } else if (length == 1) {
+            out.writeByte(TAG_SINGLETON_LIST);
+            out.writeObject(elements[offset]);
+        } else {
+            out.writeByte(TAG_ARRAY_LIST);
+            writeVarInt(out, length);
+            for (int i = offset; i < offset + length; i++) {
+                out.writeObject(elements[i]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.tag = in.readUnsignedByte();
+        switch (this.tag) {
+            case TAG_EMPTY_LIST:
+                this.elements = new Object[0];
+                break;
+            case TAG_SINGLETON_LIST:
+                this.elements = new Object[] { in.readObject() };
+                break;
+            case TAG_ARRAY_LIST:
+                int size = readVarInt(in);
+                // We don't trust the size to allocate the whole array up front,
+                // as a corrupt stream could otherwise make us allocate a huge array.
+                Object[] elements = new Object[Math.min(size, 1024)];
+                for (int i = 0; i < size; i++) {
+                    if (i == elements.length) elements = Arrays.copyOf(elements, Math.min(size, i * 2));
+                    elements[i] = in.readObject();
+                }
+                this.elements = elements;
+                break;
+            default:
+                throw new InvalidObjectException("Unknown tag: " + this.tag);
+        }
+        this.offset = 0;
+        this.length = this.elements.length;
+    }
+
+    private Object readResolve() {
+        switch (this.tag) {
+            case TAG_EMPTY_LIST:
+                // Preserve the singleton empty list instance.
+                return EmptyListView.INSTANCE;
+            case TAG_SINGLETON_LIST:
+                return new ListSingletonView<>(this.elements[0]);
+            default:
+                // The array was allocated by us, so we can wrap it without copying it.
+                return new ListArrayView<>(this.elements);
+        }
+    }
+
+    /**
+     * Writes a non-negative integer using a variable number of bytes.
+     *
+     * Each byte holds seven bits of the value, least significant bits first,
+     * and the most significant bit of each byte is set when more bytes follow.
+     * Small values, such as the sizes of most collections, take one byte.
+     *
+     * @param out the output to write to
+     * @param value the non-negative value to write
+     */
+    /* package private */ static void writeVarInt(DataOutput out, int value) throws IOException {
+        assert value >= 0;
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads a non-negative integer written by {@link #writeVarInt}.
+     *
+     * @param in the input to read from
+     * @return the value that was read
+     */
+    /* package private */ static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) throw new InvalidObjectException("Variable-length integer is negative.");
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Variable-length integer is too long.");
+    }
+
+}
@@ -2,8 +2,10 @@ package mb.util.collections;
 
 import mb.util.collections.immutable.ImmutableSet;
 import mb.util.collections.immutable.PersistentList;
+import mb.util.collections.specialized.ImmutableBitSet;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -48,19 +50,23 @@ public interface SetView<E> extends CollectionView<E>, Serializable {
     /**
      * Creates an unmodifiable set from the specified array.
      *
-     * Changes to the input array are reflected in this set.
+     * Changes to the input array are reflected in this set,
+     * except when the elements are enum constants, which are copied into an {@link ImmutableBitSet}.
      *
      * @param elements the elements in the set
      * @param <E> the type of elements in the set
      * @return the unmodifiable set
      */
-    @SafeVarargs static <E> SetView<E> of(E... elements) {
+    @SafeVarargs @SuppressWarnings("varargs") static <E> SetView<E> of(E... elements) {
         if (elements.length == 0) {
             // When the array is empty, we can just return the empty set,
             // because the input array cannot be modified and the fact that it
             // isn't part of the returned SetView is unobservable.
             return of();
         } else {
+            // When the elements are enum constants, we copy them into a bit set.
+            ImmutableBitSet<E> bitSet = ImmutableBitSet.tryOfEnums(Arrays.asList(elements));
+            if (bitSet != null) return bitSet;
             // Otherwise, we wrap the array in a SetView.
             // TODO:
             throw new UnsupportedOperationException();
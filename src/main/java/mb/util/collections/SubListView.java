@@ -2,6 +2,8 @@ package mb.util.collections;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ListIterator;
 
@@ -56,4 +58,15 @@ import java.util.ListIterator;
         return null;
     }
 
+    // Serialization
+
+    private Object writeReplace() {
+        // Only the elements in the range of the sub list are serialized.
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
 }
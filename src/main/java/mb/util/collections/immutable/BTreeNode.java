@@ -0,0 +1,633 @@
+package mb.util.collections.immutable;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A node in a persistent B-tree of sorted keys, optionally with values.
+ *
+ * All entries are stored in the leaves, which are all at the same depth. Each leaf holds up to
+ * {@link #MAX_WIDTH} keys in a sorted array, and each internal node holds up to {@link #MAX_WIDTH} children
+ * together with the least key of each child and the cumulative number of entries in the children.
+ * Finding a key does a binary search in one small array per level, and finding the entry
+ * at an index (or the index of a key) uses the cumulative counts, so both take logarithmic time
+ * with few cache misses. Slicing a tree to a range of indices only copies the nodes on the boundaries
+ * of the range, so it also takes logarithmic time.
+ *
+ * Updates copy the path from the root to the affected leaf. A node that overflows is split in two,
+ * and a node that underflows after a removal is merged with a sibling (and split again when that overflows).
+ * The nodes on the boundaries of a slice may remain underfull, which only affects the space they use.
+ *
+ * The values of a set are not stored: its leaves have no value array.
+ *
+ * Nodes are immutable. Operations return the same node when they don't change anything.
+ */
+/* package private */ abstract class BTreeNode {
+
+    /** The maximum number of keys in a leaf, or children in an internal node. */
+    /* package private */ static final int MAX_WIDTH = 32;
+    /** The number of keys or children below which a node is merged with a sibling. */
+    /* package private */ static final int MIN_WIDTH = MAX_WIDTH / 2;
+
+    /** The empty tree of a map. */
+    /* package private */ static final Leaf EMPTY = new Leaf(new Object[0], new Object[0]);
+    /** The empty tree of a set. */
+    /* package private */ static final Leaf EMPTY_SET = new Leaf(new Object[0], null);
+
+    /** For a leaf, the keys of its entries; for an internal node, the least key of each child. */
+    /* package private */ final Object[] keys;
+
+    private BTreeNode(Object[] keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Gets the number of entries in this node and its descendants.
+     *
+     * @return the number of entries
+     */
+    /* package private */ abstract int size();
+
+    /**
+     * Gets the number of keys in this leaf, or children in this internal node.
+     *
+     * @return the width of the node
+     */
+    /* package private */ final int width() {
+        return this.keys.length;
+    }
+
+    /**
+     * Gets the index of the specified key in the tree.
+     *
+     * @param node the root of the tree
+     * @param key the key to look for
+     * @param comparator the comparator of the keys
+     * @return the zero-based index of the key; or {@code -(insertion point) - 1} when the tree doesn't contain the key,
+     * where the insertion point is the number of keys less than the key
+     */
+    /* package private */ static int indexOf(BTreeNode node, Object key, Comparator<Object> comparator) {
+        BTreeNode current = node;
+        int offset = 0;
+        while (current instanceof Internal) {
+            Internal internal = (Internal)current;
+            int child = childIndexOf(internal.keys, key, comparator);
+            offset += countBefore(internal.counts, child);
+            current = internal.children[child];
+        }
+        int slot = Arrays.binarySearch(current.keys, key, comparator);
+        return slot >= 0 ? offset + slot : -(offset - (slot + 1)) - 1;
+    }
+
+    /**
+     * Gets the leaf that would contain the specified key.
+     *
+     * @param node the root of the tree
+     * @param key the key to look for
+     * @param comparator the comparator of the keys
+     * @return the leaf
+     */
+    /* package private */ static Leaf leafOf(BTreeNode node, Object key, Comparator<Object> comparator) {
+        BTreeNode current = node;
+        while (current instanceof Internal) {
+            Internal internal = (Internal)current;
+            current = internal.children[childIndexOf(internal.keys, key, comparator)];
+        }
+        return (Leaf)current;
+    }
+
+    /**
+     * Gets the leaf that contains the entry at the specified index.
+     *
+     * @param node the root of the tree
+     * @param index the zero-based index of the entry, which must be in range
+     * @param slot an array whose first element is set to the index of the entry in the leaf
+     * @return the leaf
+     */
+    /* package private */ static Leaf leafAt(BTreeNode node, int index, int[] slot) {
+        BTreeNode current = node;
+        int remaining = index;
+        while (current instanceof Internal) {
+            Internal internal = (Internal)current;
+            int child = childAt(internal.counts, remaining);
+            remaining -= countBefore(internal.counts, child);
+            current = internal.children[child];
+        }
+        slot[0] = remaining;
+        return (Leaf)current;
+    }
+
+    /**
+     * Gets the first key in the tree.
+     *
+     * @param node the root of the tree
+     * @return the first key
+     * @throws NoSuchElementException the tree is empty
+     */
+    /* package private */ static Object firstKey(BTreeNode node) {
+        if (node.size() == 0) throw new NoSuchElementException();
+        return node.keys[0];
+    }
+
+    /**
+     * Gets the last key in the tree.
+     *
+     * @param node the root of the tree
+     * @return the last key
+     * @throws NoSuchElementException the tree is empty
+     */
+    /* package private */ static Object lastKey(BTreeNode node) {
+        if (node.size() == 0) throw new NoSuchElementException();
+        BTreeNode current = node;
+        while (current instanceof Internal) {
+            Internal internal = (Internal)current;
+            current = internal.children[internal.children.length - 1];
+        }
+        return current.keys[current.keys.length - 1];
+    }
+
+    /**
+     * Associates a key with a value in the tree.
+     *
+     * @param node the root of the tree of a map
+     * @param key the key
+     * @param value the value
+     * @param comparator the comparator of the keys
+     * @param change the change, which records whether the size changed and the old value
+     * @return the new root
+     */
+    /* package private */ static BTreeNode put(BTreeNode node, Object key, @Nullable Object value, Comparator<Object> comparator, Change change) {
+        BTreeNode newNode = putIn(node, key, value, comparator, change);
+        if (newNode.width() > MAX_WIDTH) return new Internal(split(newNode));
+        return newNode;
+    }
+
+    private static BTreeNode putIn(BTreeNode node, Object key, @Nullable Object value, Comparator<Object> comparator, Change change) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf)node;
+            assert leaf.values != null;
+            int slot = Arrays.binarySearch(leaf.keys, key, comparator);
+            if (slot >= 0) {
+                change.oldValue = leaf.values[slot];
+                if (leaf.values[slot] == value) return leaf;
+                Object[] values = leaf.values.clone();
+                values[slot] = value;
+                return new Leaf(leaf.keys, values);
+            }
+            int insertionPoint = -(slot + 1);
+            change.sizeChanged = true;
+            return new Leaf(inserted(leaf.keys, insertionPoint, key), inserted(leaf.values, insertionPoint, value));
+        }
+        Internal internal = (Internal)node;
+        int child = childIndexOf(internal.keys, key, comparator);
+        BTreeNode oldChild = internal.children[child];
+        BTreeNode newChild = putIn(oldChild, key, value, comparator, change);
+        if (newChild == oldChild) return internal;
+        if (newChild.width() > MAX_WIDTH) return new Internal(replaced(internal.children, child, 1, split(newChild)));
+        return new Internal(replaced(internal.children, child, 1, newChild));
+    }
+
+    /**
+     * Removes a key from the tree.
+     *
+     * @param node the root of the tree
+     * @param key the key
+     * @param comparator the comparator of the keys
+     * @param change the change, which records whether the size changed and the old value
+     * @return the new root
+     */
+    /* package private */ static BTreeNode remove(BTreeNode node, Object key, Comparator<Object> comparator, Change change) {
+        BTreeNode newNode = removeFrom(node, key, comparator, change);
+        return collapse(newNode, isSet(node));
+    }
+
+    private static BTreeNode removeFrom(BTreeNode node, Object key, Comparator<Object> comparator, Change change) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf)node;
+            int slot = Arrays.binarySearch(leaf.keys, key, comparator);
+            if (slot < 0) return leaf;
+            change.sizeChanged = true;
+            change.oldValue = leaf.values != null ? leaf.values[slot] : null;
+            return new Leaf(removed(leaf.keys, slot), leaf.values != null ? removed(leaf.values, slot) : null);
+        }
+        Internal internal = (Internal)node;
+        int child = childIndexOf(internal.keys, key, comparator);
+        BTreeNode oldChild = internal.children[child];
+        BTreeNode newChild = removeFrom(oldChild, key, comparator, change);
+        if (newChild == oldChild) return internal;
+        BTreeNode[] children = rebalanced(internal.children, child, newChild);
+        // An internal node without children is replaced by an empty leaf, which its parent removes.
+        if (children.length == 0) return newChild;
+        return new Internal(children);
+    }
+
+    /**
+     * Replaces a child that may be empty or underfull, merging it with a sibling when needed.
+     *
+     * @param children the children
+     * @param index the zero-based index of the child to replace
+     * @param newChild the new child
+     * @return the new children
+     */
+    private static BTreeNode[] rebalanced(BTreeNode[] children, int index, BTreeNode newChild) {
+        if (newChild.width() == 0) return replaced(children, index, 1);
+        if (newChild.width() >= MIN_WIDTH || children.length == 1) return replaced(children, index, 1, newChild);
+        int left = index > 0 ? index - 1 : index;
+        BTreeNode leftNode = left == index ? newChild : children[left];
+        BTreeNode rightNode = left == index ? children[index + 1] : newChild;
+        BTreeNode merged = concat(leftNode, rightNode);
+        if (merged.width() > MAX_WIDTH) return replaced(children, left, 2, split(merged));
+        return replaced(children, left, 2, merged);
+    }
+
+    /**
+     * Gets the tree of the entries in a range of indices.
+     *
+     * @param node the root of the tree
+     * @param from the zero-based index of the first entry, inclusive
+     * @param to the zero-based index of the last entry, exclusive
+     * @return the root of the sliced tree
+     */
+    /* package private */ static BTreeNode slice(BTreeNode node, int from, int to) {
+        boolean isSet = isSet(node);
+        if (from >= to) return isSet ? EMPTY_SET : EMPTY;
+        return collapse(sliceOf(node, from, to), isSet);
+    }
+
+    private static BTreeNode sliceOf(BTreeNode node, int from, int to) {
+        if (from == 0 && to == node.size()) return node;
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf)node;
+            return new Leaf(Arrays.copyOfRange(leaf.keys, from, to), leaf.values != null ? Arrays.copyOfRange(leaf.values, from, to) : null);
+        }
+        Internal internal = (Internal)node;
+        // Only the first and last children are sliced, the children in between are shared.
+        int first = childAt(internal.counts, from);
+        int last = childAt(internal.counts, to - 1);
+        BTreeNode[] children = new BTreeNode[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            int start = countBefore(internal.counts, i);
+            BTreeNode child = internal.children[i];
+            children[i - first] = sliceOf(child, Math.max(from - start, 0), Math.min(to - start, child.size()));
+        }
+        return new Internal(children);
+    }
+
+    /**
+     * Replaces a root that has a single child by that child, repeatedly.
+     *
+     * @param node the root
+     * @param isSet whether the tree is the tree of a set
+     * @return the new root
+     */
+    private static BTreeNode collapse(BTreeNode node, boolean isSet) {
+        BTreeNode current = node;
+        while (current instanceof Internal && current.width() == 1) {
+            current = ((Internal)current).children[0];
+        }
+        if (current.size() == 0) return isSet ? EMPTY_SET : EMPTY;
+        return current;
+    }
+
+    private static boolean isSet(BTreeNode node) {
+        BTreeNode current = node;
+        while (current instanceof Internal) {
+            current = ((Internal)current).children[0];
+        }
+        return ((Leaf)current).values == null;
+    }
+
+    /**
+     * Builds a tree from sorted keys, in linear time.
+     *
+     * @param keys the keys, which must be strictly increasing
+     * @param values the values; or {@code null} for the tree of a set
+     * @param size the number of keys
+     * @return the root of the tree
+     */
+    /* package private */ static BTreeNode fromSorted(Object[] keys, @Nullable Object[] values, int size) {
+        if (size == 0) return values != null ? EMPTY : EMPTY_SET;
+        // Spread the entries evenly over the fewest leaves, so that every leaf is at least half full.
+        List<BTreeNode> level = new ArrayList<>();
+        int leafCount = (size + MAX_WIDTH - 1) / MAX_WIDTH;
+        int offset = 0;
+        for (int i = 0; i < leafCount; i++) {
+            int width = size / leafCount + (i < size % leafCount ? 1 : 0);
+            level.add(new Leaf(Arrays.copyOfRange(keys, offset, offset + width), values != null ? Arrays.copyOfRange(values, offset, offset + width) : null));
+            offset += width;
+        }
+        while (level.size() > 1) {
+            List<BTreeNode> parents = new ArrayList<>();
+            int count = level.size();
+            int parentCount = (count + MAX_WIDTH - 1) / MAX_WIDTH;
+            int start = 0;
+            for (int i = 0; i < parentCount; i++) {
+                int width = count / parentCount + (i < count % parentCount ? 1 : 0);
+                parents.add(new Internal(level.subList(start, start + width).toArray(new BTreeNode[0])));
+                start += width;
+            }
+            level = parents;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Sorts the specified keys and values and removes duplicate keys.
+     *
+     * Of the entries with equal keys, the last one is kept.
+     *
+     * @param keys the keys, which are sorted in place
+     * @param values the values, which are sorted in place; or {@code null} for a set
+     * @param size the number of keys
+     * @param comparator the comparator of the keys
+     * @return the number of distinct keys, which are at the start of the arrays
+     */
+    /* package private */ static int sortDistinct(Object[] keys, @Nullable Object[] values, int size, Comparator<Object> comparator) {
+        if (size == 0) return 0;
+        // Sort the indices rather than the keys, so the sort is stable and keeps the values with their keys.
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> comparator.compare(keys[a], keys[b]));
+        Object[] sortedKeys = new Object[size];
+        Object[] sortedValues = values != null ? new Object[size] : null;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            Object key = keys[order[i]];
+            if (count > 0 && comparator.compare(sortedKeys[count - 1], key) == 0) count -= 1;
+            sortedKeys[count] = key;
+            if (sortedValues != null) sortedValues[count] = values[order[i]];
+            count += 1;
+        }
+        System.arraycopy(sortedKeys, 0, keys, 0, count);
+        if (values != null) System.arraycopy(sortedValues, 0, values, 0, count);
+        return count;
+    }
+
+    /**
+     * Checks that the specified keys are strictly increasing.
+     *
+     * @param keys the keys
+     * @param size the number of keys
+     * @param comparator the comparator of the keys
+     * @throws IllegalArgumentException the keys are not strictly increasing
+     */
+    /* package private */ static void checkSorted(Object[] keys, int size, Comparator<Object> comparator) {
+        for (int i = 1; i < size; i++) {
+            if (comparator.compare(keys[i - 1], keys[i]) >= 0)
+                throw new IllegalArgumentException("Keys are not strictly increasing at index " + i + ": " + keys[i - 1] + ", " + keys[i]);
+        }
+    }
+
+    private static BTreeNode[] split(BTreeNode node) {
+        int half = node.width() / 2;
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf)node;
+            return new BTreeNode[] {
+                new Leaf(Arrays.copyOfRange(leaf.keys, 0, half), leaf.values != null ? Arrays.copyOfRange(leaf.values, 0, half) : null),
+                new Leaf(Arrays.copyOfRange(leaf.keys, half, leaf.width()), leaf.values != null ? Arrays.copyOfRange(leaf.values, half, leaf.width()) : null),
+            };
+        }
+        Internal internal = (Internal)node;
+        return new BTreeNode[] {
+            new Internal(Arrays.copyOfRange(internal.children, 0, half)),
+            new Internal(Arrays.copyOfRange(internal.children, half, internal.width())),
+        };
+    }
+
+    private static BTreeNode concat(BTreeNode left, BTreeNode right) {
+        if (left instanceof Leaf) {
+            Leaf leftLeaf = (Leaf)left;
+            Leaf rightLeaf = (Leaf)right;
+            return new Leaf(concat(leftLeaf.keys, rightLeaf.keys), leftLeaf.values != null && rightLeaf.values != null ? concat(leftLeaf.values, rightLeaf.values) : null);
+        }
+        Internal leftInternal = (Internal)left;
+        Internal rightInternal = (Internal)right;
+        BTreeNode[] children = Arrays.copyOf(leftInternal.children, leftInternal.width() + rightInternal.width());
+        System.arraycopy(rightInternal.children, 0, children, leftInternal.width(), rightInternal.width());
+        return new Internal(children);
+    }
+
+    /**
+     * Finds the child whose range of keys contains the specified key.
+     *
+     * @param keys the least keys of the children
+     * @param key the key
+     * @param comparator the comparator of the keys
+     * @return the zero-based index of the last child whose least key is less than or equal to the key,
+     * or 0 when there is no such child
+     */
+    private static int childIndexOf(Object[] keys, Object key, Comparator<Object> comparator) {
+        int index = Arrays.binarySearch(keys, key, comparator);
+        if (index >= 0) return index;
+        return Math.max(-(index + 1) - 1, 0);
+    }
+
+    /**
+     * Finds the child that contains the entry at the specified index.
+     *
+     * @param counts the cumulative number of entries in the children
+     * @param index the zero-based index of the entry
+     * @return the zero-based index of the child
+     */
+    private static int childAt(int[] counts, int index) {
+        int child = Arrays.binarySearch(counts, index);
+        return child >= 0 ? child + 1 : -(child + 1);
+    }
+
+    private static int countBefore(int[] counts, int child) {
+        return child > 0 ? counts[child - 1] : 0;
+    }
+
+    private static Object[] inserted(Object[] array, int index, @Nullable Object element) {
+        Object[] newArray = new Object[array.length + 1];
+        System.arraycopy(array, 0, newArray, 0, index);
+        newArray[index] = element;
+        System.arraycopy(array, index, newArray, index + 1, array.length - index);
+        return newArray;
+    }
+
+    private static Object[] removed(Object[] array, int index) {
+        Object[] newArray = new Object[array.length - 1];
+        System.arraycopy(array, 0, newArray, 0, index);
+        System.arraycopy(array, index + 1, newArray, index, array.length - index - 1);
+        return newArray;
+    }
+
+    private static Object[] concat(Object[] left, Object[] right) {
+        Object[] array = Arrays.copyOf(left, left.length + right.length);
+        System.arraycopy(right, 0, array, left.length, right.length);
+        return array;
+    }
+
+    private static BTreeNode[] replaced(BTreeNode[] array, int index, int count, BTreeNode... replacements) {
+        BTreeNode[] newArray = new BTreeNode[array.length - count + replacements.length];
+        System.arraycopy(array, 0, newArray, 0, index);
+        System.arraycopy(replacements, 0, newArray, index, replacements.length);
+        System.arraycopy(array, index + count, newArray, index + replacements.length, array.length - index - count);
+        return newArray;
+    }
+
+    /**
+     * A leaf, which holds the entries.
+     */
+    /* package private */ static final class Leaf extends BTreeNode {
+
+        /** The values of the entries; or {@code null} for the tree of a set. */
+        @Nullable /* package private */ final Object[] values;
+
+        private Leaf(Object[] keys, @Nullable Object[] values) {
+            super(keys);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return this.keys.length;
+        }
+
+    }
+
+    /**
+     * An internal node, which holds the children.
+     */
+    private static final class Internal extends BTreeNode {
+
+        /** The children. */
+        private final BTreeNode[] children;
+        /** The cumulative number of entries, where element {@code i} is the number of entries in children 0 to {@code i}. */
+        private final int[] counts;
+
+        private Internal(BTreeNode[] children) {
+            super(leastKeys(children));
+            this.children = children;
+            this.counts = new int[children.length];
+            int count = 0;
+            for (int i = 0; i < children.length; i++) {
+                count += children[i].size();
+                this.counts[i] = count;
+            }
+        }
+
+        private static Object[] leastKeys(BTreeNode[] children) {
+            Object[] keys = new Object[children.length];
+            for (int i = 0; i < children.length; i++) {
+                keys[i] = children[i].keys[0];
+            }
+            return keys;
+        }
+
+        @Override
+        int size() {
+            return this.counts.length > 0 ? this.counts[this.counts.length - 1] : 0;
+        }
+
+    }
+
+    /**
+     * Records the effect of an update.
+     */
+    /* package private */ static final class Change {
+        /** Whether the number of entries changed. */
+        /* package private */ boolean sizeChanged;
+        /** The old value of the key; or {@code null} when there was none. */
+        @Nullable /* package private */ Object oldValue;
+
+        /* package private */ void reset() {
+            this.sizeChanged = false;
+            this.oldValue = null;
+        }
+    }
+
+    /**
+     * Iterates over the entries in a range of indices, in order.
+     *
+     * @param <T> the type of elements returned by the iterator
+     */
+    /* package private */ abstract static class EntryIterator<T> implements Iterator<T> {
+
+        /** The internal nodes on the path from the root to the current leaf. */
+        private final Internal[] path;
+        /** The index of the child on the path in each internal node. */
+        private final int[] childIndices;
+        /** The current leaf. */
+        private Leaf leaf;
+        /** The index of the next entry in the current leaf. */
+        private int slot;
+        /** The number of entries that remain. */
+        private int remaining;
+
+        /**
+         * Initializes a new instance of the {@link EntryIterator} class.
+         *
+         * @param root the root of the tree
+         * @param from the zero-based index of the first entry, inclusive
+         * @param to the zero-based index of the last entry, exclusive
+         */
+        /* package private */ EntryIterator(BTreeNode root, int from, int to) {
+            int depth = 0;
+            for (BTreeNode node = root; node instanceof Internal; node = ((Internal)node).children[0]) depth += 1;
+            this.path = new Internal[depth];
+            this.childIndices = new int[depth];
+            this.remaining = Math.max(to - from, 0);
+            BTreeNode current = root;
+            int index = from;
+            for (int level = 0; level < depth; level++) {
+                Internal internal = (Internal)current;
+                int child = this.remaining > 0 ? childAt(internal.counts, index) : 0;
+                index -= countBefore(internal.counts, child);
+                this.path[level] = internal;
+                this.childIndices[level] = child;
+                current = internal.children[child];
+            }
+            this.leaf = (Leaf)current;
+            this.slot = index;
+        }
+
+        /**
+         * Gets the element for the specified entry.
+         *
+         * @param key the key of the entry
+         * @param value the value of the entry; or {@code null} for a set
+         * @return the element
+         */
+        protected abstract T getElement(Object key, @Nullable Object value);
+
+        @Override
+        public boolean hasNext() {
+            return this.remaining > 0;
+        }
+
+        @Override
+        public T next() {
+            if (this.remaining == 0) throw new NoSuchElementException();
+            if (this.slot == this.leaf.width()) advanceLeaf();
+            T element = getElement(this.leaf.keys[this.slot], this.leaf.values != null ? this.leaf.values[this.slot] : null);
+            this.slot += 1;
+            this.remaining -= 1;
+            return element;
+        }
+
+        private void advanceLeaf() {
+            // Go up to the first ancestor with a next child, then down along the first children.
+            int level = this.path.length - 1;
+            while (this.childIndices[level] == this.path[level].width() - 1) level -= 1;
+            this.childIndices[level] += 1;
+            BTreeNode current = this.path[level].children[this.childIndices[level]];
+            for (level += 1; level < this.path.length; level++) {
+                this.path[level] = (Internal)current;
+                this.childIndices[level] = 0;
+                current = ((Internal)current).children[0];
+            }
+            this.leaf = (Leaf)current;
+            this.slot = 0;
+        }
+
+    }
+
+}
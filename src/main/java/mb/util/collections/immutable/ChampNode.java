@@ -0,0 +1,893 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A node in a Compressed Hash-Array Mapped Prefix-tree (CHAMP).
+ *
+ * The trie consumes the hash code of a key five bits at a time, starting with the least significant bits.
+ * Each {@link BitmapIndexedNode} has two bitmaps: one indicating the positions of the key-value entries
+ * that are stored inline, and one indicating the positions of the sub-nodes. The entries are stored
+ * at the front of the content array, the sub-nodes at the back in reverse order.
+ * Keys whose hash codes are completely equal are stored in a {@link HashCollisionNode}.
+ *
+ * The trie is kept in a canonical form: a node other than the root never holds just a single entry,
+ * as such an entry is always inlined in the parent node. Therefore, two tries with the same keys
+ * have the same shape, which allows operations on two tries to skip equal sub-tries by reference.
+ *
+ * Nodes are immutable. Operations return the same node when they don't change anything.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+/* package private */ abstract class ChampNode<K, V> {
+
+    /** The number of hash code bits consumed per level. */
+    /* package private */ static final int BITS_PER_LEVEL = 5;
+    /** The mask for the bits consumed per level. */
+    /* package private */ static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+    /** The number of bits in a hash code. */
+    /* package private */ static final int HASH_CODE_LENGTH = 32;
+
+    /** The size predicate of a node that has no entries. */
+    /* package private */ static final int SIZE_EMPTY = 0;
+    /** The size predicate of a node that has exactly one entry, stored inline. */
+    /* package private */ static final int SIZE_ONE = 1;
+    /** The size predicate of a node that has more than one entry. */
+    /* package private */ static final int SIZE_MORE_THAN_ONE = 2;
+
+    /** The empty node, used as the root of empty tries. */
+    private static final BitmapIndexedNode<?, ?> EMPTY = new BitmapIndexedNode<>(0, 0, new Object[0]);
+
+    /**
+     * Gets the empty node.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the empty node
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <K, V> ChampNode<K, V> empty() {
+        return (ChampNode<K, V>)EMPTY;
+    }
+
+    /**
+     * Gets the index of the bit for the specified hash code at the specified level.
+     *
+     * @param hash the hash code
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @return the zero-based bit index, between 0 and 31
+     */
+    /* package private */ static int mask(int hash, int shift) {
+        return (hash >>> shift) & LEVEL_MASK;
+    }
+
+    /**
+     * Gets the bit for the specified hash code at the specified level.
+     *
+     * @param hash the hash code
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @return the bit position, with exactly one bit set
+     */
+    /* package private */ static int bitpos(int hash, int shift) {
+        return 1 << mask(hash, shift);
+    }
+
+    /**
+     * Computes the hash code of the specified key.
+     *
+     * @param key the key
+     * @param comparator the equality comparator
+     * @param <K> the type of key
+     * @return the hash code
+     */
+    /* package private */ static <K> int hashOf(@Nullable K key, EqualityComparator<? super K> comparator) {
+        return comparator.hashCodeOf(key);
+    }
+
+    // Accessors
+
+    /**
+     * Gets the number of entries stored inline in this node.
+     *
+     * @return the number of inline entries
+     */
+    /* package private */ abstract int payloadArity();
+
+    /**
+     * Gets the key of the inline entry at the specified index.
+     *
+     * @param index the zero-based index of the entry
+     * @return the key
+     */
+    /* package private */ abstract K keyAt(int index);
+
+    /**
+     * Gets the value of the inline entry at the specified index.
+     *
+     * @param index the zero-based index of the entry
+     * @return the value
+     */
+    /* package private */ abstract V valueAt(int index);
+
+    /**
+     * Gets the number of sub-nodes of this node.
+     *
+     * @return the number of sub-nodes
+     */
+    /* package private */ abstract int nodeArity();
+
+    /**
+     * Gets the sub-node at the specified index.
+     *
+     * @param index the zero-based index of the sub-node
+     * @return the sub-node
+     */
+    /* package private */ abstract ChampNode<K, V> nodeAt(int index);
+
+    /**
+     * Gets whether this node has no entries, exactly one entry, or more than one entry.
+     *
+     * @return one of {@link #SIZE_EMPTY}, {@link #SIZE_ONE}, or {@link #SIZE_MORE_THAN_ONE}
+     */
+    /* package private */ abstract int sizePredicate();
+
+    // Operations
+
+    /**
+     * Determines whether this node or its sub-nodes contain the specified key.
+     *
+     * @param key the key to look for
+     * @param hash the hash code of the key
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator
+     * @return {@code true} when the key was found; otherwise, {@code false}
+     */
+    /* package private */ abstract boolean containsKey(Object key, int hash, int shift, EqualityComparator<? super K> comparator);
+
+    /**
+     * Finds the value associated with the specified key.
+     *
+     * @param key the key to look for
+     * @param hash the hash code of the key
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator
+     * @return the value; or {@code null} when the key was not found
+     */
+    /* package private */ abstract @Nullable V get(Object key, int hash, int shift, EqualityComparator<? super K> comparator);
+
+    /**
+     * Returns a node in which the specified key is associated with the specified value.
+     *
+     * @param key the key
+     * @param value the value
+     * @param hash the hash code of the key
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator
+     * @param change the object in which the change is recorded
+     * @return the resulting node; or this node when nothing changed
+     */
+    /* package private */ abstract ChampNode<K, V> updated(K key, V value, int hash, int shift, EqualityComparator<? super K> comparator, Change<V> change);
+
+    /**
+     * Returns a node in which the specified key is not present.
+     *
+     * @param key the key
+     * @param hash the hash code of the key
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator
+     * @param change the object in which the change is recorded
+     * @return the resulting node; or this node when nothing changed
+     */
+    /* package private */ abstract ChampNode<K, V> removed(Object key, int hash, int shift, EqualityComparator<? super K> comparator, Change<V> change);
+
+    /**
+     * Creates a node holding the two specified entries, whose keys are not equal.
+     *
+     * @param key0 the first key
+     * @param value0 the first value
+     * @param hash0 the hash code of the first key
+     * @param key1 the second key
+     * @param value1 the second value
+     * @param hash1 the hash code of the second key
+     * @param shift the number of bits of the hash codes consumed by the levels above
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the created node
+     */
+    /* package private */ static <K, V> ChampNode<K, V> mergeTwo(K key0, V value0, int hash0, K key1, V value1, int hash1, int shift) {
+        if (shift >= HASH_CODE_LENGTH) {
+            return new HashCollisionNode<>(hash0, new Object[] { key0, key1 }, new Object[] { value0, value1 });
+        }
+
+        int mask0 = mask(hash0, shift);
+        int mask1 = mask(hash1, shift);
+        if (mask0 != mask1) {
+            // The entries can both be inlined, ordered by their bit position.
+            int dataMap = (1 << mask0) | (1 << mask1);
+            if (mask0 < mask1) {
+                return new BitmapIndexedNode<>(dataMap, 0, new Object[] { key0, value0, key1, value1 });
+            } else {
+                return new BitmapIndexedNode<>(dataMap, 0, new Object[] { key1, value1, key0, value0 });
+            }
+        } else {
+            // The entries share the same prefix, so we have to push them down one level.
+            ChampNode<K, V> node = mergeTwo(key0, value0, hash0, key1, value1, hash1, shift + BITS_PER_LEVEL);
+            return new BitmapIndexedNode<>(0, 1 << mask0, new Object[] { node });
+        }
+    }
+
+    /**
+     * Creates a node that holds just the specified entry, and that can be used both as
+     * the root node and as a node that is about to be inlined in its parent.
+     *
+     * @param key the key
+     * @param value the value
+     * @param hash the hash code of the key
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the created node
+     */
+    /* package private */ static <K, V> ChampNode<K, V> singleton(K key, V value, int hash) {
+        // When the node is not the root, its parent will inline the entry
+        // and the position of the entry in this node doesn't matter.
+        // When it becomes the root, the position must be relative to the first level.
+        return new BitmapIndexedNode<>(bitpos(hash, 0), 0, new Object[] { key, value });
+    }
+
+    /**
+     * Calls the specified visitor for each entry in the specified node and its sub-nodes.
+     *
+     * @param node the node
+     * @param inserted {@code true} to report the entries as inserted;
+     * {@code false} to report them as removed
+     * @param visitor the visitor
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    /* package private */ static <K, V> void visitAll(ChampNode<K, V> node, boolean inserted, MapDiff.Visitor<? super K, ? super V> visitor) {
+        for (int i = 0; i < node.payloadArity(); i++) {
+            if (inserted) visitor.inserted(node.keyAt(i), node.valueAt(i));
+            else visitor.removed(node.keyAt(i), node.valueAt(i));
+        }
+        for (int i = 0; i < node.nodeArity(); i++) {
+            visitAll(node.nodeAt(i), inserted, visitor);
+        }
+    }
+
+    /**
+     * Computes the difference between two nodes at the same position in two tries.
+     *
+     * Sub-nodes that are shared by both tries are skipped,
+     * so this takes time proportional to the parts of the tries that differ.
+     *
+     * @param oldNode the node in the old trie
+     * @param newNode the node in the new trie
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator of both tries
+     * @param visitor the visitor that is called for each difference
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    /* package private */ static <K, V> void diff(ChampNode<K, V> oldNode, ChampNode<K, V> newNode, int shift, EqualityComparator<? super K> comparator, MapDiff.Visitor<? super K, ? super V> visitor) {
+        if (oldNode == newNode) return;
+
+        if (!(oldNode instanceof BitmapIndexedNode<?, ?>) || !(newNode instanceof BitmapIndexedNode<?, ?>)) {
+            // Both are hash collision nodes, which hold only a few entries, so we compare them entry by entry.
+            diffEntries(oldNode, newNode, shift, comparator, visitor);
+            return;
+        }
+
+        BitmapIndexedNode<K, V> a = (BitmapIndexedNode<K, V>)oldNode;
+        BitmapIndexedNode<K, V> b = (BitmapIndexedNode<K, V>)newNode;
+        int bitmap = a.dataMap | a.nodeMap | b.dataMap | b.nodeMap;
+        while (bitmap != 0) {
+            int bitpos = Integer.lowestOneBit(bitmap);
+            bitmap ^= bitpos;
+
+            if ((a.dataMap & bitpos) != 0) {
+                int index = a.dataIndex(bitpos);
+                K key = a.keyAt(index);
+                V value = a.valueAt(index);
+                if ((b.dataMap & bitpos) != 0) {
+                    int otherIndex = b.dataIndex(bitpos);
+                    K otherKey = b.keyAt(otherIndex);
+                    V otherValue = b.valueAt(otherIndex);
+                    if (comparator.equals(key, otherKey)) {
+                        if (!valueEquals(value, otherValue)) visitor.changed(otherKey, value, otherValue);
+                    } else {
+                        visitor.removed(key, value);
+                        visitor.inserted(otherKey, otherValue);
+                    }
+                } else if ((b.nodeMap & bitpos) != 0) {
+                    diffEntry(key, value, hashOf(key, comparator), b.nodeAt(b.nodeIndex(bitpos)), shift + BITS_PER_LEVEL, false, comparator, visitor);
+                } else {
+                    visitor.removed(key, value);
+                }
+            } else if ((a.nodeMap & bitpos) != 0) {
+                ChampNode<K, V> node = a.nodeAt(a.nodeIndex(bitpos));
+                if ((b.dataMap & bitpos) != 0) {
+                    int otherIndex = b.dataIndex(bitpos);
+                    K otherKey = b.keyAt(otherIndex);
+                    diffEntry(otherKey, b.valueAt(otherIndex), hashOf(otherKey, comparator), node, shift + BITS_PER_LEVEL, true, comparator, visitor);
+                } else if ((b.nodeMap & bitpos) != 0) {
+                    diff(node, b.nodeAt(b.nodeIndex(bitpos)), shift + BITS_PER_LEVEL, comparator, visitor);
+                } else {
+                    visitAll(node, false, visitor);
+                }
+            } else {
+                if ((b.dataMap & bitpos) != 0) {
+                    int otherIndex = b.dataIndex(bitpos);
+                    visitor.inserted(b.keyAt(otherIndex), b.valueAt(otherIndex));
+                } else {
+                    visitAll(b.nodeAt(b.nodeIndex(bitpos)), true, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the difference between an inline entry in one trie and a node at the same position in the other trie.
+     *
+     * @param key the key of the entry
+     * @param value the value of the entry
+     * @param hash the hash code of the key
+     * @param node the node
+     * @param shift the number of bits of the hash code consumed by the levels above the node
+     * @param entryIsNew {@code true} when the entry is in the new trie and the node in the old trie;
+     * {@code false} when the entry is in the old trie and the node in the new trie
+     * @param comparator the equality comparator of both tries
+     * @param visitor the visitor that is called for each difference
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    private static <K, V> void diffEntry(K key, V value, int hash, ChampNode<K, V> node, int shift, boolean entryIsNew, EqualityComparator<? super K> comparator, MapDiff.Visitor<? super K, ? super V> visitor) {
+        // The node was created or removed because of the keys that were added or removed,
+        // so visiting all its entries is proportional to the number of changes.
+        boolean found = false;
+        for (int i = 0; i < node.payloadArity(); i++) {
+            K otherKey = node.keyAt(i);
+            V otherValue = node.valueAt(i);
+            if (!found && comparator.equals(key, otherKey)) {
+                found = true;
+                if (!valueEquals(value, otherValue)) {
+                    if (entryIsNew) visitor.changed(key, otherValue, value);
+                    else visitor.changed(otherKey, value, otherValue);
+                }
+            } else {
+                if (entryIsNew) visitor.removed(otherKey, otherValue);
+                else visitor.inserted(otherKey, otherValue);
+            }
+        }
+        for (int i = 0; i < node.nodeArity(); i++) {
+            ChampNode<K, V> subNode = node.nodeAt(i);
+            if (!found && subNode.containsKey(key, hash, shift + BITS_PER_LEVEL, comparator)) {
+                found = true;
+                diffEntry(key, value, hash, subNode, shift + BITS_PER_LEVEL, entryIsNew, comparator, visitor);
+            } else {
+                visitAll(subNode, !entryIsNew, visitor);
+            }
+        }
+        if (!found) {
+            if (entryIsNew) visitor.inserted(key, value);
+            else visitor.removed(key, value);
+        }
+    }
+
+    /**
+     * Computes the difference between two hash collision nodes by looking up each of their entries in the other node.
+     *
+     * @param oldNode the node in the old trie
+     * @param newNode the node in the new trie
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator of both tries
+     * @param visitor the visitor that is called for each difference
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    private static <K, V> void diffEntries(ChampNode<K, V> oldNode, ChampNode<K, V> newNode, int shift, EqualityComparator<? super K> comparator, MapDiff.Visitor<? super K, ? super V> visitor) {
+        assert oldNode.nodeArity() == 0 && newNode.nodeArity() == 0;
+        for (int i = 0; i < oldNode.payloadArity(); i++) {
+            K key = oldNode.keyAt(i);
+            V value = oldNode.valueAt(i);
+            int hash = hashOf(key, comparator);
+            if (newNode.containsKey(key, hash, shift, comparator)) {
+                V otherValue = newNode.get(key, hash, shift, comparator);
+                if (!valueEquals(value, otherValue)) visitor.changed(key, value, otherValue);
+            } else {
+                visitor.removed(key, value);
+            }
+        }
+        for (int i = 0; i < newNode.payloadArity(); i++) {
+            K key = newNode.keyAt(i);
+            if (!oldNode.containsKey(key, hashOf(key, comparator), shift, comparator)) {
+                visitor.inserted(key, newNode.valueAt(i));
+            }
+        }
+    }
+
+    /**
+     * Determines whether two values are equal.
+     *
+     * @param value the first value
+     * @param otherValue the second value
+     * @return {@code true} when the values are equal; otherwise, {@code false}
+     */
+    private static boolean valueEquals(@Nullable Object value, @Nullable Object otherValue) {
+        return value == otherValue || (value != null && value.equals(otherValue));
+    }
+
+    /**
+     * Records the change made by an update or removal.
+     *
+     * @param <V> the type of values
+     */
+    /* package private */ static final class Change<V> {
+        /** Whether an entry was added or removed. */
+        /* package private */ boolean sizeChanged;
+        /** Whether the value of an existing entry was replaced. */
+        /* package private */ boolean replaced;
+        /** The old value of the entry that was replaced or removed. */
+        /* package private */ @Nullable V oldValue;
+
+        /* package private */ void added() {
+            this.sizeChanged = true;
+        }
+
+        /* package private */ void replaced(@Nullable V oldValue) {
+            this.replaced = true;
+            this.oldValue = oldValue;
+        }
+
+        /* package private */ void removed(@Nullable V oldValue) {
+            this.sizeChanged = true;
+            this.oldValue = oldValue;
+        }
+
+        /* package private */ void reset() {
+            this.sizeChanged = false;
+            this.replaced = false;
+            this.oldValue = null;
+        }
+    }
+
+    /**
+     * A trie node that stores entries and sub-nodes at the positions indicated by bitmaps.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    /* package private */ static final class BitmapIndexedNode<K, V> extends ChampNode<K, V> {
+
+        /** The bitmap of the positions of the inline entries. */
+        /* package private */ final int dataMap;
+        /** The bitmap of the positions of the sub-nodes. */
+        /* package private */ final int nodeMap;
+        /** The keys and values of the inline entries, followed by the sub-nodes in reverse order. */
+        private final Object[] content;
+
+        /* package private */ BitmapIndexedNode(int dataMap, int nodeMap, Object[] content) {
+            assert Integer.bitCount(dataMap) * 2 + Integer.bitCount(nodeMap) == content.length;
+            assert (dataMap & nodeMap) == 0;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        /* package private */ int dataIndex(int bitpos) {
+            return Integer.bitCount(this.dataMap & (bitpos - 1));
+        }
+
+        /* package private */ int nodeIndex(int bitpos) {
+            return Integer.bitCount(this.nodeMap & (bitpos - 1));
+        }
+
+        @Override
+        /* package private */ int payloadArity() {
+            return Integer.bitCount(this.dataMap);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        /* package private */ K keyAt(int index) {
+            return (K)this.content[2 * index];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        /* package private */ V valueAt(int index) {
+            return (V)this.content[2 * index + 1];
+        }
+
+        @Override
+        /* package private */ int nodeArity() {
+            return Integer.bitCount(this.nodeMap);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        /* package private */ ChampNode<K, V> nodeAt(int index) {
+            return (ChampNode<K, V>)this.content[this.content.length - 1 - index];
+        }
+
+        @Override
+        /* package private */ int sizePredicate() {
+            if (this.nodeMap != 0) return SIZE_MORE_THAN_ONE;
+            switch (Integer.bitCount(this.dataMap)) {
+                case 0: return SIZE_EMPTY;
+                case 1: return SIZE_ONE;
+                default: return SIZE_MORE_THAN_ONE;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        /* package private */ boolean containsKey(Object key, int hash, int shift, EqualityComparator<? super K> comparator) {
+            int bitpos = bitpos(hash, shift);
+            if ((this.dataMap & bitpos) != 0) {
+                return comparator.equals(keyAt(dataIndex(bitpos)), (K)key);
+            } else if ((this.nodeMap & bitpos) != 0) {
+                return nodeAt(nodeIndex(bitpos)).containsKey(key, hash, shift + BITS_PER_LEVEL, comparator);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        /* package private */ @Nullable V get(Object key, int hash, int shift, EqualityComparator<? super K> comparator) {
+            int bitpos = bitpos(hash, shift);
+            if ((this.dataMap & bitpos) != 0) {
+                int index = dataIndex(bitpos);
+                return comparator.equals(keyAt(index), (K)key) ? valueAt(index) : null;
+            } else if ((this.nodeMap & bitpos) != 0) {
+                return nodeAt(nodeIndex(bitpos)).get(key, hash, shift + BITS_PER_LEVEL, comparator);
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        /* package private */ ChampNode<K, V> updated(K key, V value, int hash, int shift, EqualityComparator<? super K> comparator, Change<V> change) {
+            int bitpos = bitpos(hash, shift);
+            if ((this.dataMap & bitpos) != 0) {
+                int index = dataIndex(bitpos);
+                K currentKey = keyAt(index);
+                V currentValue = valueAt(index);
+                if (comparator.equals(currentKey, key)) {
+                    if (currentValue == value) return this;
+                    change.replaced(currentValue);
+                    return copyAndSetValue(index, value);
+                } else {
+                    ChampNode<K, V> node = mergeTwo(currentKey, currentValue, hashOf(currentKey, comparator), key, value, hash, shift + BITS_PER_LEVEL);
+                    change.added();
+                    return copyAndMigrateFromInlineToNode(bitpos, node);
+                }
+            } else if ((this.nodeMap & bitpos) != 0) {
+                ChampNode<K, V> node = nodeAt(nodeIndex(bitpos));
+                ChampNode<K, V> newNode = node.updated(key, value, hash, shift + BITS_PER_LEVEL, comparator, change);
+                if (newNode == node) return this;
+                return copyAndSetNode(bitpos, newNode);
+            } else {
+                change.added();
+                return copyAndInsertValue(bitpos, key, value);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        /* package private */ ChampNode<K, V> removed(Object key, int hash, int shift, EqualityComparator<? super K> comparator, Change<V> change) {
+            int bitpos = bitpos(hash, shift);
+            if ((this.dataMap & bitpos) != 0) {
+                int index = dataIndex(bitpos);
+                if (!comparator.equals(keyAt(index), (K)key)) return this;
+                change.removed(valueAt(index));
+
+                if (payloadArity() == 2 && nodeArity() == 0) {
+                    // The remaining entry will be inlined in the parent node,
+                    // or this node becomes a root node with a single entry.
+                    int otherIndex = 1 - index;
+                    K otherKey = keyAt(otherIndex);
+                    V otherValue = valueAt(otherIndex);
+                    if (shift == 0) {
+                        return new BitmapIndexedNode<>(this.dataMap ^ bitpos, 0, new Object[] { otherKey, otherValue });
+                    } else {
+                        // The keys in this node share the bits of the hash code of the removed key up to this level.
+                        return singleton(otherKey, otherValue, hash);
+                    }
+                }
+                return copyAndRemoveValue(bitpos, index);
+            } else if ((this.nodeMap & bitpos) != 0) {
+                ChampNode<K, V> node = nodeAt(nodeIndex(bitpos));
+                ChampNode<K, V> newNode = node.removed(key, hash, shift + BITS_PER_LEVEL, comparator, change);
+                if (newNode == node) return this;
+
+                if (newNode.sizePredicate() == SIZE_ONE) {
+                    if (payloadArity() == 0 && nodeArity() == 1) {
+                        // This node would have just a single entry too,
+                        // so we propagate the single-entry node upwards.
+                        return newNode;
+                    } else {
+                        // We inline the single entry of the sub-node.
+                        return copyAndMigrateFromNodeToInline(bitpos, newNode);
+                    }
+                }
+                return copyAndSetNode(bitpos, newNode);
+            } else {
+                return this;
+            }
+        }
+
+        private ChampNode<K, V> copyAndSetValue(int index, V value) {
+            Object[] content = this.content.clone();
+            content[2 * index + 1] = value;
+            return new BitmapIndexedNode<>(this.dataMap, this.nodeMap, content);
+        }
+
+        private ChampNode<K, V> copyAndSetNode(int bitpos, ChampNode<K, V> node) {
+            Object[] content = this.content.clone();
+            content[content.length - 1 - nodeIndex(bitpos)] = node;
+            return new BitmapIndexedNode<>(this.dataMap, this.nodeMap, content);
+        }
+
+        private ChampNode<K, V> copyAndInsertValue(int bitpos, K key, V value) {
+            int index = 2 * dataIndex(bitpos);
+            Object[] content = new Object[this.content.length + 2];
+            System.arraycopy(this.content, 0, content, 0, index);
+            content[index] = key;
+            content[index + 1] = value;
+            System.arraycopy(this.content, index, content, index + 2, this.content.length - index);
+            return new BitmapIndexedNode<>(this.dataMap | bitpos, this.nodeMap, content);
+        }
+
+        private ChampNode<K, V> copyAndRemoveValue(int bitpos, int dataIndex) {
+            int index = 2 * dataIndex;
+            Object[] content = new Object[this.content.length - 2];
+            System.arraycopy(this.content, 0, content, 0, index);
+            System.arraycopy(this.content, index + 2, content, index, this.content.length - index - 2);
+            return new BitmapIndexedNode<>(this.dataMap ^ bitpos, this.nodeMap, content);
+        }
+
+        private ChampNode<K, V> copyAndMigrateFromInlineToNode(int bitpos, ChampNode<K, V> node) {
+            // The entry at the old index is removed, and the node is inserted at the new index.
+            int oldIndex = 2 * dataIndex(bitpos);
+            int newIndex = this.content.length - 2 - nodeIndex(bitpos);
+            Object[] content = new Object[this.content.length - 1];
+            System.arraycopy(this.content, 0, content, 0, oldIndex);
+            System.arraycopy(this.content, oldIndex + 2, content, oldIndex, newIndex - oldIndex);
+            content[newIndex] = node;
+            System.arraycopy(this.content, newIndex + 2, content, newIndex + 1, this.content.length - newIndex - 2);
+            return new BitmapIndexedNode<>(this.dataMap ^ bitpos, this.nodeMap | bitpos, content);
+        }
+
+        private ChampNode<K, V> copyAndMigrateFromNodeToInline(int bitpos, ChampNode<K, V> node) {
+            // The node at the old index is removed, and the entry is inserted at the new index.
+            int oldIndex = this.content.length - 1 - nodeIndex(bitpos);
+            int newIndex = 2 * dataIndex(bitpos);
+            Object[] content = new Object[this.content.length + 1];
+            System.arraycopy(this.content, 0, content, 0, newIndex);
+            content[newIndex] = node.keyAt(0);
+            content[newIndex + 1] = node.valueAt(0);
+            System.arraycopy(this.content, newIndex, content, newIndex + 2, oldIndex - newIndex);
+            System.arraycopy(this.content, oldIndex + 1, content, oldIndex + 2, this.content.length - oldIndex - 1);
+            return new BitmapIndexedNode<>(this.dataMap | bitpos, this.nodeMap ^ bitpos, content);
+        }
+
+    }
+
+    /**
+     * A trie node that stores entries whose keys have exactly the same hash code.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    /* package private */ static final class HashCollisionNode<K, V> extends ChampNode<K, V> {
+
+        /** The hash code shared by all keys. */
+        /* package private */ final int hash;
+        /** The keys. */
+        private final Object[] keys;
+        /** The values. */
+        private final Object[] values;
+
+        /* package private */ HashCollisionNode(int hash, Object[] keys, Object[] values) {
+            assert keys.length >= 2 && keys.length == values.length;
+            this.hash = hash;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        /* package private */ int payloadArity() {
+            return this.keys.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        /* package private */ K keyAt(int index) {
+            return (K)this.keys[index];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        /* package private */ V valueAt(int index) {
+            return (V)this.values[index];
+        }
+
+        @Override
+        /* package private */ int nodeArity() {
+            return 0;
+        }
+
+        @Override
+        /* package private */ ChampNode<K, V> nodeAt(int index) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        /* package private */ int sizePredicate() {
+            return SIZE_MORE_THAN_ONE;
+        }
+
+        /**
+         * Finds the index of the specified key.
+         *
+         * @param key the key to look for
+         * @param comparator the equality comparator
+         * @return the zero-based index of the key; or -1 when not found
+         */
+        @SuppressWarnings("unchecked")
+        /* package private */ int indexOf(Object key, EqualityComparator<? super K> comparator) {
+            for (int i = 0; i < this.keys.length; i++) {
+                if (comparator.equals(keyAt(i), (K)key)) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        /* package private */ boolean containsKey(Object key, int hash, int shift, EqualityComparator<? super K> comparator) {
+            return this.hash == hash && indexOf(key, comparator) >= 0;
+        }
+
+        @Override
+        /* package private */ @Nullable V get(Object key, int hash, int shift, EqualityComparator<? super K> comparator) {
+            if (this.hash != hash) return null;
+            int index = indexOf(key, comparator);
+            return index >= 0 ? valueAt(index) : null;
+        }
+
+        @Override
+        /* package private */ ChampNode<K, V> updated(K key, V value, int hash, int shift, EqualityComparator<? super K> comparator, Change<V> change) {
+            assert this.hash == hash;
+            int index = indexOf(key, comparator);
+            if (index >= 0) {
+                V currentValue = valueAt(index);
+                if (currentValue == value) return this;
+                change.replaced(currentValue);
+                Object[] values = this.values.clone();
+                values[index] = value;
+                return new HashCollisionNode<>(hash, this.keys, values);
+            } else {
+                change.added();
+                Object[] keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+                Object[] values = Arrays.copyOf(this.values, this.values.length + 1);
+                keys[this.keys.length] = key;
+                values[this.values.length] = value;
+                return new HashCollisionNode<>(hash, keys, values);
+            }
+        }
+
+        @Override
+        /* package private */ ChampNode<K, V> removed(Object key, int hash, int shift, EqualityComparator<? super K> comparator, Change<V> change) {
+            if (this.hash != hash) return this;
+            int index = indexOf(key, comparator);
+            if (index < 0) return this;
+            change.removed(valueAt(index));
+
+            if (this.keys.length == 2) {
+                // The remaining entry will be inlined in the parent node.
+                int otherIndex = 1 - index;
+                return singleton(keyAt(otherIndex), valueAt(otherIndex), hash);
+            }
+            Object[] keys = new Object[this.keys.length - 1];
+            Object[] values = new Object[this.values.length - 1];
+            System.arraycopy(this.keys, 0, keys, 0, index);
+            System.arraycopy(this.values, 0, values, 0, index);
+            System.arraycopy(this.keys, index + 1, keys, index, this.keys.length - index - 1);
+            System.arraycopy(this.values, index + 1, values, index, this.values.length - index - 1);
+            return new HashCollisionNode<>(hash, keys, values);
+        }
+
+    }
+
+    /**
+     * Iterates over the entries in a trie.
+     *
+     * The iterator visits the inline entries of a node before its sub-nodes.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @param <T> the type of elements returned by the iterator
+     */
+    /* package private */ abstract static class TrieIterator<K, V, T> implements Iterator<T> {
+
+        /** The maximum depth of a trie, including the level of hash collision nodes. */
+        private static final int MAX_DEPTH = (HASH_CODE_LENGTH + BITS_PER_LEVEL - 1) / BITS_PER_LEVEL + 1;
+
+        /** The stack of nodes whose sub-nodes are being visited. */
+        @SuppressWarnings("unchecked")
+        private final ChampNode<K, V>[] nodes = (ChampNode<K, V>[])new ChampNode<?, ?>[MAX_DEPTH];
+        /** The index of the next sub-node to visit, for each node on the stack. */
+        private final int[] nodeCursors = new int[MAX_DEPTH];
+        /** The index of the top of the stack. */
+        private int depth;
+        /** The node whose inline entries are being visited; or {@code null} when there are no more entries. */
+        @Nullable private ChampNode<K, V> dataNode;
+        /** The index of the next inline entry to visit. */
+        private int dataCursor;
+
+        /* package private */ TrieIterator(ChampNode<K, V> root) {
+            this.nodes[0] = root;
+            this.depth = 0;
+            this.dataNode = root;
+            this.dataCursor = 0;
+            if (root.payloadArity() == 0) advance();
+        }
+
+        /**
+         * Returns the element for the specified entry.
+         *
+         * @param key the key of the entry
+         * @param value the value of the entry
+         * @return the element to return
+         */
+        protected abstract T getElement(K key, V value);
+
+        @Override
+        public boolean hasNext() {
+            return this.dataNode != null;
+        }
+
+        @Override
+        public T next() {
+            ChampNode<K, V> node = this.dataNode;
+            if (node == null) throw new NoSuchElementException();
+            int index = this.dataCursor;
+            T element = getElement(node.keyAt(index), node.valueAt(index));
+            this.dataCursor += 1;
+            if (this.dataCursor >= node.payloadArity()) advance();
+            return element;
+        }
+
+        /**
+         * Finds the next node with inline entries, in depth-first order.
+         */
+        private void advance() {
+            while (this.depth >= 0) {
+                ChampNode<K, V> node = this.nodes[this.depth];
+                int cursor = this.nodeCursors[this.depth];
+                if (cursor < node.nodeArity()) {
+                    this.nodeCursors[this.depth] = cursor + 1;
+                    ChampNode<K, V> child = node.nodeAt(cursor);
+                    this.depth += 1;
+                    this.nodes[this.depth] = child;
+                    this.nodeCursors[this.depth] = 0;
+                    if (child.payloadArity() > 0) {
+                        this.dataNode = child;
+                        this.dataCursor = 0;
+                        return;
+                    }
+                } else {
+                    this.nodes[this.depth] = null;
+                    this.depth -= 1;
+                }
+            }
+            this.dataNode = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,443 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+import static mb.util.collections.immutable.ChampNode.*;
+
+/**
+ * Union, intersection, and difference of two hash tries.
+ *
+ * Instead of adding or removing the entries of one trie one by one to or from the other,
+ * these operations walk both tries simultaneously. Sub-tries that are shared by both operands
+ * are handled in constant time, and whenever the result at some position is equal to
+ * one of the operands, the node of that operand is returned instead of a copy.
+ * This keeps the result sharing as much structure as possible with its operands,
+ * which in turn makes later operations on the results cheaper.
+ *
+ * Both tries must use the same equality comparator.
+ */
+/* package private */ final class ChampSetOperations {
+
+    private ChampSetOperations() {}
+
+    /**
+     * Records how much the number of entries changed.
+     *
+     * The operations don't know the size of the sub-tries they reuse,
+     * so they record the change relative to the size of the first operand.
+     */
+    /* package private */ static final class SizeChange {
+        /** The number of entries that were added, minus the number of entries that were removed. */
+        /* package private */ int delta;
+    }
+
+    /**
+     * Computes the union of two nodes at the same position in two tries.
+     *
+     * When a key is in both tries, the resulting entry has the value of the second trie.
+     *
+     * @param a the node in the first trie
+     * @param b the node in the second trie
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator of both tries
+     * @param change the object in which the number of added entries is recorded
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the resulting node; which may be one of the operands
+     */
+    /* package private */ static <K, V> ChampNode<K, V> union(ChampNode<K, V> a, ChampNode<K, V> b, int shift, EqualityComparator<? super K> comparator, SizeChange change) {
+        if (a == b) return a;
+        if (b.sizePredicate() == SIZE_EMPTY) return a;
+        if (a.sizePredicate() == SIZE_EMPTY) {
+            change.delta += sizeOf(b);
+            return b;
+        }
+
+        if (!(a instanceof BitmapIndexedNode<?, ?>) || !(b instanceof BitmapIndexedNode<?, ?>)) {
+            // Hash collision nodes hold only a few entries, so we add them one by one.
+            ChampNode.Change<V> entryChange = new ChampNode.Change<>();
+            ChampNode<K, V> result = a;
+            for (int i = 0; i < b.payloadArity(); i++) {
+                K key = b.keyAt(i);
+                entryChange.reset();
+                result = result.updated(key, b.valueAt(i), hashOf(key, comparator), shift, comparator, entryChange);
+                if (entryChange.sizeChanged) change.delta += 1;
+            }
+            return result;
+        }
+
+        BitmapIndexedNode<K, V> x = (BitmapIndexedNode<K, V>)a;
+        BitmapIndexedNode<K, V> y = (BitmapIndexedNode<K, V>)b;
+        int bitmap = x.dataMap | x.nodeMap | y.dataMap | y.nodeMap;
+        NodeBuilder builder = new NodeBuilder(bitmap);
+        while (bitmap != 0) {
+            int bitpos = Integer.lowestOneBit(bitmap);
+            bitmap ^= bitpos;
+
+            if ((x.dataMap & bitpos) != 0) {
+                int index = x.dataIndex(bitpos);
+                K key = x.keyAt(index);
+                V value = x.valueAt(index);
+                if ((y.dataMap & bitpos) != 0) {
+                    int otherIndex = y.dataIndex(bitpos);
+                    K otherKey = y.keyAt(otherIndex);
+                    V otherValue = y.valueAt(otherIndex);
+                    if (comparator.equals(key, otherKey)) {
+                        builder.addEntry(bitpos, key, otherValue);
+                    } else {
+                        change.delta += 1;
+                        builder.addNode(bitpos, mergeTwo(key, value, hashOf(key, comparator), otherKey, otherValue, hashOf(otherKey, comparator), shift + BITS_PER_LEVEL));
+                    }
+                } else if ((y.nodeMap & bitpos) != 0) {
+                    // The sub-node of the second trie wins, unless it doesn't have the key.
+                    ChampNode<K, V> otherNode = y.nodeAt(y.nodeIndex(bitpos));
+                    int hash = hashOf(key, comparator);
+                    if (otherNode.containsKey(key, hash, shift + BITS_PER_LEVEL, comparator)) {
+                        change.delta += sizeOf(otherNode) - 1;
+                        builder.addNode(bitpos, otherNode);
+                    } else {
+                        ChampNode.Change<V> entryChange = new ChampNode.Change<>();
+                        change.delta += sizeOf(otherNode);
+                        builder.addNode(bitpos, otherNode.updated(key, value, hash, shift + BITS_PER_LEVEL, comparator, entryChange));
+                    }
+                } else {
+                    builder.addEntry(bitpos, key, value);
+                }
+            } else if ((x.nodeMap & bitpos) != 0) {
+                ChampNode<K, V> node = x.nodeAt(x.nodeIndex(bitpos));
+                if ((y.dataMap & bitpos) != 0) {
+                    int otherIndex = y.dataIndex(bitpos);
+                    K otherKey = y.keyAt(otherIndex);
+                    ChampNode.Change<V> entryChange = new ChampNode.Change<>();
+                    builder.addNode(bitpos, node.updated(otherKey, y.valueAt(otherIndex), hashOf(otherKey, comparator), shift + BITS_PER_LEVEL, comparator, entryChange));
+                    if (entryChange.sizeChanged) change.delta += 1;
+                } else if ((y.nodeMap & bitpos) != 0) {
+                    builder.addNode(bitpos, union(node, y.nodeAt(y.nodeIndex(bitpos)), shift + BITS_PER_LEVEL, comparator, change));
+                } else {
+                    builder.addNode(bitpos, node);
+                }
+            } else {
+                if ((y.dataMap & bitpos) != 0) {
+                    int otherIndex = y.dataIndex(bitpos);
+                    change.delta += 1;
+                    builder.addEntry(bitpos, y.keyAt(otherIndex), y.valueAt(otherIndex));
+                } else {
+                    ChampNode<K, V> otherNode = y.nodeAt(y.nodeIndex(bitpos));
+                    change.delta += sizeOf(otherNode);
+                    builder.addNode(bitpos, otherNode);
+                }
+            }
+        }
+        return builder.build(a, b);
+    }
+
+    /**
+     * Computes the intersection of two nodes at the same position in two tries.
+     *
+     * The resulting entries are those of the first trie whose keys are also in the second trie.
+     *
+     * @param a the node in the first trie
+     * @param b the node in the second trie
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator of both tries
+     * @param change the object in which the number of removed entries is recorded
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the resulting node; which may be one of the operands
+     */
+    /* package private */ static <K, V> ChampNode<K, V> intersection(ChampNode<K, V> a, ChampNode<K, ?> b, int shift, EqualityComparator<? super K> comparator, SizeChange change) {
+        if (a == b) return a;
+        if (a.sizePredicate() == SIZE_EMPTY) return a;
+        if (b.sizePredicate() == SIZE_EMPTY) {
+            change.delta -= sizeOf(a);
+            return ChampNode.empty();
+        }
+
+        if (!(a instanceof BitmapIndexedNode<?, ?>) || !(b instanceof BitmapIndexedNode<?, ?>)) {
+            return filterCollisions(a, b, shift, true, comparator, change);
+        }
+
+        BitmapIndexedNode<K, V> x = (BitmapIndexedNode<K, V>)a;
+        BitmapIndexedNode<K, ?> y = (BitmapIndexedNode<K, ?>)b;
+        // Only the positions of the first trie can end up in the result.
+        int bitmap = x.dataMap | x.nodeMap;
+        NodeBuilder builder = new NodeBuilder(bitmap);
+        while (bitmap != 0) {
+            int bitpos = Integer.lowestOneBit(bitmap);
+            bitmap ^= bitpos;
+
+            if ((x.dataMap & bitpos) != 0) {
+                int index = x.dataIndex(bitpos);
+                K key = x.keyAt(index);
+                boolean found;
+                if ((y.dataMap & bitpos) != 0) {
+                    found = comparator.equals(key, y.keyAt(y.dataIndex(bitpos)));
+                } else if ((y.nodeMap & bitpos) != 0) {
+                    found = y.nodeAt(y.nodeIndex(bitpos)).containsKey(key, hashOf(key, comparator), shift + BITS_PER_LEVEL, comparator);
+                } else {
+                    found = false;
+                }
+                if (found) {
+                    builder.addEntry(bitpos, key, x.valueAt(index));
+                } else {
+                    change.delta -= 1;
+                }
+            } else {
+                ChampNode<K, V> node = x.nodeAt(x.nodeIndex(bitpos));
+                if ((y.dataMap & bitpos) != 0) {
+                    // At most the one entry of the second trie remains.
+                    K otherKey = y.keyAt(y.dataIndex(bitpos));
+                    ChampNode<K, V> newNode = retained(node, otherKey, hashOf(otherKey, comparator), shift + BITS_PER_LEVEL, comparator);
+                    change.delta -= sizeOf(node) - (newNode.sizePredicate() == SIZE_EMPTY ? 0 : 1);
+                    builder.addNode(bitpos, newNode);
+                } else if ((y.nodeMap & bitpos) != 0) {
+                    builder.addNode(bitpos, intersection(node, y.nodeAt(y.nodeIndex(bitpos)), shift + BITS_PER_LEVEL, comparator, change));
+                } else {
+                    change.delta -= sizeOf(node);
+                }
+            }
+        }
+        return builder.build(a, b);
+    }
+
+    /**
+     * Computes the difference of two nodes at the same position in two tries.
+     *
+     * The resulting entries are those of the first trie whose keys are not in the second trie.
+     *
+     * @param a the node in the first trie
+     * @param b the node in the second trie
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator of both tries
+     * @param change the object in which the number of removed entries is recorded
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the resulting node; which may be the first operand
+     */
+    /* package private */ static <K, V> ChampNode<K, V> difference(ChampNode<K, V> a, ChampNode<K, ?> b, int shift, EqualityComparator<? super K> comparator, SizeChange change) {
+        if (a == b) {
+            change.delta -= sizeOf(a);
+            return ChampNode.empty();
+        }
+        if (a.sizePredicate() == SIZE_EMPTY || b.sizePredicate() == SIZE_EMPTY) return a;
+
+        if (!(a instanceof BitmapIndexedNode<?, ?>) || !(b instanceof BitmapIndexedNode<?, ?>)) {
+            return filterCollisions(a, b, shift, false, comparator, change);
+        }
+
+        BitmapIndexedNode<K, V> x = (BitmapIndexedNode<K, V>)a;
+        BitmapIndexedNode<K, ?> y = (BitmapIndexedNode<K, ?>)b;
+        // Only the positions of the first trie can end up in the result.
+        int bitmap = x.dataMap | x.nodeMap;
+        NodeBuilder builder = new NodeBuilder(bitmap);
+        while (bitmap != 0) {
+            int bitpos = Integer.lowestOneBit(bitmap);
+            bitmap ^= bitpos;
+
+            if ((x.dataMap & bitpos) != 0) {
+                int index = x.dataIndex(bitpos);
+                K key = x.keyAt(index);
+                boolean found;
+                if ((y.dataMap & bitpos) != 0) {
+                    found = comparator.equals(key, y.keyAt(y.dataIndex(bitpos)));
+                } else if ((y.nodeMap & bitpos) != 0) {
+                    found = y.nodeAt(y.nodeIndex(bitpos)).containsKey(key, hashOf(key, comparator), shift + BITS_PER_LEVEL, comparator);
+                } else {
+                    found = false;
+                }
+                if (found) {
+                    change.delta -= 1;
+                } else {
+                    builder.addEntry(bitpos, key, x.valueAt(index));
+                }
+            } else {
+                ChampNode<K, V> node = x.nodeAt(x.nodeIndex(bitpos));
+                if ((y.dataMap & bitpos) != 0) {
+                    K otherKey = y.keyAt(y.dataIndex(bitpos));
+                    ChampNode.Change<V> entryChange = new ChampNode.Change<>();
+                    builder.addNode(bitpos, node.removed(otherKey, hashOf(otherKey, comparator), shift + BITS_PER_LEVEL, comparator, entryChange));
+                    if (entryChange.sizeChanged) change.delta -= 1;
+                } else if ((y.nodeMap & bitpos) != 0) {
+                    builder.addNode(bitpos, difference(node, y.nodeAt(y.nodeIndex(bitpos)), shift + BITS_PER_LEVEL, comparator, change));
+                } else {
+                    builder.addNode(bitpos, node);
+                }
+            }
+        }
+        return builder.build(a, null);
+    }
+
+    /**
+     * Keeps the entries of a hash collision node whose keys are, or are not, in the other node.
+     *
+     * @param a the hash collision node in the first trie
+     * @param b the hash collision node in the second trie
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param keepContained {@code true} to keep the entries whose keys are in the other node;
+     * {@code false} to keep the entries whose keys are not in the other node
+     * @param comparator the equality comparator of both tries
+     * @param change the object in which the number of removed entries is recorded
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the resulting node; which may be the first operand
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> ChampNode<K, V> filterCollisions(ChampNode<K, V> a, ChampNode<K, ?> b, int shift, boolean keepContained, EqualityComparator<? super K> comparator, SizeChange change) {
+        // Hash collision nodes hold only a few entries, so we look up each of them in the other node.
+        int size = a.payloadArity();
+        Object[] keys = new Object[size];
+        Object[] values = new Object[size];
+        int length = 0;
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            K key = a.keyAt(i);
+            hash = hashOf(key, comparator);
+            if (b.containsKey(key, hash, shift, comparator) == keepContained) {
+                keys[length] = key;
+                values[length] = a.valueAt(i);
+                length += 1;
+            }
+        }
+        change.delta -= size - length;
+        if (length == size) return a;
+        if (length == 0) return ChampNode.empty();
+        if (length == 1) return singleton((K)keys[0], (V)values[0], hash);
+        return new HashCollisionNode<>(hash, Arrays.copyOf(keys, length), Arrays.copyOf(values, length));
+    }
+
+    /**
+     * Returns a node with only the entry of the specified node that has the specified key.
+     *
+     * @param node the node
+     * @param key the key to look for
+     * @param hash the hash code of the key
+     * @param shift the number of bits of the hash code consumed by the levels above
+     * @param comparator the equality comparator
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return a node with the single entry; or an empty node when the key was not found
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> ChampNode<K, V> retained(ChampNode<K, V> node, Object key, int hash, int shift, EqualityComparator<? super K> comparator) {
+        if (node instanceof BitmapIndexedNode<?, ?>) {
+            BitmapIndexedNode<K, V> bitmapNode = (BitmapIndexedNode<K, V>)node;
+            int bitpos = bitpos(hash, shift);
+            if ((bitmapNode.dataMap & bitpos) != 0) {
+                int index = bitmapNode.dataIndex(bitpos);
+                K currentKey = bitmapNode.keyAt(index);
+                if (comparator.equals(currentKey, (K)key)) return singleton(currentKey, bitmapNode.valueAt(index), hash);
+            } else if ((bitmapNode.nodeMap & bitpos) != 0) {
+                return retained(bitmapNode.nodeAt(bitmapNode.nodeIndex(bitpos)), key, hash, shift + BITS_PER_LEVEL, comparator);
+            }
+        } else {
+            int index = ((HashCollisionNode<K, V>)node).indexOf(key, comparator);
+            if (index >= 0) return singleton(node.keyAt(index), node.valueAt(index), hash);
+        }
+        return ChampNode.empty();
+    }
+
+    /**
+     * Counts the entries in the specified node and its sub-nodes.
+     *
+     * @param node the node
+     * @return the number of entries
+     */
+    private static int sizeOf(ChampNode<?, ?> node) {
+        int size = node.payloadArity();
+        for (int i = 0; i < node.nodeArity(); i++) {
+            size += sizeOf(node.nodeAt(i));
+        }
+        return size;
+    }
+
+    /**
+     * Collects the entries and sub-nodes of a node, in the order of their bit positions,
+     * and builds the node in canonical form.
+     */
+    private static final class NodeBuilder {
+
+        private int dataMap = 0;
+        private int nodeMap = 0;
+        /** The keys and values of the inline entries. */
+        private final Object[] data;
+        private int dataLength = 0;
+        /** The sub-nodes. */
+        private final Object[] nodes;
+        private int nodeLength = 0;
+
+        /**
+         * Initializes a new instance of the {@link NodeBuilder} class.
+         *
+         * @param bitmap the bitmap of all positions that may be occupied
+         */
+        private NodeBuilder(int bitmap) {
+            int capacity = Integer.bitCount(bitmap);
+            this.data = new Object[2 * capacity];
+            this.nodes = new Object[capacity];
+        }
+
+        private void addEntry(int bitpos, Object key, Object value) {
+            this.dataMap |= bitpos;
+            this.data[this.dataLength++] = key;
+            this.data[this.dataLength++] = value;
+        }
+
+        private void addNode(int bitpos, ChampNode<?, ?> node) {
+            // Empty sub-nodes are dropped, and single-entry sub-nodes are inlined,
+            // such that the resulting node is in canonical form.
+            switch (node.sizePredicate()) {
+                case SIZE_EMPTY:
+                    break;
+                case SIZE_ONE:
+                    addEntry(bitpos, node.keyAt(0), node.valueAt(0));
+                    break;
+                default:
+                    this.nodeMap |= bitpos;
+                    this.nodes[this.nodeLength++] = node;
+                    break;
+            }
+        }
+
+        /**
+         * Builds the node.
+         *
+         * @param a the first operand, which is returned when the result is equal to it
+         * @param b the second operand, which is returned when the result is equal to it; or {@code null}
+         * @param <K> the type of keys
+         * @param <V> the type of values
+         * @return the resulting node
+         */
+        @SuppressWarnings("unchecked")
+        private <K, V> ChampNode<K, V> build(ChampNode<K, V> a, @Nullable ChampNode<K, ?> b) {
+            if (this.dataMap == 0 && this.nodeMap == 0) return ChampNode.empty();
+            if (isSameAs(a)) return a;
+            if (b != null && isSameAs(b)) return (ChampNode<K, V>)b;
+
+            Object[] content = new Object[this.dataLength + this.nodeLength];
+            System.arraycopy(this.data, 0, content, 0, this.dataLength);
+            // The sub-nodes are stored in reverse order.
+            for (int i = 0; i < this.nodeLength; i++) {
+                content[content.length - 1 - i] = this.nodes[i];
+            }
+            return new BitmapIndexedNode<>(this.dataMap, this.nodeMap, content);
+        }
+
+        private boolean isSameAs(ChampNode<?, ?> node) {
+            if (!(node instanceof BitmapIndexedNode<?, ?>)) return false;
+            BitmapIndexedNode<?, ?> other = (BitmapIndexedNode<?, ?>)node;
+            if (other.dataMap != this.dataMap || other.nodeMap != this.nodeMap) return false;
+            for (int i = 0; i < this.dataLength / 2; i++) {
+                if (other.keyAt(i) != this.data[2 * i] || other.valueAt(i) != this.data[2 * i + 1]) return false;
+            }
+            for (int i = 0; i < this.nodeLength; i++) {
+                if (other.nodeAt(i) != this.nodes[i]) return false;
+            }
+            return true;
+        }
+
+    }
+
+}
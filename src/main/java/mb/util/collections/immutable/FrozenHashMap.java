@@ -0,0 +1,392 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.MapView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * An immutable map that is indexed by a minimal perfect hash function over the hash codes of its keys.
+ *
+ * The table has exactly one slot for each distinct hash code of the keys, so it has no empty slots
+ * and no probe sequences: looking up a key computes its hash code once, finds its slot,
+ * and compares the key in that slot. Keys whose hash codes are equal share a slot,
+ * which then holds a small array of those keys that is searched linearly.
+ *
+ * This map is meant for tables that are built once and queried often; building it takes O(n log n) time.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+/* package private */ final class FrozenHashMap<K, V> implements ImmutableMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The perfect hash function that maps the hash code of each key to its slot. */
+    private final PerfectHash hash;
+    /** The key in each slot; or a {@link Collision} when multiple keys have the hash code of the slot. */
+    private final Object[] keys;
+    /** The value in each slot; or {@code null} when this map holds the elements of a set. */
+    @Nullable private final Object[] values;
+    /** The number of entries. */
+    private final int size;
+    /** The equality comparator of the keys. */
+    private final EqualityComparator<? super K> comparator;
+
+    private FrozenHashMap(PerfectHash hash, Object[] keys, @Nullable Object[] values, int size, EqualityComparator<? super K> comparator) {
+        this.hash = hash;
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Creates a frozen map from the specified keys and values.
+     *
+     * Of the keys that are equal, the last one is kept.
+     *
+     * @param keys the keys, which are not modified
+     * @param values the values; or {@code null} to create the map of a set
+     * @param count the number of entries
+     * @param comparator the equality comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the frozen map
+     */
+    /* package private */ static <K, V> FrozenHashMap<K, V> from(Object[] keys, @Nullable Object[] values, int count, EqualityComparator<? super K> comparator) {
+        // Sort the keys by their hash code, such that keys with the same hash code are adjacent.
+        long[] hashIndices = new long[count];
+        for (int i = 0; i < count; i++) {
+            @SuppressWarnings("unchecked")
+            int hash = comparator.hashCodeOf((K)keys[i]);
+            hashIndices[i] = ((long)hash << 32) | i;
+        }
+        Arrays.sort(hashIndices);
+        int[] hashes = new int[count];
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            int hash = (int)(hashIndices[i] >> 32);
+            if (distinct == 0 || hashes[distinct - 1] != hash) hashes[distinct++] = hash;
+        }
+        PerfectHash perfectHash = PerfectHash.build(Arrays.copyOf(hashes, distinct));
+
+        Object[] tableKeys = new Object[distinct];
+        Object[] tableValues = values != null ? new Object[distinct] : null;
+        int size = 0;
+        for (int start = 0; start < count; ) {
+            int hash = (int)(hashIndices[start] >> 32);
+            int end = start + 1;
+            while (end < count && (int)(hashIndices[end] >> 32) == hash) end += 1;
+            int slot = perfectHash.slotOf(hash);
+            if (end - start == 1) {
+                int index = (int)hashIndices[start];
+                tableKeys[slot] = keys[index];
+                if (tableValues != null) tableValues[slot] = values[index];
+                size += 1;
+            } else {
+                Collision collision = Collision.of(keys, values, hashIndices, start, end, comparator);
+                tableKeys[slot] = collision;
+                size += collision.keys.length;
+            }
+            start = end;
+        }
+        return new FrozenHashMap<>(perfectHash, tableKeys, tableValues, size, comparator);
+    }
+
+    /**
+     * Creates a frozen map by copying the entries from the specified map.
+     *
+     * @param map the map to copy
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the frozen map
+     */
+    /* package private */ static <K, V> FrozenHashMap<K, V> from(MapView<K, V> map) {
+        int size = map.size();
+        Object[] keys = new Object[size];
+        Object[] values = new Object[size];
+        int count = 0;
+        for (Map.Entry<K, V> entry : map) {
+            if (count == keys.length) {
+                // The map has more entries than it reported.
+                keys = Arrays.copyOf(keys, count * 2 + 1);
+                values = Arrays.copyOf(values, count * 2 + 1);
+            }
+            keys[count] = entry.getKey();
+            values[count] = entry.getValue();
+            count += 1;
+        }
+        return from(keys, values, count, map.getComparator());
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public EqualityComparator<? super K> getComparator() {
+        return this.comparator;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(@Nullable Object key) {
+        if (this.size == 0) return false;
+        Object slotKey = this.keys[this.hash.slotOf(this.comparator.hashCodeOf((K)key))];
+        if (slotKey instanceof Collision) return ((Collision)slotKey).indexOf(key, this.comparator) >= 0;
+        return this.comparator.equals((K)slotKey, (K)key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(@Nullable Object key) {
+        if (this.size == 0 || this.values == null) return null;
+        int slot = this.hash.slotOf(this.comparator.hashCodeOf((K)key));
+        Object slotKey = this.keys[slot];
+        if (slotKey instanceof Collision) {
+            Collision collision = (Collision)slotKey;
+            int index = collision.indexOf(key, this.comparator);
+            //noinspection unchecked,ConstantConditions
+            return index >= 0 ? (V)collision.values[index] : null;
+        }
+        return this.comparator.equals((K)slotKey, (K)key) ? (V)this.values[slot] : null;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new TableIterator<Map.Entry<K, V>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected Map.Entry<K, V> getElement(Object key, @Nullable Object value) {
+                return new AbstractMap.SimpleImmutableEntry<>((K)key, (V)value);
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the keys.
+     *
+     * @return the iterator
+     */
+    /* package private */ Iterator<K> keyIterator() {
+        return new TableIterator<K>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected K getElement(Object key, @Nullable Object value) {
+                return (K)key;
+            }
+        };
+    }
+
+    @Override
+    public FrozenHashMap<K, V> freeze() {
+        return this;
+    }
+
+    @Override
+    public Map<K, V> asUnmodifiable() {
+        return new AsMap<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        Map<?, ?> other;
+        if (obj instanceof Map<?, ?>) {
+            other = (Map<?, ?>)obj;
+        } else if (obj instanceof MapView<?, ?>) {
+            other = ((MapView<?, ?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != this.size) return false;
+        for (Map.Entry<?, ?> entry : other.entrySet()) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            if (!Objects.equals(get(key), value) || (value == null && !containsKey(key))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractMap implementation.
+        int hashCode = 0;
+        for (Map.Entry<K, V> entry : this) {
+            hashCode += entry.hashCode();
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return asUnmodifiable().toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        // The hash codes of the keys may differ in another JVM, so the table is rebuilt when it is read.
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * The keys and values of a slot whose hash code is shared by multiple keys.
+     */
+    private static final class Collision {
+
+        /** The keys, which have the same hash code. */
+        private final Object[] keys;
+        /** The values; or {@code null} when the map holds the elements of a set. */
+        @Nullable private final Object[] values;
+
+        private Collision(Object[] keys, @Nullable Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        /**
+         * Creates a collision of the distinct keys in a range of the sorted hash indices.
+         */
+        private static <K> Collision of(Object[] keys, @Nullable Object[] values, long[] hashIndices, int start, int end,
+                                        EqualityComparator<? super K> comparator) {
+            Object[] collisionKeys = new Object[end - start];
+            Object[] collisionValues = values != null ? new Object[end - start] : null;
+            int count = 0;
+            Collision partial = new Collision(collisionKeys, collisionValues);
+            for (int i = start; i < end; i++) {
+                // The range is sorted by index, so of the keys that are equal, the last one overwrites the others.
+                int index = (int)hashIndices[i];
+                int target = partial.indexOf(keys[index], count, comparator);
+                if (target < 0) target = count++;
+                collisionKeys[target] = keys[index];
+                if (collisionValues != null) collisionValues[target] = values[index];
+            }
+            return new Collision(Arrays.copyOf(collisionKeys, count), collisionValues != null ? Arrays.copyOf(collisionValues, count) : null);
+        }
+
+        private <K> int indexOf(@Nullable Object key, EqualityComparator<? super K> comparator) {
+            return indexOf(key, this.keys.length, comparator);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <K> int indexOf(@Nullable Object key, int count, EqualityComparator<? super K> comparator) {
+            for (int i = 0; i < count; i++) {
+                if (comparator.equals((K)this.keys[i], (K)key)) return i;
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * Iterates over the entries in the table, including the entries of collisions.
+     *
+     * @param <T> the type of elements returned by the iterator
+     */
+    private abstract class TableIterator<T> implements Iterator<T> {
+
+        /** The index of the next slot. */
+        private int slot = 0;
+        /** The collision whose entries are being visited; or {@code null}. */
+        @Nullable private Collision collision;
+        /** The index of the next entry in the collision. */
+        private int index;
+
+        /**
+         * Returns the element for the specified entry.
+         *
+         * @param key the key of the entry
+         * @param value the value of the entry; or {@code null} for the elements of a set
+         * @return the element to return
+         */
+        protected abstract T getElement(Object key, @Nullable Object value);
+
+        @Override
+        public boolean hasNext() {
+            return this.collision != null || this.slot < FrozenHashMap.this.keys.length;
+        }
+
+        @Override
+        public T next() {
+            Object[] values = FrozenHashMap.this.values;
+            if (this.collision == null) {
+                if (this.slot >= FrozenHashMap.this.keys.length) throw new NoSuchElementException();
+                int slot = this.slot;
+                this.slot += 1;
+                Object key = FrozenHashMap.this.keys[slot];
+                if (!(key instanceof Collision)) return getElement(key, values != null ? values[slot] : null);
+                this.collision = (Collision)key;
+                this.index = 0;
+            }
+            Collision collision = this.collision;
+            int index = this.index;
+            this.index += 1;
+            if (this.index == collision.keys.length) this.collision = null;
+            return getElement(collision.keys[index], collision.values != null ? collision.values[index] : null);
+        }
+
+    }
+
+    /**
+     * A map that views a frozen map.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    private static final class AsMap<K, V> extends AbstractMap<K, V> {
+
+        private final FrozenHashMap<K, V> map;
+
+        private AsMap(FrozenHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return this.map.get(key);
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return AsMap.this.map.size();
+                }
+
+                @NotNull
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return AsMap.this.map.iterator();
+                }
+            };
+        }
+
+    }
+
+}
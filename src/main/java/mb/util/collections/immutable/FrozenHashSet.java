@@ -0,0 +1,170 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.SetView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * An immutable set that is indexed by a minimal perfect hash function over the hash codes of its elements.
+ *
+ * This set is a frozen map whose keys are the elements, and which stores no values.
+ *
+ * @param <E> the type of elements in the set
+ */
+/* package private */ final class FrozenHashSet<E> implements ImmutableSet<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The map whose keys are the elements of this set. */
+    private final FrozenHashMap<E, ?> map;
+
+    private FrozenHashSet(FrozenHashMap<E, ?> map) {
+        this.map = map;
+    }
+
+    /**
+     * Creates a frozen set by copying the elements from the specified set.
+     *
+     * @param set the set to copy
+     * @param <E> the type of elements in the set
+     * @return the frozen set
+     */
+    /* package private */ static <E> FrozenHashSet<E> from(SetView<E> set) {
+        Object[] elements = new Object[set.size()];
+        int count = 0;
+        for (E element : set) {
+            if (count == elements.length) {
+                // The set has more elements than it reported.
+                elements = Arrays.copyOf(elements, count * 2 + 1);
+            }
+            elements[count++] = element;
+        }
+        return from(elements, count, set.getComparator());
+    }
+
+    /**
+     * Creates a frozen set from the specified elements.
+     *
+     * @param elements the elements, which are not modified
+     * @param count the number of elements
+     * @param comparator the equality comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the frozen set
+     */
+    /* package private */ static <E> FrozenHashSet<E> from(Object[] elements, int count, EqualityComparator<? super E> comparator) {
+        return new FrozenHashSet<>(FrozenHashMap.<E, Object>from(elements, null, count, comparator));
+    }
+
+    @Override
+    public int size() {
+        return this.map.size();
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.map.getComparator();
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return this.map.containsKey(element);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return this.map.keyIterator();
+    }
+
+    @Override
+    public FrozenHashSet<E> freeze() {
+        return this;
+    }
+
+    @Override
+    public Set<E> asUnmodifiable() {
+        return new AsSet<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        Collection<?> other;
+        if (obj instanceof Set<?>) {
+            other = (Set<?>)obj;
+        } else if (obj instanceof SetView<?>) {
+            other = ((SetView<?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != size()) return false;
+        for (Object element : other) {
+            if (!contains(element)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractSet implementation.
+        int hashCode = 0;
+        for (E element : this) {
+            hashCode += element != null ? element.hashCode() : 0;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return asUnmodifiable().toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * A set that views a frozen set.
+     *
+     * @param <E> the type of elements in the set
+     */
+    private static final class AsSet<E> extends AbstractSet<E> {
+
+        private final FrozenHashSet<E> set;
+
+        private AsSet(FrozenHashSet<E> set) {
+            this.set = set;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.set.contains(o);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            return this.set.iterator();
+        }
+
+    }
+
+}
@@ -0,0 +1,92 @@
+package mb.util.collections.immutable;
+
+import mb.util.collections.MapView;
+
+import java.util.Map;
+
+/**
+ * An immutable map.
+ *
+ * This interface is covariant.
+ *
+ * Implementations of this interface are be immutable and thread-safe.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public interface ImmutableMap<K, V> extends MapView<K, V> {
+
+    /**
+     * Creates an empty immutable map.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the immutable map
+     */
+    static <K, V> ImmutableMap<K, V> of() {
+        return PersistentMap.of();
+    }
+
+    /**
+     * Creates a singleton immutable map.
+     *
+     * @param key the key of the entry in the map
+     * @param value the value of the entry in the map
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the immutable map
+     */
+    static <K, V> ImmutableMap<K, V> of(K key, V value) {
+        return PersistentMap.of(key, value);
+    }
+
+    /**
+     * Creates an immutable map by copying the entries from the specified map.
+     *
+     * Changes to the input map are not reflected in this map.
+     *
+     * @param map the map whose entries to include
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the immutable map
+     */
+    static <K, V> ImmutableMap<K, V> from(Map<? extends K, ? extends V> map) {
+        return PersistentMap.from(map);
+    }
+
+    /**
+     * Creates an immutable map by copying the entries from the specified map.
+     *
+     * Changes to the input map are not reflected in this map.
+     *
+     * @param map the map whose entries to include
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the immutable map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> ImmutableMap<K, V> from(MapView<? extends K, ? extends V> map) {
+        if (map instanceof ImmutableMap<?, ?>) {
+            // When the map is immutable we can just return it.
+            return (ImmutableMap<K, V>)map;
+        } else {
+            // Otherwise, we copy the entries into an immutable map.
+            return PersistentMap.from(map);
+        }
+    }
+
+    /**
+     * Returns an immutable map with the same entries as this map,
+     * that is optimized for lookups instead of modifications.
+     *
+     * The returned map is indexed by a minimal perfect hash function over the hash codes of the keys,
+     * computed using the equality comparator of this map. Its iteration order is unspecified.
+     * Sorted maps override this method to keep their comparator.
+     *
+     * @return the frozen map
+     */
+    default ImmutableMap<K, V> freeze() {
+        return FrozenHashMap.from(this);
+    }
+
+}
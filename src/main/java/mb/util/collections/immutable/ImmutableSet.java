@@ -1,9 +1,11 @@
 package mb.util.collections.immutable;
 
-import mb.util.collections.ListView;
 import mb.util.collections.SetView;
+import mb.util.collections.specialized.ImmutableBitSet;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -11,6 +13,8 @@ import java.util.Set;
  *
  * This interface is covariant.
  *
+ * The factory methods of this interface return an {@link ImmutableBitSet} when the elements are enum constants.
+ *
  * Implementations of this interface are be immutable and thread-safe.
  *
  * @param <E> the type of elements in the set
@@ -24,8 +28,7 @@ public interface ImmutableSet<E> extends SetView<E>, ImmutableCollection<E> {
      * @return the immutable set
      */
     static <E> ImmutableSet<E> of() {
-        // We can return a special empty implementation.
-        throw new UnsupportedOperationException();
+        return PersistentSet.of();
     }
 
     /**
@@ -36,8 +39,12 @@ public interface ImmutableSet<E> extends SetView<E>, ImmutableCollection<E> {
      * @return the immutable set
      */
     static <E> ImmutableSet<E> of(E element) {
-        // We can return a special singleton implementation.
-        throw new UnsupportedOperationException();
+        if (element instanceof Enum<?>) {
+            // When the element is an enum constant, we can return a bit set.
+            //noinspection ConstantConditions
+            return ImmutableBitSet.tryOfEnums(Collections.singletonList(element));
+        }
+        return PersistentSet.of(element);
     }
 
     /**
@@ -49,16 +56,18 @@ public interface ImmutableSet<E> extends SetView<E>, ImmutableCollection<E> {
      * @param <E> the type of elements in the set
      * @return the immutable set
      */
-    @SafeVarargs static <E> ImmutableSet<E> of(E... elements) {
+    @SafeVarargs @SuppressWarnings("varargs") static <E> ImmutableSet<E> of(E... elements) {
         if (elements.length == 0) {
             // When the array is empty, we can just return the empty set,
             // because the input array cannot be modified and the fact that it
             // isn't part of the returned SetView is unobservable.
             return of();
         } else {
+            // When the elements are enum constants, we copy them into a bit set.
+            ImmutableBitSet<E> bitSet = ImmutableBitSet.tryOfEnums(Arrays.asList(elements));
+            if (bitSet != null) return bitSet;
             // Otherwise, we copy the elements into an immutable set.
-            // TODO:
-            throw new UnsupportedOperationException();
+            return PersistentSet.of(elements);
         }
     }
 
@@ -81,9 +90,15 @@ public interface ImmutableSet<E> extends SetView<E>, ImmutableCollection<E> {
             //noinspection unchecked
             return from((Set<E>)elements);
         } else {
+            // When the elements are enum constants, we copy them into a bit set.
+            // This may iterate over some of the elements before giving up, so we only try it
+            // for a collection, which can be iterated again; unlike an arbitrary iterable.
+            if (elements instanceof Collection<?>) {
+                ImmutableBitSet<E> bitSet = ImmutableBitSet.tryOfEnums(elements);
+                if (bitSet != null) return bitSet;
+            }
             // Otherwise, we copy the elements into an immutable set.
-            // TODO:
-            throw new UnsupportedOperationException();
+            return PersistentSet.from(elements);
         }
     }
 
@@ -102,10 +117,26 @@ public interface ImmutableSet<E> extends SetView<E>, ImmutableCollection<E> {
             //noinspection unchecked
             return (ImmutableSet<E>)set;
         } else {
+            // When the elements are enum constants, we copy them into a bit set.
+            ImmutableBitSet<E> bitSet = ImmutableBitSet.tryOfEnums(set);
+            if (bitSet != null) return bitSet;
             // Otherwise, we copy the elements into an immutable set.
-            // TODO:
-            throw new UnsupportedOperationException();
+            return PersistentSet.from(set);
         }
     }
 
+    /**
+     * Returns an immutable set with the same elements as this set,
+     * that is optimized for lookups instead of modifications.
+     *
+     * The returned set is indexed by a minimal perfect hash function over the hash codes of the elements,
+     * computed using the equality comparator of this set. Its iteration order is unspecified.
+     * Sorted sets override this method to keep their comparator.
+     *
+     * @return the frozen set
+     */
+    default ImmutableSet<E> freeze() {
+        return FrozenHashSet.from(this);
+    }
+
 }
@@ -0,0 +1,176 @@
+package mb.util.collections.immutable;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set whose elements are sorted.
+ *
+ * The elements are ordered and compared by the set's {@link #comparator()}:
+ * two elements are equal when the comparator returns 0.
+ * Besides the set operations, a sorted set supports access by index (select),
+ * finding the index of an element (rank), and range views, all in logarithmic time.
+ *
+ * Implementations of this interface are be immutable and thread-safe.
+ *
+ * @param <E> the type of elements in the set
+ */
+public interface ImmutableSortedSet<E> extends ImmutableSet<E> {
+
+    /**
+     * Creates an empty immutable sorted set that orders its elements according to their natural ordering.
+     *
+     * @param <E> the type of elements in the set
+     * @return the immutable sorted set
+     */
+    static <E extends Comparable<? super E>> ImmutableSortedSet<E> of() {
+        return ImmutableTreeSet.empty(Comparator.<E>naturalOrder());
+    }
+
+    /**
+     * Creates an immutable sorted set that orders its elements according to their natural ordering,
+     * by copying the elements from the specified array.
+     *
+     * @param elements the elements in the set, in any order
+     * @param <E> the type of elements in the set
+     * @return the immutable sorted set
+     */
+    @SafeVarargs @SuppressWarnings("varargs") static <E extends Comparable<? super E>> ImmutableSortedSet<E> of(E... elements) {
+        return ImmutableTreeSet.from(elements.clone(), elements.length, Comparator.<E>naturalOrder());
+    }
+
+    /**
+     * Creates an empty immutable sorted set that orders its elements using the specified comparator.
+     *
+     * @param comparator the comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the immutable sorted set
+     */
+    static <E> ImmutableSortedSet<E> withComparator(Comparator<? super E> comparator) {
+        return ImmutableTreeSet.empty(comparator);
+    }
+
+    /**
+     * Creates an immutable sorted set that orders its elements using the specified comparator,
+     * by copying the elements from the specified iterable.
+     *
+     * This sorts the elements, so it takes O(n log n) time.
+     *
+     * @param elements the elements in the set, in any order
+     * @param comparator the comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the immutable sorted set
+     */
+    static <E> ImmutableSortedSet<E> from(Iterable<? extends E> elements, Comparator<? super E> comparator) {
+        Object[] array = ImmutableTreeSet.toArray(elements);
+        return ImmutableTreeSet.from(array, array.length, comparator);
+    }
+
+    /**
+     * Creates an immutable sorted set that orders its elements using the specified comparator,
+     * by copying the sorted elements from the specified iterable.
+     *
+     * This builds the set in O(n) time.
+     *
+     * @param elements the elements in the set, in strictly increasing order
+     * @param comparator the comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the immutable sorted set
+     * @throws IllegalArgumentException the elements are not in strictly increasing order
+     */
+    static <E> ImmutableSortedSet<E> fromSorted(Iterable<? extends E> elements, Comparator<? super E> comparator) {
+        Object[] array = ImmutableTreeSet.toArray(elements);
+        return ImmutableTreeSet.fromSorted(array, array.length, comparator);
+    }
+
+    /**
+     * Gets the comparator that orders the elements.
+     *
+     * @return the comparator
+     */
+    Comparator<? super E> comparator();
+
+    /**
+     * Gets the least element.
+     *
+     * @return the least element
+     * @throws NoSuchElementException the set is empty
+     */
+    E first();
+
+    /**
+     * Gets the greatest element.
+     *
+     * @return the greatest element
+     * @throws NoSuchElementException the set is empty
+     */
+    E last();
+
+    /**
+     * Gets the element at the specified index in the sorted order.
+     *
+     * This takes logarithmic time.
+     *
+     * @param index the zero-based index
+     * @return the element at the index
+     * @throws IndexOutOfBoundsException the index is out of range
+     */
+    E get(int index);
+
+    /**
+     * Gets the index of the specified element in the sorted order.
+     *
+     * This takes logarithmic time.
+     *
+     * @param element the element to look for
+     * @return the zero-based index of the element; or -1 when the set doesn't contain the element
+     */
+    int indexOf(@Nullable Object element);
+
+    /**
+     * Gets the elements that are less than the specified element.
+     *
+     * This takes logarithmic time, and the resulting set shares most of its structure with this set.
+     *
+     * @param toElement the upper bound, exclusive
+     * @return the set of elements less than the bound
+     */
+    ImmutableSortedSet<E> headSet(E toElement);
+
+    /**
+     * Gets the elements that are greater than or equal to the specified element.
+     *
+     * This takes logarithmic time, and the resulting set shares most of its structure with this set.
+     *
+     * @param fromElement the lower bound, inclusive
+     * @return the set of elements greater than or equal to the bound
+     */
+    ImmutableSortedSet<E> tailSet(E fromElement);
+
+    /**
+     * Gets the elements in the specified range.
+     *
+     * This takes logarithmic time, and the resulting set shares most of its structure with this set.
+     *
+     * @param fromElement the lower bound, inclusive
+     * @param toElement the upper bound, exclusive
+     * @return the set of elements in the range
+     */
+    ImmutableSortedSet<E> subSet(E fromElement, E toElement);
+
+    /**
+     * Returns this set.
+     *
+     * A sorted set already looks up its elements in logarithmic time using its comparator,
+     * which a hash-based frozen set cannot use, so freezing a sorted set doesn't copy it.
+     *
+     * @return this set
+     */
+    @Override
+    default ImmutableSortedSet<E> freeze() {
+        return this;
+    }
+
+}
@@ -0,0 +1,278 @@
+package mb.util.collections.immutable;
+
+import mb.util.collections.SetView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * An immutable sorted set implemented as a B-tree.
+ *
+ * @param <E> the type of elements in the set
+ */
+/* package private */ final class ImmutableTreeSet<E> implements ImmutableSortedSet<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty set that uses the natural ordering. */
+    private static final ImmutableTreeSet<?> EMPTY = new ImmutableTreeSet<>(BTreeNode.EMPTY_SET, Comparator.naturalOrder());
+
+    /** The root of the tree, which may be the tree of a map whose keys this set views. */
+    /* package private */ final BTreeNode root;
+    /** The comparator of the elements. */
+    private final Comparator<? super E> comparator;
+
+    /* package private */ ImmutableTreeSet(BTreeNode root, Comparator<? super E> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Gets an empty set.
+     *
+     * @param comparator the comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the empty set
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <E> ImmutableTreeSet<E> empty(Comparator<? super E> comparator) {
+        if (comparator == Comparator.naturalOrder()) {
+            return (ImmutableTreeSet<E>)EMPTY;
+        } else {
+            return new ImmutableTreeSet<>(BTreeNode.EMPTY_SET, comparator);
+        }
+    }
+
+    /**
+     * Creates a set from the specified elements, in any order.
+     *
+     * @param elements the elements, which are sorted in place
+     * @param size the number of elements
+     * @param comparator the comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the set
+     */
+    /* package private */ static <E> ImmutableTreeSet<E> from(Object[] elements, int size, Comparator<? super E> comparator) {
+        if (size == 0) return empty(comparator);
+        @SuppressWarnings("unchecked")
+        int count = BTreeNode.sortDistinct(elements, null, size, (Comparator<Object>)comparator);
+        return new ImmutableTreeSet<>(BTreeNode.fromSorted(elements, null, count), comparator);
+    }
+
+    /**
+     * Creates a set from the specified elements, in strictly increasing order.
+     *
+     * @param elements the elements
+     * @param size the number of elements
+     * @param comparator the comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the set
+     * @throws IllegalArgumentException the elements are not in strictly increasing order
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <E> ImmutableTreeSet<E> fromSorted(Object[] elements, int size, Comparator<? super E> comparator) {
+        if (size == 0) return empty(comparator);
+        BTreeNode.checkSorted(elements, size, (Comparator<Object>)comparator);
+        return new ImmutableTreeSet<>(BTreeNode.fromSorted(elements, null, size), comparator);
+    }
+
+    /**
+     * Copies the elements of an iterable into a new array.
+     *
+     * @param elements the elements
+     * @return the array of elements
+     */
+    /* package private */ static Object[] toArray(Iterable<?> elements) {
+        if (elements instanceof Collection<?>) return ((Collection<?>)elements).toArray();
+        List<Object> list = new ArrayList<>();
+        for (Object element : elements) {
+            list.add(element);
+        }
+        return list.toArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparator<Object> objectComparator() {
+        return (Comparator<Object>)this.comparator;
+    }
+
+    private ImmutableTreeSet<E> withRoot(BTreeNode root) {
+        if (root == this.root) return this;
+        return new ImmutableTreeSet<>(root, this.comparator);
+    }
+
+    @Override
+    public int size() {
+        return this.root.size();
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return indexOf(element) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E first() {
+        return (E)BTreeNode.firstKey(this.root);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E last() {
+        return (E)BTreeNode.lastKey(this.root);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        int[] slot = new int[1];
+        BTreeNode.Leaf leaf = BTreeNode.leafAt(this.root, index, slot);
+        return (E)leaf.keys[slot[0]];
+    }
+
+    @Override
+    public int indexOf(@Nullable Object element) {
+        if (element == null || size() == 0) return -1;
+        try {
+            return Math.max(BTreeNode.indexOf(this.root, element, objectComparator()), -1);
+        } catch (ClassCastException ex) {
+            // The element is of the wrong type, so it is not in the set.
+            return -1;
+        }
+    }
+
+    @Override
+    public ImmutableSortedSet<E> headSet(E toElement) {
+        return withRoot(BTreeNode.slice(this.root, 0, boundIndexOf(toElement)));
+    }
+
+    @Override
+    public ImmutableSortedSet<E> tailSet(E fromElement) {
+        return withRoot(BTreeNode.slice(this.root, boundIndexOf(fromElement), size()));
+    }
+
+    @Override
+    public ImmutableSortedSet<E> subSet(E fromElement, E toElement) {
+        if (this.comparator.compare(fromElement, toElement) > 0)
+            throw new IllegalArgumentException("The lower bound " + fromElement + " is greater than the upper bound " + toElement + ".");
+        return withRoot(BTreeNode.slice(this.root, boundIndexOf(fromElement), boundIndexOf(toElement)));
+    }
+
+    /**
+     * Gets the number of elements that are less than the specified bound.
+     */
+    private int boundIndexOf(E bound) {
+        int index = BTreeNode.indexOf(this.root, bound, objectComparator());
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return new BTreeNode.EntryIterator<E>(this.root, 0, size()) {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected E getElement(Object key, @Nullable Object value) {
+                return (E)key;
+            }
+        };
+    }
+
+    @Override
+    public Set<E> asUnmodifiable() {
+        return new AsSet<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof ImmutableTreeSet<?> && ((ImmutableTreeSet<?>)obj).root == this.root
+            && ((ImmutableTreeSet<?>)obj).comparator == this.comparator) {
+            // Happy path: the sets share their tree.
+            return true;
+        }
+        Collection<?> other;
+        if (obj instanceof Set<?>) {
+            other = (Set<?>)obj;
+        } else if (obj instanceof SetView<?>) {
+            other = ((SetView<?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != size()) return false;
+        for (Object element : other) {
+            if (!contains(element)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractSet implementation.
+        int hashCode = 0;
+        for (E element : this) {
+            hashCode += element != null ? element.hashCode() : 0;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return asUnmodifiable().toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * A set that views an immutable sorted set.
+     *
+     * @param <E> the type of elements in the set
+     */
+    private static final class AsSet<E> extends AbstractSet<E> {
+
+        private final ImmutableTreeSet<E> set;
+
+        private AsSet(ImmutableTreeSet<E> set) {
+            this.set = set;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.set.contains(o);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            return this.set.iterator();
+        }
+
+    }
+
+}
@@ -0,0 +1,135 @@
+package mb.util.collections.immutable;
+
+import mb.util.collections.ListView;
+
+import java.util.Objects;
+
+/**
+ * The difference between two versions of a persistent list.
+ *
+ * The difference consists of a single range of elements that was replaced:
+ * everything between the common prefix and the common suffix of the two lists.
+ * It can be applied as a patch to a list to make the same changes.
+ *
+ * @param <E> the type of elements in the list
+ */
+public final class ListDiff<E> {
+
+    /** The index at which the lists start to differ. */
+    private final int index;
+    /** The elements in the old list that were removed at the index. */
+    private final ListView<E> removed;
+    /** The elements in the new list that were inserted at the index. */
+    private final ListView<E> inserted;
+
+    private ListDiff(int index, ListView<E> removed, ListView<E> inserted) {
+        this.index = index;
+        this.removed = removed;
+        this.inserted = inserted;
+    }
+
+    /**
+     * Computes the difference between two lists.
+     *
+     * @param oldList the old version of the list
+     * @param newList the new version of the list
+     * @param <E> the type of elements in the list
+     * @return the difference
+     */
+    /* package private */ static <E> ListDiff<E> between(ListView<E> oldList, ListView<E> newList) {
+        if (oldList == newList) return new ListDiff<>(0, ListView.of(), ListView.of());
+
+        int oldSize = oldList.size();
+        int newSize = newList.size();
+
+        // Skip the common prefix.
+        int start = 0;
+        int maxStart = Math.min(oldSize, newSize);
+        while (start < maxStart && elementEquals(oldList.get(start), newList.get(start))) {
+            start += 1;
+        }
+
+        // Skip the common suffix, without overlapping the prefix.
+        int oldEnd = oldSize;
+        int newEnd = newSize;
+        while (oldEnd > start && newEnd > start && elementEquals(oldList.get(oldEnd - 1), newList.get(newEnd - 1))) {
+            oldEnd -= 1;
+            newEnd -= 1;
+        }
+
+        return new ListDiff<>(start, oldList.subListView(start, oldEnd), newList.subListView(start, newEnd));
+    }
+
+    private static boolean elementEquals(Object element, Object otherElement) {
+        // Lists that share structure often share element instances too.
+        return element == otherElement || Objects.equals(element, otherElement);
+    }
+
+    /**
+     * Gets the index at which the lists start to differ.
+     *
+     * @return the zero-based index
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Gets the elements that were removed.
+     *
+     * @return the elements removed from the old list at the index
+     */
+    public ListView<E> getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * Gets the elements that were inserted.
+     *
+     * @return the elements inserted in the new list at the index
+     */
+    public ListView<E> getInserted() {
+        return this.inserted;
+    }
+
+    /**
+     * Gets whether there are no changes.
+     *
+     * @return {@code true} when there are no changes; otherwise, {@code false}
+     */
+    public boolean isEmpty() {
+        return this.removed.isEmpty() && this.inserted.isEmpty();
+    }
+
+    /**
+     * Applies the changes to the specified list.
+     *
+     * @param list the list to apply the changes to
+     * @return the resulting list
+     */
+    public PersistentList<E> apply(PersistentList<E> list) {
+        PersistentList<E> result = list;
+        for (int i = 0; i < this.removed.size(); i++) {
+            result = result.removeAt(this.index);
+        }
+        if (!this.inserted.isEmpty()) {
+            result = result.insertAllAt(this.index, this.inserted.iterator());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the inverse of this difference, which undoes the changes.
+     *
+     * @return the inverse difference
+     */
+    public ListDiff<E> inverse() {
+        return new ListDiff<>(this.index, this.inserted, this.removed);
+    }
+
+    @Override
+    public String toString() {
+        return "@" + this.index + " -" + this.removed.size() + " +" + this.inserted.size();
+    }
+
+}
@@ -0,0 +1,265 @@
+package mb.util.collections.immutable;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The difference between two versions of a persistent map.
+ *
+ * The difference consists of the entries that were inserted, removed, or whose value changed.
+ * It can be applied as a patch to a map to make the same changes.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public final class MapDiff<K, V> {
+
+    /** The kind of an inserted entry. */
+    private static final byte INSERTED = 0;
+    /** The kind of a removed entry. */
+    private static final byte REMOVED = 1;
+    /** The kind of a changed entry. */
+    private static final byte CHANGED = 2;
+
+    /** The number of changes. */
+    private final int size;
+    /** The kind of each change. */
+    private final byte[] kinds;
+    /** The key, old value, and new value of each change. */
+    private final Object[] entries;
+
+    private MapDiff(int size, byte[] kinds, Object[] entries) {
+        this.size = size;
+        this.kinds = kinds;
+        this.entries = entries;
+    }
+
+    /**
+     * Computes the difference between two persistent maps.
+     *
+     * @param oldMap the old version of the map
+     * @param newMap the new version of the map
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the difference
+     */
+    /* package private */ static <K, V> MapDiff<K, V> between(PersistentMap<K, V> oldMap, PersistentMap<K, V> newMap) {
+        Recorder<K, V> recorder = new Recorder<>();
+        visit(oldMap, newMap, recorder);
+        return recorder.build();
+    }
+
+    /**
+     * Calls the specified visitor for each difference between two persistent maps,
+     * without recording the differences.
+     *
+     * @param oldMap the old version of the map
+     * @param newMap the new version of the map
+     * @param visitor the visitor
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    public static <K, V> void visit(PersistentMap<K, V> oldMap, PersistentMap<K, V> newMap, Visitor<? super K, ? super V> visitor) {
+        if (oldMap == newMap) return;
+        if (oldMap instanceof PersistentHashMap<?, ?> && newMap instanceof PersistentHashMap<?, ?>
+            && ((PersistentHashMap<K, V>)oldMap).isCompatibleWith((PersistentHashMap<K, V>)newMap)) {
+            // Happy path: both maps are tries of the same shape.
+            ChampNode.diff(((PersistentHashMap<K, V>)oldMap).root, ((PersistentHashMap<K, V>)newMap).root, 0, oldMap.getComparator(), visitor);
+            return;
+        }
+
+        // Otherwise, we have to look up each entry in the other map.
+        for (Map.Entry<K, V> entry : oldMap) {
+            K key = entry.getKey();
+            V value = entry.getValue();
+            if (newMap.containsKey(key)) {
+                V newValue = newMap.get(key);
+                if (!Objects.equals(value, newValue)) visitor.changed(key, value, newValue);
+            } else {
+                visitor.removed(key, value);
+            }
+        }
+        for (Map.Entry<K, V> entry : newMap) {
+            if (!oldMap.containsKey(entry.getKey())) visitor.inserted(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Gets the number of changes.
+     *
+     * @return the number of inserted, removed, and changed entries
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets whether there are no changes.
+     *
+     * @return {@code true} when there are no changes; otherwise, {@code false}
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Calls the specified visitor for each change.
+     *
+     * @param visitor the visitor
+     */
+    public void accept(Visitor<? super K, ? super V> visitor) {
+        for (int i = 0; i < this.size; i++) {
+            @SuppressWarnings("unchecked") K key = (K)this.entries[3 * i];
+            @SuppressWarnings("unchecked") V oldValue = (V)this.entries[3 * i + 1];
+            @SuppressWarnings("unchecked") V newValue = (V)this.entries[3 * i + 2];
+            switch (this.kinds[i]) {
+                case INSERTED: visitor.inserted(key, newValue); break;
+                case REMOVED: visitor.removed(key, oldValue); break;
+                case CHANGED: visitor.changed(key, oldValue, newValue); break;
+                default: throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * Applies the changes to the specified map.
+     *
+     * @param map the map to apply the changes to
+     * @return the resulting map
+     */
+    public PersistentMap<K, V> apply(PersistentMap<K, V> map) {
+        PersistentMap<K, V> result = map;
+        for (int i = 0; i < this.size; i++) {
+            @SuppressWarnings("unchecked") K key = (K)this.entries[3 * i];
+            @SuppressWarnings("unchecked") V newValue = (V)this.entries[3 * i + 2];
+            if (this.kinds[i] == REMOVED) {
+                result = result.remove(key);
+            } else {
+                result = result.put(key, newValue);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the inverse of this difference, which undoes the changes.
+     *
+     * @return the inverse difference
+     */
+    public MapDiff<K, V> inverse() {
+        byte[] kinds = new byte[this.size];
+        Object[] entries = new Object[3 * this.size];
+        for (int i = 0; i < this.size; i++) {
+            switch (this.kinds[i]) {
+                case INSERTED: kinds[i] = REMOVED; break;
+                case REMOVED: kinds[i] = INSERTED; break;
+                default: kinds[i] = CHANGED; break;
+            }
+            entries[3 * i] = this.entries[3 * i];
+            entries[3 * i + 1] = this.entries[3 * i + 2];
+            entries[3 * i + 2] = this.entries[3 * i + 1];
+        }
+        return new MapDiff<>(this.size, kinds, entries);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) sb.append(", ");
+            Object key = this.entries[3 * i];
+            switch (this.kinds[i]) {
+                case INSERTED: sb.append('+').append(key).append('=').append(this.entries[3 * i + 2]); break;
+                case REMOVED: sb.append('-').append(key).append('=').append(this.entries[3 * i + 1]); break;
+                default: sb.append('~').append(key).append('=').append(this.entries[3 * i + 1]).append("->").append(this.entries[3 * i + 2]); break;
+            }
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * Visits the changes between two maps.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    public interface Visitor<K, V> {
+
+        /**
+         * Called for an entry that is only in the new map.
+         *
+         * @param key the key of the entry
+         * @param value the value of the entry
+         */
+        void inserted(K key, V value);
+
+        /**
+         * Called for an entry that is only in the old map.
+         *
+         * @param key the key of the entry
+         * @param value the value of the entry
+         */
+        void removed(K key, V value);
+
+        /**
+         * Called for a key that has a different value in the new map.
+         *
+         * @param key the key of the entry
+         * @param oldValue the value in the old map
+         * @param newValue the value in the new map
+         */
+        void changed(K key, V oldValue, V newValue);
+
+    }
+
+    /**
+     * Records the changes that are visited.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    private static final class Recorder<K, V> implements Visitor<K, V> {
+
+        private int size = 0;
+        private byte[] kinds = new byte[4];
+        private Object[] entries = new Object[12];
+
+        @Override
+        public void inserted(K key, V value) {
+            add(INSERTED, key, null, value);
+        }
+
+        @Override
+        public void removed(K key, V value) {
+            add(REMOVED, key, value, null);
+        }
+
+        @Override
+        public void changed(K key, V oldValue, V newValue) {
+            add(CHANGED, key, oldValue, newValue);
+        }
+
+        private void add(byte kind, K key, @Nullable V oldValue, @Nullable V newValue) {
+            if (this.size == this.kinds.length) {
+                this.kinds = Arrays.copyOf(this.kinds, this.size * 2);
+                this.entries = Arrays.copyOf(this.entries, this.size * 6);
+            }
+            this.kinds[this.size] = kind;
+            this.entries[3 * this.size] = key;
+            this.entries[3 * this.size + 1] = oldValue;
+            this.entries[3 * this.size + 2] = newValue;
+            this.size += 1;
+        }
+
+        private MapDiff<K, V> build() {
+            return new MapDiff<>(this.size, this.kinds, this.entries);
+        }
+
+    }
+
+}
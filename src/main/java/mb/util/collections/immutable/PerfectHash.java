@@ -0,0 +1,171 @@
+package mb.util.collections.immutable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A minimal perfect hash function over a fixed set of distinct hash codes.
+ *
+ * This uses the hash-and-displace construction (as in CHD). Each hash code is assigned to one of
+ * {@code n} buckets. The buckets are placed from largest to smallest: for each bucket with more than one
+ * hash code we search for a seed that maps all of its hash codes to distinct free slots, and each
+ * bucket with a single hash code is assigned a free slot directly, which is stored as a negative seed.
+ * Therefore, looking up the slot of a hash code takes one mix to find the bucket, one read of its seed,
+ * and at most one more mix to find the slot.
+ *
+ * The function maps the {@code n} hash codes to the slots {@code 0} to {@code n - 1} without collisions.
+ * Any other hash code is mapped to an arbitrary slot in that range.
+ */
+/* package private */ final class PerfectHash {
+
+    /** The maximum number of seeds to try for a single bucket. */
+    private static final int MAX_SEED = 1 << 24;
+
+    /**
+     * The seed of each bucket: a positive seed with which the hash codes of the bucket are mixed;
+     * or the bitwise complement of the slot of the single hash code in the bucket.
+     */
+    private final int[] seeds;
+
+    private PerfectHash(int[] seeds) {
+        this.seeds = seeds;
+    }
+
+    /**
+     * Builds a minimal perfect hash function for the specified hash codes.
+     *
+     * This takes expected linear time.
+     *
+     * @param hashes the hash codes, which must be distinct
+     * @return the minimal perfect hash function
+     */
+    /* package private */ static PerfectHash build(int[] hashes) {
+        int n = hashes.length;
+        if (n == 0) return new PerfectHash(new int[0]);
+
+        // Distribute the hash codes over the buckets.
+        int[] bucketSizes = new int[n];
+        int[] bucketOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            int bucket = reduce(mix(hashes[i], 0), n);
+            bucketOf[i] = bucket;
+            bucketSizes[bucket] += 1;
+        }
+        // Group the hash codes by bucket, using a counting sort.
+        int[] bucketStarts = new int[n + 1];
+        for (int b = 0; b < n; b++) {
+            bucketStarts[b + 1] = bucketStarts[b] + bucketSizes[b];
+        }
+        int[] grouped = new int[n];
+        int[] cursors = Arrays.copyOf(bucketStarts, n);
+        for (int i = 0; i < n; i++) {
+            grouped[cursors[bucketOf[i]]++] = hashes[i];
+        }
+        // Order the buckets from largest to smallest, again using a counting sort.
+        int maxBucketSize = 0;
+        for (int size : bucketSizes) maxBucketSize = Math.max(maxBucketSize, size);
+        List<int[]> bucketsBySize = new ArrayList<>(maxBucketSize + 1);
+        int[] sizeCounts = new int[maxBucketSize + 1];
+        for (int size : bucketSizes) sizeCounts[size] += 1;
+        for (int size = 0; size <= maxBucketSize; size++) bucketsBySize.add(new int[sizeCounts[size]]);
+        Arrays.fill(sizeCounts, 0);
+        for (int b = 0; b < n; b++) {
+            int size = bucketSizes[b];
+            bucketsBySize.get(size)[sizeCounts[size]++] = b;
+        }
+
+        int[] seeds = new int[n];
+        boolean[] taken = new boolean[n];
+        int[] slots = new int[maxBucketSize];
+        for (int size = maxBucketSize; size >= 2; size--) {
+            for (int b : bucketsBySize.get(size)) {
+                int start = bucketStarts[b];
+                seeds[b] = findSeed(grouped, start, size, n, taken, slots);
+            }
+        }
+        // The buckets with a single hash code are assigned the remaining free slots directly.
+        int freeSlot = 0;
+        if (maxBucketSize >= 1) {
+            for (int b : bucketsBySize.get(1)) {
+                while (taken[freeSlot]) freeSlot += 1;
+                taken[freeSlot] = true;
+                seeds[b] = ~freeSlot;
+            }
+        }
+        return new PerfectHash(seeds);
+    }
+
+    /**
+     * Finds a seed that maps the hash codes of a bucket to distinct free slots, and takes those slots.
+     */
+    private static int findSeed(int[] grouped, int start, int size, int n, boolean[] taken, int[] slots) {
+        for (int seed = 1; seed < MAX_SEED; seed++) {
+            int placed = 0;
+            for (; placed < size; placed++) {
+                int slot = reduce(mix(grouped[start + placed], seed), n);
+                if (taken[slot]) break;
+                taken[slot] = true;
+                slots[placed] = slot;
+            }
+            if (placed == size) return seed;
+            // Undo the slots we took with this seed.
+            for (int i = 0; i < placed; i++) {
+                taken[slots[i]] = false;
+            }
+        }
+        throw new IllegalStateException("No seed found for a bucket of " + size + " hash codes.");
+    }
+
+    /**
+     * Gets the number of slots.
+     *
+     * @return the number of slots
+     */
+    /* package private */ int size() {
+        return this.seeds.length;
+    }
+
+    /**
+     * Gets the slot of the specified hash code.
+     *
+     * @param hash the hash code
+     * @return the zero-based index of the slot; which is unique for each of the hash codes the function was built for
+     */
+    /* package private */ int slotOf(int hash) {
+        int n = this.seeds.length;
+        int seed = this.seeds[reduce(mix(hash, 0), n)];
+        return seed < 0 ? ~seed : reduce(mix(hash, seed), n);
+    }
+
+    /**
+     * Mixes a hash code with a seed, such that different seeds give independent results.
+     *
+     * This is the finalizer of MurmurHash3.
+     *
+     * @param hash the hash code
+     * @param seed the seed
+     * @return the mixed hash code
+     */
+    private static int mix(int hash, int seed) {
+        int h = hash ^ (seed * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Maps a mixed hash code uniformly to the range from {@code 0} to {@code n - 1}, without a division.
+     *
+     * @param hash the mixed hash code
+     * @param n the size of the range
+     * @return the value in the range
+     */
+    private static int reduce(int hash, int n) {
+        return (int)(((hash & 0xFFFFFFFFL) * n) >>> 32);
+    }
+
+}
@@ -0,0 +1,136 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.BagView;
+import mb.util.collections.mutable.MutableBag;
+
+/**
+ * A persistent bag, also known as a multiset.
+ *
+ * Implementations of this interface are immutable and thread-safe.
+ *
+ * @param <E> the type of elements in the bag
+ */
+public interface PersistentBag<E> extends BagView<E> {
+
+    /**
+     * Creates an empty persistent bag.
+     *
+     * @param <E> the type of elements in the bag
+     * @return the persistent bag
+     */
+    static <E> PersistentBag<E> of() {
+        return PersistentHashBag.empty(EqualityComparator.getDefault());
+    }
+
+    /**
+     * Creates an empty persistent bag that compares its elements using the specified comparator.
+     *
+     * @param comparator the equality comparator of the elements
+     * @param <E> the type of elements in the bag
+     * @return the persistent bag
+     */
+    static <E> PersistentBag<E> withComparator(EqualityComparator<? super E> comparator) {
+        return PersistentHashBag.empty(comparator);
+    }
+
+    /**
+     * Creates a persistent bag that counts the specified elements.
+     *
+     * @param elements the elements to count
+     * @param <E> the type of elements in the bag
+     * @return the persistent bag
+     */
+    static <E> PersistentBag<E> from(Iterable<? extends E> elements) {
+        Builder<E> builder = PersistentBag.<E>of().builder();
+        for (E element : elements) {
+            builder.add(element);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a persistent bag by copying the elements and counts from the specified bag.
+     *
+     * @param bag the bag to copy
+     * @param <E> the type of elements in the bag
+     * @return the persistent bag
+     */
+    @SuppressWarnings("unchecked")
+    static <E> PersistentBag<E> from(BagView<? extends E> bag) {
+        if (bag instanceof PersistentBag<?>) {
+            // When the bag is a persistent bag we can just return it.
+            return (PersistentBag<E>)bag;
+        }
+        Builder<E> builder = PersistentBag.<E>of().builder();
+        bag.forEachCount(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Returns a bag with one more occurrence of the specified element.
+     *
+     * @param element the element to add
+     * @return the resulting bag
+     */
+    PersistentBag<E> add(E element);
+
+    /**
+     * Returns a bag with the specified number of additional occurrences of the specified element.
+     *
+     * @param element the element to add
+     * @param occurrences the number of occurrences to add, which may be 0
+     * @return the resulting bag
+     * @throws IllegalArgumentException the number of occurrences is negative
+     */
+    PersistentBag<E> add(E element, int occurrences);
+
+    /**
+     * Returns a bag with one less occurrence of the specified element.
+     *
+     * @param element the element to remove
+     * @return the resulting bag
+     */
+    PersistentBag<E> remove(E element);
+
+    /**
+     * Returns a bag with the specified number of fewer occurrences of the specified element.
+     *
+     * When the bag contains fewer occurrences, all occurrences are removed.
+     *
+     * @param element the element to remove
+     * @param occurrences the number of occurrences to remove, which may be 0
+     * @return the resulting bag
+     * @throws IllegalArgumentException the number of occurrences is negative
+     */
+    PersistentBag<E> remove(E element, int occurrences);
+
+    /**
+     * Returns a bag in which the specified element has the specified count.
+     *
+     * @param element the element whose count to set
+     * @param count the new count of the element; or 0 to remove the element
+     * @return the resulting bag
+     * @throws IllegalArgumentException the count is negative
+     */
+    PersistentBag<E> setCount(E element, int count);
+
+    /**
+     * Returns an empty bag with the same comparator.
+     *
+     * @return the empty bag
+     */
+    PersistentBag<E> clear();
+
+    /**
+     * Returns a builder that starts with the elements of this bag.
+     *
+     * @return the builder
+     */
+    Builder<E> builder();
+
+    interface Builder<E> extends MutableBag<E> {
+        PersistentBag<E> build();
+    }
+
+}
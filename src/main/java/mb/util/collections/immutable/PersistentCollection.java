@@ -27,6 +27,13 @@ public interface PersistentCollection<E> extends ImmutableCollection<E> {
     PersistentCollection<E> replaceAll(UnaryOperator<E> operator);
     PersistentCollection<E> clear();
 
+    /**
+     * Creates a builder that is initialized with the elements of this collection.
+     *
+     * @return the builder
+     */
+    Builder<E> builder();
+
     interface Builder<E> extends MutableCollection<E> {
         PersistentCollection<E> build();
     }
@@ -0,0 +1,324 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.BagView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.Iterator;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A persistent bag implemented as a hash trie, whose payloads are the counts of the elements.
+ *
+ * @param <E> the type of elements in the bag
+ */
+/* package private */ final class PersistentHashBag<E> implements PersistentBag<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty bag that uses the default equality comparator. */
+    private static final PersistentHashBag<?> EMPTY = new PersistentHashBag<>(ChampNode.empty(), 0, 0, EqualityComparator.getDefault());
+
+    /** The root of the trie, which maps each distinct element to its positive count. */
+    private final ChampNode<E, Integer> root;
+    /** The number of distinct elements in the bag. */
+    private final int distinctSize;
+    /** The sum of the counts. */
+    private final int size;
+    /** The equality comparator of the elements. */
+    private final EqualityComparator<? super E> comparator;
+
+    private PersistentHashBag(ChampNode<E, Integer> root, int distinctSize, int size, EqualityComparator<? super E> comparator) {
+        this.root = root;
+        this.distinctSize = distinctSize;
+        this.size = size;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Gets an empty bag.
+     *
+     * @param comparator the equality comparator of the elements
+     * @param <E> the type of elements in the bag
+     * @return the empty bag
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <E> PersistentHashBag<E> empty(EqualityComparator<? super E> comparator) {
+        if (comparator == EqualityComparator.getDefault()) {
+            return (PersistentHashBag<E>)EMPTY;
+        } else {
+            return new PersistentHashBag<>(ChampNode.empty(), 0, 0, comparator);
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public int distinctSize() {
+        return this.distinctSize;
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public int count(@Nullable Object element) {
+        @SuppressWarnings("unchecked")
+        Integer count = this.root.get(element, ChampNode.hashOf((E)element, this.comparator), 0, this.comparator);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public PersistentHashBag<E> add(E element) {
+        return add(element, 1);
+    }
+
+    @Override
+    public PersistentHashBag<E> add(E element, int occurrences) {
+        if (occurrences < 0) throw new IllegalArgumentException("Negative number of occurrences: " + occurrences);
+        if (occurrences == 0) return this;
+        int hash = ChampNode.hashOf(element, this.comparator);
+        Integer count = this.root.get(element, hash, 0, this.comparator);
+        int newCount = Math.addExact(count != null ? count : 0, occurrences);
+        return updated(element, hash, newCount, occurrences);
+    }
+
+    @Override
+    public PersistentHashBag<E> remove(E element) {
+        return remove(element, 1);
+    }
+
+    @Override
+    public PersistentHashBag<E> remove(E element, int occurrences) {
+        if (occurrences < 0) throw new IllegalArgumentException("Negative number of occurrences: " + occurrences);
+        if (occurrences == 0) return this;
+        int hash = ChampNode.hashOf(element, this.comparator);
+        Integer count = this.root.get(element, hash, 0, this.comparator);
+        if (count == null) return this;
+        int newCount = Math.max(count - occurrences, 0);
+        return updated(element, hash, newCount, newCount - count);
+    }
+
+    @Override
+    public PersistentHashBag<E> setCount(E element, int count) {
+        if (count < 0) throw new IllegalArgumentException("Negative count: " + count);
+        int hash = ChampNode.hashOf(element, this.comparator);
+        Integer oldCount = this.root.get(element, hash, 0, this.comparator);
+        int delta = count - (oldCount != null ? oldCount : 0);
+        if (delta == 0) return this;
+        return updated(element, hash, count, delta);
+    }
+
+    /**
+     * Returns a bag in which the specified element has the specified count.
+     *
+     * @param element the element
+     * @param hash the hash code of the element
+     * @param count the new count of the element; or 0 to remove the element
+     * @param delta the difference between the new and the old count
+     * @return the resulting bag
+     */
+    private PersistentHashBag<E> updated(E element, int hash, int count, int delta) {
+        ChampNode.Change<Integer> change = new ChampNode.Change<>();
+        ChampNode<E, Integer> newRoot;
+        int newDistinctSize;
+        if (count == 0) {
+            newRoot = this.root.removed(element, hash, 0, this.comparator, change);
+            newDistinctSize = this.distinctSize - 1;
+        } else {
+            newRoot = this.root.updated(element, count, hash, 0, this.comparator, change);
+            newDistinctSize = change.sizeChanged ? this.distinctSize + 1 : this.distinctSize;
+        }
+        if (newDistinctSize == 0) return empty(this.comparator);
+        return new PersistentHashBag<>(newRoot, newDistinctSize, Math.addExact(this.size, delta), this.comparator);
+    }
+
+    @Override
+    public PersistentHashBag<E> clear() {
+        return empty(this.comparator);
+    }
+
+    @Override
+    public PersistentBag.Builder<E> builder() {
+        return new BagBuilder<>(this);
+    }
+
+    @Override
+    public void forEachCount(ObjIntConsumer<? super E> action) {
+        forEachCount(this.root, action);
+    }
+
+    private static <E> void forEachCount(ChampNode<E, Integer> node, ObjIntConsumer<? super E> action) {
+        for (int i = 0; i < node.payloadArity(); i++) {
+            action.accept(node.keyAt(i), node.valueAt(i));
+        }
+        for (int i = 0; i < node.nodeArity(); i++) {
+            forEachCount(node.nodeAt(i), action);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return new ChampNode.TrieIterator<E, Integer, E>(this.root) {
+            @Override
+            protected E getElement(E key, Integer value) {
+                return key;
+            }
+        };
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof PersistentHashBag<?>) {
+            PersistentHashBag<?> other = (PersistentHashBag<?>)obj;
+            // Happy path: the bags share their trie.
+            if (this.comparator == other.comparator && this.root == other.root) return true;
+        }
+        if (!(obj instanceof BagView<?>)) return false;
+        BagView<?> other = (BagView<?>)obj;
+        if (other.distinctSize() != this.distinctSize || other.size() != this.size) return false;
+        boolean[] equal = { true };
+        other.forEachCount((element, count) -> {
+            if (equal[0] && count(element) != count) equal[0] = false;
+        });
+        return equal[0];
+    }
+
+    @Override
+    public int hashCode() {
+        int[] hashCode = { 0 };
+        forEachCount((element, count) -> hashCode[0] += (element != null ? element.hashCode() : 0) ^ count);
+        return hashCode[0];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEachCount((element, count) -> {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(element).append('=').append(count);
+        });
+        return sb.append('}').toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * A builder for a persistent bag.
+     *
+     * Each modification updates the persistent bag held by this builder. Since the bag is persistent,
+     * the builder's iterators iterate over the bag as it was when the iterator was created.
+     *
+     * @param <E> the type of elements in the bag
+     */
+    private static final class BagBuilder<E> implements PersistentBag.Builder<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        private PersistentHashBag<E> bag;
+
+        private BagBuilder(PersistentHashBag<E> bag) {
+            this.bag = bag;
+        }
+
+        @Override
+        public PersistentHashBag<E> build() {
+            return this.bag;
+        }
+
+        @Override
+        public int size() {
+            return this.bag.size();
+        }
+
+        @Override
+        public int distinctSize() {
+            return this.bag.distinctSize();
+        }
+
+        @Override
+        public EqualityComparator<? super E> getComparator() {
+            return this.bag.getComparator();
+        }
+
+        @Override
+        public int count(@Nullable Object element) {
+            return this.bag.count(element);
+        }
+
+        @Override
+        public int add(E element, int occurrences) {
+            int count = this.bag.count(element);
+            this.bag = this.bag.add(element, occurrences);
+            return count;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int remove(@Nullable Object element, int occurrences) {
+            int count = this.bag.count(element);
+            this.bag = this.bag.remove((E)element, occurrences);
+            return count;
+        }
+
+        @Override
+        public int setCount(E element, int count) {
+            int oldCount = this.bag.count(element);
+            this.bag = this.bag.setCount(element, count);
+            return oldCount;
+        }
+
+        @Override
+        public void clear() {
+            this.bag = this.bag.clear();
+        }
+
+        @Override
+        public void forEachCount(ObjIntConsumer<? super E> action) {
+            this.bag.forEachCount(action);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            return this.bag.iterator();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this.bag.equals(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.bag.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return this.bag.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,437 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.MapView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * A persistent map implemented as a hash trie.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+/* package private */ final class PersistentHashMap<K, V> implements PersistentMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty map that uses the default equality comparator. */
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(ChampNode.empty(), 0, EqualityComparator.getDefault());
+
+    /** The root of the trie. */
+    /* package private */ final ChampNode<K, V> root;
+    /** The number of entries in the map. */
+    private final int size;
+    /** The equality comparator of the keys. */
+    private final EqualityComparator<? super K> comparator;
+
+    private PersistentHashMap(ChampNode<K, V> root, int size, EqualityComparator<? super K> comparator) {
+        this.root = root;
+        this.size = size;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Gets an empty map.
+     *
+     * @param comparator the equality comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <K, V> PersistentHashMap<K, V> empty(EqualityComparator<? super K> comparator) {
+        if (comparator == EqualityComparator.getDefault()) {
+            return (PersistentHashMap<K, V>)EMPTY;
+        } else {
+            return new PersistentHashMap<>(ChampNode.empty(), 0, comparator);
+        }
+    }
+
+    /**
+     * Returns a map with the specified trie, or this map when the trie didn't change.
+     *
+     * @param root the root of the trie
+     * @param size the number of entries in the trie
+     * @return the resulting map
+     */
+    /* package private */ PersistentHashMap<K, V> withRoot(ChampNode<K, V> root, int size) {
+        if (root == this.root) return this;
+        if (size == 0) return empty(this.comparator);
+        return new PersistentHashMap<>(root, size, this.comparator);
+    }
+
+    /**
+     * Determines whether this map and the specified map are both tries with the same comparator,
+     * such that their tries have the same shape for the same keys.
+     *
+     * @param other the other map
+     * @return {@code true} when the tries are compatible; otherwise, {@code false}
+     */
+    /* package private */ boolean isCompatibleWith(PersistentHashMap<?, ?> other) {
+        return this.comparator == other.comparator;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public EqualityComparator<? super K> getComparator() {
+        return this.comparator;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(@Nullable Object key) {
+        return this.root.containsKey(key, ChampNode.hashOf((K)key, this.comparator), 0, this.comparator);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(@Nullable Object key) {
+        return this.root.get(key, ChampNode.hashOf((K)key, this.comparator), 0, this.comparator);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new ChampNode.TrieIterator<K, V, Map.Entry<K, V>>(this.root) {
+            @Override
+            protected Map.Entry<K, V> getElement(K key, V value) {
+                return new AbstractMap.SimpleImmutableEntry<>(key, value);
+            }
+        };
+    }
+
+    @Override
+    public PersistentHashMap<K, V> put(K key, V value) {
+        ChampNode.Change<V> change = new ChampNode.Change<>();
+        ChampNode<K, V> newRoot = this.root.updated(key, value, ChampNode.hashOf(key, this.comparator), 0, this.comparator, change);
+        return withRoot(newRoot, change.sizeChanged ? this.size + 1 : this.size);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> putAll(Map<? extends K, ? extends V> map) {
+        ChampNode.Change<V> change = new ChampNode.Change<>();
+        ChampNode<K, V> newRoot = this.root;
+        int newSize = this.size;
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            K key = entry.getKey();
+            change.reset();
+            newRoot = newRoot.updated(key, entry.getValue(), ChampNode.hashOf(key, this.comparator), 0, this.comparator, change);
+            if (change.sizeChanged) newSize += 1;
+        }
+        return withRoot(newRoot, newSize);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> putAll(MapView<? extends K, ? extends V> map) {
+        if (map instanceof PersistentHashMap<?, ?> && isCompatibleWith((PersistentHashMap<?, ?>)map)) {
+            // Happy path: we can merge the tries, reusing the sub-tries they share.
+            @SuppressWarnings("unchecked")
+            PersistentHashMap<K, V> other = (PersistentHashMap<K, V>)map;
+            ChampSetOperations.SizeChange change = new ChampSetOperations.SizeChange();
+            ChampNode<K, V> newRoot = ChampSetOperations.union(this.root, other.root, 0, this.comparator, change);
+            // The union may be the other map itself.
+            if (newRoot == other.root) return other;
+            return withRoot(newRoot, this.size + change.delta);
+        }
+
+        ChampNode.Change<V> change = new ChampNode.Change<>();
+        ChampNode<K, V> newRoot = this.root;
+        int newSize = this.size;
+        for (Map.Entry<? extends K, ? extends V> entry : map) {
+            K key = entry.getKey();
+            change.reset();
+            newRoot = newRoot.updated(key, entry.getValue(), ChampNode.hashOf(key, this.comparator), 0, this.comparator, change);
+            if (change.sizeChanged) newSize += 1;
+        }
+        return withRoot(newRoot, newSize);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> remove(K key) {
+        ChampNode.Change<V> change = new ChampNode.Change<>();
+        ChampNode<K, V> newRoot = this.root.removed(key, ChampNode.hashOf(key, this.comparator), 0, this.comparator, change);
+        return withRoot(newRoot, change.sizeChanged ? this.size - 1 : this.size);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> removeAll(Iterable<? extends K> keys) {
+        if (keys instanceof PersistentHashSet<?> && ((PersistentHashSet<?>)keys).getComparator() == this.comparator) {
+            // Happy path: the keys are a trie of the same shape, so we can subtract the tries.
+            @SuppressWarnings("unchecked")
+            PersistentHashSet<K> other = (PersistentHashSet<K>)keys;
+            ChampSetOperations.SizeChange change = new ChampSetOperations.SizeChange();
+            ChampNode<K, V> newRoot = ChampSetOperations.difference(this.root, other.root, 0, this.comparator, change);
+            return withRoot(newRoot, this.size + change.delta);
+        }
+
+        ChampNode.Change<V> change = new ChampNode.Change<>();
+        ChampNode<K, V> newRoot = this.root;
+        int newSize = this.size;
+        for (K key : keys) {
+            if (newSize == 0) break;
+            change.reset();
+            newRoot = newRoot.removed(key, ChampNode.hashOf(key, this.comparator), 0, this.comparator, change);
+            if (change.sizeChanged) newSize -= 1;
+        }
+        return withRoot(newRoot, newSize);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentHashMap<K, V> retainAll(Iterable<? extends K> keys) {
+        // To retain entries, we need the keys as a trie of the same shape. When they are not, we copy them.
+        PersistentHashSet<K> other;
+        if (keys instanceof PersistentHashSet<?> && ((PersistentHashSet<?>)keys).getComparator() == this.comparator) {
+            other = (PersistentHashSet<K>)keys;
+        } else {
+            other = PersistentHashSet.<K>empty(this.comparator).addAll(keys);
+        }
+        ChampSetOperations.SizeChange change = new ChampSetOperations.SizeChange();
+        ChampNode<K, V> newRoot = ChampSetOperations.intersection(this.root, other.root, 0, this.comparator, change);
+        return withRoot(newRoot, this.size + change.delta);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> clear() {
+        return empty(this.comparator);
+    }
+
+    @Override
+    public PersistentMap.Builder<K, V> builder() {
+        return new MapBuilder<>(this);
+    }
+
+    @Override
+    public Map<K, V> asUnmodifiable() {
+        return new AsMap<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof PersistentHashMap<?, ?>) {
+            PersistentHashMap<?, ?> other = (PersistentHashMap<?, ?>)obj;
+            // Happy path: the maps share their trie.
+            if (isCompatibleWith(other) && this.root == other.root) return true;
+        }
+        Map<?, ?> other;
+        if (obj instanceof Map<?, ?>) {
+            other = (Map<?, ?>)obj;
+        } else if (obj instanceof MapView<?, ?>) {
+            other = ((MapView<?, ?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != this.size) return false;
+        for (Map.Entry<?, ?> entry : other.entrySet()) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            if (!Objects.equals(get(key), value) || (value == null && !containsKey(key))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractMap implementation.
+        int hashCode = 0;
+        for (Map.Entry<K, V> entry : this) {
+            hashCode += entry.hashCode();
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return asUnmodifiable().toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * A map that views a persistent map.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    private static final class AsMap<K, V> extends AbstractMap<K, V> {
+
+        private final PersistentHashMap<K, V> map;
+
+        private AsMap(PersistentHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return this.map.get(key);
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return AsMap.this.map.size();
+                }
+
+                @NotNull
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return AsMap.this.map.iterator();
+                }
+            };
+        }
+
+    }
+
+    /**
+     * A builder for a persistent map.
+     *
+     * Each modification updates the persistent map held by this builder. Since the map is persistent,
+     * the builder's iterators iterate over the map as it was when the iterator was created.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    private static final class MapBuilder<K, V> extends AbstractMap<K, V> implements PersistentMap.Builder<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private PersistentHashMap<K, V> map;
+
+        private MapBuilder(PersistentHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public PersistentHashMap<K, V> build() {
+            return this.map;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public EqualityComparator<? super K> getComparator() {
+            return this.map.getComparator();
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public @Nullable V get(@Nullable Object key) {
+            return this.map.get(key);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            ChampNode.Change<V> change = new ChampNode.Change<>();
+            ChampNode<K, V> newRoot = this.map.root.updated(key, value, ChampNode.hashOf(key, this.map.comparator), 0, this.map.comparator, change);
+            // When nothing changed, the key was already associated with the value.
+            if (newRoot == this.map.root) return value;
+            this.map = this.map.withRoot(newRoot, change.sizeChanged ? this.map.size + 1 : this.map.size);
+            return change.oldValue;
+        }
+
+        @Override
+        public V remove(Object key) {
+            ChampNode.Change<V> change = new ChampNode.Change<>();
+            @SuppressWarnings("unchecked")
+            ChampNode<K, V> newRoot = this.map.root.removed(key, ChampNode.hashOf((K)key, this.map.comparator), 0, this.map.comparator, change);
+            this.map = this.map.withRoot(newRoot, change.sizeChanged ? this.map.size - 1 : this.map.size);
+            return change.oldValue;
+        }
+
+        @Override
+        public void clear() {
+            this.map = this.map.clear();
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            Iterator<Entry<K, V>> iterator = this.map.iterator();
+            return new Iterator<Entry<K, V>>() {
+                @Nullable private Entry<K, V> current;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Entry<K, V> next() {
+                    this.current = iterator.next();
+                    return this.current;
+                }
+
+                @Override
+                public void remove() {
+                    if (this.current == null) throw new IllegalStateException();
+                    MapBuilder.this.remove(this.current.getKey());
+                    this.current = null;
+                }
+            };
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return MapBuilder.this.size();
+                }
+
+                @NotNull
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return MapBuilder.this.iterator();
+                }
+            };
+        }
+
+        @Override
+        public Map<K, V> asUnmodifiable() {
+            return Collections.unmodifiableMap(this);
+        }
+
+    }
+
+}
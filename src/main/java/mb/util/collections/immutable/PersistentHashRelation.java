@@ -0,0 +1,226 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A persistent relation implemented as a pair of hash trie multimaps,
+ * one from keys to values and one from values to keys.
+ *
+ * @param <K> the type of keys in the relation
+ * @param <V> the type of values in the relation
+ */
+/* package private */ final class PersistentHashRelation<K, V> implements PersistentRelation<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty relation that uses the default equality comparators. */
+    private static final PersistentHashRelation<?, ?> EMPTY = new PersistentHashRelation<>(
+        PersistentHashSetMultimap.empty(EqualityComparator.getDefault(), EqualityComparator.getDefault()),
+        PersistentHashSetMultimap.empty(EqualityComparator.getDefault(), EqualityComparator.getDefault()));
+
+    /** The multimap from keys to values. */
+    private final PersistentHashSetMultimap<K, V> forward;
+    /** The multimap from values to keys, which contains the same pairs as {@link #forward}. */
+    private final PersistentHashSetMultimap<V, K> backward;
+
+    private PersistentHashRelation(PersistentHashSetMultimap<K, V> forward, PersistentHashSetMultimap<V, K> backward) {
+        this.forward = forward;
+        this.backward = backward;
+    }
+
+    /**
+     * Gets an empty relation.
+     *
+     * @param keyComparator the equality comparator of the keys
+     * @param valueComparator the equality comparator of the values
+     * @param <K> the type of keys in the relation
+     * @param <V> the type of values in the relation
+     * @return the empty relation
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <K, V> PersistentHashRelation<K, V> empty(EqualityComparator<? super K> keyComparator, EqualityComparator<? super V> valueComparator) {
+        if (keyComparator == EqualityComparator.getDefault() && valueComparator == EqualityComparator.getDefault()) {
+            return (PersistentHashRelation<K, V>)EMPTY;
+        } else {
+            return new PersistentHashRelation<>(
+                PersistentHashSetMultimap.empty(keyComparator, valueComparator),
+                PersistentHashSetMultimap.empty(valueComparator, keyComparator));
+        }
+    }
+
+    private PersistentHashRelation<K, V> with(PersistentHashSetMultimap<K, V> forward, PersistentHashSetMultimap<V, K> backward) {
+        if (forward == this.forward) return this;
+        return new PersistentHashRelation<>(forward, backward);
+    }
+
+    @Override
+    public int size() {
+        return this.forward.size();
+    }
+
+    @Override
+    public int keyCount() {
+        return this.forward.keyCount();
+    }
+
+    @Override
+    public int valueCount() {
+        return this.backward.keyCount();
+    }
+
+    @Override
+    public EqualityComparator<? super K> getKeyComparator() {
+        return this.forward.getKeyComparator();
+    }
+
+    @Override
+    public EqualityComparator<? super V> getValueComparator() {
+        return this.forward.getValueComparator();
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return this.forward.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(@Nullable Object value) {
+        return this.backward.containsKey(value);
+    }
+
+    @Override
+    public boolean containsEntry(@Nullable Object key, @Nullable Object value) {
+        // We look in the index whose entry for the pair has the fewest values.
+        if (this.forward.valueCountOf(key) <= this.backward.valueCountOf(value)) {
+            return this.forward.containsEntry(key, value);
+        } else {
+            return this.backward.containsEntry(value, key);
+        }
+    }
+
+    @Override
+    public PersistentSet<V> get(@Nullable Object key) {
+        return this.forward.get(key);
+    }
+
+    @Override
+    public PersistentSet<K> getKeys(@Nullable Object value) {
+        return this.backward.get(value);
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return this.forward.keys();
+    }
+
+    @Override
+    public Iterable<V> values() {
+        return this.backward.keys();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        this.forward.forEach(action);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return this.forward.iterator();
+    }
+
+    @Override
+    public PersistentHashRelation<V, K> inverse() {
+        return new PersistentHashRelation<>(this.backward, this.forward);
+    }
+
+    @Override
+    public PersistentHashRelation<K, V> put(K key, V value) {
+        PersistentHashSetMultimap<K, V> forward = this.forward.put(key, value);
+        if (forward == this.forward) return this;
+        return new PersistentHashRelation<>(forward, this.backward.put(value, key));
+    }
+
+    @Override
+    public PersistentHashRelation<K, V> putAll(K key, Iterable<? extends V> values) {
+        PersistentHashSetMultimap<K, V> forward = this.forward;
+        PersistentHashSetMultimap<V, K> backward = this.backward;
+        for (V value : values) {
+            PersistentHashSetMultimap<K, V> newForward = forward.put(key, value);
+            if (newForward == forward) continue;
+            forward = newForward;
+            backward = backward.put(value, key);
+        }
+        return with(forward, backward);
+    }
+
+    @Override
+    public PersistentHashRelation<K, V> remove(K key, V value) {
+        PersistentHashSetMultimap<K, V> forward = this.forward.remove(key, value);
+        if (forward == this.forward) return this;
+        return new PersistentHashRelation<>(forward, this.backward.remove(value, key));
+    }
+
+    @Override
+    public PersistentHashRelation<K, V> removeAll(K key) {
+        PersistentSet<V> values = this.forward.get(key);
+        if (values.isEmpty()) return this;
+        PersistentHashSetMultimap<V, K> backward = this.backward;
+        for (V value : values) {
+            backward = backward.remove(value, key);
+        }
+        return new PersistentHashRelation<>(this.forward.removeAll(key), backward);
+    }
+
+    @Override
+    public PersistentHashRelation<K, V> removeAllKeys(V value) {
+        return inverse().removeAll(value).inverse();
+    }
+
+    @Override
+    public PersistentHashRelation<K, V> clear() {
+        return empty(getKeyComparator(), getValueComparator());
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof PersistentHashRelation<?, ?> && ((PersistentHashRelation<?, ?>)obj).forward == this.forward) {
+            // Happy path: the relations share their indexes.
+            return true;
+        }
+        if (!(obj instanceof PersistentSetMultimap<?, ?>)) return false;
+        return PersistentHashSetMultimap.pairsEqual(this, (PersistentSetMultimap<?, ?>)obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.forward.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.forward.toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+}
@@ -0,0 +1,443 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.CollectionView;
+import mb.util.collections.SetView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A persistent set implemented as a hash trie.
+ *
+ * The elements are the keys of the trie, all associated with the same value.
+ *
+ * @param <E> the type of elements in the set
+ */
+/* package private */ final class PersistentHashSet<E> implements PersistentSet<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The value associated with each element in the trie. */
+    /* package private */ static final Object PRESENT = Boolean.TRUE;
+
+    /** The empty set that uses the default equality comparator. */
+    private static final PersistentHashSet<?> EMPTY = new PersistentHashSet<>(ChampNode.empty(), 0, EqualityComparator.getDefault());
+
+    /** The root of the trie. */
+    /* package private */ final ChampNode<E, Object> root;
+    /** The number of elements in the set. */
+    private final int size;
+    /** The equality comparator of the elements. */
+    private final EqualityComparator<? super E> comparator;
+
+    private PersistentHashSet(ChampNode<E, Object> root, int size, EqualityComparator<? super E> comparator) {
+        this.root = root;
+        this.size = size;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Gets an empty set.
+     *
+     * @param comparator the equality comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the empty set
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <E> PersistentHashSet<E> empty(EqualityComparator<? super E> comparator) {
+        if (comparator == EqualityComparator.getDefault()) {
+            return (PersistentHashSet<E>)EMPTY;
+        } else {
+            return new PersistentHashSet<>(ChampNode.empty(), 0, comparator);
+        }
+    }
+
+    /**
+     * Returns a set with the specified trie, or this set when the trie didn't change.
+     *
+     * @param root the root of the trie
+     * @param size the number of elements in the trie
+     * @return the resulting set
+     */
+    /* package private */ PersistentHashSet<E> withRoot(ChampNode<E, Object> root, int size) {
+        if (root == this.root) return this;
+        if (size == 0) return empty(this.comparator);
+        return new PersistentHashSet<>(root, size, this.comparator);
+    }
+
+    /**
+     * Determines whether this set and the specified set are both tries with the same comparator,
+     * such that their tries have the same shape for the same elements.
+     *
+     * @param other the other set
+     * @return {@code true} when the tries are compatible; otherwise, {@code false}
+     */
+    /* package private */ boolean isCompatibleWith(PersistentHashSet<?> other) {
+        return this.comparator == other.comparator;
+    }
+
+    /**
+     * Gets the specified iterable as a set whose trie is compatible with the trie of this set.
+     *
+     * @param elements the iterable
+     * @return the compatible set; or {@code null} when the iterable is not a compatible set
+     */
+    private @Nullable PersistentHashSet<E> asCompatibleSet(Iterable<? extends E> elements) {
+        if (!(elements instanceof PersistentHashSet<?>)) return null;
+        @SuppressWarnings("unchecked")
+        PersistentHashSet<E> other = (PersistentHashSet<E>)elements;
+        return isCompatibleWith(other) ? other : null;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.comparator;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(@Nullable Object element) {
+        return this.root.containsKey(element, ChampNode.hashOf((E)element, this.comparator), 0, this.comparator);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return new ChampNode.TrieIterator<E, Object, E>(this.root) {
+            @Override
+            protected E getElement(E key, Object value) {
+                return key;
+            }
+        };
+    }
+
+    @Override
+    public PersistentHashSet<E> add(E element) {
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        ChampNode<E, Object> newRoot = this.root.updated(element, PRESENT, ChampNode.hashOf(element, this.comparator), 0, this.comparator, change);
+        return withRoot(newRoot, change.sizeChanged ? this.size + 1 : this.size);
+    }
+
+    @Override
+    public PersistentHashSet<E> addAll(Iterable<? extends E> elements) {
+        PersistentHashSet<E> other = asCompatibleSet(elements);
+        if (other != null) {
+            // Happy path: we can merge the tries, reusing the sub-tries they share.
+            ChampSetOperations.SizeChange change = new ChampSetOperations.SizeChange();
+            ChampNode<E, Object> newRoot = ChampSetOperations.union(this.root, other.root, 0, this.comparator, change);
+            // The union may be the other set itself.
+            if (newRoot == other.root) return other;
+            return withRoot(newRoot, this.size + change.delta);
+        }
+
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        ChampNode<E, Object> newRoot = this.root;
+        int newSize = this.size;
+        for (E element : elements) {
+            change.reset();
+            newRoot = newRoot.updated(element, PRESENT, ChampNode.hashOf(element, this.comparator), 0, this.comparator, change);
+            if (change.sizeChanged) newSize += 1;
+        }
+        return withRoot(newRoot, newSize);
+    }
+
+    @Override
+    public PersistentHashSet<E> remove(E element) {
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        ChampNode<E, Object> newRoot = this.root.removed(element, ChampNode.hashOf(element, this.comparator), 0, this.comparator, change);
+        return withRoot(newRoot, change.sizeChanged ? this.size - 1 : this.size);
+    }
+
+    @Override
+    public PersistentHashSet<E> removeAll(Iterable<? extends E> elements) {
+        PersistentHashSet<E> other = asCompatibleSet(elements);
+        if (other != null) {
+            // Happy path: we can subtract the tries, skipping the sub-tries they share.
+            ChampSetOperations.SizeChange change = new ChampSetOperations.SizeChange();
+            ChampNode<E, Object> newRoot = ChampSetOperations.difference(this.root, other.root, 0, this.comparator, change);
+            return withRoot(newRoot, this.size + change.delta);
+        }
+
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        ChampNode<E, Object> newRoot = this.root;
+        int newSize = this.size;
+        for (E element : elements) {
+            if (newSize == 0) break;
+            change.reset();
+            newRoot = newRoot.removed(element, ChampNode.hashOf(element, this.comparator), 0, this.comparator, change);
+            if (change.sizeChanged) newSize -= 1;
+        }
+        return withRoot(newRoot, newSize);
+    }
+
+    @Override
+    public PersistentHashSet<E> retainAll(Iterable<? extends E> elements) {
+        PersistentHashSet<E> other = asCompatibleSet(elements);
+        if (other != null) {
+            // Happy path: we can intersect the tries, keeping the sub-tries they share.
+            ChampSetOperations.SizeChange change = new ChampSetOperations.SizeChange();
+            ChampNode<E, Object> newRoot = ChampSetOperations.intersection(this.root, other.root, 0, this.comparator, change);
+            // The intersection may be the other set itself.
+            if (newRoot == other.root) return other;
+            return withRoot(newRoot, this.size + change.delta);
+        }
+
+        // To retain elements, we have to be able to efficiently determine whether
+        // they are in the given iterable. When they are not in a collection, we copy them.
+        CollectionView<? extends E> collection;
+        if (elements instanceof CollectionView<?>) {
+            collection = (CollectionView<? extends E>)elements;
+        } else {
+            collection = PersistentHashSet.<E>empty(this.comparator).addAll(elements);
+        }
+        return retainAllWhere(collection::contains);
+    }
+
+    @Override
+    public PersistentHashSet<E> removeAllWhere(Predicate<E> predicate) {
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        ChampNode<E, Object> newRoot = this.root;
+        int newSize = this.size;
+        // We can iterate over this set while removing elements, because this set is persistent.
+        for (E element : this) {
+            if (!predicate.test(element)) continue;
+            change.reset();
+            newRoot = newRoot.removed(element, ChampNode.hashOf(element, this.comparator), 0, this.comparator, change);
+            if (change.sizeChanged) newSize -= 1;
+        }
+        return withRoot(newRoot, newSize);
+    }
+
+    @Override
+    public PersistentHashSet<E> retainAllWhere(Predicate<E> predicate) {
+        return removeAllWhere(predicate.negate());
+    }
+
+    @Override
+    public PersistentHashSet<E> replaceAll(UnaryOperator<E> operator) {
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        ChampNode<E, Object> newRoot = ChampNode.empty();
+        int newSize = 0;
+        for (E element : this) {
+            E newElement = operator.apply(element);
+            change.reset();
+            newRoot = newRoot.updated(newElement, PRESENT, ChampNode.hashOf(newElement, this.comparator), 0, this.comparator, change);
+            if (change.sizeChanged) newSize += 1;
+        }
+        return withRoot(newRoot, newSize);
+    }
+
+    @Override
+    public PersistentHashSet<E> clear() {
+        return empty(this.comparator);
+    }
+
+    @Override
+    public PersistentSet.Builder<E> builder() {
+        return new SetBuilder<>(this);
+    }
+
+    @Override
+    public Set<E> asUnmodifiable() {
+        return new AsSet<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof PersistentHashSet<?>) {
+            PersistentHashSet<?> other = (PersistentHashSet<?>)obj;
+            // Happy path: the sets share their trie.
+            if (isCompatibleWith(other) && this.root == other.root) return true;
+        }
+        Collection<?> other;
+        if (obj instanceof Set<?>) {
+            other = (Set<?>)obj;
+        } else if (obj instanceof SetView<?>) {
+            other = ((SetView<?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != this.size) return false;
+        for (Object element : other) {
+            if (!contains(element)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractSet implementation.
+        int hashCode = 0;
+        for (E element : this) {
+            hashCode += element != null ? element.hashCode() : 0;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return asUnmodifiable().toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * A set that views a persistent set.
+     *
+     * @param <E> the type of elements in the set
+     */
+    private static final class AsSet<E> extends AbstractSet<E> {
+
+        private final PersistentHashSet<E> set;
+
+        private AsSet(PersistentHashSet<E> set) {
+            this.set = set;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.set.contains(o);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            return this.set.iterator();
+        }
+
+    }
+
+    /**
+     * A builder for a persistent set.
+     *
+     * Each modification updates the persistent set held by this builder. Since the set is persistent,
+     * the builder's iterators iterate over the set as it was when the iterator was created.
+     *
+     * @param <E> the type of elements in the set
+     */
+    private static final class SetBuilder<E> extends AbstractSet<E> implements PersistentSet.Builder<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        private PersistentHashSet<E> set;
+
+        private SetBuilder(PersistentHashSet<E> set) {
+            this.set = set;
+        }
+
+        @Override
+        public PersistentHashSet<E> build() {
+            return this.set;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public EqualityComparator<? super E> getComparator() {
+            return this.set.getComparator();
+        }
+
+        @Override
+        public boolean contains(@Nullable Object element) {
+            return this.set.contains(element);
+        }
+
+        @Override
+        public boolean add(E element) {
+            PersistentHashSet<E> oldSet = this.set;
+            this.set = oldSet.add(element);
+            return this.set != oldSet;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object element) {
+            PersistentHashSet<E> oldSet = this.set;
+            this.set = oldSet.remove((E)element);
+            return this.set != oldSet;
+        }
+
+        @Override
+        public void clear() {
+            this.set = this.set.clear();
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            Iterator<E> iterator = this.set.iterator();
+            return new Iterator<E>() {
+                @Nullable private E current;
+                private boolean canRemove;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public E next() {
+                    this.current = iterator.next();
+                    this.canRemove = true;
+                    return this.current;
+                }
+
+                @Override
+                public void remove() {
+                    if (!this.canRemove) throw new IllegalStateException();
+                    SetBuilder.this.remove(this.current);
+                    this.canRemove = false;
+                }
+            };
+        }
+
+        @Override
+        public Set<E> asUnmodifiable() {
+            return Collections.unmodifiableSet(this);
+        }
+
+        @NotNull
+        @Override
+        public Object[] toArray() {
+            return super.toArray();
+        }
+
+        @NotNull
+        @Override
+        public <T> T[] toArray(@NotNull T[] a) {
+            return super.toArray(a);
+        }
+
+    }
+
+}
@@ -0,0 +1,365 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * A persistent multimap implemented as a hash trie from keys to their values.
+ *
+ * A key with a single value stores that value inline as its payload, so the common case
+ * of a key with one value does not allocate a set. A key with more values stores a {@link PersistentHashSet}.
+ * To keep the two cases apart, a single value that is {@code null} or itself a {@link PersistentHashSet}
+ * is stored in a singleton set.
+ *
+ * @param <K> the type of keys in the multimap
+ * @param <V> the type of values in the multimap
+ */
+/* package private */ final class PersistentHashSetMultimap<K, V> implements PersistentSetMultimap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty multimap that uses the default equality comparators. */
+    private static final PersistentHashSetMultimap<?, ?> EMPTY = new PersistentHashSetMultimap<>(
+        ChampNode.empty(), 0, 0, EqualityComparator.getDefault(), EqualityComparator.getDefault());
+
+    /** The root of the trie, which maps each key to its single value or its set of values. */
+    private final ChampNode<K, Object> root;
+    /** The number of keys in the multimap. */
+    private final int keyCount;
+    /** The number of key-value pairs in the multimap. */
+    private final int size;
+    /** The equality comparator of the keys. */
+    private final EqualityComparator<? super K> keyComparator;
+    /** The equality comparator of the values. */
+    private final EqualityComparator<? super V> valueComparator;
+
+    private PersistentHashSetMultimap(ChampNode<K, Object> root, int keyCount, int size,
+                                      EqualityComparator<? super K> keyComparator, EqualityComparator<? super V> valueComparator) {
+        this.root = root;
+        this.keyCount = keyCount;
+        this.size = size;
+        this.keyComparator = keyComparator;
+        this.valueComparator = valueComparator;
+    }
+
+    /**
+     * Gets an empty multimap.
+     *
+     * @param keyComparator the equality comparator of the keys
+     * @param valueComparator the equality comparator of the values
+     * @param <K> the type of keys in the multimap
+     * @param <V> the type of values in the multimap
+     * @return the empty multimap
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <K, V> PersistentHashSetMultimap<K, V> empty(EqualityComparator<? super K> keyComparator, EqualityComparator<? super V> valueComparator) {
+        if (keyComparator == EqualityComparator.getDefault() && valueComparator == EqualityComparator.getDefault()) {
+            return (PersistentHashSetMultimap<K, V>)EMPTY;
+        } else {
+            return new PersistentHashSetMultimap<>(ChampNode.empty(), 0, 0, keyComparator, valueComparator);
+        }
+    }
+
+    private PersistentHashSetMultimap<K, V> withRoot(ChampNode<K, Object> root, int keyCount, int size) {
+        if (root == this.root) return this;
+        if (size == 0) return empty(this.keyComparator, this.valueComparator);
+        return new PersistentHashSetMultimap<>(root, keyCount, size, this.keyComparator, this.valueComparator);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public int keyCount() {
+        return this.keyCount;
+    }
+
+    @Override
+    public EqualityComparator<? super K> getKeyComparator() {
+        return this.keyComparator;
+    }
+
+    @Override
+    public EqualityComparator<? super V> getValueComparator() {
+        return this.valueComparator;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(@Nullable Object key) {
+        return this.root.containsKey(key, ChampNode.hashOf((K)key, this.keyComparator), 0, this.keyComparator);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsEntry(@Nullable Object key, @Nullable Object value) {
+        Object payload = payloadOf(key);
+        if (payload == null) return false;
+        if (payload instanceof PersistentHashSet<?>) return ((PersistentHashSet<?>)payload).contains(value);
+        return this.valueComparator.equals((V)payload, (V)value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentSet<V> get(@Nullable Object key) {
+        Object payload = payloadOf(key);
+        if (payload == null) return PersistentHashSet.empty(this.valueComparator);
+        if (payload instanceof PersistentHashSet<?>) return (PersistentHashSet<V>)payload;
+        return PersistentHashSet.<V>empty(this.valueComparator).add((V)payload);
+    }
+
+    /**
+     * Gets the number of values associated with the specified key.
+     *
+     * @param key the key to look for
+     * @return the number of values; or 0 when the multimap does not contain the key
+     */
+    /* package private */ int valueCountOf(@Nullable Object key) {
+        Object payload = payloadOf(key);
+        if (payload == null) return 0;
+        if (payload instanceof PersistentHashSet<?>) return ((PersistentHashSet<?>)payload).size();
+        return 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable Object payloadOf(@Nullable Object key) {
+        return this.root.get(key, ChampNode.hashOf((K)key, this.keyComparator), 0, this.keyComparator);
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return () -> new ChampNode.TrieIterator<K, Object, K>(this.root) {
+            @Override
+            protected K getElement(K key, Object payload) {
+                return key;
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(this.root, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void forEach(ChampNode<K, Object> node, BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < node.payloadArity(); i++) {
+            K key = node.keyAt(i);
+            Object payload = node.valueAt(i);
+            if (payload instanceof PersistentHashSet<?>) {
+                for (V value : (PersistentHashSet<V>)payload) {
+                    action.accept(key, value);
+                }
+            } else {
+                action.accept(key, (V)payload);
+            }
+        }
+        for (int i = 0; i < node.nodeArity(); i++) {
+            forEach(node.nodeAt(i), action);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(this.root);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentHashSetMultimap<K, V> put(K key, V value) {
+        int hash = ChampNode.hashOf(key, this.keyComparator);
+        Object payload = this.root.get(key, hash, 0, this.keyComparator);
+        Object newPayload;
+        if (payload == null) {
+            newPayload = single(value);
+        } else if (payload instanceof PersistentHashSet<?>) {
+            PersistentHashSet<V> values = (PersistentHashSet<V>)payload;
+            newPayload = values.add(value);
+            if (newPayload == values) return this;
+        } else {
+            if (this.valueComparator.equals((V)payload, value)) return this;
+            newPayload = PersistentHashSet.<V>empty(this.valueComparator).add((V)payload).add(value);
+        }
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        ChampNode<K, Object> newRoot = this.root.updated(key, newPayload, hash, 0, this.keyComparator, change);
+        return withRoot(newRoot, payload == null ? this.keyCount + 1 : this.keyCount, this.size + 1);
+    }
+
+    @Override
+    public PersistentHashSetMultimap<K, V> putAll(K key, Iterable<? extends V> values) {
+        PersistentHashSetMultimap<K, V> result = this;
+        for (V value : values) {
+            result = result.put(key, value);
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentHashSetMultimap<K, V> remove(K key, V value) {
+        int hash = ChampNode.hashOf(key, this.keyComparator);
+        Object payload = this.root.get(key, hash, 0, this.keyComparator);
+        if (payload == null) return this;
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        if (payload instanceof PersistentHashSet<?>) {
+            PersistentHashSet<V> values = (PersistentHashSet<V>)payload;
+            PersistentHashSet<V> newValues = values.remove(value);
+            if (newValues == values) return this;
+            if (newValues.isEmpty()) {
+                ChampNode<K, Object> newRoot = this.root.removed(key, hash, 0, this.keyComparator, change);
+                return withRoot(newRoot, this.keyCount - 1, this.size - 1);
+            }
+            // When one value remains, we store it inline again if we can.
+            Object newPayload = newValues.size() == 1 ? single(newValues.iterator().next()) : newValues;
+            ChampNode<K, Object> newRoot = this.root.updated(key, newPayload, hash, 0, this.keyComparator, change);
+            return withRoot(newRoot, this.keyCount, this.size - 1);
+        } else {
+            if (!this.valueComparator.equals((V)payload, value)) return this;
+            ChampNode<K, Object> newRoot = this.root.removed(key, hash, 0, this.keyComparator, change);
+            return withRoot(newRoot, this.keyCount - 1, this.size - 1);
+        }
+    }
+
+    @Override
+    public PersistentHashSetMultimap<K, V> removeAll(K key) {
+        int hash = ChampNode.hashOf(key, this.keyComparator);
+        ChampNode.Change<Object> change = new ChampNode.Change<>();
+        ChampNode<K, Object> newRoot = this.root.removed(key, hash, 0, this.keyComparator, change);
+        if (!change.sizeChanged) return this;
+        Object payload = change.oldValue;
+        int count = payload instanceof PersistentHashSet<?> ? ((PersistentHashSet<?>)payload).size() : 1;
+        return withRoot(newRoot, this.keyCount - 1, this.size - count);
+    }
+
+    @Override
+    public PersistentHashSetMultimap<K, V> clear() {
+        return empty(this.keyComparator, this.valueComparator);
+    }
+
+    /**
+     * Gets the payload that stores a single value.
+     *
+     * @param value the value
+     * @return the payload
+     */
+    private Object single(@Nullable V value) {
+        if (value == null || value instanceof PersistentHashSet<?>) {
+            return PersistentHashSet.<V>empty(this.valueComparator).add(value);
+        }
+        return value;
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof PersistentSetMultimap<?, ?>)) return false;
+        return pairsEqual(this, (PersistentSetMultimap<?, ?>)obj);
+    }
+
+    /**
+     * Determines whether two multimaps contain the same pairs.
+     *
+     * @param multimap the multimap
+     * @param other the other multimap
+     * @return {@code true} when the multimaps are equal; otherwise, {@code false}
+     */
+    /* package private */ static boolean pairsEqual(PersistentSetMultimap<?, ?> multimap, PersistentSetMultimap<?, ?> other) {
+        if (multimap.size() != other.size() || multimap.keyCount() != other.keyCount()) return false;
+        for (Map.Entry<?, ?> entry : other) {
+            if (!multimap.containsEntry(entry.getKey(), entry.getValue())) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as a set of the entries.
+        int[] hashCode = { 0 };
+        forEach((key, value) -> hashCode[0] += (key != null ? key.hashCode() : 0) ^ (value != null ? value.hashCode() : 0));
+        return hashCode[0];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        Iterator<K> keys = keys().iterator();
+        while (keys.hasNext()) {
+            K key = keys.next();
+            sb.append(key).append('=').append(get(key));
+            if (keys.hasNext()) sb.append(", ");
+        }
+        return sb.append('}').toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * Iterates over the key-value pairs of a multimap, by iterating over the values of each key in turn.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        /** The iterator over the payloads of the keys. */
+        private final Iterator<Object> payloads;
+        /** The key of the most recent payload. */
+        @Nullable private K key;
+        /** The iterator over the remaining values of the current key; or {@code null}. */
+        @Nullable private Iterator<V> values;
+
+        private EntryIterator(ChampNode<K, Object> root) {
+            this.payloads = new ChampNode.TrieIterator<K, Object, Object>(root) {
+                @Override
+                protected Object getElement(K key, Object payload) {
+                    EntryIterator.this.key = key;
+                    return payload;
+                }
+            };
+        }
+
+        @Override
+        public boolean hasNext() {
+            return (this.values != null && this.values.hasNext()) || this.payloads.hasNext();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (this.values == null || !this.values.hasNext()) {
+                if (!this.payloads.hasNext()) throw new NoSuchElementException();
+                Object payload = this.payloads.next();
+                if (!(payload instanceof PersistentHashSet<?>)) {
+                    this.values = null;
+                    return new AbstractMap.SimpleImmutableEntry<>(this.key, (V)payload);
+                }
+                this.values = ((PersistentHashSet<V>)payload).iterator();
+            }
+            return new AbstractMap.SimpleImmutableEntry<>(this.key, this.values.next());
+        }
+
+    }
+
+}
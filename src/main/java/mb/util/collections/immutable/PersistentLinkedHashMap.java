@@ -0,0 +1,466 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.MapView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * A persistent map that iterates over its entries in insertion order.
+ *
+ * The map consists of a hash trie from each key to its entry, and a B-tree from the sequence number
+ * of each entry to the entry. A new key gets the next sequence number, so the B-tree orders the entries
+ * by insertion. Replacing the value of a key keeps its position. Both structures share the entry objects,
+ * so lookups take the hash trie and iteration walks the B-tree without any lookups.
+ *
+ * Removing a key removes its sequence number from the B-tree, so removed entries leave no holes.
+ * When the sequence numbers run out, the entries are renumbered from zero in a single linear pass.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+/* package private */ final class PersistentLinkedHashMap<K, V> implements PersistentMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty map that uses the default equality comparator. */
+    private static final PersistentLinkedHashMap<?, ?> EMPTY = new PersistentLinkedHashMap<>(ChampNode.empty(), BTreeNode.EMPTY, 0, EqualityComparator.getDefault());
+
+    /** The ordering of the sequence numbers. */
+    private static final Comparator<Object> SEQUENCE_ORDER = (a, b) -> Integer.compare((Integer)a, (Integer)b);
+
+    /** The hash trie from each key to its entry. */
+    private final ChampNode<K, Slot<K, V>> index;
+    /** The B-tree from the sequence number of each entry to the entry. */
+    private final BTreeNode order;
+    /** The sequence number of the next key that is inserted. */
+    private final int nextSequence;
+    /** The equality comparator of the keys. */
+    private final EqualityComparator<? super K> comparator;
+
+    private PersistentLinkedHashMap(ChampNode<K, Slot<K, V>> index, BTreeNode order, int nextSequence, EqualityComparator<? super K> comparator) {
+        this.index = index;
+        this.order = order;
+        this.nextSequence = nextSequence;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Gets an empty map.
+     *
+     * @param comparator the equality comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <K, V> PersistentLinkedHashMap<K, V> empty(EqualityComparator<? super K> comparator) {
+        if (comparator == EqualityComparator.getDefault()) {
+            return (PersistentLinkedHashMap<K, V>)EMPTY;
+        } else {
+            return new PersistentLinkedHashMap<>(ChampNode.empty(), BTreeNode.EMPTY, 0, comparator);
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.order.size();
+    }
+
+    @Override
+    public EqualityComparator<? super K> getComparator() {
+        return this.comparator;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(@Nullable Object key) {
+        return this.index.containsKey(key, ChampNode.hashOf((K)key, this.comparator), 0, this.comparator);
+    }
+
+    @Override
+    public @Nullable V get(@Nullable Object key) {
+        @SuppressWarnings("unchecked")
+        Slot<K, V> slot = this.index.get(key, ChampNode.hashOf((K)key, this.comparator), 0, this.comparator);
+        return slot != null ? slot.getValue() : null;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new BTreeNode.EntryIterator<Map.Entry<K, V>>(this.order, 0, size()) {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected Map.Entry<K, V> getElement(Object sequence, @Nullable Object slot) {
+                return (Slot<K, V>)slot;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the keys in insertion order.
+     *
+     * @return the iterator
+     */
+    /* package private */ Iterator<K> keyIterator() {
+        return new BTreeNode.EntryIterator<K>(this.order, 0, size()) {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected K getElement(Object sequence, @Nullable Object slot) {
+                //noinspection unchecked,ConstantConditions
+                return ((Slot<K, V>)slot).getKey();
+            }
+        };
+    }
+
+    @Override
+    public PersistentLinkedHashMap<K, V> put(K key, V value) {
+        int hash = ChampNode.hashOf(key, this.comparator);
+        Slot<K, V> slot = this.index.get(key, hash, 0, this.comparator);
+        if (slot != null) {
+            if (slot.getValue() == value) return this;
+            // The key keeps its position.
+            Slot<K, V> newSlot = new Slot<>(slot.getKey(), value, slot.sequence);
+            ChampNode<K, Slot<K, V>> newIndex = this.index.updated(key, newSlot, hash, 0, this.comparator, new ChampNode.Change<>());
+            BTreeNode newOrder = BTreeNode.put(this.order, slot.sequence, newSlot, SEQUENCE_ORDER, new BTreeNode.Change());
+            return new PersistentLinkedHashMap<>(newIndex, newOrder, this.nextSequence, this.comparator);
+        }
+        if (this.nextSequence == Integer.MAX_VALUE) return renumbered().put(key, value);
+        Slot<K, V> newSlot = new Slot<>(key, value, this.nextSequence);
+        ChampNode<K, Slot<K, V>> newIndex = this.index.updated(key, newSlot, hash, 0, this.comparator, new ChampNode.Change<>());
+        BTreeNode newOrder = BTreeNode.put(this.order, this.nextSequence, newSlot, SEQUENCE_ORDER, new BTreeNode.Change());
+        return new PersistentLinkedHashMap<>(newIndex, newOrder, this.nextSequence + 1, this.comparator);
+    }
+
+    /**
+     * Returns this map with its entries numbered from zero, such that the sequence numbers
+     * of the removed entries can be reused.
+     *
+     * This takes linear time.
+     *
+     * @return the renumbered map
+     */
+    private PersistentLinkedHashMap<K, V> renumbered() {
+        int size = size();
+        Object[] sequences = new Object[size];
+        Object[] slots = new Object[size];
+        ChampNode<K, Slot<K, V>> newIndex = ChampNode.empty();
+        ChampNode.Change<Slot<K, V>> change = new ChampNode.Change<>();
+        int sequence = 0;
+        for (Map.Entry<K, V> entry : this) {
+            K key = entry.getKey();
+            Slot<K, V> newSlot = new Slot<>(key, entry.getValue(), sequence);
+            change.reset();
+            newIndex = newIndex.updated(key, newSlot, ChampNode.hashOf(key, this.comparator), 0, this.comparator, change);
+            sequences[sequence] = sequence;
+            slots[sequence] = newSlot;
+            sequence += 1;
+        }
+        return new PersistentLinkedHashMap<>(newIndex, BTreeNode.fromSorted(sequences, slots, size), size, this.comparator);
+    }
+
+    @Override
+    public PersistentLinkedHashMap<K, V> putAll(Map<? extends K, ? extends V> map) {
+        PersistentLinkedHashMap<K, V> result = this;
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result = result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public PersistentLinkedHashMap<K, V> putAll(MapView<? extends K, ? extends V> map) {
+        PersistentLinkedHashMap<K, V> result = this;
+        for (Map.Entry<? extends K, ? extends V> entry : map) {
+            result = result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public PersistentLinkedHashMap<K, V> remove(K key) {
+        ChampNode.Change<Slot<K, V>> change = new ChampNode.Change<>();
+        ChampNode<K, Slot<K, V>> newIndex = this.index.removed(key, ChampNode.hashOf(key, this.comparator), 0, this.comparator, change);
+        if (!change.sizeChanged) return this;
+        if (size() == 1) return empty(this.comparator);
+        //noinspection ConstantConditions
+        BTreeNode newOrder = BTreeNode.remove(this.order, change.oldValue.sequence, SEQUENCE_ORDER, new BTreeNode.Change());
+        return new PersistentLinkedHashMap<>(newIndex, newOrder, this.nextSequence, this.comparator);
+    }
+
+    @Override
+    public PersistentLinkedHashMap<K, V> removeAll(Iterable<? extends K> keys) {
+        PersistentLinkedHashMap<K, V> result = this;
+        for (K key : keys) {
+            if (result.size() == 0) break;
+            result = result.remove(key);
+        }
+        return result;
+    }
+
+    @Override
+    public PersistentLinkedHashMap<K, V> retainAll(Iterable<? extends K> keys) {
+        // To retain entries, we have to be able to efficiently determine whether their keys are given.
+        PersistentHashSet<K> retained = PersistentHashSet.<K>empty(this.comparator).addAll(keys);
+        PersistentLinkedHashMap<K, V> result = this;
+        // We can iterate over this map while removing entries, because this map is persistent.
+        for (Map.Entry<K, V> entry : this) {
+            if (!retained.contains(entry.getKey())) result = result.remove(entry.getKey());
+        }
+        return result;
+    }
+
+    @Override
+    public PersistentLinkedHashMap<K, V> clear() {
+        return empty(this.comparator);
+    }
+
+    @Override
+    public PersistentMap.Builder<K, V> builder() {
+        return new MapBuilder<>(this);
+    }
+
+    @Override
+    public Map<K, V> asUnmodifiable() {
+        return new AsMap<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof PersistentLinkedHashMap<?, ?> && ((PersistentLinkedHashMap<?, ?>)obj).order == this.order) {
+            // Happy path: the maps share their entries.
+            return true;
+        }
+        Map<?, ?> other;
+        if (obj instanceof Map<?, ?>) {
+            other = (Map<?, ?>)obj;
+        } else if (obj instanceof MapView<?, ?>) {
+            other = ((MapView<?, ?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != size()) return false;
+        for (Map.Entry<?, ?> entry : other.entrySet()) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            if (!Objects.equals(get(key), value) || (value == null && !containsKey(key))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractMap implementation.
+        int hashCode = 0;
+        for (Map.Entry<K, V> entry : this) {
+            hashCode += entry.hashCode();
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return asUnmodifiable().toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * An entry of the map, which is shared by the hash trie and the B-tree.
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    private static final class Slot<K, V> extends AbstractMap.SimpleImmutableEntry<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The sequence number of the entry, which orders it in the B-tree. */
+        private final int sequence;
+
+        private Slot(K key, V value, int sequence) {
+            super(key, value);
+            this.sequence = sequence;
+        }
+
+    }
+
+    /**
+     * A map that views a persistent insertion-ordered map.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    private static final class AsMap<K, V> extends AbstractMap<K, V> {
+
+        private final PersistentLinkedHashMap<K, V> map;
+
+        private AsMap(PersistentLinkedHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return this.map.get(key);
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return AsMap.this.map.size();
+                }
+
+                @NotNull
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return AsMap.this.map.iterator();
+                }
+            };
+        }
+
+    }
+
+    /**
+     * A builder for a persistent insertion-ordered map.
+     *
+     * Each modification updates the persistent map held by this builder. Since the map is persistent,
+     * the builder's iterators iterate over the map as it was when the iterator was created.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    private static final class MapBuilder<K, V> extends AbstractMap<K, V> implements PersistentMap.Builder<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private PersistentLinkedHashMap<K, V> map;
+
+        private MapBuilder(PersistentLinkedHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public PersistentLinkedHashMap<K, V> build() {
+            return this.map;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public EqualityComparator<? super K> getComparator() {
+            return this.map.getComparator();
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public @Nullable V get(@Nullable Object key) {
+            return this.map.get(key);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            V oldValue = this.map.get(key);
+            this.map = this.map.put(key, value);
+            return oldValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V remove(Object key) {
+            V oldValue = this.map.get(key);
+            this.map = this.map.remove((K)key);
+            return oldValue;
+        }
+
+        @Override
+        public void clear() {
+            this.map = this.map.clear();
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            Iterator<Entry<K, V>> iterator = this.map.iterator();
+            return new Iterator<Entry<K, V>>() {
+                @Nullable private Entry<K, V> current;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Entry<K, V> next() {
+                    this.current = iterator.next();
+                    return this.current;
+                }
+
+                @Override
+                public void remove() {
+                    if (this.current == null) throw new IllegalStateException();
+                    MapBuilder.this.remove(this.current.getKey());
+                    this.current = null;
+                }
+            };
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return MapBuilder.this.size();
+                }
+
+                @NotNull
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return MapBuilder.this.iterator();
+                }
+            };
+        }
+
+        @Override
+        public Map<K, V> asUnmodifiable() {
+            return Collections.unmodifiableMap(this);
+        }
+
+    }
+
+}
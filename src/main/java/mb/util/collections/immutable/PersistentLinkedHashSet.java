@@ -0,0 +1,339 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.CollectionView;
+import mb.util.collections.SetView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A persistent set that iterates over its elements in insertion order.
+ *
+ * This set is an insertion-ordered map whose keys are the elements.
+ *
+ * @param <E> the type of elements in the set
+ */
+/* package private */ final class PersistentLinkedHashSet<E> implements PersistentSet<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty set that uses the default equality comparator. */
+    private static final PersistentLinkedHashSet<?> EMPTY = new PersistentLinkedHashSet<>(PersistentLinkedHashMap.empty(EqualityComparator.getDefault()));
+
+    /** The map whose keys are the elements of this set. */
+    private final PersistentLinkedHashMap<E, Object> map;
+
+    private PersistentLinkedHashSet(PersistentLinkedHashMap<E, Object> map) {
+        this.map = map;
+    }
+
+    /**
+     * Gets an empty set.
+     *
+     * @param comparator the equality comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the empty set
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <E> PersistentLinkedHashSet<E> empty(EqualityComparator<? super E> comparator) {
+        if (comparator == EqualityComparator.getDefault()) {
+            return (PersistentLinkedHashSet<E>)EMPTY;
+        } else {
+            return new PersistentLinkedHashSet<>(PersistentLinkedHashMap.empty(comparator));
+        }
+    }
+
+    private PersistentLinkedHashSet<E> withMap(PersistentLinkedHashMap<E, Object> map) {
+        if (map == this.map) return this;
+        if (map.size() == 0) return empty(getComparator());
+        return new PersistentLinkedHashSet<>(map);
+    }
+
+    @Override
+    public int size() {
+        return this.map.size();
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.map.getComparator();
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return this.map.containsKey(element);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return this.map.keyIterator();
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> add(E element) {
+        if (this.map.containsKey(element)) return this;
+        return withMap(this.map.put(element, PersistentHashSet.PRESENT));
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> addAll(Iterable<? extends E> elements) {
+        PersistentLinkedHashMap<E, Object> newMap = this.map;
+        for (E element : elements) {
+            newMap = newMap.put(element, PersistentHashSet.PRESENT);
+        }
+        return withMap(newMap);
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> remove(E element) {
+        return withMap(this.map.remove(element));
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> removeAll(Iterable<? extends E> elements) {
+        return withMap(this.map.removeAll(elements));
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> retainAll(Iterable<? extends E> elements) {
+        // To retain elements, we have to be able to efficiently determine whether
+        // they are in the given iterable. When they are not in a collection, we copy them.
+        CollectionView<? extends E> collection;
+        if (elements instanceof CollectionView<?>) {
+            collection = (CollectionView<? extends E>)elements;
+        } else {
+            collection = PersistentHashSet.<E>empty(getComparator()).addAll(elements);
+        }
+        return retainAllWhere(collection::contains);
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> removeAllWhere(Predicate<E> predicate) {
+        PersistentLinkedHashMap<E, Object> newMap = this.map;
+        // We can iterate over this set while removing elements, because this set is persistent.
+        for (E element : this) {
+            if (predicate.test(element)) newMap = newMap.remove(element);
+        }
+        return withMap(newMap);
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> retainAllWhere(Predicate<E> predicate) {
+        return removeAllWhere(predicate.negate());
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> replaceAll(UnaryOperator<E> operator) {
+        // The replaced elements are inserted in the order of the elements they replace.
+        PersistentLinkedHashMap<E, Object> newMap = this.map.clear();
+        for (E element : this) {
+            newMap = newMap.put(operator.apply(element), PersistentHashSet.PRESENT);
+        }
+        return withMap(newMap);
+    }
+
+    @Override
+    public PersistentLinkedHashSet<E> clear() {
+        return empty(getComparator());
+    }
+
+    @Override
+    public PersistentSet.Builder<E> builder() {
+        return new SetBuilder<>(this);
+    }
+
+    @Override
+    public Set<E> asUnmodifiable() {
+        return new AsSet<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        Collection<?> other;
+        if (obj instanceof Set<?>) {
+            other = (Set<?>)obj;
+        } else if (obj instanceof SetView<?>) {
+            other = ((SetView<?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != size()) return false;
+        for (Object element : other) {
+            if (!contains(element)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractSet implementation.
+        int hashCode = 0;
+        for (E element : this) {
+            hashCode += element != null ? element.hashCode() : 0;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return asUnmodifiable().toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * A set that views a persistent insertion-ordered set.
+     *
+     * @param <E> the type of elements in the set
+     */
+    private static final class AsSet<E> extends AbstractSet<E> {
+
+        private final PersistentLinkedHashSet<E> set;
+
+        private AsSet(PersistentLinkedHashSet<E> set) {
+            this.set = set;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.set.contains(o);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            return this.set.iterator();
+        }
+
+    }
+
+    /**
+     * A builder for a persistent insertion-ordered set.
+     *
+     * Each modification updates the persistent set held by this builder. Since the set is persistent,
+     * the builder's iterators iterate over the set as it was when the iterator was created.
+     *
+     * @param <E> the type of elements in the set
+     */
+    private static final class SetBuilder<E> extends AbstractSet<E> implements PersistentSet.Builder<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        private PersistentLinkedHashSet<E> set;
+
+        private SetBuilder(PersistentLinkedHashSet<E> set) {
+            this.set = set;
+        }
+
+        @Override
+        public PersistentLinkedHashSet<E> build() {
+            return this.set;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public EqualityComparator<? super E> getComparator() {
+            return this.set.getComparator();
+        }
+
+        @Override
+        public boolean contains(@Nullable Object element) {
+            return this.set.contains(element);
+        }
+
+        @Override
+        public boolean add(E element) {
+            PersistentLinkedHashSet<E> oldSet = this.set;
+            this.set = oldSet.add(element);
+            return this.set != oldSet;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object element) {
+            PersistentLinkedHashSet<E> oldSet = this.set;
+            this.set = oldSet.remove((E)element);
+            return this.set != oldSet;
+        }
+
+        @Override
+        public void clear() {
+            this.set = this.set.clear();
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            Iterator<E> iterator = this.set.iterator();
+            return new Iterator<E>() {
+                @Nullable private E current;
+                private boolean canRemove;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public E next() {
+                    this.current = iterator.next();
+                    this.canRemove = true;
+                    return this.current;
+                }
+
+                @Override
+                public void remove() {
+                    if (!this.canRemove) throw new IllegalStateException();
+                    SetBuilder.this.remove(this.current);
+                    this.canRemove = false;
+                }
+            };
+        }
+
+        @Override
+        public Set<E> asUnmodifiable() {
+            return Collections.unmodifiableSet(this);
+        }
+
+        @NotNull
+        @Override
+        public Object[] toArray() {
+            return super.toArray();
+        }
+
+        @NotNull
+        @Override
+        public <T> T[] toArray(@NotNull T[] a) {
+            return super.toArray(a);
+        }
+
+    }
+
+}
@@ -35,6 +35,21 @@ public interface PersistentList<E> extends PersistentCollection<E>, ImmutableLis
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Computes the difference between two persistent lists.
+     *
+     * The difference consists of the range of elements that differ
+     * between the common prefix and the common suffix of the lists.
+     *
+     * @param oldList the old version of the list
+     * @param newList the new version of the list
+     * @param <E> the type of elements in the list
+     * @return the difference, which can be applied to the old list to get the new list
+     */
+    static <E> ListDiff<E> diff(PersistentList<E> oldList, PersistentList<E> newList) {
+        return ListDiff.between(oldList, newList);
+    }
+
     /**
      * Creates an persistent list from the specified array.
      *
@@ -107,6 +122,7 @@ public interface PersistentList<E> extends PersistentCollection<E>, ImmutableLis
     PersistentList<E> insertAt(int index, E element);
     PersistentList<E> insertAllAt(int index, Iterator<? extends E> elements);
     PersistentList<E> removeAt(int index);
+    @Override Builder<E> builder();
 
     interface Builder<E> extends MutableList<E>, PersistentCollection.Builder<E> {
         @Override PersistentList<E> build();
@@ -0,0 +1,138 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.MapView;
+import mb.util.collections.mutable.MutableMap;
+
+import java.util.Map;
+
+/**
+ * A persistent map.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public interface PersistentMap<K, V> extends ImmutableMap<K, V> {
+
+    /**
+     * Creates an empty persistent map.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent map
+     */
+    static <K, V> PersistentMap<K, V> of() {
+        return PersistentHashMap.empty(EqualityComparator.getDefault());
+    }
+
+    /**
+     * Creates an empty persistent map that compares its keys using the specified comparator.
+     *
+     * @param comparator the equality comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent map
+     */
+    static <K, V> PersistentMap<K, V> withComparator(EqualityComparator<? super K> comparator) {
+        return PersistentHashMap.empty(comparator);
+    }
+
+    /**
+     * Creates an empty persistent map that iterates over its entries in insertion order.
+     *
+     * Replacing the value of a key keeps its position; removing and re-adding a key moves it to the end.
+     * Lookups take the same time as in a hash map, and insertions and removals take logarithmic time.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent map
+     */
+    static <K, V> PersistentMap<K, V> insertionOrdered() {
+        return PersistentLinkedHashMap.empty(EqualityComparator.getDefault());
+    }
+
+    /**
+     * Creates a singleton persistent map.
+     *
+     * @param key the key of the entry in the map
+     * @param value the value of the entry in the map
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent map
+     */
+    static <K, V> PersistentMap<K, V> of(K key, V value) {
+        return PersistentMap.<K, V>of().put(key, value);
+    }
+
+    /**
+     * Creates a persistent map by copying the entries from the specified map.
+     *
+     * Changes to the input map are not reflected in this map.
+     *
+     * @param map the map whose entries to include
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent map
+     */
+    static <K, V> PersistentMap<K, V> from(Map<? extends K, ? extends V> map) {
+        return PersistentMap.<K, V>of().putAll(map);
+    }
+
+    /**
+     * Creates a persistent map by copying the entries from the specified map.
+     *
+     * Changes to the input map are not reflected in this map.
+     *
+     * @param map the map whose entries to include
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> from(MapView<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap<?, ?>) {
+            // When the map is a persistent map we can just return it.
+            return (PersistentMap<K, V>)map;
+        } else {
+            // Otherwise, we copy the entries into a persistent map.
+            return PersistentMap.<K, V>of().putAll(map);
+        }
+    }
+
+    /**
+     * Computes the difference between two persistent maps.
+     *
+     * When both maps are hash tries with the same comparator, this skips the sub-tries
+     * that the maps share, so it takes time proportional to the number of changes
+     * rather than to the size of the maps.
+     *
+     * @param oldMap the old version of the map
+     * @param newMap the new version of the map
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the difference, which can be applied to the old map to get the new map
+     */
+    static <K, V> MapDiff<K, V> diff(PersistentMap<K, V> oldMap, PersistentMap<K, V> newMap) {
+        return MapDiff.between(oldMap, newMap);
+    }
+
+    PersistentMap<K, V> put(K key, V value);
+    PersistentMap<K, V> putAll(Map<? extends K, ? extends V> map);
+    PersistentMap<K, V> putAll(MapView<? extends K, ? extends V> map);
+    PersistentMap<K, V> remove(K key);
+    PersistentMap<K, V> removeAll(Iterable<? extends K> keys);
+    PersistentMap<K, V> retainAll(Iterable<? extends K> keys);
+    PersistentMap<K, V> clear();
+
+    /**
+     * Creates a builder that is initialized with the entries of this map.
+     *
+     * @return the builder
+     */
+    Builder<K, V> builder();
+
+    interface Builder<K, V> extends MutableMap<K, V> {
+        PersistentMap<K, V> build();
+    }
+
+}
@@ -0,0 +1,96 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+
+/**
+ * A persistent many-to-many relation between keys and values.
+ *
+ * A relation is a multimap that can also be queried from values to keys. It keeps an index from keys
+ * to values and an index from values to keys, and each operation updates both indexes.
+ * The {@link #inverse()} of a relation is obtained in constant time, by swapping the indexes.
+ *
+ * Implementations of this interface are immutable and thread-safe.
+ *
+ * @param <K> the type of keys in the relation
+ * @param <V> the type of values in the relation
+ */
+public interface PersistentRelation<K, V> extends PersistentSetMultimap<K, V> {
+
+    /**
+     * Creates an empty persistent relation.
+     *
+     * @param <K> the type of keys in the relation
+     * @param <V> the type of values in the relation
+     * @return the persistent relation
+     */
+    static <K, V> PersistentRelation<K, V> of() {
+        return PersistentHashRelation.empty(EqualityComparator.getDefault(), EqualityComparator.getDefault());
+    }
+
+    /**
+     * Creates an empty persistent relation that compares its keys and values using the specified comparators.
+     *
+     * @param keyComparator the equality comparator of the keys
+     * @param valueComparator the equality comparator of the values
+     * @param <K> the type of keys in the relation
+     * @param <V> the type of values in the relation
+     * @return the persistent relation
+     */
+    static <K, V> PersistentRelation<K, V> withComparators(EqualityComparator<? super K> keyComparator, EqualityComparator<? super V> valueComparator) {
+        return PersistentHashRelation.empty(keyComparator, valueComparator);
+    }
+
+    /**
+     * Gets the number of distinct values in the relation.
+     *
+     * @return the number of values
+     */
+    int valueCount();
+
+    /**
+     * Determines whether any key is associated with the specified value.
+     *
+     * @param value the value to check
+     * @return {@code true} when the relation contains the value; otherwise, {@code false}
+     */
+    boolean containsValue(Object value);
+
+    /**
+     * Gets the keys associated with the specified value.
+     *
+     * @param value the value to look for
+     * @return the set of keys, which is empty when the relation does not contain the value
+     */
+    PersistentSet<K> getKeys(Object value);
+
+    /**
+     * Gets the distinct values in the relation.
+     *
+     * @return an iterable over the values
+     */
+    Iterable<V> values();
+
+    /**
+     * Gets the inverse of this relation, which maps the values to the keys.
+     *
+     * This takes constant time.
+     *
+     * @return the inverse relation
+     */
+    PersistentRelation<V, K> inverse();
+
+    /**
+     * Returns a relation in which the specified value is not associated with any key.
+     *
+     * @param value the value
+     * @return the resulting relation
+     */
+    PersistentRelation<K, V> removeAllKeys(V value);
+
+    @Override PersistentRelation<K, V> put(K key, V value);
+    @Override PersistentRelation<K, V> putAll(K key, Iterable<? extends V> values);
+    @Override PersistentRelation<K, V> remove(K key, V value);
+    @Override PersistentRelation<K, V> removeAll(K key);
+    @Override PersistentRelation<K, V> clear();
+
+}
@@ -1,17 +1,19 @@
 package mb.util.collections.immutable;
 
-import mb.util.collections.mutable.MutableList;
+import mb.util.EqualityComparator;
+import mb.util.collections.mutable.MutableSet;
 
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
- * A persistent list.
+ * A persistent set.
  *
- * @param <E> the type of elements in the list
+ * @param <E> the type of elements in the set
  */
-public interface PersistentSet<E> extends PersistentCollection<E>, ImmutableList<E> {
+public interface PersistentSet<E> extends PersistentCollection<E>, ImmutableSet<E> {
 
     /**
      * Creates an empty persistent set.
@@ -20,8 +22,30 @@ public interface PersistentSet<E> extends PersistentCollection<E>, ImmutableList
      * @return the persistent set
      */
     static <E> PersistentSet<E> of() {
-        // We can return a special empty implementation.
-        throw new UnsupportedOperationException();
+        return PersistentHashSet.empty(EqualityComparator.getDefault());
+    }
+
+    /**
+     * Creates an empty persistent set that compares its elements using the specified comparator.
+     *
+     * @param comparator the equality comparator of the elements
+     * @param <E> the type of elements in the set
+     * @return the persistent set
+     */
+    static <E> PersistentSet<E> withComparator(EqualityComparator<? super E> comparator) {
+        return PersistentHashSet.empty(comparator);
+    }
+
+    /**
+     * Creates an empty persistent set that iterates over its elements in insertion order.
+     *
+     * Lookups take the same time as in a hash set, and insertions and removals take logarithmic time.
+     *
+     * @param <E> the type of elements in the set
+     * @return the persistent set
+     */
+    static <E> PersistentSet<E> insertionOrdered() {
+        return PersistentLinkedHashSet.empty(EqualityComparator.getDefault());
     }
 
     /**
@@ -32,8 +56,7 @@ public interface PersistentSet<E> extends PersistentCollection<E>, ImmutableList
      * @return the persistent set
      */
     static <E> PersistentSet<E> of(E element) {
-        // We can return a special singleton implementation.
-        throw new UnsupportedOperationException();
+        return PersistentSet.<E>of().add(element);
     }
 
     /**
@@ -43,7 +66,7 @@ public interface PersistentSet<E> extends PersistentCollection<E>, ImmutableList
      * @param <E> the type of elements in the set
      * @return the persistent set
      */
-    @SafeVarargs static <E> PersistentSet<E> of(E... elements) {
+    @SafeVarargs @SuppressWarnings("varargs") static <E> PersistentSet<E> of(E... elements) {
         if (elements.length == 0) {
             // When the array is empty, we can just return the empty set,
             // because the input array cannot be modified and the fact that it
@@ -51,8 +74,7 @@ public interface PersistentSet<E> extends PersistentCollection<E>, ImmutableList
             return of();
         } else {
             // Otherwise, we copy the elements into a persistent set.
-            // TODO:
-            throw new UnsupportedOperationException();
+            return PersistentSet.<E>of().addAll(Arrays.asList(elements));
         }
     }
 
@@ -76,8 +98,7 @@ public interface PersistentSet<E> extends PersistentCollection<E>, ImmutableList
             return from((Set<E>)elements);
         } else {
             // Otherwise, we copy the elements into a persistent set.
-            // TODO:
-            throw new UnsupportedOperationException();
+            return PersistentSet.<E>of().addAll(elements);
         }
     }
 
@@ -97,17 +118,38 @@ public interface PersistentSet<E> extends PersistentCollection<E>, ImmutableList
             return (PersistentSet<E>)set;
         } else {
             // Otherwise, we copy the elements into a persistent set.
-            // TODO:
-            throw new UnsupportedOperationException();
+            return PersistentSet.<E>of().addAll(set);
         }
     }
 
-    PersistentSet<E> set(int index, E element);
-    PersistentSet<E> insertAt(int index, E element);
-    PersistentSet<E> insertAllAt(int index, Iterator<? extends E> elements);
-    PersistentSet<E> removeAt(int index);
+    /**
+     * Computes the difference between two persistent sets.
+     *
+     * When both sets are hash tries with the same comparator, this skips the sub-tries
+     * that the sets share, so it takes time proportional to the number of changes
+     * rather than to the size of the sets.
+     *
+     * @param oldSet the old version of the set
+     * @param newSet the new version of the set
+     * @param <E> the type of elements in the set
+     * @return the difference, which can be applied to the old set to get the new set
+     */
+    static <E> SetDiff<E> diff(PersistentSet<E> oldSet, PersistentSet<E> newSet) {
+        return SetDiff.between(oldSet, newSet);
+    }
+
+    @Override PersistentSet<E> add(E element);
+    @Override PersistentSet<E> addAll(Iterable<? extends E> elements);
+    @Override PersistentSet<E> remove(E element);
+    @Override PersistentSet<E> removeAll(Iterable<? extends E> elements);
+    @Override PersistentSet<E> retainAll(Iterable<? extends E> elements);
+    @Override PersistentSet<E> removeAllWhere(Predicate<E> predicate);
+    @Override PersistentSet<E> retainAllWhere(Predicate<E> predicate);
+    @Override PersistentSet<E> replaceAll(UnaryOperator<E> operator);
+    @Override PersistentSet<E> clear();
+    @Override Builder<E> builder();
 
-    interface Builder<E> extends MutableList<E>, PersistentCollection.Builder<E> {
+    interface Builder<E> extends MutableSet<E>, PersistentCollection.Builder<E> {
         @Override
         PersistentSet<E> build();
     }
@@ -0,0 +1,173 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A persistent multimap that associates each key with a set of values.
+ *
+ * The multimap is a set of key-value pairs: iterating over it returns each pair once,
+ * and its {@link #size()} is the number of pairs. A key is in the multimap
+ * when it is associated with at least one value.
+ *
+ * Two multimaps are equal when they contain the same pairs.
+ * The hash code of a multimap is the sum of the hash codes of its pairs,
+ * as given by {@link Map.Entry#hashCode()}.
+ *
+ * Implementations of this interface are immutable and thread-safe.
+ *
+ * @param <K> the type of keys in the multimap
+ * @param <V> the type of values in the multimap
+ */
+public interface PersistentSetMultimap<K, V> extends Iterable<Map.Entry<K, V>>, Serializable {
+
+    /**
+     * Creates an empty persistent multimap.
+     *
+     * @param <K> the type of keys in the multimap
+     * @param <V> the type of values in the multimap
+     * @return the persistent multimap
+     */
+    static <K, V> PersistentSetMultimap<K, V> of() {
+        return PersistentHashSetMultimap.empty(EqualityComparator.getDefault(), EqualityComparator.getDefault());
+    }
+
+    /**
+     * Creates an empty persistent multimap that compares its keys and values using the specified comparators.
+     *
+     * @param keyComparator the equality comparator of the keys
+     * @param valueComparator the equality comparator of the values
+     * @param <K> the type of keys in the multimap
+     * @param <V> the type of values in the multimap
+     * @return the persistent multimap
+     */
+    static <K, V> PersistentSetMultimap<K, V> withComparators(EqualityComparator<? super K> keyComparator, EqualityComparator<? super V> valueComparator) {
+        return PersistentHashSetMultimap.empty(keyComparator, valueComparator);
+    }
+
+    /**
+     * Gets the number of key-value pairs in the multimap.
+     *
+     * @return the number of pairs
+     */
+    int size();
+
+    /**
+     * Gets the number of distinct keys in the multimap.
+     *
+     * @return the number of keys
+     */
+    int keyCount();
+
+    /**
+     * Gets whether the multimap is empty.
+     *
+     * @return {@code true} when the multimap is empty; otherwise, {@code false}
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets the equality comparator used to compare the keys in this multimap.
+     *
+     * @return the equality comparator of the keys
+     */
+    EqualityComparator<? super K> getKeyComparator();
+
+    /**
+     * Gets the equality comparator used to compare the values in this multimap.
+     *
+     * @return the equality comparator of the values
+     */
+    EqualityComparator<? super V> getValueComparator();
+
+    /**
+     * Determines whether the multimap associates the specified key with any value.
+     *
+     * @param key the key to check
+     * @return {@code true} when the multimap contains the key; otherwise, {@code false}
+     */
+    boolean containsKey(Object key);
+
+    /**
+     * Determines whether the multimap associates the specified key with the specified value.
+     *
+     * @param key the key to check
+     * @param value the value to check
+     * @return {@code true} when the multimap contains the pair; otherwise, {@code false}
+     */
+    boolean containsEntry(Object key, Object value);
+
+    /**
+     * Gets the values associated with the specified key.
+     *
+     * @param key the key to look for
+     * @return the set of values, which is empty when the multimap does not contain the key
+     */
+    PersistentSet<V> get(Object key);
+
+    /**
+     * Gets the distinct keys in the multimap.
+     *
+     * @return an iterable over the keys
+     */
+    Iterable<K> keys();
+
+    /**
+     * Performs the specified action for each key-value pair in the multimap.
+     *
+     * @param action the action to perform
+     */
+    default void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Map.Entry<K, V> entry : this) {
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns a multimap in which the specified key is also associated with the specified value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the resulting multimap
+     */
+    PersistentSetMultimap<K, V> put(K key, V value);
+
+    /**
+     * Returns a multimap in which the specified key is also associated with the specified values.
+     *
+     * @param key the key
+     * @param values the values
+     * @return the resulting multimap
+     */
+    PersistentSetMultimap<K, V> putAll(K key, Iterable<? extends V> values);
+
+    /**
+     * Returns a multimap in which the specified key is no longer associated with the specified value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the resulting multimap
+     */
+    PersistentSetMultimap<K, V> remove(K key, V value);
+
+    /**
+     * Returns a multimap in which the specified key is not associated with any value.
+     *
+     * @param key the key
+     * @return the resulting multimap
+     */
+    PersistentSetMultimap<K, V> removeAll(K key);
+
+    /**
+     * Returns an empty multimap with the same comparators.
+     *
+     * @return the empty multimap
+     */
+    PersistentSetMultimap<K, V> clear();
+
+}
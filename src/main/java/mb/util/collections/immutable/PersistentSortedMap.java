@@ -0,0 +1,189 @@
+package mb.util.collections.immutable;
+
+import mb.util.collections.MapView;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A persistent map whose keys are sorted.
+ *
+ * The keys are ordered and compared by the map's {@link #comparator()}:
+ * two keys are equal when the comparator returns 0.
+ * Besides the map operations, a sorted map supports access by index (select),
+ * finding the index of a key (rank), and range views, all in logarithmic time.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public interface PersistentSortedMap<K, V> extends PersistentMap<K, V> {
+
+    /**
+     * Creates an empty persistent sorted map that orders its keys according to their natural ordering.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent sorted map
+     */
+    static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> of() {
+        return PersistentTreeMap.empty(Comparator.<K>naturalOrder());
+    }
+
+    /**
+     * Creates an empty persistent sorted map that orders its keys using the specified comparator.
+     *
+     * @param comparator the comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent sorted map
+     */
+    static <K, V> PersistentSortedMap<K, V> withComparator(Comparator<? super K> comparator) {
+        return PersistentTreeMap.empty(comparator);
+    }
+
+    /**
+     * Creates a persistent sorted map that orders its keys using the specified comparator,
+     * by copying the entries from the specified map.
+     *
+     * This sorts the entries, so it takes O(n log n) time.
+     *
+     * @param map the map whose entries to include
+     * @param comparator the comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent sorted map
+     */
+    static <K, V> PersistentSortedMap<K, V> from(Map<? extends K, ? extends V> map, Comparator<? super K> comparator) {
+        return PersistentTreeMap.from(map.entrySet(), comparator, false);
+    }
+
+    /**
+     * Creates a persistent sorted map that orders its keys using the specified comparator,
+     * by copying the sorted entries from the specified iterable.
+     *
+     * This builds the map in O(n) time.
+     *
+     * @param entries the entries, in strictly increasing order of their keys
+     * @param comparator the comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent sorted map
+     * @throws IllegalArgumentException the keys are not in strictly increasing order
+     */
+    static <K, V> PersistentSortedMap<K, V> fromSorted(Iterable<? extends Map.Entry<? extends K, ? extends V>> entries, Comparator<? super K> comparator) {
+        return PersistentTreeMap.from(entries, comparator, true);
+    }
+
+    /**
+     * Gets the comparator that orders the keys.
+     *
+     * @return the comparator
+     */
+    Comparator<? super K> comparator();
+
+    /**
+     * Gets the least key.
+     *
+     * @return the least key
+     * @throws NoSuchElementException the map is empty
+     */
+    K firstKey();
+
+    /**
+     * Gets the greatest key.
+     *
+     * @return the greatest key
+     * @throws NoSuchElementException the map is empty
+     */
+    K lastKey();
+
+    /**
+     * Gets the entry at the specified index in the sorted order.
+     *
+     * This takes logarithmic time.
+     *
+     * @param index the zero-based index
+     * @return the entry at the index
+     * @throws IndexOutOfBoundsException the index is out of range
+     */
+    Map.Entry<K, V> getEntry(int index);
+
+    /**
+     * Gets the index of the specified key in the sorted order.
+     *
+     * This takes logarithmic time.
+     *
+     * @param key the key to look for
+     * @return the zero-based index of the key; or -1 when the map doesn't contain the key
+     */
+    int indexOfKey(Object key);
+
+    /**
+     * Gets the sorted set of keys of this map.
+     *
+     * This takes constant time, and the set shares its structure with this map.
+     *
+     * @return the set of keys
+     */
+    ImmutableSortedSet<K> keySet();
+
+    /**
+     * Gets the entries whose keys are less than the specified key.
+     *
+     * This takes logarithmic time, and the resulting map shares most of its structure with this map.
+     *
+     * @param toKey the upper bound, exclusive
+     * @return the map of entries with keys less than the bound
+     */
+    PersistentSortedMap<K, V> headMap(K toKey);
+
+    /**
+     * Gets the entries whose keys are greater than or equal to the specified key.
+     *
+     * This takes logarithmic time, and the resulting map shares most of its structure with this map.
+     *
+     * @param fromKey the lower bound, inclusive
+     * @return the map of entries with keys greater than or equal to the bound
+     */
+    PersistentSortedMap<K, V> tailMap(K fromKey);
+
+    /**
+     * Gets the entries whose keys are in the specified range.
+     *
+     * This takes logarithmic time, and the resulting map shares most of its structure with this map.
+     *
+     * @param fromKey the lower bound, inclusive
+     * @param toKey the upper bound, exclusive
+     * @return the map of entries with keys in the range
+     */
+    PersistentSortedMap<K, V> subMap(K fromKey, K toKey);
+
+    /**
+     * Returns this map.
+     *
+     * A sorted map already looks up its keys in logarithmic time using its comparator,
+     * which a hash-based frozen map cannot use, so freezing a sorted map doesn't copy it.
+     *
+     * @return this map
+     */
+    @Override
+    default PersistentSortedMap<K, V> freeze() {
+        return this;
+    }
+
+    @Override PersistentSortedMap<K, V> put(K key, V value);
+    @Override PersistentSortedMap<K, V> putAll(Map<? extends K, ? extends V> map);
+    @Override PersistentSortedMap<K, V> putAll(MapView<? extends K, ? extends V> map);
+    @Override PersistentSortedMap<K, V> remove(K key);
+    @Override PersistentSortedMap<K, V> removeAll(Iterable<? extends K> keys);
+    @Override PersistentSortedMap<K, V> retainAll(Iterable<? extends K> keys);
+    @Override PersistentSortedMap<K, V> clear();
+    @Override Builder<K, V> builder();
+
+    interface Builder<K, V> extends PersistentMap.Builder<K, V> {
+        @Override
+        PersistentSortedMap<K, V> build();
+    }
+
+}
@@ -0,0 +1,532 @@
+package mb.util.collections.immutable;
+
+import mb.util.collections.MapView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * A persistent sorted map implemented as a B-tree.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+/* package private */ final class PersistentTreeMap<K, V> implements PersistentSortedMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty map that uses the natural ordering. */
+    private static final PersistentTreeMap<?, ?> EMPTY = new PersistentTreeMap<>(BTreeNode.EMPTY, Comparator.naturalOrder());
+
+    /** The root of the tree. */
+    /* package private */ final BTreeNode root;
+    /** The comparator of the keys. */
+    private final Comparator<? super K> comparator;
+
+    private PersistentTreeMap(BTreeNode root, Comparator<? super K> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Gets an empty map.
+     *
+     * @param comparator the comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <K, V> PersistentTreeMap<K, V> empty(Comparator<? super K> comparator) {
+        if (comparator == Comparator.naturalOrder()) {
+            return (PersistentTreeMap<K, V>)EMPTY;
+        } else {
+            return new PersistentTreeMap<>(BTreeNode.EMPTY, comparator);
+        }
+    }
+
+    /**
+     * Creates a map from the specified entries.
+     *
+     * @param entries the entries
+     * @param comparator the comparator of the keys
+     * @param sorted whether the entries are in strictly increasing order of their keys;
+     * otherwise, they are sorted, and of the entries with equal keys the last one is kept
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the map
+     * @throws IllegalArgumentException the entries are not sorted, but {@code sorted} is {@code true}
+     */
+    /* package private */ static <K, V> PersistentTreeMap<K, V> from(Iterable<? extends Map.Entry<? extends K, ? extends V>> entries, Comparator<? super K> comparator, boolean sorted) {
+        List<Object> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (Map.Entry<? extends K, ? extends V> entry : entries) {
+            keys.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+        return from(keys.toArray(), values.toArray(), keys.size(), comparator, sorted);
+    }
+
+    /**
+     * Creates a map from the specified keys and values.
+     *
+     * @param keys the keys, which may be sorted in place
+     * @param values the values, which may be sorted in place
+     * @param size the number of entries
+     * @param comparator the comparator of the keys
+     * @param sorted whether the keys are in strictly increasing order
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the map
+     */
+    /* package private */ static <K, V> PersistentTreeMap<K, V> from(Object[] keys, Object[] values, int size, Comparator<? super K> comparator, boolean sorted) {
+        if (size == 0) return empty(comparator);
+        @SuppressWarnings("unchecked")
+        Comparator<Object> objectComparator = (Comparator<Object>)comparator;
+        int count = size;
+        if (sorted) {
+            BTreeNode.checkSorted(keys, size, objectComparator);
+        } else {
+            count = BTreeNode.sortDistinct(keys, values, size, objectComparator);
+        }
+        return new PersistentTreeMap<>(BTreeNode.fromSorted(keys, values, count), comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparator<Object> objectComparator() {
+        return (Comparator<Object>)this.comparator;
+    }
+
+    /**
+     * Returns a map with the specified tree, or this map when the tree didn't change.
+     *
+     * @param root the root of the tree
+     * @return the resulting map
+     */
+    private PersistentTreeMap<K, V> withRoot(BTreeNode root) {
+        if (root == this.root) return this;
+        return new PersistentTreeMap<>(root, this.comparator);
+    }
+
+    @Override
+    public int size() {
+        return this.root.size();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return indexOfKey(key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(@Nullable Object key) {
+        if (key == null || size() == 0) return null;
+        try {
+            BTreeNode.Leaf leaf = BTreeNode.leafOf(this.root, key, objectComparator());
+            int slot = Arrays.binarySearch(leaf.keys, key, objectComparator());
+            //noinspection unchecked,ConstantConditions
+            return slot >= 0 ? (V)leaf.values[slot] : null;
+        } catch (ClassCastException ex) {
+            // The key is of the wrong type, so it is not in the map.
+            return null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K firstKey() {
+        return (K)BTreeNode.firstKey(this.root);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K lastKey() {
+        return (K)BTreeNode.lastKey(this.root);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map.Entry<K, V> getEntry(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        int[] slot = new int[1];
+        BTreeNode.Leaf leaf = BTreeNode.leafAt(this.root, index, slot);
+        //noinspection unchecked,ConstantConditions
+        return new AbstractMap.SimpleImmutableEntry<>((K)leaf.keys[slot[0]], (V)leaf.values[slot[0]]);
+    }
+
+    @Override
+    public int indexOfKey(@Nullable Object key) {
+        if (key == null || size() == 0) return -1;
+        try {
+            return Math.max(BTreeNode.indexOf(this.root, key, objectComparator()), -1);
+        } catch (ClassCastException ex) {
+            // The key is of the wrong type, so it is not in the map.
+            return -1;
+        }
+    }
+
+    @Override
+    public ImmutableSortedSet<K> keySet() {
+        return new ImmutableTreeSet<>(this.root, this.comparator);
+    }
+
+    @Override
+    public PersistentTreeMap<K, V> headMap(K toKey) {
+        return withRoot(BTreeNode.slice(this.root, 0, boundIndexOf(toKey)));
+    }
+
+    @Override
+    public PersistentTreeMap<K, V> tailMap(K fromKey) {
+        return withRoot(BTreeNode.slice(this.root, boundIndexOf(fromKey), size()));
+    }
+
+    @Override
+    public PersistentTreeMap<K, V> subMap(K fromKey, K toKey) {
+        if (this.comparator.compare(fromKey, toKey) > 0)
+            throw new IllegalArgumentException("The lower bound " + fromKey + " is greater than the upper bound " + toKey + ".");
+        return withRoot(BTreeNode.slice(this.root, boundIndexOf(fromKey), boundIndexOf(toKey)));
+    }
+
+    /**
+     * Gets the number of keys that are less than the specified bound.
+     */
+    private int boundIndexOf(K bound) {
+        int index = BTreeNode.indexOf(this.root, bound, objectComparator());
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new BTreeNode.EntryIterator<Map.Entry<K, V>>(this.root, 0, size()) {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected Map.Entry<K, V> getElement(Object key, @Nullable Object value) {
+                return new AbstractMap.SimpleImmutableEntry<>((K)key, (V)value);
+            }
+        };
+    }
+
+    @Override
+    public PersistentTreeMap<K, V> put(K key, V value) {
+        Objects.requireNonNull(key);
+        return withRoot(BTreeNode.put(this.root, key, value, objectComparator(), new BTreeNode.Change()));
+    }
+
+    @Override
+    public PersistentTreeMap<K, V> putAll(Map<? extends K, ? extends V> map) {
+        if (size() == 0 && !map.isEmpty()) {
+            // Happy path: we can bulk load the entries.
+            return from(map.entrySet(), this.comparator, false);
+        }
+        BTreeNode.Change change = new BTreeNode.Change();
+        BTreeNode newRoot = this.root;
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            K key = Objects.requireNonNull(entry.getKey());
+            newRoot = BTreeNode.put(newRoot, key, entry.getValue(), objectComparator(), change);
+        }
+        return withRoot(newRoot);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentTreeMap<K, V> putAll(MapView<? extends K, ? extends V> map) {
+        if (size() == 0 && map instanceof PersistentTreeMap<?, ?> && ((PersistentTreeMap<?, ?>)map).comparator == this.comparator) {
+            // Happy path: the map has the same ordering, so we can just return it.
+            return (PersistentTreeMap<K, V>)map;
+        }
+        BTreeNode.Change change = new BTreeNode.Change();
+        BTreeNode newRoot = this.root;
+        for (Map.Entry<? extends K, ? extends V> entry : map) {
+            K key = Objects.requireNonNull(entry.getKey());
+            newRoot = BTreeNode.put(newRoot, key, entry.getValue(), objectComparator(), change);
+        }
+        return withRoot(newRoot);
+    }
+
+    @Override
+    public PersistentTreeMap<K, V> remove(K key) {
+        if (key == null || size() == 0) return this;
+        return withRoot(BTreeNode.remove(this.root, key, objectComparator(), new BTreeNode.Change()));
+    }
+
+    @Override
+    public PersistentTreeMap<K, V> removeAll(Iterable<? extends K> keys) {
+        BTreeNode.Change change = new BTreeNode.Change();
+        BTreeNode newRoot = this.root;
+        for (K key : keys) {
+            if (newRoot.size() == 0) break;
+            if (key == null) continue;
+            newRoot = BTreeNode.remove(newRoot, key, objectComparator(), change);
+        }
+        return withRoot(newRoot);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentTreeMap<K, V> retainAll(Iterable<? extends K> keys) {
+        // We sort the keys to retain, and then rebuild the tree from the retained entries in linear time.
+        ImmutableTreeSet<K> retained;
+        if (keys instanceof ImmutableTreeSet<?> && ((ImmutableTreeSet<?>)keys).comparator() == this.comparator) {
+            retained = (ImmutableTreeSet<K>)keys;
+        } else {
+            Object[] array = ImmutableTreeSet.toArray(keys);
+            retained = ImmutableTreeSet.from(array, array.length, this.comparator);
+        }
+        Object[] newKeys = new Object[Math.min(size(), retained.size())];
+        Object[] newValues = new Object[newKeys.length];
+        int count = 0;
+        for (Map.Entry<K, V> entry : this) {
+            if (!retained.contains(entry.getKey())) continue;
+            newKeys[count] = entry.getKey();
+            newValues[count] = entry.getValue();
+            count += 1;
+        }
+        if (count == size()) return this;
+        return new PersistentTreeMap<>(BTreeNode.fromSorted(newKeys, newValues, count), this.comparator);
+    }
+
+    @Override
+    public PersistentTreeMap<K, V> clear() {
+        return empty(this.comparator);
+    }
+
+    @Override
+    public PersistentSortedMap.Builder<K, V> builder() {
+        return new MapBuilder<>(this);
+    }
+
+    @Override
+    public Map<K, V> asUnmodifiable() {
+        return new AsMap<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof PersistentTreeMap<?, ?> && ((PersistentTreeMap<?, ?>)obj).root == this.root
+            && ((PersistentTreeMap<?, ?>)obj).comparator == this.comparator) {
+            // Happy path: the maps share their tree.
+            return true;
+        }
+        Map<?, ?> other;
+        if (obj instanceof Map<?, ?>) {
+            other = (Map<?, ?>)obj;
+        } else if (obj instanceof MapView<?, ?>) {
+            other = ((MapView<?, ?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != size()) return false;
+        for (Map.Entry<?, ?> entry : other.entrySet()) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            if (!Objects.equals(get(key), value) || (value == null && !containsKey(key))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractMap implementation.
+        int hashCode = 0;
+        for (Map.Entry<K, V> entry : this) {
+            hashCode += entry.hashCode();
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return asUnmodifiable().toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        return SerializationProxy.of(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required.");
+    }
+
+    /**
+     * A map that views a persistent sorted map.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    private static final class AsMap<K, V> extends AbstractMap<K, V> {
+
+        private final PersistentTreeMap<K, V> map;
+
+        private AsMap(PersistentTreeMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return this.map.get(key);
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return AsMap.this.map.size();
+                }
+
+                @NotNull
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return AsMap.this.map.iterator();
+                }
+            };
+        }
+
+    }
+
+    /**
+     * A builder for a persistent sorted map.
+     *
+     * Each modification updates the persistent map held by this builder. Since the map is persistent,
+     * the builder's iterators iterate over the map as it was when the iterator was created.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    private static final class MapBuilder<K, V> extends AbstractMap<K, V> implements PersistentSortedMap.Builder<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private PersistentTreeMap<K, V> map;
+
+        private MapBuilder(PersistentTreeMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public PersistentTreeMap<K, V> build() {
+            return this.map;
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public @Nullable V get(@Nullable Object key) {
+            return this.map.get(key);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V put(K key, V value) {
+            Objects.requireNonNull(key);
+            BTreeNode.Change change = new BTreeNode.Change();
+            this.map = this.map.withRoot(BTreeNode.put(this.map.root, key, value, this.map.objectComparator(), change));
+            return (V)change.oldValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V remove(Object key) {
+            if (key == null || this.map.size() == 0) return null;
+            BTreeNode.Change change = new BTreeNode.Change();
+            try {
+                this.map = this.map.withRoot(BTreeNode.remove(this.map.root, key, this.map.objectComparator(), change));
+            } catch (ClassCastException ex) {
+                // The key is of the wrong type, so it is not in the map.
+                return null;
+            }
+            return (V)change.oldValue;
+        }
+
+        @Override
+        public void clear() {
+            this.map = this.map.clear();
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            Iterator<Entry<K, V>> iterator = this.map.iterator();
+            return new Iterator<Entry<K, V>>() {
+                @Nullable private Entry<K, V> current;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Entry<K, V> next() {
+                    this.current = iterator.next();
+                    return this.current;
+                }
+
+                @Override
+                public void remove() {
+                    if (this.current == null) throw new IllegalStateException();
+                    MapBuilder.this.remove(this.current.getKey());
+                    this.current = null;
+                }
+            };
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return MapBuilder.this.size();
+                }
+
+                @NotNull
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return MapBuilder.this.iterator();
+                }
+            };
+        }
+
+        @Override
+        public Map<K, V> asUnmodifiable() {
+            return Collections.unmodifiableMap(this);
+        }
+
+    }
+
+}
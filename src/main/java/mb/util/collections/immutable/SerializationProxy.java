@@ -0,0 +1,503 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * The serialized form of the persistent collection implementations in this package.
+ *
+ * The shape of a hash trie depends on the hash codes of its keys, which may differ
+ * between runs of the JVM (e.g., for objects that use the identity hash code).
+ * Therefore, instead of serializing the nodes of the trie, the collections replace themselves
+ * by this proxy. The proxy writes a compact tagged stream: a one-byte tag, the comparator,
+ * the number of entries as a variable-length integer, and the entries.
+ * On deserialization the proxy rebuilds the trie. The sorted collections write their entries in order,
+ * so that their trees can be bulk loaded in linear time.
+ */
+/* package private */ final class SerializationProxy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Tag for a persistent hash set. */
+    private static final int TAG_HASH_SET = 0;
+    /** Tag for a persistent hash map. */
+    private static final int TAG_HASH_MAP = 1;
+    /** Tag for an immutable sorted set. */
+    private static final int TAG_TREE_SET = 2;
+    /** Tag for a persistent sorted map. */
+    private static final int TAG_TREE_MAP = 3;
+    /** Tag for a persistent hash bag. */
+    private static final int TAG_HASH_BAG = 4;
+    /** Tag for a persistent hash multimap. */
+    private static final int TAG_HASH_MULTIMAP = 5;
+    /** Tag for a persistent hash relation. */
+    private static final int TAG_HASH_RELATION = 6;
+    /** Tag for a persistent insertion-ordered map. */
+    private static final int TAG_LINKED_HASH_MAP = 7;
+    /** Tag for a persistent insertion-ordered set. */
+    private static final int TAG_LINKED_HASH_SET = 8;
+    /** Tag for a frozen hash set. */
+    private static final int TAG_FROZEN_SET = 9;
+    /** Tag for a frozen hash map. */
+    private static final int TAG_FROZEN_MAP = 10;
+
+    /** The largest number of objects for which an array is allocated before they are read. */
+    private static final int INITIAL_READ_CAPACITY = 1024;
+
+    /** The collection to write, or that was read. */
+    private transient Object collection;
+
+    private SerializationProxy(Object collection) {
+        this.collection = collection;
+    }
+
+    /**
+     * Creates the serialized form of the specified set.
+     *
+     * @param set the set to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(PersistentHashSet<?> set) {
+        return new SerializationProxy(set);
+    }
+
+    /**
+     * Creates the serialized form of the specified map.
+     *
+     * @param map the map to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(PersistentHashMap<?, ?> map) {
+        return new SerializationProxy(map);
+    }
+
+    /**
+     * Creates the serialized form of the specified sorted set.
+     *
+     * @param set the set to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(ImmutableTreeSet<?> set) {
+        return new SerializationProxy(set);
+    }
+
+    /**
+     * Creates the serialized form of the specified sorted map.
+     *
+     * @param map the map to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(PersistentTreeMap<?, ?> map) {
+        return new SerializationProxy(map);
+    }
+
+    /**
+     * Creates the serialized form of the specified bag.
+     *
+     * @param bag the bag to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(PersistentHashBag<?> bag) {
+        return new SerializationProxy(bag);
+    }
+
+    /**
+     * Creates the serialized form of the specified multimap.
+     *
+     * @param multimap the multimap to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(PersistentHashSetMultimap<?, ?> multimap) {
+        return new SerializationProxy(multimap);
+    }
+
+    /**
+     * Creates the serialized form of the specified relation.
+     *
+     * @param relation the relation to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(PersistentHashRelation<?, ?> relation) {
+        return new SerializationProxy(relation);
+    }
+
+    /**
+     * Creates the serialized form of the specified insertion-ordered map.
+     *
+     * @param map the map to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(PersistentLinkedHashMap<?, ?> map) {
+        return new SerializationProxy(map);
+    }
+
+    /**
+     * Creates the serialized form of the specified insertion-ordered set.
+     *
+     * @param set the set to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(PersistentLinkedHashSet<?> set) {
+        return new SerializationProxy(set);
+    }
+
+    /**
+     * Creates the serialized form of the specified frozen set.
+     *
+     * @param set the set to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(FrozenHashSet<?> set) {
+        return new SerializationProxy(set);
+    }
+
+    /**
+     * Creates the serialized form of the specified frozen map.
+     *
+     * @param map the map to serialize
+     * @return the serialization proxy
+     */
+    /* package private */ static SerializationProxy of(FrozenHashMap<?, ?> map) {
+        return new SerializationProxy(map);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (this.collection instanceof PersistentHashSet<?>) {
+            PersistentHashSet<?> set = (PersistentHashSet<?>)this.collection;
+            out.writeByte(TAG_HASH_SET);
+            writeComparator(out, set.getComparator());
+            writeVarInt(out, set.size());
+            for (Object element : set) {
+                out.writeObject(element);
+            }
+        } else if (this.collection instanceof PersistentHashMap<?, ?>) {
+            PersistentHashMap<?, ?> map = (PersistentHashMap<?, ?>)this.collection;
+            out.writeByte(TAG_HASH_MAP);
+            writeComparator(out, map.getComparator());
+            writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map) {
+                out.writeObject(entry.getKey());
+                out.writeObject(entry.getValue());
+            }
+        } else if (this.collection instanceof ImmutableTreeSet<?>) {
+            // The elements are written in order, so that reading them back can bulk load the tree.
+            ImmutableTreeSet<?> set = (ImmutableTreeSet<?>)this.collection;
+            out.writeByte(TAG_TREE_SET);
+            writeOrdering(out, set.comparator());
+            writeVarInt(out, set.size());
+            for (Object element : set) {
+                out.writeObject(element);
+            }
+        } else if (this.collection instanceof PersistentTreeMap<?, ?>) {
+            PersistentTreeMap<?, ?> map = (PersistentTreeMap<?, ?>)this.collection;
+            out.writeByte(TAG_TREE_MAP);
+            writeOrdering(out, map.comparator());
+            writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map) {
+                out.writeObject(entry.getKey());
+                out.writeObject(entry.getValue());
+            }
+        } else if (this.collection instanceof PersistentHashBag<?>) {
+            PersistentHashBag<?> bag = (PersistentHashBag<?>)this.collection;
+            out.writeByte(TAG_HASH_BAG);
+            writeComparator(out, bag.getComparator());
+            writeVarInt(out, bag.distinctSize());
+            for (Object element : bag) {
+                out.writeObject(element);
+                writeVarInt(out, bag.count(element));
+            }
+        } else if (this.collection instanceof PersistentSetMultimap<?, ?>) {
+            // A relation writes only its pairs, and rebuilds its reverse index when it is read.
+            PersistentSetMultimap<?, ?> multimap = (PersistentSetMultimap<?, ?>)this.collection;
+            out.writeByte(multimap instanceof PersistentRelation<?, ?> ? TAG_HASH_RELATION : TAG_HASH_MULTIMAP);
+            writeComparator(out, multimap.getKeyComparator());
+            writeComparator(out, multimap.getValueComparator());
+            writeVarInt(out, multimap.size());
+            for (Map.Entry<?, ?> entry : multimap) {
+                out.writeObject(entry.getKey());
+                out.writeObject(entry.getValue());
+            }
+        } else if (this.collection instanceof PersistentLinkedHashMap<?, ?>) {
+            // The entries are written in insertion order, so that reading them back restores the order.
+            PersistentLinkedHashMap<?, ?> map = (PersistentLinkedHashMap<?, ?>)this.collection;
+            out.writeByte(TAG_LINKED_HASH_MAP);
+            writeComparator(out, map.getComparator());
+            writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map) {
+                out.writeObject(entry.getKey());
+                out.writeObject(entry.getValue());
+            }
+        } else if (this.collection instanceof PersistentLinkedHashSet<?>) {
+            PersistentLinkedHashSet<?> set = (PersistentLinkedHashSet<?>)this.collection;
+            out.writeByte(TAG_LINKED_HASH_SET);
+            writeComparator(out, set.getComparator());
+            writeVarInt(out, set.size());
+            for (Object element : set) {
+                out.writeObject(element);
+            }
+        } else if (this.collection instanceof FrozenHashSet<?>) {
+            // Only the elements are written, as their hash codes may differ when they are read back.
+            FrozenHashSet<?> set = (FrozenHashSet<?>)this.collection;
+            out.writeByte(TAG_FROZEN_SET);
+            writeComparator(out, set.getComparator());
+            writeVarInt(out, set.size());
+            for (Object element : set) {
+                out.writeObject(element);
+            }
+        } else if (this.collection instanceof FrozenHashMap<?, ?>) {
+            FrozenHashMap<?, ?> map = (FrozenHashMap<?, ?>)this.collection;
+            out.writeByte(TAG_FROZEN_MAP);
+            writeComparator(out, map.getComparator());
+            writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map) {
+                out.writeObject(entry.getKey());
+                out.writeObject(entry.getValue());
+            }
+        } else {
+            throw new NotSerializableException(this.collection.getClass().getName());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_HASH_SET: {
+                EqualityComparator<Object> comparator = readComparator(in);
+                int size = readVarInt(in);
+                PersistentSet.Builder<Object> builder = PersistentHashSet.empty(comparator).builder();
+                for (int i = 0; i < size; i++) {
+                    builder.add(in.readObject());
+                }
+                this.collection = builder.build();
+                break;
+            }
+            case TAG_HASH_MAP: {
+                EqualityComparator<Object> comparator = readComparator(in);
+                int size = readVarInt(in);
+                PersistentMap.Builder<Object, Object> builder = PersistentHashMap.empty(comparator).builder();
+                for (int i = 0; i < size; i++) {
+                    Object key = in.readObject();
+                    Object value = in.readObject();
+                    builder.put(key, value);
+                }
+                this.collection = builder.build();
+                break;
+            }
+            case TAG_TREE_SET: {
+                Comparator<Object> comparator = readOrdering(in);
+                int size = readVarInt(in);
+                Object[] elements = readObjects(in, size);
+                try {
+                    this.collection = ImmutableTreeSet.fromSorted(elements, size, comparator);
+                } catch (IllegalArgumentException ex) {
+                    throw new InvalidObjectException(ex.getMessage());
+                }
+                break;
+            }
+            case TAG_TREE_MAP: {
+                Comparator<Object> comparator = readOrdering(in);
+                int size = readVarInt(in);
+                Object[] keys = newReadArray(size);
+                Object[] values = newReadArray(size);
+                for (int i = 0; i < size; i++) {
+                    keys = ensureReadCapacity(keys, i, size);
+                    values = ensureReadCapacity(values, i, size);
+                    keys[i] = in.readObject();
+                    values[i] = in.readObject();
+                }
+                try {
+                    this.collection = PersistentTreeMap.from(keys, values, size, comparator, true);
+                } catch (IllegalArgumentException ex) {
+                    throw new InvalidObjectException(ex.getMessage());
+                }
+                break;
+            }
+            case TAG_HASH_BAG: {
+                EqualityComparator<Object> comparator = readComparator(in);
+                int size = readVarInt(in);
+                PersistentBag.Builder<Object> builder = PersistentHashBag.empty(comparator).builder();
+                for (int i = 0; i < size; i++) {
+                    Object element = in.readObject();
+                    int count = readVarInt(in);
+                    if (count == 0) throw new InvalidObjectException("Zero count.");
+                    builder.add(element, count);
+                }
+                this.collection = builder.build();
+                break;
+            }
+            case TAG_HASH_MULTIMAP:
+            case TAG_HASH_RELATION: {
+                EqualityComparator<Object> keyComparator = readComparator(in);
+                EqualityComparator<Object> valueComparator = readComparator(in);
+                int size = readVarInt(in);
+                PersistentSetMultimap<Object, Object> multimap = tag == TAG_HASH_RELATION
+                    ? PersistentHashRelation.empty(keyComparator, valueComparator)
+                    : PersistentHashSetMultimap.empty(keyComparator, valueComparator);
+                for (int i = 0; i < size; i++) {
+                    Object key = in.readObject();
+                    Object value = in.readObject();
+                    multimap = multimap.put(key, value);
+                }
+                this.collection = multimap;
+                break;
+            }
+            case TAG_LINKED_HASH_MAP: {
+                EqualityComparator<Object> comparator = readComparator(in);
+                int size = readVarInt(in);
+                PersistentMap.Builder<Object, Object> builder = PersistentLinkedHashMap.empty(comparator).builder();
+                for (int i = 0; i < size; i++) {
+                    Object key = in.readObject();
+                    Object value = in.readObject();
+                    builder.put(key, value);
+                }
+                this.collection = builder.build();
+                break;
+            }
+            case TAG_LINKED_HASH_SET: {
+                EqualityComparator<Object> comparator = readComparator(in);
+                int size = readVarInt(in);
+                PersistentSet.Builder<Object> builder = PersistentLinkedHashSet.empty(comparator).builder();
+                for (int i = 0; i < size; i++) {
+                    builder.add(in.readObject());
+                }
+                this.collection = builder.build();
+                break;
+            }
+            case TAG_FROZEN_SET: {
+                EqualityComparator<Object> comparator = readComparator(in);
+                int size = readVarInt(in);
+                Object[] elements = readObjects(in, size);
+                this.collection = FrozenHashSet.from(elements, size, comparator);
+                break;
+            }
+            case TAG_FROZEN_MAP: {
+                EqualityComparator<Object> comparator = readComparator(in);
+                int size = readVarInt(in);
+                Object[] keys = newReadArray(size);
+                Object[] values = newReadArray(size);
+                for (int i = 0; i < size; i++) {
+                    keys = ensureReadCapacity(keys, i, size);
+                    values = ensureReadCapacity(values, i, size);
+                    keys[i] = in.readObject();
+                    values[i] = in.readObject();
+                }
+                this.collection = FrozenHashMap.from(keys, values, size, comparator);
+                break;
+            }
+            default:
+                throw new InvalidObjectException("Unknown tag: " + tag);
+        }
+    }
+
+    private Object readResolve() {
+        return this.collection;
+    }
+
+    private static void writeComparator(ObjectOutputStream out, EqualityComparator<?> comparator) throws IOException {
+        // The default comparator is written as null, as most collections use it.
+        out.writeObject(comparator != EqualityComparator.getDefault() ? comparator : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EqualityComparator<Object> readComparator(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        Object comparator = in.readObject();
+        return (EqualityComparator<Object>)(comparator != null ? comparator : EqualityComparator.getDefault());
+    }
+
+    private static void writeOrdering(ObjectOutputStream out, Comparator<?> comparator) throws IOException {
+        // The natural ordering is written as null, as most sorted collections use it.
+        out.writeObject(comparator != Comparator.naturalOrder() ? comparator : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Object> readOrdering(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        Object comparator = in.readObject();
+        return (Comparator<Object>)(comparator != null ? comparator : Comparator.naturalOrder());
+    }
+
+    /**
+     * Writes a non-negative integer using a variable number of bytes.
+     *
+     * This uses the same encoding as the serialized form of the list views.
+     *
+     * @param out the output to write to
+     * @param value the non-negative value to write
+     */
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        assert value >= 0;
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads a non-negative integer written by {@link #writeVarInt}.
+     *
+     * @param in the input to read from
+     * @return the value that was read
+     */
+    /**
+     * Reads the specified number of objects into an array.
+     *
+     * @param in the input stream
+     * @param size the number of objects, as read from the stream
+     * @return the array of objects
+     */
+    private static Object[] readObjects(ObjectInputStream in, int size) throws IOException, ClassNotFoundException {
+        Object[] elements = newReadArray(size);
+        for (int i = 0; i < size; i++) {
+            elements = ensureReadCapacity(elements, i, size);
+            elements[i] = in.readObject();
+        }
+        return elements;
+    }
+
+    /**
+     * Allocates an array for a number of objects read from the stream.
+     *
+     * We don't trust the size to allocate the whole array up front,
+     * as a corrupt stream could otherwise make us allocate a huge array.
+     * The array grows as the objects are actually read.
+     *
+     * @param size the number of objects, as read from the stream
+     * @return the initial array
+     */
+    private static Object[] newReadArray(int size) {
+        return new Object[Math.min(size, INITIAL_READ_CAPACITY)];
+    }
+
+    /**
+     * Grows an array allocated by {@link #newReadArray}, when needed to store an object at the specified index.
+     *
+     * @param array the array
+     * @param index the index of the next object
+     * @param size the number of objects, as read from the stream
+     * @return the array, or a larger copy of it
+     */
+    private static Object[] ensureReadCapacity(Object[] array, int index, int size) {
+        if (index < array.length) return array;
+        return Arrays.copyOf(array, (int)Math.min(size, index * 2L));
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) throw new InvalidObjectException("Variable-length integer is negative.");
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Variable-length integer is too long.");
+    }
+
+}
@@ -0,0 +1,134 @@
+package mb.util.collections.immutable;
+
+import mb.util.collections.ListView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The difference between two versions of a persistent set.
+ *
+ * The difference consists of the elements that were added and the elements that were removed.
+ * It can be applied as a patch to a set to make the same changes.
+ *
+ * @param <E> the type of elements in the set
+ */
+public final class SetDiff<E> {
+
+    /** The elements that are only in the new set. */
+    private final ListView<E> added;
+    /** The elements that are only in the old set. */
+    private final ListView<E> removed;
+
+    private SetDiff(ListView<E> added, ListView<E> removed) {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * Computes the difference between two persistent sets.
+     *
+     * @param oldSet the old version of the set
+     * @param newSet the new version of the set
+     * @param <E> the type of elements in the set
+     * @return the difference
+     */
+    /* package private */ static <E> SetDiff<E> between(PersistentSet<E> oldSet, PersistentSet<E> newSet) {
+        if (oldSet == newSet) return new SetDiff<>(ListView.of(), ListView.of());
+
+        List<E> added = new ArrayList<>();
+        List<E> removed = new ArrayList<>();
+        if (oldSet instanceof PersistentHashSet<?> && newSet instanceof PersistentHashSet<?>
+            && ((PersistentHashSet<E>)oldSet).isCompatibleWith((PersistentHashSet<E>)newSet)) {
+            // Happy path: both sets are tries of the same shape,
+            // so we only have to look at the sub-tries that are not shared.
+            ChampNode.diff(((PersistentHashSet<E>)oldSet).root, ((PersistentHashSet<E>)newSet).root, 0, oldSet.getComparator(), new MapDiff.Visitor<E, Object>() {
+                @Override
+                public void inserted(E key, Object value) {
+                    added.add(key);
+                }
+
+                @Override
+                public void removed(E key, Object value) {
+                    removed.add(key);
+                }
+
+                @Override
+                public void changed(E key, Object oldValue, Object newValue) {
+                    // All elements are associated with the same value.
+                    throw new IllegalStateException();
+                }
+            });
+        } else {
+            // Otherwise, we have to look up each element in the other set.
+            for (E element : oldSet) {
+                if (!newSet.contains(element)) removed.add(element);
+            }
+            for (E element : newSet) {
+                if (!oldSet.contains(element)) added.add(element);
+            }
+        }
+        return new SetDiff<>(ListView.from(added), ListView.from(removed));
+    }
+
+    /**
+     * Gets the elements that were added.
+     *
+     * @return the elements that are only in the new set
+     */
+    public ListView<E> getAdded() {
+        return this.added;
+    }
+
+    /**
+     * Gets the elements that were removed.
+     *
+     * @return the elements that are only in the old set
+     */
+    public ListView<E> getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * Gets the number of changes.
+     *
+     * @return the number of added and removed elements
+     */
+    public int size() {
+        return this.added.size() + this.removed.size();
+    }
+
+    /**
+     * Gets whether there are no changes.
+     *
+     * @return {@code true} when there are no changes; otherwise, {@code false}
+     */
+    public boolean isEmpty() {
+        return this.added.isEmpty() && this.removed.isEmpty();
+    }
+
+    /**
+     * Applies the changes to the specified set.
+     *
+     * @param set the set to apply the changes to
+     * @return the resulting set
+     */
+    public PersistentSet<E> apply(PersistentSet<E> set) {
+        return set.removeAll(this.removed).addAll(this.added);
+    }
+
+    /**
+     * Gets the inverse of this difference, which undoes the changes.
+     *
+     * @return the inverse difference
+     */
+    public SetDiff<E> inverse() {
+        return new SetDiff<>(this.removed, this.added);
+    }
+
+    @Override
+    public String toString() {
+        return "+" + this.added + " -" + this.removed;
+    }
+
+}
@@ -0,0 +1,372 @@
+package mb.util.collections.mutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.BagView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A mutable bag implemented as an open-addressing hash table.
+ *
+ * The elements are stored in an array using linear probing, and their counts are stored
+ * in a parallel {@code int[]} array, so counting, adding and removing elements does not box the counts
+ * or allocate. Removal shifts the following elements of the probe sequence back,
+ * so the table never contains tombstones.
+ *
+ * @param <E> the type of elements in the bag
+ */
+/* package private */ final class HashBag<E> implements MutableBag<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The minimum capacity of the table, which must be a power of two. */
+    private static final int MIN_CAPACITY = 8;
+    /** The maximum capacity of the table, which must be a power of two. */
+    private static final int MAX_CAPACITY = 1 << 30;
+    /** The element stored in the table in place of {@code null}, since {@code null} marks an empty slot. */
+    private static final Object NULL = new Object();
+
+    /** The equality comparator of the elements. */
+    private final EqualityComparator<? super E> comparator;
+    /** The elements, where {@code null} marks an empty slot; the length is a power of two. */
+    private transient Object[] elements;
+    /** The counts of the elements, at the same index as the element. */
+    private transient int[] counts;
+    /** The number of distinct elements. */
+    private transient int distinctSize;
+    /** The sum of the counts. */
+    private transient int size;
+    /** The number of structural modifications. */
+    private transient int modCount;
+
+    /**
+     * Initializes a new instance of the {@link HashBag} class.
+     *
+     * @param comparator the equality comparator of the elements
+     */
+    /* package private */ HashBag(EqualityComparator<? super E> comparator) {
+        this.comparator = comparator;
+        this.elements = new Object[MIN_CAPACITY];
+        this.counts = new int[MIN_CAPACITY];
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public int distinctSize() {
+        return this.distinctSize;
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public int count(@Nullable Object element) {
+        int slot = slotOf(element);
+        return slot >= 0 ? this.counts[slot] : 0;
+    }
+
+    @Override
+    public int add(E element, int occurrences) {
+        if (occurrences < 0) throw new IllegalArgumentException("Negative number of occurrences: " + occurrences);
+        int slot = slotOf(element);
+        if (slot >= 0) {
+            int count = this.counts[slot];
+            this.counts[slot] = Math.addExact(count, occurrences);
+            this.size = Math.addExact(this.size, occurrences);
+            return count;
+        }
+        if (occurrences > 0) insert(~slot, element, occurrences);
+        return 0;
+    }
+
+    @Override
+    public int remove(@Nullable Object element, int occurrences) {
+        if (occurrences < 0) throw new IllegalArgumentException("Negative number of occurrences: " + occurrences);
+        int slot = slotOf(element);
+        if (slot < 0) return 0;
+        int count = this.counts[slot];
+        if (occurrences >= count) {
+            delete(slot);
+        } else {
+            this.counts[slot] = count - occurrences;
+            this.size -= occurrences;
+        }
+        return count;
+    }
+
+    @Override
+    public int setCount(E element, int count) {
+        if (count < 0) throw new IllegalArgumentException("Negative count: " + count);
+        int slot = slotOf(element);
+        if (slot < 0) {
+            if (count > 0) insert(~slot, element, count);
+            return 0;
+        }
+        int oldCount = this.counts[slot];
+        if (count == 0) {
+            delete(slot);
+        } else {
+            this.size = Math.addExact(this.size - oldCount, count);
+            this.counts[slot] = count;
+        }
+        return oldCount;
+    }
+
+    @Override
+    public void clear() {
+        if (this.distinctSize == 0) return;
+        this.elements = new Object[MIN_CAPACITY];
+        this.counts = new int[MIN_CAPACITY];
+        this.distinctSize = 0;
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+    @Override
+    public void forEachCount(ObjIntConsumer<? super E> action) {
+        int expectedModCount = this.modCount;
+        Object[] elements = this.elements;
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] != null) action.accept(unmask(elements[i]), this.counts[i]);
+        }
+        if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            /** The index of the next slot to inspect. */
+            private int index = 0;
+            private final int expectedModCount = HashBag.this.modCount;
+
+            @Override
+            public boolean hasNext() {
+                Object[] elements = HashBag.this.elements;
+                while (this.index < elements.length && elements[this.index] == null) {
+                    this.index += 1;
+                }
+                return this.index < elements.length;
+            }
+
+            @Override
+            public E next() {
+                if (HashBag.this.modCount != this.expectedModCount) throw new ConcurrentModificationException();
+                if (!hasNext()) throw new NoSuchElementException();
+                E element = unmask(HashBag.this.elements[this.index]);
+                this.index += 1;
+                return element;
+            }
+        };
+    }
+
+    /**
+     * Finds the slot of the specified element.
+     *
+     * @param element the element to look for
+     * @return the zero-based index of the slot of the element;
+     * or the bitwise complement of the index of the empty slot where the element would be inserted
+     */
+    @SuppressWarnings("unchecked")
+    private int slotOf(@Nullable Object element) {
+        Object[] elements = this.elements;
+        int mask = elements.length - 1;
+        int slot = spread(this.comparator.hashCodeOf((E)element)) & mask;
+        while (true) {
+            Object current = elements[slot];
+            if (current == null) return ~slot;
+            if (this.comparator.equals(unmask(current), (E)element)) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Inserts a new element into the specified empty slot.
+     *
+     * @param slot the zero-based index of the empty slot, as returned by {@link #slotOf}
+     * @param element the element to insert
+     * @param count the count of the element, which is positive
+     */
+    private void insert(int slot, @Nullable E element, int count) {
+        this.size = Math.addExact(this.size, count);
+        this.elements[slot] = element != null ? element : NULL;
+        this.counts[slot] = count;
+        this.distinctSize += 1;
+        this.modCount += 1;
+        // We keep the load factor at most 3/4, so that probe sequences stay short.
+        if (this.distinctSize > this.elements.length - (this.elements.length >>> 2)) {
+            resize(this.elements.length << 1);
+        }
+    }
+
+    /**
+     * Deletes the element in the specified slot, moving back the elements of its probe sequence.
+     *
+     * @param slot the zero-based index of the slot of the element
+     */
+    private void delete(int slot) {
+        Object[] elements = this.elements;
+        int[] counts = this.counts;
+        int mask = elements.length - 1;
+        this.size -= counts[slot];
+        this.distinctSize -= 1;
+        this.modCount += 1;
+
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (elements[next] != null) {
+            //noinspection unchecked
+            int home = spread(this.comparator.hashCodeOf(unmask(elements[next]))) & mask;
+            // The element can move into the hole when its home slot is not cyclically in (hole, next].
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                elements[hole] = elements[next];
+                counts[hole] = counts[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        elements[hole] = null;
+        counts[hole] = 0;
+    }
+
+    /**
+     * Replaces the table by a table of the specified capacity, into which the elements are rehashed.
+     *
+     * @param capacity the new capacity, which must be a power of two
+     */
+    private void resize(int capacity) {
+        if (capacity > MAX_CAPACITY) throw new OutOfMemoryError("Bag too large.");
+        Object[] oldElements = this.elements;
+        int[] oldCounts = this.counts;
+        Object[] elements = new Object[capacity];
+        int[] counts = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldElements.length; i++) {
+            Object element = oldElements[i];
+            if (element == null) continue;
+            //noinspection unchecked
+            int slot = spread(this.comparator.hashCodeOf(unmask(element))) & mask;
+            while (elements[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            elements[slot] = element;
+            counts[slot] = oldCounts[i];
+        }
+        this.elements = elements;
+        this.counts = counts;
+    }
+
+    /**
+     * Gets the smallest valid capacity that holds the specified number of distinct elements.
+     *
+     * @param count the number of distinct elements
+     * @return the capacity, which is a power of two
+     */
+    private static int capacityFor(int count) {
+        int minCapacity = count + (count / 3) + 1;
+        if (minCapacity <= MIN_CAPACITY) return MIN_CAPACITY;
+        if (minCapacity > MAX_CAPACITY || minCapacity < 0) throw new OutOfMemoryError("Bag too large.");
+        return Integer.highestOneBit(minCapacity - 1) << 1;
+    }
+
+    /**
+     * Spreads the bits of a hash code, since linear probing only uses the lowest bits.
+     *
+     * @param hash the hash code
+     * @return the spread hash code
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E unmask(Object element) {
+        return element != NULL ? (E)element : null;
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof BagView<?>)) return false;
+        BagView<?> other = (BagView<?>)obj;
+        if (other.distinctSize() != this.distinctSize || other.size() != this.size) return false;
+        Object[] elements = this.elements;
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] != null && other.count(unmask(elements[i])) != this.counts[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        Object[] elements = this.elements;
+        for (int i = 0; i < elements.length; i++) {
+            Object element = elements[i];
+            if (element != null) hashCode += (element != NULL ? element.hashCode() : 0) ^ this.counts[i];
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEachCount((element, count) -> {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(element == this ? "(this Bag)" : element).append('=').append(count);
+        });
+        return sb.append('}').toString();
+    }
+
+    // Serialization
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(this.distinctSize);
+        Object[] elements = this.elements;
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] == null) continue;
+            out.writeObject(unmask(elements[i]));
+            out.writeInt(this.counts[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int distinctSize = in.readInt();
+        if (distinctSize < 0) throw new InvalidObjectException("Negative size: " + distinctSize);
+        // We don't trust the size to allocate the whole table up front,
+        // as a corrupt stream could otherwise make us allocate a huge array. The table grows as elements are inserted.
+        int capacity = capacityFor(Math.min(distinctSize, 1024));
+        this.elements = new Object[capacity];
+        this.counts = new int[capacity];
+        for (int i = 0; i < distinctSize; i++) {
+            @SuppressWarnings("unchecked")
+            E element = (E)in.readObject();
+            int count = in.readInt();
+            if (count <= 0) throw new InvalidObjectException("Non-positive count: " + count);
+            int slot = slotOf(element);
+            if (slot >= 0) throw new InvalidObjectException("Duplicate element: " + element);
+            insert(~slot, element, count);
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package mb.util.collections.mutable;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.BagView;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A mutable bag, also known as a multiset.
+ *
+ * @param <E> the type of elements in the bag
+ */
+public interface MutableBag<E> extends BagView<E> {
+
+    /**
+     * Creates an empty mutable bag.
+     *
+     * @param <E> the type of elements in the bag
+     * @return the mutable bag
+     */
+    static <E> MutableBag<E> of() {
+        return new HashBag<>(EqualityComparator.getDefault());
+    }
+
+    /**
+     * Creates an empty mutable bag that compares its elements using the specified comparator.
+     *
+     * @param comparator the equality comparator of the elements
+     * @param <E> the type of elements in the bag
+     * @return the mutable bag
+     */
+    static <E> MutableBag<E> withComparator(EqualityComparator<? super E> comparator) {
+        return new HashBag<>(comparator);
+    }
+
+    /**
+     * Creates a mutable bag that counts the specified elements.
+     *
+     * @param elements the elements to count
+     * @param <E> the type of elements in the bag
+     * @return the mutable bag
+     */
+    static <E> MutableBag<E> copyFrom(Iterable<? extends E> elements) {
+        MutableBag<E> bag = of();
+        for (E element : elements) {
+            bag.add(element);
+        }
+        return bag;
+    }
+
+    /**
+     * Adds one occurrence of the specified element.
+     *
+     * @param element the element to add
+     * @return the count of the element before it was added
+     */
+    default int add(E element) {
+        return add(element, 1);
+    }
+
+    /**
+     * Adds the specified number of occurrences of the specified element.
+     *
+     * @param element the element to add
+     * @param occurrences the number of occurrences to add, which may be 0
+     * @return the count of the element before it was added
+     * @throws IllegalArgumentException the number of occurrences is negative
+     */
+    int add(E element, int occurrences);
+
+    /**
+     * Removes one occurrence of the specified element.
+     *
+     * @param element the element to remove
+     * @return the count of the element before it was removed
+     */
+    default int remove(@Nullable Object element) {
+        return remove(element, 1);
+    }
+
+    /**
+     * Removes the specified number of occurrences of the specified element.
+     *
+     * When the bag contains fewer occurrences, all occurrences are removed.
+     *
+     * @param element the element to remove
+     * @param occurrences the number of occurrences to remove, which may be 0
+     * @return the count of the element before it was removed
+     * @throws IllegalArgumentException the number of occurrences is negative
+     */
+    int remove(@Nullable Object element, int occurrences);
+
+    /**
+     * Sets the count of the specified element.
+     *
+     * @param element the element whose count to set
+     * @param count the new count of the element; or 0 to remove the element
+     * @return the count of the element before it was set
+     * @throws IllegalArgumentException the count is negative
+     */
+    int setCount(E element, int count);
+
+    /**
+     * Removes all elements from the bag.
+     */
+    void clear();
+
+}
@@ -0,0 +1,80 @@
+package mb.util.collections.mutable;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base class for implementations of {@link MutableList}.
+ *
+ * This class extends {@link AbstractList}, so an implementation only has to implement
+ * {@link #get(int)} and {@link #size()}; and {@link #set(int, Object)}, {@link #add(int, Object)},
+ * and {@link #remove(int)} to support modification.
+ *
+ * @param <E> the type of elements in the list
+ */
+public abstract class MutableListBase<E> extends AbstractList<E> implements MutableList<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public MutableList<E> subListView(int fromIndex, int toIndex) {
+        return new SubList<>(subList(fromIndex, toIndex));
+    }
+
+    @Override
+    public List<E> asUnmodifiable() {
+        return Collections.unmodifiableList(this);
+    }
+
+    /**
+     * A mutable list that views part of another list.
+     *
+     * Changes to the sub list are reflected in the original list, and vice versa.
+     *
+     * @param <E> the type of elements in the list
+     */
+    private static final class SubList<E> extends MutableListBase<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The sub list returned by {@link AbstractList#subList}. */
+        private final List<E> list;
+
+        private SubList(List<E> list) {
+            this.list = list;
+        }
+
+        @Override
+        public int size() {
+            return this.list.size();
+        }
+
+        @Override
+        public E get(int index) {
+            return this.list.get(index);
+        }
+
+        @Override
+        public E set(int index, E element) {
+            return this.list.set(index, element);
+        }
+
+        @Override
+        public void add(int index, E element) {
+            this.list.add(index, element);
+        }
+
+        @Override
+        public E remove(int index) {
+            return this.list.remove(index);
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            this.list.subList(fromIndex, toIndex).clear();
+        }
+
+    }
+
+}
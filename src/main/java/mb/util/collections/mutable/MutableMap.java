@@ -0,0 +1,43 @@
+package mb.util.collections.mutable;
+
+import mb.util.collections.MapView;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A mutable map.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public interface MutableMap<K, V> extends MapView<K, V>, Map<K, V> {
+
+    @Override
+    default boolean isEmpty() {
+        return MapView.super.isEmpty();
+    }
+
+    @Override
+    boolean containsKey(@Nullable Object key);
+
+    @Override
+    default boolean containsValue(@Nullable Object value) {
+        return MapView.super.containsValue(value);
+    }
+
+    @Override
+    @Nullable V get(@Nullable Object key);
+
+    @Override
+    default V getOrDefault(@Nullable Object key, V defaultValue) {
+        return MapView.super.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    default void forEach(BiConsumer<? super K, ? super V> action) {
+        MapView.super.forEach(action);
+    }
+
+}
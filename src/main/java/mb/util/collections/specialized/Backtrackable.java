@@ -0,0 +1,48 @@
+package mb.util.collections.specialized;
+
+/**
+ * A mutable data structure whose changes can be undone.
+ *
+ * A checkpoint marks the current state. Rolling back to a checkpoint restores that state
+ * in time proportional to the changes made since. Checkpoints can be nested:
+ * rolling back to or committing a checkpoint also discards all checkpoints made after it.
+ *
+ * <pre>{@code
+ * int checkpoint = set.checkpoint();
+ * set.add("x");
+ * if (failed) {
+ *     set.rollback(checkpoint);   // set no longer contains "x"
+ * } else {
+ *     set.commit(checkpoint);     // keeps "x", and forgets how to undo it
+ * }
+ * }</pre>
+ */
+public interface Backtrackable {
+
+    /**
+     * Marks the current state.
+     *
+     * @return the checkpoint, to pass to {@link #rollback} or {@link #commit}
+     */
+    int checkpoint();
+
+    /**
+     * Restores the state at the specified checkpoint,
+     * and discards the checkpoint and all checkpoints made after it.
+     *
+     * @param checkpoint the checkpoint
+     * @throws IllegalArgumentException the checkpoint was already discarded
+     */
+    void rollback(int checkpoint);
+
+    /**
+     * Keeps the current state, and discards the specified checkpoint and all checkpoints made after it.
+     *
+     * When there are no more checkpoints, the recorded changes are discarded.
+     *
+     * @param checkpoint the checkpoint
+     * @throws IllegalArgumentException the checkpoint was already discarded
+     */
+    void commit(int checkpoint);
+
+}
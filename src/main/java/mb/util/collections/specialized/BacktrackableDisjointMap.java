@@ -0,0 +1,264 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.immutable.PersistentMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.BinaryOperator;
+
+/**
+ * A mutable union-find map that records its changes in a trail, such that they can be undone.
+ *
+ * The sets are trees of keys, stored in arrays. Sets are merged by linking the root
+ * of the smaller tree to the root of the larger tree, so the trees have logarithmic height.
+ * Path compression would make changes to the trees that are not recorded in the trail,
+ * so the paths are only compressed while there are no open checkpoints.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public final class BacktrackableDisjointMap<K, V> implements MutableDisjointMap<K, V>, Backtrackable {
+
+    /** Undo adding a key by restoring the index map given as argument. */
+    private static final int UNDO_ADD = 0;
+    /** Undo a union by unlinking the key at the index from its root. */
+    private static final int UNDO_UNION = 1;
+    /** Undo setting a value by restoring the value of the root at the index. */
+    private static final int UNDO_PUT = 2;
+
+    private final Trail trail;
+    private final Trail.Undoable undoable = this::undo;
+    private final EqualityComparator<? super K> comparator;
+    /** The index of each key. */
+    private PersistentMap<K, Integer> indices;
+    /** The key at each index. */
+    private Object[] keys = new Object[16];
+    /** The index of the parent of each key; or its own index for a root. */
+    private int[] parents = new int[16];
+    /** The number of keys in the tree of each root. */
+    private int[] sizes = new int[16];
+    /** The value of each root. */
+    private Object[] values = new Object[16];
+    /** The number of keys. */
+    private int count = 0;
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableDisjointMap} class
+     * with its own trail.
+     */
+    public BacktrackableDisjointMap() {
+        this(new Trail());
+    }
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableDisjointMap} class.
+     *
+     * @param trail the trail in which to record the changes
+     */
+    public BacktrackableDisjointMap(Trail trail) {
+        this(trail, EqualityComparator.getDefault());
+    }
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableDisjointMap} class.
+     *
+     * @param trail the trail in which to record the changes
+     * @param comparator the equality comparator of the keys
+     */
+    public BacktrackableDisjointMap(Trail trail, EqualityComparator<? super K> comparator) {
+        this.trail = trail;
+        this.comparator = comparator;
+        this.indices = PersistentMap.withComparator(comparator);
+    }
+
+    /**
+     * Gets the trail in which this map records its changes.
+     *
+     * @return the trail
+     */
+    public Trail getTrail() {
+        return this.trail;
+    }
+
+    @Override
+    public int checkpoint() {
+        return this.trail.checkpoint();
+    }
+
+    @Override
+    public void rollback(int checkpoint) {
+        this.trail.rollback(checkpoint);
+    }
+
+    @Override
+    public void commit(int checkpoint) {
+        this.trail.commit(checkpoint);
+    }
+
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    @Override
+    public EqualityComparator<? super K> getComparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return this.indices.containsKey(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K find(K key) {
+        Integer index = this.indices.get(key);
+        if (index == null) return key;
+        return (K)this.keys[findRoot(index)];
+    }
+
+    @Override
+    public boolean isSameSet(K key1, K key2) {
+        Integer index1 = this.indices.get(key1);
+        Integer index2 = this.indices.get(key2);
+        if (index1 == null || index2 == null) return this.comparator.equals(key1, key2);
+        return findRoot(index1) == findRoot(index2);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(K key) {
+        Integer index = this.indices.get(key);
+        if (index == null) return null;
+        return (V)this.values[findRoot(index)];
+    }
+
+    @Override
+    public @Nullable V put(K key, @Nullable V value) {
+        int root = findRoot(indexOrAdd(key));
+        @SuppressWarnings("unchecked")
+        V oldValue = (V)this.values[root];
+        if (oldValue == value) return oldValue;
+        if (this.trail.isRecording()) this.trail.record(this.undoable, UNDO_PUT, root, oldValue, null);
+        this.values[root] = value;
+        return oldValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K union(K key1, K key2, BinaryOperator<V> merge) {
+        int root1 = findRoot(indexOrAdd(key1));
+        int root2 = findRoot(indexOrAdd(key2));
+        if (root1 != root2) {
+            V value1 = (V)this.values[root1];
+            V value2 = (V)this.values[root2];
+            V value = value1 == null ? value2 : value2 == null ? value1 : merge.apply(value1, value2);
+
+            // Link the smaller tree to the larger tree.
+            int root = this.sizes[root1] >= this.sizes[root2] ? root1 : root2;
+            int child = root == root1 ? root2 : root1;
+            if (this.trail.isRecording()) this.trail.record(this.undoable, UNDO_UNION, child, this.values[root], this.values[child]);
+            this.parents[child] = root;
+            this.sizes[root] += this.sizes[child];
+            this.values[root] = value;
+            this.values[child] = null;
+            root1 = root;
+        }
+        return (K)this.keys[root1];
+    }
+
+    /**
+     * Finds the index of the root of the tree that contains the key at the specified index.
+     *
+     * @param index the index of the key
+     * @return the index of the root
+     */
+    private int findRoot(int index) {
+        if (this.trail.isRecording()) {
+            while (this.parents[index] != index) {
+                index = this.parents[index];
+            }
+        } else {
+            // Path halving: every other key on the path is linked to its grandparent.
+            while (this.parents[index] != index) {
+                this.parents[index] = this.parents[this.parents[index]];
+                index = this.parents[index];
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Gets the index of the specified key, adding the key in a set of its own when it's not in the map.
+     *
+     * @param key the key
+     * @return the index of the key
+     */
+    private int indexOrAdd(K key) {
+        Integer index = this.indices.get(key);
+        if (index != null) return index;
+
+        if (this.trail.isRecording()) this.trail.record(this.undoable, UNDO_ADD, this.count, this.indices, null);
+        if (this.count == this.keys.length) {
+            int capacity = this.count * 2;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.sizes = Arrays.copyOf(this.sizes, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        int newIndex = this.count;
+        this.keys[newIndex] = key;
+        this.parents[newIndex] = newIndex;
+        this.sizes[newIndex] = 1;
+        this.values[newIndex] = null;
+        this.indices = this.indices.put(key, newIndex);
+        this.count += 1;
+        return newIndex;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void undo(int operation, int index, @Nullable Object a, @Nullable Object b) {
+        switch (operation) {
+            case UNDO_ADD:
+                // The keys are removed in the reverse order in which they were added.
+                assert index == this.count - 1;
+                this.indices = (PersistentMap<K, Integer>)a;
+                this.keys[index] = null;
+                this.values[index] = null;
+                this.count -= 1;
+                break;
+            case UNDO_UNION:
+                // Since the paths are not compressed while recording, the parent is still the root.
+                int root = this.parents[index];
+                this.parents[index] = index;
+                this.sizes[root] -= this.sizes[index];
+                this.values[root] = a;
+                this.values[index] = b;
+                break;
+            case UNDO_PUT:
+                this.values[index] = a;
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + operation);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        for (int i = 0; i < this.count; i++) {
+            if (i > 0) sb.append(", ");
+            int root = findRoot(i);
+            sb.append(this.keys[i]).append('=').append(this.keys[root]);
+            if (this.values[root] != null) sb.append(':').append(this.values[root]);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,206 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.ListView;
+import mb.util.collections.mutable.MutableListBase;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A mutable array list that records its changes in a trail, such that they can be undone.
+ *
+ * Each change records a single entry in the trail, so rolling back
+ * takes time proportional to the number of changes since the checkpoint.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <E> the type of elements in the list
+ */
+public final class BacktrackableList<E> extends MutableListBase<E> implements Backtrackable, RandomAccess {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Undo an insertion by removing the element at the index. */
+    private static final int UNDO_INSERT = 0;
+    /** Undo a removal by inserting the elements (an array) at the index. */
+    private static final int UNDO_REMOVE = 1;
+    /** Undo a replacement by setting the element at the index. */
+    private static final int UNDO_SET = 2;
+    /** Undo clearing the list by restoring the array with the size given by the index. */
+    private static final int UNDO_CLEAR = 3;
+
+    private final Trail trail;
+    private final Trail.Undoable undoable = this::undo;
+    private Object[] elements;
+    private int size;
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableList} class
+     * with its own trail.
+     */
+    public BacktrackableList() {
+        this(new Trail());
+    }
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableList} class.
+     *
+     * @param trail the trail in which to record the changes
+     */
+    public BacktrackableList(Trail trail) {
+        this.trail = trail;
+        this.elements = new Object[10];
+        this.size = 0;
+    }
+
+    /**
+     * Gets the trail in which this list records its changes.
+     *
+     * @return the trail
+     */
+    public Trail getTrail() {
+        return this.trail;
+    }
+
+    @Override
+    public int checkpoint() {
+        return this.trail.checkpoint();
+    }
+
+    @Override
+    public void rollback(int checkpoint) {
+        this.trail.rollback(checkpoint);
+    }
+
+    @Override
+    public void commit(int checkpoint) {
+        this.trail.commit(checkpoint);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, this.size);
+        return (E)this.elements[index];
+    }
+
+    @Override
+    public E set(int index, E element) {
+        checkIndex(index, this.size);
+        @SuppressWarnings("unchecked")
+        E oldElement = (E)this.elements[index];
+        if (this.trail.isRecording()) this.trail.record(this.undoable, UNDO_SET, index, oldElement, null);
+        this.elements[index] = element;
+        return oldElement;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, this.size + 1);
+        if (this.trail.isRecording()) this.trail.record(this.undoable, UNDO_INSERT, index, null, null);
+        insertElement(index, element);
+    }
+
+    @Override
+    public E remove(int index) {
+        checkIndex(index, this.size);
+        @SuppressWarnings("unchecked")
+        E oldElement = (E)this.elements[index];
+        if (this.trail.isRecording()) this.trail.record(this.undoable, UNDO_REMOVE, index, new Object[] { oldElement }, null);
+        removeElements(index, index + 1);
+        return oldElement;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) return;
+        if (this.trail.isRecording()) {
+            this.trail.record(this.undoable, UNDO_REMOVE, fromIndex, Arrays.copyOfRange(this.elements, fromIndex, toIndex), null);
+        }
+        removeElements(fromIndex, toIndex);
+    }
+
+    @Override
+    public void clear() {
+        if (this.size == 0) return;
+        if (this.trail.isRecording()) {
+            // Instead of copying the elements, we keep the old array in the trail.
+            this.trail.record(this.undoable, UNDO_CLEAR, this.size, this.elements, null);
+            this.elements = new Object[this.elements.length];
+        } else {
+            Arrays.fill(this.elements, 0, this.size, null);
+        }
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+    private void undo(int operation, int index, @Nullable Object a, @Nullable Object b) {
+        switch (operation) {
+            case UNDO_INSERT:
+                removeElements(index, index + 1);
+                break;
+            case UNDO_REMOVE:
+                insertElements(index, (Object[])a);
+                break;
+            case UNDO_SET:
+                this.elements[index] = a;
+                break;
+            case UNDO_CLEAR:
+                this.elements = (Object[])a;
+                this.size = index;
+                this.modCount += 1;
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + operation);
+        }
+    }
+
+    private void insertElement(int index, @Nullable Object element) {
+        ensureCapacity(this.size + 1);
+        System.arraycopy(this.elements, index, this.elements, index + 1, this.size - index);
+        this.elements[index] = element;
+        this.size += 1;
+        this.modCount += 1;
+    }
+
+    private void insertElements(int index, Object[] elements) {
+        ensureCapacity(this.size + elements.length);
+        System.arraycopy(this.elements, index, this.elements, index + elements.length, this.size - index);
+        System.arraycopy(elements, 0, this.elements, index, elements.length);
+        this.size += elements.length;
+        this.modCount += 1;
+    }
+
+    private void removeElements(int fromIndex, int toIndex) {
+        System.arraycopy(this.elements, toIndex, this.elements, fromIndex, this.size - toIndex);
+        int newSize = this.size - (toIndex - fromIndex);
+        Arrays.fill(this.elements, newSize, this.size, null);
+        this.size = newSize;
+        this.modCount += 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.elements.length) return;
+        this.elements = Arrays.copyOf(this.elements, Math.max(capacity, this.elements.length + (this.elements.length >> 1)));
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+    }
+
+    // Serialization
+
+    private Object writeReplace() throws ObjectStreamException {
+        // The trail may be shared with other data structures, so we serialize just a snapshot of the elements.
+        return ListView.of(toArray());
+    }
+
+}
@@ -0,0 +1,225 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.immutable.PersistentMap;
+import mb.util.collections.mutable.MutableMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ObjectStreamException;
+import java.util.*;
+
+/**
+ * A mutable map that records its changes in a trail, such that they can be undone.
+ *
+ * Like {@link BacktrackableSet}, the map holds a persistent map and records it
+ * the first time it changes after a checkpoint.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public final class BacktrackableMap<K, V> extends AbstractMap<K, V> implements MutableMap<K, V>, Backtrackable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Trail trail;
+    private final Trail.Undoable undoable = this::undo;
+    private PersistentMap<K, V> map;
+    /** The stamp of the checkpoint for which the map was last recorded. */
+    private int stamp = Trail.NO_STAMP;
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableMap} class
+     * with its own trail.
+     */
+    public BacktrackableMap() {
+        this(new Trail());
+    }
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableMap} class.
+     *
+     * @param trail the trail in which to record the changes
+     */
+    public BacktrackableMap(Trail trail) {
+        this(trail, EqualityComparator.getDefault());
+    }
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableMap} class.
+     *
+     * @param trail the trail in which to record the changes
+     * @param comparator the equality comparator of the keys
+     */
+    public BacktrackableMap(Trail trail, EqualityComparator<? super K> comparator) {
+        this.trail = trail;
+        this.map = PersistentMap.withComparator(comparator);
+    }
+
+    /**
+     * Gets the trail in which this map records its changes.
+     *
+     * @return the trail
+     */
+    public Trail getTrail() {
+        return this.trail;
+    }
+
+    /**
+     * Gets the current contents of this map.
+     *
+     * This takes constant time, and the result is not affected by later changes to this map.
+     *
+     * @return the persistent map
+     */
+    public PersistentMap<K, V> snapshot() {
+        return this.map;
+    }
+
+    @Override
+    public int checkpoint() {
+        return this.trail.checkpoint();
+    }
+
+    @Override
+    public void rollback(int checkpoint) {
+        this.trail.rollback(checkpoint);
+    }
+
+    @Override
+    public void commit(int checkpoint) {
+        this.trail.commit(checkpoint);
+    }
+
+    @Override
+    public int size() {
+        return this.map.size();
+    }
+
+    @Override
+    public EqualityComparator<? super K> getComparator() {
+        return this.map.getComparator();
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return this.map.containsKey(key);
+    }
+
+    @Override
+    public @Nullable V get(@Nullable Object key) {
+        return this.map.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        V oldValue = this.map.get(key);
+        update(this.map.put(key, value));
+        return oldValue;
+    }
+
+    @Override
+    public void putAll(@NotNull Map<? extends K, ? extends V> map) {
+        if (map instanceof BacktrackableMap<?, ?>) {
+            // The persistent maps can be merged directly.
+            //noinspection unchecked
+            update(this.map.putAll(((BacktrackableMap<? extends K, ? extends V>)map).snapshot()));
+        } else {
+            update(this.map.putAll(map));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(@Nullable Object key) {
+        V oldValue = this.map.get(key);
+        update(this.map.remove((K)key));
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        update(this.map.clear());
+    }
+
+    /**
+     * Replaces the map by the specified version, recording the current version if necessary.
+     *
+     * @param newMap the new version of the map
+     */
+    private void update(PersistentMap<K, V> newMap) {
+        if (newMap == this.map) return;
+        int currentStamp = this.trail.getStamp();
+        if (currentStamp != this.stamp && this.trail.isRecording()) {
+            this.trail.record(this.undoable, 0, this.stamp, this.map, null);
+            this.stamp = currentStamp;
+        }
+        this.map = newMap;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void undo(int operation, int index, @Nullable Object a, @Nullable Object b) {
+        this.map = (PersistentMap<K, V>)a;
+        this.stamp = index;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+        // Since the map is persistent, the iterator is not affected by changes to this map.
+        Iterator<Entry<K, V>> iterator = this.map.iterator();
+        return new Iterator<Entry<K, V>>() {
+            @Nullable private Entry<K, V> current;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<K, V> next() {
+                this.current = iterator.next();
+                return this.current;
+            }
+
+            @Override
+            public void remove() {
+                if (this.current == null) throw new IllegalStateException();
+                BacktrackableMap.this.remove(this.current.getKey());
+                this.current = null;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public int size() {
+                return BacktrackableMap.this.size();
+            }
+
+            @NotNull
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return BacktrackableMap.this.iterator();
+            }
+        };
+    }
+
+    @Override
+    public Map<K, V> asUnmodifiable() {
+        return Collections.unmodifiableMap(this);
+    }
+
+    // Serialization
+
+    private Object writeReplace() throws ObjectStreamException {
+        // The trail may be shared with other data structures, so we serialize just a snapshot of the entries.
+        return this.map;
+    }
+
+}
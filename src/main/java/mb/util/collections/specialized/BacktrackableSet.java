@@ -0,0 +1,236 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.immutable.PersistentSet;
+import mb.util.collections.mutable.MutableSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ObjectStreamException;
+import java.util.*;
+
+/**
+ * A mutable set that records its changes in a trail, such that they can be undone.
+ *
+ * The set holds a persistent set. Instead of recording each change, it records the persistent set
+ * the first time it changes after a checkpoint. Rolling back restores that version,
+ * so the trail holds at most one entry per checkpoint for this set,
+ * and the old versions share most of their structure with the current one.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <E> the type of elements in the set
+ */
+public final class BacktrackableSet<E> extends AbstractSet<E> implements MutableSet<E>, Backtrackable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Trail trail;
+    private final Trail.Undoable undoable = this::undo;
+    private PersistentSet<E> set;
+    /** The stamp of the checkpoint for which the set was last recorded. */
+    private int stamp = Trail.NO_STAMP;
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableSet} class
+     * with its own trail.
+     */
+    public BacktrackableSet() {
+        this(new Trail());
+    }
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableSet} class.
+     *
+     * @param trail the trail in which to record the changes
+     */
+    public BacktrackableSet(Trail trail) {
+        this(trail, EqualityComparator.getDefault());
+    }
+
+    /**
+     * Initializes a new instance of the {@link BacktrackableSet} class.
+     *
+     * @param trail the trail in which to record the changes
+     * @param comparator the equality comparator of the elements
+     */
+    public BacktrackableSet(Trail trail, EqualityComparator<? super E> comparator) {
+        this.trail = trail;
+        this.set = PersistentSet.withComparator(comparator);
+    }
+
+    /**
+     * Gets the trail in which this set records its changes.
+     *
+     * @return the trail
+     */
+    public Trail getTrail() {
+        return this.trail;
+    }
+
+    /**
+     * Gets the current contents of this set.
+     *
+     * This takes constant time, and the result is not affected by later changes to this set.
+     *
+     * @return the persistent set
+     */
+    public PersistentSet<E> snapshot() {
+        return this.set;
+    }
+
+    @Override
+    public int checkpoint() {
+        return this.trail.checkpoint();
+    }
+
+    @Override
+    public void rollback(int checkpoint) {
+        this.trail.rollback(checkpoint);
+    }
+
+    @Override
+    public void commit(int checkpoint) {
+        this.trail.commit(checkpoint);
+    }
+
+    @Override
+    public int size() {
+        return this.set.size();
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.set.getComparator();
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return this.set.contains(element);
+    }
+
+    @Override
+    public boolean add(E element) {
+        return update(this.set.add(element));
+    }
+
+    @Override
+    public boolean addAll(@NotNull Collection<? extends E> elements) {
+        return update(this.set.addAll(unwrap(elements)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(@Nullable Object element) {
+        return update(this.set.remove((E)element));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeAll(@NotNull Collection<?> elements) {
+        return update(this.set.removeAll(unwrap((Collection<? extends E>)elements)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean retainAll(@NotNull Collection<?> elements) {
+        return update(this.set.retainAll(unwrap((Collection<? extends E>)elements)));
+    }
+
+    @Override
+    public void clear() {
+        update(this.set.clear());
+    }
+
+    /**
+     * Gets the persistent set of the specified collection when it is a backtrackable set,
+     * such that the persistent sets can be combined directly.
+     *
+     * @param elements the collection
+     * @return the persistent set; or the collection itself
+     */
+    private Iterable<? extends E> unwrap(Collection<? extends E> elements) {
+        if (elements instanceof BacktrackableSet<?>) {
+            return ((BacktrackableSet<? extends E>)elements).snapshot();
+        }
+        return elements;
+    }
+
+    /**
+     * Replaces the set by the specified version, recording the current version if necessary.
+     *
+     * @param newSet the new version of the set
+     * @return {@code true} when the set changed; otherwise, {@code false}
+     */
+    private boolean update(PersistentSet<E> newSet) {
+        if (newSet == this.set) return false;
+        int currentStamp = this.trail.getStamp();
+        if (currentStamp != this.stamp && this.trail.isRecording()) {
+            this.trail.record(this.undoable, 0, this.stamp, this.set, null);
+            this.stamp = currentStamp;
+        }
+        this.set = newSet;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void undo(int operation, int index, @Nullable Object a, @Nullable Object b) {
+        this.set = (PersistentSet<E>)a;
+        this.stamp = index;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        // Since the set is persistent, the iterator is not affected by changes to this set.
+        Iterator<E> iterator = this.set.iterator();
+        return new Iterator<E>() {
+            @Nullable private E current;
+            private boolean canRemove;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                this.current = iterator.next();
+                this.canRemove = true;
+                return this.current;
+            }
+
+            @Override
+            public void remove() {
+                if (!this.canRemove) throw new IllegalStateException();
+                BacktrackableSet.this.remove(this.current);
+                this.canRemove = false;
+            }
+        };
+    }
+
+    @Override
+    public Set<E> asUnmodifiable() {
+        return Collections.unmodifiableSet(this);
+    }
+
+    @NotNull
+    @Override
+    public Object[] toArray() {
+        return super.toArray();
+    }
+
+    @NotNull
+    @Override
+    public <T> T[] toArray(@NotNull T[] a) {
+        return super.toArray(a);
+    }
+
+    // Serialization
+
+    private Object writeReplace() throws ObjectStreamException {
+        // The trail may be shared with other data structures, so we serialize just a snapshot of the elements.
+        return this.set;
+    }
+
+}
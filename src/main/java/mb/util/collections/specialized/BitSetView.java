@@ -0,0 +1,455 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.SetView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A set over a small, fixed universe of elements, such as the constants of an enum
+ * or a range of integers, that stores one bit per element of the universe in an array of longs.
+ *
+ * The set operations combine the sets word by word, and iteration finds the next element
+ * with {@link Long#numberOfTrailingZeros}. A set over an enum with at most 64 constants is a single long.
+ *
+ * The equality and hash code of these sets are compatible with the other implementations of {@link SetView}
+ * and {@link Set}: two sets are equal when they have the same elements, and the hash code is
+ * the sum of the hash codes of the elements.
+ *
+ * There is an immutable implementation, {@link ImmutableBitSet}, and a mutable implementation, {@link MutableBitSet}.
+ *
+ * @param <E> the type of elements in the set
+ */
+public abstract class BitSetView<E> implements SetView<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The universe of elements. */
+    /* package private */ final Universe<E> universe;
+    /** The bits of the elements in the set; bit {@code i} is set when element {@code i} of the universe is in the set. */
+    /* package private */ final long[] words;
+
+    /* package private */ BitSetView(Universe<E> universe, long[] words) {
+        this.universe = universe;
+        this.words = words;
+    }
+
+    /**
+     * Gets the universe of elements of this set.
+     *
+     * @return the universe
+     */
+    public Universe<E> getUniverse() {
+        return this.universe;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (long word : this.words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (long word : this.words) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        int index = this.universe.indexOf(element);
+        return index >= 0 && (this.words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> elements) {
+        if (elements instanceof BitSetView<?> && ((BitSetView<?>)elements).universe.equals(this.universe)) {
+            long[] otherWords = ((BitSetView<?>)elements).words;
+            for (int i = 0; i < this.words.length; i++) {
+                if ((otherWords[i] & ~this.words[i]) != 0) return false;
+            }
+            return true;
+        }
+        for (Object element : elements) {
+            if (!contains(element)) return false;
+        }
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return new BitIterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        for (int i = 0; i < this.words.length; i++) {
+            long word = this.words[i];
+            while (word != 0) {
+                action.accept(this.universe.get((i << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the intersection of this set and the specified set.
+     *
+     * @param other the other set, which must have the same universe
+     * @return the immutable set of elements in both sets
+     */
+    public ImmutableBitSet<E> and(BitSetView<? extends E> other) {
+        long[] words = this.words.clone();
+        long[] otherWords = wordsOf(other);
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= otherWords[i];
+        }
+        return new ImmutableBitSet<>(this.universe, words);
+    }
+
+    /**
+     * Returns the union of this set and the specified set.
+     *
+     * @param other the other set, which must have the same universe
+     * @return the immutable set of elements in either set
+     */
+    public ImmutableBitSet<E> or(BitSetView<? extends E> other) {
+        long[] words = this.words.clone();
+        long[] otherWords = wordsOf(other);
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= otherWords[i];
+        }
+        return new ImmutableBitSet<>(this.universe, words);
+    }
+
+    /**
+     * Returns the difference of this set and the specified set.
+     *
+     * @param other the other set, which must have the same universe
+     * @return the immutable set of elements in this set but not in the other set
+     */
+    public ImmutableBitSet<E> andNot(BitSetView<? extends E> other) {
+        long[] words = this.words.clone();
+        long[] otherWords = wordsOf(other);
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~otherWords[i];
+        }
+        return new ImmutableBitSet<>(this.universe, words);
+    }
+
+    /**
+     * Returns the complement of this set in its universe.
+     *
+     * @return the immutable set of elements in the universe that are not in this set
+     */
+    public ImmutableBitSet<E> complement() {
+        long[] words = new long[this.words.length];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = ~this.words[i];
+        }
+        clearUnusedBits(words, this.universe.size());
+        return new ImmutableBitSet<>(this.universe, words);
+    }
+
+    /**
+     * Gets the words of the specified set, which must have the same universe as this set.
+     */
+    /* package private */ long[] wordsOf(BitSetView<?> other) {
+        if (!other.universe.equals(this.universe)) throw new IllegalArgumentException("The sets have different universes.");
+        return other.words;
+    }
+
+    /**
+     * Removes the element at the specified index in the universe, for the iterator.
+     *
+     * @param index the index of the element to remove
+     */
+    /* package private */ void removeIndex(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Clears the bits in the last word that are beyond the end of the universe.
+     */
+    /* package private */ static void clearUnusedBits(long[] words, int universeSize) {
+        if ((universeSize & 63) != 0) words[words.length - 1] &= (1L << universeSize) - 1;
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof BitSetView<?> && ((BitSetView<?>)obj).universe.equals(this.universe)) {
+            return Arrays.equals(this.words, ((BitSetView<?>)obj).words);
+        }
+        Collection<?> other;
+        if (obj instanceof Set<?>) {
+            other = (Set<?>)obj;
+        } else if (obj instanceof SetView<?>) {
+            other = ((SetView<?>)obj).asUnmodifiable();
+        } else {
+            return false;
+        }
+        if (other.size() != size()) return false;
+        for (Object element : other) {
+            if (!contains(element)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // This implementation returns the same hash code as the AbstractSet implementation.
+        int hashCode = 0;
+        for (int i = 0; i < this.words.length; i++) {
+            long word = this.words[i];
+            while (word != 0) {
+                E element = this.universe.get((i << 6) + Long.numberOfTrailingZeros(word));
+                hashCode += element != null ? element.hashCode() : 0;
+                word &= word - 1;
+            }
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        forEach(element -> {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(element);
+        });
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Iterates over the elements in the set, in the order of the universe.
+     */
+    private final class BitIterator implements Iterator<E> {
+
+        /** The index of the next element; or the size of the universe when there is none. */
+        private int next;
+        /** The index of the last returned element; or -1. */
+        private int last = -1;
+
+        private BitIterator() {
+            this.next = nextIndex(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < BitSetView.this.universe.size();
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            this.last = this.next;
+            this.next = nextIndex(this.next + 1);
+            return BitSetView.this.universe.get(this.last);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last < 0) throw new IllegalStateException();
+            removeIndex(this.last);
+            this.last = -1;
+        }
+
+        private int nextIndex(int from) {
+            long[] words = BitSetView.this.words;
+            int index = from >>> 6;
+            if (index >= words.length) return BitSetView.this.universe.size();
+            long word = words[index] & (-1L << from);
+            while (word == 0) {
+                index += 1;
+                if (index == words.length) return BitSetView.this.universe.size();
+                word = words[index];
+            }
+            return (index << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+    }
+
+    /**
+     * A fixed universe of elements, each of which has an index.
+     *
+     * @param <E> the type of elements in the universe
+     */
+    public static abstract class Universe<E> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The universes of the enum types. */
+        private static final ClassValue<Universe<?>> ENUM_UNIVERSES = new ClassValue<Universe<?>>() {
+            @Override
+            protected Universe<?> computeValue(Class<?> type) {
+                return enumUniverse(type);
+            }
+        };
+
+        /* package private */ Universe() {}
+
+        /**
+         * Creates the universe of the constants of the specified enum type.
+         *
+         * @param type the enum type
+         * @param <E> the type of elements in the universe
+         * @return the universe
+         */
+        private static <E extends Enum<E>> Universe<E> enumUniverse(Class<?> type) {
+            @SuppressWarnings("unchecked")
+            Class<E> enumType = (Class<E>)type;
+            return new EnumUniverse<>(enumType);
+        }
+
+        /**
+         * Gets the universe of the constants of the specified enum type.
+         *
+         * @param type the enum type
+         * @param <E> the type of elements in the universe
+         * @return the universe
+         */
+        @SuppressWarnings("unchecked")
+        public static <E extends Enum<E>> Universe<E> ofEnum(Class<E> type) {
+            if (!type.isEnum()) throw new IllegalArgumentException("Not an enum type: " + type.getName());
+            return (Universe<E>)ENUM_UNIVERSES.get(type);
+        }
+
+        /**
+         * Gets the universe of the integers from zero up to, but not including, the specified size.
+         *
+         * @param size the number of integers in the universe
+         * @return the universe
+         */
+        public static Universe<Integer> ofRange(int size) {
+            if (size < 0) throw new IllegalArgumentException("Size is negative: " + size);
+            return new RangeUniverse(size);
+        }
+
+        /**
+         * Gets the number of elements in the universe.
+         *
+         * @return the number of elements
+         */
+        public abstract int size();
+
+        /**
+         * Gets the index of the specified element.
+         *
+         * @param element the element
+         * @return the zero-based index of the element; or -1 when it is not in the universe
+         */
+        public abstract int indexOf(@Nullable Object element);
+
+        /**
+         * Gets the element at the specified index.
+         *
+         * @param index the zero-based index of the element
+         * @return the element
+         */
+        public abstract E get(int index);
+
+    }
+
+    /**
+     * The universe of the constants of an enum type.
+     */
+    private static final class EnumUniverse<E extends Enum<E>> extends Universe<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Class<E> type;
+        private final E[] constants;
+
+        private EnumUniverse(Class<E> type) {
+            this.type = type;
+            this.constants = type.getEnumConstants();
+        }
+
+        @Override
+        public int size() {
+            return this.constants.length;
+        }
+
+        @Override
+        public int indexOf(@Nullable Object element) {
+            // The class of a constant with a body is a subclass of the enum type.
+            if (!(element instanceof Enum<?>) || ((Enum<?>)element).getDeclaringClass() != this.type) return -1;
+            return ((Enum<?>)element).ordinal();
+        }
+
+        @Override
+        public E get(int index) {
+            return this.constants[index];
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof EnumUniverse<?> && ((EnumUniverse<?>)obj).type == this.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.type.hashCode();
+        }
+
+        private Object readResolve() {
+            return Universe.ofEnum(this.type);
+        }
+
+    }
+
+    /**
+     * The universe of the integers from zero up to a size.
+     */
+    private static final class RangeUniverse extends Universe<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int size;
+
+        private RangeUniverse(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public int indexOf(@Nullable Object element) {
+            if (!(element instanceof Integer)) return -1;
+            int value = (Integer)element;
+            return value >= 0 && value < this.size ? value : -1;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return index;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof RangeUniverse && ((RangeUniverse)obj).size == this.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.size;
+        }
+
+    }
+
+}
@@ -0,0 +1,273 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A blocked Bloom filter.
+ *
+ * The bits of the filter are divided into blocks of 512 bits, the size of a typical cache line.
+ * The hash code of an element selects one block, and all the bits of the element are set in that block,
+ * so adding or looking up an element touches a single cache line instead of one cache line per bit.
+ * Because the elements are not spread evenly over the blocks, some blocks are fuller than others, and
+ * a blocked filter has a higher false-positive rate than a plain Bloom filter with the same number of bits.
+ * The filter compensates by using more bits per element, chosen such that the desired false-positive rate
+ * holds when the expected number of elements were added. For a rate of 1% it uses about 5% more bits
+ * than a plain Bloom filter, and relatively more for lower rates.
+ *
+ * The filter only sees the 32-bit hash codes of its elements, so elements with equal hash codes
+ * are indistinguishable to it. Elements cannot be removed; use a {@link CuckooFilter} for that.
+ *
+ * This class is not thread-safe. Lookups may be performed concurrently when no elements are being added.
+ *
+ * @param <E> the type of elements in the filter
+ */
+public final class BloomFilter<E> implements MembershipFilter<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of longs in a block. */
+    private static final int BLOCK_WORDS = 8;
+    /** The base-2 logarithm of the number of bits in a block. */
+    private static final int BLOCK_SHIFT = 9;
+    /** The number of bits in a block, minus one. */
+    private static final int BLOCK_MASK = BLOCK_WORDS * Long.SIZE - 1;
+    /** The number of bit positions taken from each 64-bit hash. */
+    private static final int BITS_PER_HASH = Long.SIZE / BLOCK_SHIFT;
+    /** The factor by which the modeled false-positive rate is kept below the desired rate. */
+    private static final double MODEL_MARGIN = 0.9;
+    /** The maximum number of bits set per element. */
+    private static final int MAX_HASH_COUNT = 16;
+
+    /** The bits of the filter, in blocks of {@link #BLOCK_WORDS} longs. */
+    private final long[] bits;
+    /** The number of blocks. */
+    private final int blockCount;
+    /** The number of bits set per element. */
+    private final int hashCount;
+    /** The equality comparator of the elements. */
+    private final EqualityComparator<? super E> comparator;
+
+    /**
+     * Initializes a new instance of the {@link BloomFilter} class
+     * that uses the default equality comparator.
+     *
+     * @param expectedSize the expected number of elements
+     * @param falsePositiveRate the desired probability that an element that was not added is reported as added,
+     *                          when the expected number of elements were added
+     */
+    public BloomFilter(long expectedSize, double falsePositiveRate) {
+        this(expectedSize, falsePositiveRate, EqualityComparator.getDefault());
+    }
+
+    /**
+     * Initializes a new instance of the {@link BloomFilter} class.
+     *
+     * @param expectedSize the expected number of elements
+     * @param falsePositiveRate the desired probability that an element that was not added is reported as added,
+     *                          when the expected number of elements were added
+     * @param comparator the equality comparator of the elements
+     */
+    public BloomFilter(long expectedSize, double falsePositiveRate, EqualityComparator<? super E> comparator) {
+        if (expectedSize < 0) throw new IllegalArgumentException("Expected size is negative: " + expectedSize);
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) throw new IllegalArgumentException("False-positive rate out of range: " + falsePositiveRate);
+        double load = maxLoadOf(falsePositiveRate);
+        long blockCount = Math.max(1, (long)Math.ceil(expectedSize / load));
+        if (blockCount > Integer.MAX_VALUE / BLOCK_WORDS) throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+        this.blockCount = (int)blockCount;
+        this.hashCount = bestHashCountOf(load);
+        this.bits = new long[this.blockCount * BLOCK_WORDS];
+        this.comparator = comparator;
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.comparator;
+    }
+
+    /**
+     * Gets the number of bits set per element.
+     *
+     * @return the number of bits set per element
+     */
+    public int getHashCount() {
+        return this.hashCount;
+    }
+
+    /**
+     * Gets the number of bits in the filter.
+     *
+     * @return the number of bits
+     */
+    public long getBitCount() {
+        return (long)this.bits.length * Long.SIZE;
+    }
+
+    @Override
+    public boolean mightContain(@Nullable Object element) {
+        @SuppressWarnings("unchecked")
+        long hash = spread(this.comparator.hashCodeOf((E)element));
+        int block = blockOf(hash);
+        long bitHash = 0;
+        for (int i = 0; i < this.hashCount; i++) {
+            bitHash = i % BITS_PER_HASH == 0 ? bitHashOf(hash, i / BITS_PER_HASH) : bitHash >>> BLOCK_SHIFT;
+            int bit = (int)bitHash & BLOCK_MASK;
+            if ((this.bits[block + (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean add(@Nullable E element) {
+        long hash = spread(this.comparator.hashCodeOf(element));
+        int block = blockOf(hash);
+        long bitHash = 0;
+        for (int i = 0; i < this.hashCount; i++) {
+            bitHash = i % BITS_PER_HASH == 0 ? bitHashOf(hash, i / BITS_PER_HASH) : bitHash >>> BLOCK_SHIFT;
+            int bit = (int)bitHash & BLOCK_MASK;
+            this.bits[block + (bit >>> 6)] |= 1L << bit;
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.bits, 0L);
+    }
+
+    /**
+     * Estimates the current false-positive rate from the fraction of bits that are set.
+     *
+     * @return the estimated false-positive rate
+     */
+    public double estimateFalsePositiveRate() {
+        long setBits = 0;
+        for (long word : this.bits) {
+            setBits += Long.bitCount(word);
+        }
+        return Math.pow((double)setBits / getBitCount(), this.hashCount);
+    }
+
+    /**
+     * Finds the greatest mean number of elements per block for which the filter,
+     * with the best number of bits set per element, has at most the specified false-positive rate.
+     */
+    private static double maxLoadOf(double falsePositiveRate) {
+        // The model assumes that the bits of a block are set independently, which slightly underestimates
+        // the rate of a block with a given number of elements, so we aim a little lower.
+        double targetRate = falsePositiveRate * MODEL_MARGIN;
+        // The number of elements per block of a plain Bloom filter is an upper bound,
+        // as a blocked filter needs more bits per element for the same rate.
+        double bitsPerElement = -Math.log(targetRate) / (Math.log(2) * Math.log(2));
+        double high = (BLOCK_MASK + 1) / bitsPerElement;
+        double low = high / 2;
+        while (falsePositiveRateOf(low, bestHashCountOf(low)) > targetRate && low > 1e-3) {
+            low /= 2;
+        }
+        // The false-positive rate increases with the load, so we bisect.
+        for (int i = 0; i < 16; i++) {
+            double mid = (low + high) / 2;
+            if (falsePositiveRateOf(mid, bestHashCountOf(mid)) <= targetRate) low = mid;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Gets the number of bits set per element that minimizes the false-positive rate
+     * for the specified mean number of elements per block.
+     */
+    private static int bestHashCountOf(double load) {
+        int best = 1;
+        double bestRate = falsePositiveRateOf(load, 1);
+        for (int hashCount = 2; hashCount <= MAX_HASH_COUNT; hashCount++) {
+            double rate = falsePositiveRateOf(load, hashCount);
+            // The rate has a single minimum in the number of bits set per element.
+            if (rate >= bestRate) break;
+            best = hashCount;
+            bestRate = rate;
+        }
+        return best;
+    }
+
+    /**
+     * Computes the false-positive rate of a blocked filter with the specified mean number of elements per block,
+     * as the rate of a block with {@code j} elements weighted by the Poisson probability of {@code j}.
+     */
+    private static double falsePositiveRateOf(double load, int hashCount) {
+        double spread = 8 * Math.sqrt(load) + 10;
+        int from = (int)Math.max(0, Math.floor(load - spread));
+        int to = (int)Math.ceil(load + spread);
+        double probability = Math.exp(-load + from * Math.log(load) - logFactorial(from));
+        // Each element sets hashCount independent random bits of its block,
+        // so a bit is still clear after j elements with probability clearStep^j.
+        double clearStep = Math.pow(1 - 1.0 / (BLOCK_MASK + 1), hashCount);
+        double clear = Math.pow(clearStep, from);
+        double rate = 0;
+        for (int j = from; j <= to; j++) {
+            double set = 1 - clear;
+            double blockRate = 1;
+            for (int i = 0; i < hashCount; i++) {
+                blockRate *= set;
+            }
+            rate += probability * blockRate;
+            probability *= load / (j + 1);
+            clear *= clearStep;
+        }
+        return rate;
+    }
+
+    /**
+     * Computes the natural logarithm of {@code n!}, using Stirling's series for large {@code n}.
+     */
+    private static double logFactorial(int n) {
+        if (n < 16) {
+            double result = 0;
+            for (int i = 2; i <= n; i++) {
+                result += Math.log(i);
+            }
+            return result;
+        }
+        return n * Math.log(n) - n + 0.5 * Math.log(2 * Math.PI * n) + 1.0 / (12.0 * n) - 1.0 / (360.0 * n * n * n);
+    }
+
+    /**
+     * Gets the index of the first long of the block of the specified spread hash code.
+     */
+    private int blockOf(long hash) {
+        return (int)(((hash >>> 32) * this.blockCount) >>> 32) * BLOCK_WORDS;
+    }
+
+    /**
+     * Gets the specified group of bit positions of the specified spread hash code.
+     *
+     * Each group holds {@link #BITS_PER_HASH} independent bit positions of {@link #BLOCK_SHIFT} bits each.
+     * Deriving the positions from an arithmetic progression instead would leave too few distinct
+     * combinations of bits per block to reach low false-positive rates.
+     */
+    private static long bitHashOf(long hash, int group) {
+        return mix(hash + (group + 1) * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Spreads a 32-bit hash code over 64 bits, using the finalizer of SplitMix64.
+     *
+     * @param hashCode the hash code
+     * @return the spread hash code
+     */
+    /* package private */ static long spread(int hashCode) {
+        return mix(hashCode * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Mixes the bits of a 64-bit value, using the finalizer of SplitMix64.
+     */
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+}
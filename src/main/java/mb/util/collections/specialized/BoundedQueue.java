@@ -0,0 +1,348 @@
+package mb.util.collections.specialized;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A bounded lock-free multi-producer multi-consumer queue, as described by Vyukov.
+ *
+ * The elements are stored in a ring buffer, where each slot has a sequence number that tells
+ * whether it's free for the producer of a position, or holds the element for the consumer of a position.
+ * A producer claims a position with a compare-and-set on the enqueue position, stores its element,
+ * and then publishes the slot by advancing its sequence number. Consumers work the same way
+ * on the dequeue position. Producers and consumers only contend among themselves,
+ * and a slow producer or consumer only delays the consumers or producers of its own slot.
+ *
+ * A batch of consecutive slots can be claimed with a single compare-and-set,
+ * through {@link #offerAll} and {@link #drain}.
+ *
+ * The non-blocking methods {@link #offer(Object)} and {@link #poll()} fail immediately when the queue
+ * is full or empty. The blocking methods {@link #put}, {@link #take}, and the variants with a timeout,
+ * wait by spinning and then parking for short intervals, so they don't need a lock to be woken up.
+ *
+ * All methods may be called by any thread. The queue does not permit {@code null} elements.
+ *
+ * @param <E> the type of elements in the queue
+ */
+public final class BoundedQueue<E> {
+
+    /** The number of longs between the counters, such that they are on different cache lines. */
+    private static final int PADDING = 16;
+    /** The index of the enqueue position in {@link #positions}. */
+    private static final int ENQUEUE = PADDING;
+    /** The index of the dequeue position in {@link #positions}. */
+    private static final int DEQUEUE = 2 * PADDING;
+    /** The number of times a blocking method yields before it starts parking. */
+    private static final int MAX_YIELDS = 64;
+    /** The number of nanoseconds a blocking method parks at a time. */
+    private static final long PARK_NANOS = 50_000L;
+
+    /** The enqueue and dequeue positions, padded against false sharing. */
+    private final AtomicLongArray positions = new AtomicLongArray(3 * PADDING);
+    /** The sequence number of each slot. */
+    private final AtomicLongArray sequences;
+    /** The element in each slot. */
+    private final AtomicReferenceArray<E> elements;
+    /** The capacity minus one; the capacity is a power of two. */
+    private final int mask;
+
+    /**
+     * Initializes a new instance of the {@link BoundedQueue} class.
+     *
+     * @param capacity the maximum number of elements, which is rounded up to a power of two
+     */
+    public BoundedQueue(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        int length = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = length - 1;
+        this.elements = new AtomicReferenceArray<>(length);
+        this.sequences = new AtomicLongArray(length);
+        for (int i = 0; i < length; i++) {
+            // The slot is free for the producer of position i.
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Gets the maximum number of elements in the queue.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Gets the approximate number of elements in the queue.
+     *
+     * @return the number of claimed positions that were not consumed
+     */
+    public int size() {
+        long size = this.positions.get(ENQUEUE) - this.positions.get(DEQUEUE);
+        return (int)Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Determines whether the queue is empty.
+     *
+     * @return {@code true} when the queue was empty at some point during the call; otherwise, {@code false}
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Adds an element at the end of the queue, unless the queue is full.
+     *
+     * @param element the element to add
+     * @return {@code true} when the element was added; {@code false} when the queue is full
+     */
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        long position = claim(ENQUEUE, 0);
+        if (position < 0) return false;
+        publish(position, element);
+        return true;
+    }
+
+    /**
+     * Adds an element at the end of the queue, waiting for space when the queue is full.
+     *
+     * @param element the element to add
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return {@code true} when the element was added; {@code false} when the timeout elapsed
+     * @throws InterruptedException the thread was interrupted while waiting
+     */
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(element);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int attempt = 0; !offer(element); attempt++) {
+            if (!backOff(attempt, true, deadline)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds an element at the end of the queue, waiting for space when the queue is full.
+     *
+     * @param element the element to add
+     * @throws InterruptedException the thread was interrupted while waiting
+     */
+    public void put(E element) throws InterruptedException {
+        Objects.requireNonNull(element);
+        for (int attempt = 0; !offer(element); attempt++) {
+            backOff(attempt, false, 0);
+        }
+    }
+
+
+    /**
+     * Adds a prefix of the specified elements at the end of the queue, claiming their slots at once.
+     *
+     * The added elements are consecutive in the queue, without elements of other producers in between.
+     *
+     * @param elements the elements to add
+     * @return the number of elements that were added, which is less than the number of elements when the queue is full
+     */
+    public int offerAll(List<? extends E> elements) {
+        int maxCount = Math.min(elements.size(), capacity());
+        for (int i = 0; i < maxCount; i++) {
+            Objects.requireNonNull(elements.get(i));
+        }
+        while (maxCount > 0) {
+            long position = this.positions.get(ENQUEUE);
+            int count = countClaimable(position, 0, maxCount);
+            if (count == 0) {
+                if (this.sequences.get(slotOf(position)) < position) return 0;
+                // Another producer claimed the position.
+                continue;
+            }
+            if (this.positions.compareAndSet(ENQUEUE, position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    publish(position + i, elements.get(i));
+                }
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Removes the element at the front of the queue, unless the queue is empty.
+     *
+     * @return the removed element; or {@code null} when the queue is empty
+     */
+    public @Nullable E poll() {
+        long position = claim(DEQUEUE, 1);
+        if (position < 0) return null;
+        return consume(position);
+    }
+
+    /**
+     * Removes the element at the front of the queue, waiting for an element when the queue is empty.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the removed element; or {@code null} when the timeout elapsed
+     * @throws InterruptedException the thread was interrupted while waiting
+     */
+    public @Nullable E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        @Nullable E element;
+        for (int attempt = 0; (element = poll()) == null; attempt++) {
+            if (!backOff(attempt, true, deadline)) return null;
+        }
+        return element;
+    }
+
+    /**
+     * Removes the element at the front of the queue, waiting for an element when the queue is empty.
+     *
+     * @return the removed element
+     * @throws InterruptedException the thread was interrupted while waiting
+     */
+    public E take() throws InterruptedException {
+        @Nullable E element;
+        for (int attempt = 0; (element = poll()) == null; attempt++) {
+            backOff(attempt, false, 0);
+        }
+        return element;
+    }
+
+    /**
+     * Removes at most the specified number of elements from the front of the queue, claiming their slots at once,
+     * and passes them to the specified action in order.
+     *
+     * @param action the action that receives the removed elements
+     * @param limit the maximum number of elements to remove
+     * @return the number of elements that were removed
+     */
+    public int drain(Consumer<? super E> action, int limit) {
+        Objects.requireNonNull(action);
+        int maxCount = Math.min(limit, capacity());
+        while (maxCount > 0) {
+            long position = this.positions.get(DEQUEUE);
+            int count = countClaimable(position, 1, maxCount);
+            if (count == 0) {
+                if (this.sequences.get(slotOf(position)) < position + 1) return 0;
+                // Another consumer claimed the position.
+                continue;
+            }
+            if (this.positions.compareAndSet(DEQUEUE, position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    action.accept(consume(position + i));
+                }
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Claims a single position.
+     *
+     * @param counter the index of the position counter
+     * @param offset the offset of the sequence number of a claimable slot: 0 for producers, and 1 for consumers
+     * @return the claimed position; or -1 when the queue is full (for producers) or empty (for consumers)
+     */
+    private long claim(int counter, int offset) {
+        long position = this.positions.get(counter);
+        while (true) {
+            long difference = this.sequences.get(slotOf(position)) - (position + offset);
+            if (difference == 0) {
+                if (this.positions.compareAndSet(counter, position, position + 1)) return position;
+            } else if (difference < 0) {
+                // The slot still holds an element of the previous round, or no element yet.
+                return -1;
+            }
+            // Another thread claimed the position.
+            position = this.positions.get(counter);
+        }
+    }
+
+    /**
+     * Counts the consecutive claimable slots from the specified position.
+     *
+     * A claimable slot stays claimable until the position counter moves past it,
+     * so the slots are still claimable when the compare-and-set on the counter succeeds.
+     *
+     * @param position the first position
+     * @param offset the offset of the sequence number of a claimable slot: 0 for producers, and 1 for consumers
+     * @param maxCount the maximum number of slots to count
+     * @return the number of claimable slots
+     */
+    private int countClaimable(long position, int offset, int maxCount) {
+        int count = 0;
+        while (count < maxCount && this.sequences.get(slotOf(position + count)) == position + count + offset) {
+            count += 1;
+        }
+        return count;
+    }
+
+    /**
+     * Stores an element in the slot of a claimed enqueue position, and publishes it to the consumers.
+     *
+     * @param position the claimed position
+     * @param element the element to store
+     */
+    private void publish(long position, E element) {
+        int slot = slotOf(position);
+        this.elements.lazySet(slot, element);
+        // The ordered write of the sequence number makes the element visible to the consumer that reads it.
+        this.sequences.lazySet(slot, position + 1);
+    }
+
+    /**
+     * Takes the element from the slot of a claimed dequeue position, and frees the slot for the producers.
+     *
+     * @param position the claimed position
+     * @return the element
+     */
+    private E consume(long position) {
+        int slot = slotOf(position);
+        E element = this.elements.get(slot);
+        this.elements.lazySet(slot, null);
+        // The slot is free for the producer of the same slot in the next round.
+        this.sequences.lazySet(slot, position + this.mask + 1);
+        return element;
+    }
+
+    private int slotOf(long position) {
+        return (int)position & this.mask;
+    }
+
+    /**
+     * Waits before the next attempt of a blocking method.
+     *
+     * @param attempt the zero-based number of failed attempts
+     * @param timed whether the method has a deadline
+     * @param deadline the deadline, as given by {@link System#nanoTime()}
+     * @return {@code true} to try again; {@code false} when the deadline passed
+     * @throws InterruptedException the thread was interrupted
+     */
+    private static boolean backOff(int attempt, boolean timed, long deadline) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        long remaining = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+        if (remaining <= 0) return false;
+        if (attempt < MAX_YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(PARK_NANOS, remaining));
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedQueue(size=" + size() + ", capacity=" + capacity() + ")";
+    }
+
+}
@@ -0,0 +1,1091 @@
+package mb.util.collections.specialized;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of {@code int} values, in the style of a Roaring bitmap.
+ *
+ * The values are split into chunks of 65536 values that share their high 16 bits. The set stores
+ * a sorted array of the chunks that have values, and for each chunk a container of the low 16 bits
+ * of its values, in whichever of three forms is smallest for the values in the chunk:
+ * <ul>
+ *     <li>a sorted array of at most 4096 values, for sparse chunks;</li>
+ *     <li>a bitmap of 65536 bits, for dense chunks;</li>
+ *     <li>a sorted array of runs of consecutive values, for chunks with few runs.</li>
+ * </ul>
+ * A sparse set takes about two bytes per value, and a dense set about one bit per value.
+ * The set operations {@link #and}, {@link #or}, and {@link #andNot} combine the containers of each chunk
+ * by merging arrays or combining bitmaps word by word.
+ *
+ * The values are iterated in ascending (signed) order, as primitive {@code int} values.
+ * The fastest way to iterate is {@link #forEach}, which does not allocate.
+ *
+ * A set is either mutable or frozen. The mutable form converts containers between arrays and bitmaps
+ * as values are added and removed. The frozen form, returned by {@link #freeze()}, stores each container
+ * in its smallest form, including run-length encoding, and throws {@link UnsupportedOperationException}
+ * when it is modified. A frozen set is thread-safe; a mutable set is not.
+ */
+public final class CompressedIntSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The maximum number of values in an array container; above this, a bitmap is smaller. */
+    private static final int MAX_ARRAY_SIZE = 4096;
+    /** The number of longs in a bitmap container. */
+    private static final int BITMAP_WORDS = 1024;
+    /** The initial capacity of the arrays of chunks. */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** The keys of the chunks, which are the high 16 bits of their values offset to sort in signed order. */
+    private int[] keys;
+    /** The containers of the chunks. */
+    private Container[] containers;
+    /** The number of chunks. */
+    private int chunkCount;
+    /** Whether the set is frozen. */
+    private final boolean frozen;
+
+    /**
+     * Initializes a new instance of the {@link CompressedIntSet} class, which is empty and mutable.
+     */
+    public CompressedIntSet() {
+        this(new int[INITIAL_CAPACITY], new Container[INITIAL_CAPACITY], 0, false);
+    }
+
+    /**
+     * Initializes a new instance of the {@link CompressedIntSet} class,
+     * which is a mutable copy of the specified set.
+     *
+     * @param set the set to copy
+     */
+    public CompressedIntSet(CompressedIntSet set) {
+        this(Arrays.copyOf(set.keys, Math.max(set.chunkCount, INITIAL_CAPACITY)),
+            new Container[Math.max(set.chunkCount, INITIAL_CAPACITY)], set.chunkCount, false);
+        for (int i = 0; i < set.chunkCount; i++) {
+            this.containers[i] = set.containers[i].copy();
+        }
+    }
+
+    private CompressedIntSet(int[] keys, Container[] containers, int chunkCount, boolean frozen) {
+        this.keys = keys;
+        this.containers = containers;
+        this.chunkCount = chunkCount;
+        this.frozen = frozen;
+    }
+
+    /**
+     * Creates a mutable set with the specified values.
+     *
+     * @param values the values
+     * @return the set
+     */
+    public static CompressedIntSet of(int... values) {
+        CompressedIntSet set = new CompressedIntSet();
+        for (int value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    /**
+     * Creates a mutable set with the values in the specified range.
+     *
+     * @param from the first value, inclusive
+     * @param to the last value, exclusive
+     * @return the set
+     */
+    public static CompressedIntSet range(int from, int to) {
+        CompressedIntSet set = new CompressedIntSet();
+        if (from >= to) return set;
+        int last = to - 1;
+        for (int key = keyOf(from); key <= keyOf(last); key++) {
+            int start = key == keyOf(from) ? lowOf(from) : 0;
+            int end = key == keyOf(last) ? lowOf(last) : 0xFFFF;
+            set.append(key, RunContainer.of(start, end).normalized());
+        }
+        return set;
+    }
+
+    /**
+     * Gets the number of values in the set.
+     *
+     * @return the number of values, which is at most 2^32
+     */
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < this.chunkCount; i++) {
+            cardinality += this.containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Gets whether the set is empty.
+     *
+     * @return {@code true} when the set is empty; otherwise, {@code false}
+     */
+    public boolean isEmpty() {
+        return this.chunkCount == 0;
+    }
+
+    /**
+     * Gets whether the set is frozen.
+     *
+     * @return {@code true} when the set is frozen and cannot be modified; otherwise, {@code false}
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    /**
+     * Determines whether the set contains the specified value.
+     *
+     * @param value the value to check
+     * @return {@code true} when the set contains the value; otherwise, {@code false}
+     */
+    public boolean contains(int value) {
+        int index = Arrays.binarySearch(this.keys, 0, this.chunkCount, keyOf(value));
+        return index >= 0 && this.containers[index].contains(lowOf(value));
+    }
+
+    /**
+     * Adds the specified value to the set.
+     *
+     * @param value the value to add
+     * @return {@code true} when the value was added; {@code false} when the set already contained it
+     * @throws UnsupportedOperationException the set is frozen
+     */
+    public boolean add(int value) {
+        checkMutable();
+        int key = keyOf(value);
+        int low = lowOf(value);
+        int index = Arrays.binarySearch(this.keys, 0, this.chunkCount, key);
+        if (index < 0) {
+            insertChunk(~index, key, new ArrayContainer().add(low));
+            return true;
+        }
+        Container container = this.containers[index];
+        if (container.contains(low)) return false;
+        this.containers[index] = container.add(low);
+        return true;
+    }
+
+    /**
+     * Removes the specified value from the set.
+     *
+     * @param value the value to remove
+     * @return {@code true} when the value was removed; {@code false} when the set did not contain it
+     * @throws UnsupportedOperationException the set is frozen
+     */
+    public boolean remove(int value) {
+        checkMutable();
+        int low = lowOf(value);
+        int index = Arrays.binarySearch(this.keys, 0, this.chunkCount, keyOf(value));
+        if (index < 0) return false;
+        Container container = this.containers[index];
+        if (!container.contains(low)) return false;
+        container = container.remove(low);
+        if (container.cardinality() == 0) {
+            removeChunk(index);
+        } else {
+            this.containers[index] = container;
+        }
+        return true;
+    }
+
+    /**
+     * Removes all values from the set.
+     *
+     * @throws UnsupportedOperationException the set is frozen
+     */
+    public void clear() {
+        checkMutable();
+        Arrays.fill(this.containers, 0, this.chunkCount, null);
+        this.chunkCount = 0;
+    }
+
+    /**
+     * Returns the intersection of this set and the specified set.
+     *
+     * @param other the other set
+     * @return a new mutable set with the values that are in both sets
+     */
+    public CompressedIntSet and(CompressedIntSet other) {
+        CompressedIntSet result = new CompressedIntSet();
+        int i = 0;
+        int j = 0;
+        while (i < this.chunkCount && j < other.chunkCount) {
+            int key = this.keys[i];
+            int otherKey = other.keys[j];
+            if (key < otherKey) {
+                i += 1;
+            } else if (key > otherKey) {
+                j += 1;
+            } else {
+                result.append(key, Container.and(this.containers[i], other.containers[j]));
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the union of this set and the specified set.
+     *
+     * @param other the other set
+     * @return a new mutable set with the values that are in either set
+     */
+    public CompressedIntSet or(CompressedIntSet other) {
+        CompressedIntSet result = new CompressedIntSet();
+        int i = 0;
+        int j = 0;
+        while (i < this.chunkCount || j < other.chunkCount) {
+            int key = i < this.chunkCount ? this.keys[i] : Integer.MAX_VALUE;
+            int otherKey = j < other.chunkCount ? other.keys[j] : Integer.MAX_VALUE;
+            if (key < otherKey) {
+                result.append(key, this.containers[i].copy());
+                i += 1;
+            } else if (key > otherKey) {
+                result.append(otherKey, other.containers[j].copy());
+                j += 1;
+            } else {
+                result.append(key, Container.or(this.containers[i], other.containers[j]));
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the difference of this set and the specified set.
+     *
+     * @param other the other set
+     * @return a new mutable set with the values that are in this set but not in the other set
+     */
+    public CompressedIntSet andNot(CompressedIntSet other) {
+        CompressedIntSet result = new CompressedIntSet();
+        int j = 0;
+        for (int i = 0; i < this.chunkCount; i++) {
+            int key = this.keys[i];
+            while (j < other.chunkCount && other.keys[j] < key) j += 1;
+            if (j < other.chunkCount && other.keys[j] == key) {
+                result.append(key, Container.andNot(this.containers[i], other.containers[j]));
+            } else {
+                result.append(key, this.containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of values that are in both this set and the specified set,
+     * without computing the intersection.
+     *
+     * @param other the other set
+     * @return the number of values in the intersection
+     */
+    public long andCardinality(CompressedIntSet other) {
+        long cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < this.chunkCount && j < other.chunkCount) {
+            int key = this.keys[i];
+            int otherKey = other.keys[j];
+            if (key < otherKey) {
+                i += 1;
+            } else if (key > otherKey) {
+                j += 1;
+            } else {
+                cardinality += Container.andCardinality(this.containers[i], other.containers[j]);
+                i += 1;
+                j += 1;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns a frozen set with the values of this set, in which each container has its smallest form.
+     *
+     * @return the frozen set; or this set when it is already frozen
+     */
+    public CompressedIntSet freeze() {
+        if (this.frozen) return this;
+        Container[] containers = new Container[this.chunkCount];
+        for (int i = 0; i < this.chunkCount; i++) {
+            containers[i] = this.containers[i].optimized();
+        }
+        return new CompressedIntSet(Arrays.copyOf(this.keys, this.chunkCount), containers, this.chunkCount, true);
+    }
+
+    /**
+     * Performs the specified action for each value in the set, in ascending order.
+     *
+     * @param action the action to perform
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < this.chunkCount; i++) {
+            this.containers[i].forEach(valueOf(this.keys[i], 0), action);
+        }
+    }
+
+    /**
+     * Returns an iterator over the values in the set, in ascending order.
+     *
+     * The iterator is undefined when the set is modified during iteration.
+     *
+     * @return the iterator
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new ValueIterator();
+    }
+
+    /**
+     * Returns the values in the set, in ascending order.
+     *
+     * @return an array of the values
+     */
+    public int[] toArray() {
+        long cardinality = cardinality();
+        if (cardinality > Integer.MAX_VALUE - 8) throw new IllegalStateException("Too many values for an array: " + cardinality);
+        int[] values = new int[(int)cardinality];
+        int count = 0;
+        for (int i = 0; i < this.chunkCount; i++) {
+            count = this.containers[i].copyTo(valueOf(this.keys[i], 0), values, count);
+        }
+        return values;
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof CompressedIntSet)) return false;
+        CompressedIntSet other = (CompressedIntSet)obj;
+        if (other.chunkCount != this.chunkCount) return false;
+        for (int i = 0; i < this.chunkCount; i++) {
+            if (this.keys[i] != other.keys[i]) return false;
+            Container container = this.containers[i];
+            Container otherContainer = other.containers[i];
+            if (container.cardinality() != otherContainer.cardinality()) return false;
+            if (Container.andCardinality(container, otherContainer) != container.cardinality()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // The hash code only depends on the values, not on the forms of the containers.
+        int[] hashCode = { 1 };
+        forEach(value -> hashCode[0] = 31 * hashCode[0] + value);
+        return hashCode[0];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach(value -> {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(value);
+        });
+        return sb.append('}').toString();
+    }
+
+    private void checkMutable() {
+        if (this.frozen) throw new UnsupportedOperationException("The set is frozen.");
+    }
+
+    /**
+     * Appends a chunk with a key greater than all keys, unless its container is empty.
+     */
+    private void append(int key, Container container) {
+        if (container.cardinality() == 0) return;
+        insertChunk(this.chunkCount, key, container);
+    }
+
+    private void insertChunk(int index, int key, Container container) {
+        if (this.chunkCount == this.keys.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, this.chunkCount * 2);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.containers = Arrays.copyOf(this.containers, capacity);
+        }
+        System.arraycopy(this.keys, index, this.keys, index + 1, this.chunkCount - index);
+        System.arraycopy(this.containers, index, this.containers, index + 1, this.chunkCount - index);
+        this.keys[index] = key;
+        this.containers[index] = container;
+        this.chunkCount += 1;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(this.keys, index + 1, this.keys, index, this.chunkCount - index - 1);
+        System.arraycopy(this.containers, index + 1, this.containers, index, this.chunkCount - index - 1);
+        this.chunkCount -= 1;
+        this.containers[this.chunkCount] = null;
+    }
+
+    /**
+     * Gets the key of the chunk of a value, such that the keys sort in the signed order of the values.
+     */
+    private static int keyOf(int value) {
+        return (value >> 16) + 0x8000;
+    }
+
+    private static int lowOf(int value) {
+        return value & 0xFFFF;
+    }
+
+    private static int valueOf(int key, int low) {
+        return ((key - 0x8000) << 16) | low;
+    }
+
+    /**
+     * Iterates over the values in the set.
+     */
+    private final class ValueIterator implements PrimitiveIterator.OfInt {
+
+        /** The index of the chunk of the next value. */
+        private int index;
+        /** The low 16 bits of the next value; or -1 when there are no more values. */
+        private int low;
+
+        private ValueIterator() {
+            advance(0, 0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.low >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (this.low < 0) throw new NoSuchElementException();
+            int value = valueOf(CompressedIntSet.this.keys[this.index], this.low);
+            advance(this.index, this.low + 1);
+            return value;
+        }
+
+        /**
+         * Finds the first value at or after the specified position.
+         */
+        private void advance(int index, int from) {
+            for (; index < CompressedIntSet.this.chunkCount; index++) {
+                int low = from <= 0xFFFF ? CompressedIntSet.this.containers[index].nextValue(from) : -1;
+                if (low >= 0) {
+                    this.index = index;
+                    this.low = low;
+                    return;
+                }
+                from = 0;
+            }
+            this.index = index;
+            this.low = -1;
+        }
+
+    }
+
+    /**
+     * The low 16 bits of the values in a chunk.
+     *
+     * Array and bitmap containers are modified in place, but only by the set that owns them.
+     * Run containers are never modified; adding or removing a value converts them.
+     */
+    private static abstract class Container implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Gets the number of values in the container.
+         */
+        abstract int cardinality();
+
+        abstract boolean contains(int low);
+
+        /**
+         * Adds a value that is not in the container.
+         *
+         * @return the container with the value, which may be this container
+         */
+        abstract Container add(int low);
+
+        /**
+         * Removes a value that is in the container.
+         *
+         * @return the container without the value, which may be this container
+         */
+        abstract Container remove(int low);
+
+        /**
+         * Gets the smallest value in the container that is at least the specified value.
+         *
+         * @return the value; or -1 when there is none
+         */
+        abstract int nextValue(int from);
+
+        abstract void forEach(int base, IntConsumer action);
+
+        /**
+         * Copies the values into an array.
+         *
+         * @return the index in the array after the last copied value
+         */
+        abstract int copyTo(int base, int[] values, int offset);
+
+        /**
+         * Gets the number of runs of consecutive values.
+         */
+        abstract int runCount();
+
+        /**
+         * Sets the bits of the values in the specified bitmap.
+         */
+        abstract void setBits(long[] words);
+
+        /**
+         * Returns a copy of this container that is not shared with the set that owns it.
+         */
+        abstract Container copy();
+
+        /**
+         * Returns a container with the same values in its smallest form.
+         */
+        Container optimized() {
+            int cardinality = cardinality();
+            int runCount = runCount();
+            // The sizes in bytes of the three forms.
+            int arraySize = cardinality <= MAX_ARRAY_SIZE ? 2 * cardinality : Integer.MAX_VALUE;
+            int bitmapSize = 8 * BITMAP_WORDS;
+            int runSize = 4 * runCount;
+            if (runSize < Math.min(arraySize, bitmapSize)) return RunContainer.from(this, runCount);
+            if (arraySize <= bitmapSize) return ArrayContainer.from(this, cardinality);
+            return BitmapContainer.from(this);
+        }
+
+        static Container and(Container a, Container b) {
+            if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+                return ((ArrayContainer)a).and((ArrayContainer)b);
+            } else if (a instanceof ArrayContainer) {
+                return ((ArrayContainer)a).filter(b, true);
+            } else if (b instanceof ArrayContainer) {
+                return ((ArrayContainer)b).filter(a, true);
+            } else {
+                long[] words = a.toWords();
+                long[] otherWords = b.toWords();
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] &= otherWords[i];
+                }
+                return BitmapContainer.of(words);
+            }
+        }
+
+        static Container or(Container a, Container b) {
+            if (a instanceof ArrayContainer && b instanceof ArrayContainer
+                && a.cardinality() + b.cardinality() <= MAX_ARRAY_SIZE) {
+                return ((ArrayContainer)a).or((ArrayContainer)b);
+            } else {
+                long[] words = a.toWords();
+                b.setBits(words);
+                return BitmapContainer.of(words);
+            }
+        }
+
+        static Container andNot(Container a, Container b) {
+            if (a instanceof ArrayContainer) {
+                return ((ArrayContainer)a).filter(b, false);
+            } else {
+                long[] words = a.toWords();
+                if (b instanceof ArrayContainer) {
+                    ArrayContainer array = (ArrayContainer)b;
+                    for (int i = 0; i < array.cardinality; i++) {
+                        words[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                    }
+                } else {
+                    long[] otherWords = b.toWords();
+                    for (int i = 0; i < BITMAP_WORDS; i++) {
+                        words[i] &= ~otherWords[i];
+                    }
+                }
+                return BitmapContainer.of(words);
+            }
+        }
+
+        static int andCardinality(Container a, Container b) {
+            if (a instanceof ArrayContainer || b instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer)(a instanceof ArrayContainer ? a : b);
+                Container other = a instanceof ArrayContainer ? b : a;
+                int cardinality = 0;
+                for (int i = 0; i < array.cardinality; i++) {
+                    if (other.contains(array.values[i])) cardinality += 1;
+                }
+                return cardinality;
+            } else {
+                long[] words = a.toWords();
+                long[] otherWords = b.toWords();
+                int cardinality = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    cardinality += Long.bitCount(words[i] & otherWords[i]);
+                }
+                return cardinality;
+            }
+        }
+
+        /**
+         * Gets the values as a bitmap that may be modified by the caller.
+         */
+        long[] toWords() {
+            long[] words = new long[BITMAP_WORDS];
+            setBits(words);
+            return words;
+        }
+
+    }
+
+    /**
+     * A container of at most {@link #MAX_ARRAY_SIZE} values in a sorted array.
+     */
+    private static final class ArrayContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The values, sorted; the chars are unsigned 16-bit values. */
+        private char[] values;
+        /** The number of values. */
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[INITIAL_CAPACITY], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        static ArrayContainer from(Container container, int cardinality) {
+            int[] values = new int[cardinality];
+            container.copyTo(0, values, 0);
+            char[] chars = new char[cardinality];
+            for (int i = 0; i < cardinality; i++) {
+                chars[i] = (char)values[i];
+            }
+            return new ArrayContainer(chars, cardinality);
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        boolean contains(int low) {
+            return Arrays.binarySearch(this.values, 0, this.cardinality, (char)low) >= 0;
+        }
+
+        @Override
+        Container add(int low) {
+            if (this.cardinality == MAX_ARRAY_SIZE) return BitmapContainer.from(this).add(low);
+            int index = ~Arrays.binarySearch(this.values, 0, this.cardinality, (char)low);
+            if (this.cardinality == this.values.length) {
+                this.values = Arrays.copyOf(this.values, Math.min(MAX_ARRAY_SIZE, this.cardinality * 2));
+            }
+            System.arraycopy(this.values, index, this.values, index + 1, this.cardinality - index);
+            this.values[index] = (char)low;
+            this.cardinality += 1;
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            int index = Arrays.binarySearch(this.values, 0, this.cardinality, (char)low);
+            System.arraycopy(this.values, index + 1, this.values, index, this.cardinality - index - 1);
+            this.cardinality -= 1;
+            return this;
+        }
+
+        @Override
+        int nextValue(int from) {
+            int index = Arrays.binarySearch(this.values, 0, this.cardinality, (char)from);
+            if (index >= 0) return from;
+            index = ~index;
+            return index < this.cardinality ? this.values[index] : -1;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < this.cardinality; i++) {
+                action.accept(base | this.values[i]);
+            }
+        }
+
+        @Override
+        int copyTo(int base, int[] values, int offset) {
+            for (int i = 0; i < this.cardinality; i++) {
+                values[offset++] = base | this.values[i];
+            }
+            return offset;
+        }
+
+        @Override
+        int runCount() {
+            int runCount = 0;
+            for (int i = 0; i < this.cardinality; i++) {
+                if (i == 0 || this.values[i] != this.values[i - 1] + 1) runCount += 1;
+            }
+            return runCount;
+        }
+
+        @Override
+        void setBits(long[] words) {
+            for (int i = 0; i < this.cardinality; i++) {
+                words[this.values[i] >>> 6] |= 1L << this.values[i];
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(this.values, Math.max(this.cardinality, INITIAL_CAPACITY)), this.cardinality);
+        }
+
+        ArrayContainer and(ArrayContainer other) {
+            char[] values = new char[Math.min(this.cardinality, other.cardinality)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < this.cardinality && j < other.cardinality) {
+                char a = this.values[i];
+                char b = other.values[j];
+                if (a < b) {
+                    i += 1;
+                } else if (a > b) {
+                    j += 1;
+                } else {
+                    values[count++] = a;
+                    i += 1;
+                    j += 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        ArrayContainer or(ArrayContainer other) {
+            char[] values = new char[this.cardinality + other.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < this.cardinality || j < other.cardinality) {
+                int a = i < this.cardinality ? this.values[i] : Integer.MAX_VALUE;
+                int b = j < other.cardinality ? other.values[j] : Integer.MAX_VALUE;
+                if (a <= b) i += 1;
+                if (b <= a) j += 1;
+                values[count++] = (char)Math.min(a, b);
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        /**
+         * Returns the values of this container that are, or are not, in the specified container.
+         */
+        ArrayContainer filter(Container other, boolean retain) {
+            char[] values = new char[this.cardinality];
+            int count = 0;
+            for (int i = 0; i < this.cardinality; i++) {
+                if (other.contains(this.values[i]) == retain) values[count++] = this.values[i];
+            }
+            return new ArrayContainer(values, count);
+        }
+
+    }
+
+    /**
+     * A container of values in a bitmap of 65536 bits.
+     */
+    private static final class BitmapContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The bits of the values. */
+        private final long[] words;
+        /** The number of values. */
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static BitmapContainer from(Container container) {
+            return new BitmapContainer(container.toWords(), container.cardinality());
+        }
+
+        /**
+         * Creates a container of the specified bits, which is an array container when there are few.
+         */
+        static Container of(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+            return cardinality <= MAX_ARRAY_SIZE ? ArrayContainer.from(bitmap, cardinality) : bitmap;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        boolean contains(int low) {
+            return (this.words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container add(int low) {
+            this.words[low >>> 6] |= 1L << low;
+            this.cardinality += 1;
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            this.words[low >>> 6] &= ~(1L << low);
+            this.cardinality -= 1;
+            return this.cardinality <= MAX_ARRAY_SIZE ? ArrayContainer.from(this, this.cardinality) : this;
+        }
+
+        @Override
+        int nextValue(int from) {
+            int index = from >>> 6;
+            long word = this.words[index] & (-1L << from);
+            while (word == 0) {
+                index += 1;
+                if (index == BITMAP_WORDS) return -1;
+                word = this.words[index];
+            }
+            return (index << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = this.words[i];
+                while (word != 0) {
+                    action.accept(base | (i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        int copyTo(int base, int[] values, int offset) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = this.words[i];
+                while (word != 0) {
+                    values[offset++] = base | (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        int runCount() {
+            // A run starts at each set bit whose preceding bit is not set.
+            int runCount = 0;
+            long carry = 0;
+            for (long word : this.words) {
+                runCount += Long.bitCount(word & ~((word << 1) | carry));
+                carry = word >>> 63;
+            }
+            return runCount;
+        }
+
+        @Override
+        void setBits(long[] words) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] |= this.words[i];
+            }
+        }
+
+        @Override
+        long[] toWords() {
+            return this.words.clone();
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(this.words.clone(), this.cardinality);
+        }
+
+    }
+
+    /**
+     * A container of values in a sorted array of runs of consecutive values.
+     *
+     * This container is never modified.
+     */
+    private static final class RunContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        /** For each run, its first value followed by its length minus one; the chars are unsigned 16-bit values. */
+        private final char[] runs;
+        /** The number of values. */
+        private final int cardinality;
+
+        RunContainer(char[] runs) {
+            this.runs = runs;
+            int cardinality = 0;
+            for (int i = 0; i < runs.length; i += 2) {
+                cardinality += runs[i + 1] + 1;
+            }
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * Creates a container of a single run.
+         */
+        static RunContainer of(int first, int last) {
+            return new RunContainer(new char[] { (char)first, (char)(last - first) });
+        }
+
+        static RunContainer from(Container container, int runCount) {
+            char[] runs = new char[2 * runCount];
+            int index = 0;
+            int start = container.nextValue(0);
+            while (start >= 0) {
+                // Find the end of the run that starts at the value.
+                int end = start;
+                while (end < 0xFFFF && container.contains(end + 1)) end += 1;
+                runs[index++] = (char)start;
+                runs[index++] = (char)(end - start);
+                start = end < 0xFFFF ? container.nextValue(end + 1) : -1;
+            }
+            return new RunContainer(runs);
+        }
+
+        /**
+         * Converts this container to an array or bitmap container, which can be modified.
+         */
+        Container normalized() {
+            return this.cardinality <= MAX_ARRAY_SIZE ? ArrayContainer.from(this, this.cardinality) : BitmapContainer.from(this);
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        boolean contains(int low) {
+            int run = runAtOrBefore(low);
+            return run >= 0 && low - this.runs[2 * run] <= this.runs[2 * run + 1];
+        }
+
+        @Override
+        Container add(int low) {
+            return normalized().add(low);
+        }
+
+        @Override
+        Container remove(int low) {
+            return normalized().remove(low);
+        }
+
+        @Override
+        int nextValue(int from) {
+            int run = runAtOrBefore(from);
+            if (run >= 0 && from - this.runs[2 * run] <= this.runs[2 * run + 1]) return from;
+            run += 1;
+            return 2 * run < this.runs.length ? this.runs[2 * run] : -1;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < this.runs.length; i += 2) {
+                int start = this.runs[i];
+                int end = start + this.runs[i + 1];
+                for (int low = start; low <= end; low++) {
+                    action.accept(base | low);
+                }
+            }
+        }
+
+        @Override
+        int copyTo(int base, int[] values, int offset) {
+            for (int i = 0; i < this.runs.length; i += 2) {
+                int start = this.runs[i];
+                int end = start + this.runs[i + 1];
+                for (int low = start; low <= end; low++) {
+                    values[offset++] = base | low;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        int runCount() {
+            return this.runs.length / 2;
+        }
+
+        @Override
+        void setBits(long[] words) {
+            for (int i = 0; i < this.runs.length; i += 2) {
+                int start = this.runs[i];
+                int end = start + this.runs[i + 1];
+                int startWord = start >>> 6;
+                int endWord = end >>> 6;
+                long startMask = -1L << start;
+                long endMask = -1L >>> (63 - (end & 63));
+                if (startWord == endWord) {
+                    words[startWord] |= startMask & endMask;
+                } else {
+                    words[startWord] |= startMask;
+                    for (int w = startWord + 1; w < endWord; w++) {
+                        words[w] = -1L;
+                    }
+                    words[endWord] |= endMask;
+                }
+            }
+        }
+
+        @Override
+        Container optimized() {
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            // This container is never modified, so it can be shared.
+            return this;
+        }
+
+        /**
+         * Finds the last run that starts at or before the specified value.
+         *
+         * @return the index of the run; or -1 when all runs start after the value
+         */
+        private int runAtOrBefore(int low) {
+            int lo = 0;
+            int hi = this.runs.length / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.runs[2 * mid] <= low) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi;
+        }
+
+    }
+
+}
@@ -0,0 +1,478 @@
+package mb.util.collections.specialized;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BinaryOperator;
+
+/**
+ * A thread-safe lock-free union-find map.
+ *
+ * All operations are lock-free: a thread that is delayed never prevents the others from making progress.
+ * They are not wait-free, as a read that finds a root may have to try again when a concurrent union
+ * links that root, so a reader can be delayed indefinitely by a stream of concurrent unions.
+ *
+ * The sets are trees of nodes, whose parent links are updated with compare-and-set.
+ * Sets are merged by linking the root of lower priority to the root of higher priority,
+ * where the priorities are a random permutation of the node indices. This keeps the trees
+ * shallow in expectation without having to maintain ranks. Finding a root splits the path
+ * by linking each node to its grandparent, which only ever moves a node closer to its root.
+ *
+ * The value of a set is stored at its root. To merge two sets and their values atomically,
+ * a union first reserves the root that is to be linked, by replacing its cell with a descriptor.
+ * The union takes effect when the merged value is installed at the other root,
+ * and the descriptor is then completed by linking the reserved root.
+ * Any thread that encounters a descriptor can complete it, so a stalled thread
+ * cannot block the others.
+ *
+ * Like {@link java.util.concurrent.atomic.AtomicReference#accumulateAndGet}, the merge function
+ * passed to {@link #union} may be applied more than once when threads contend,
+ * so it should be free of side effects.
+ *
+ * The keys are compared using their {@link Object#equals} and {@link Object#hashCode} methods.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public final class ConcurrentDisjointMap<K, V> implements MutableDisjointMap<K, V> {
+
+    /** The number of nodes in the first chunk. */
+    private static final int BASE_CHUNK_SIZE = 64;
+    /** The maximum number of chunks; chunk {@code k} has {@code BASE_CHUNK_SIZE << k} nodes. */
+    private static final int MAX_CHUNKS = 25;
+
+    /** The index of the node of each key. */
+    private final ConcurrentHashMap<K, Integer> indices = new ConcurrentHashMap<>();
+    /** The chunks of nodes, which are allocated when needed. */
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    /** The number of allocated nodes. */
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    /** The seed of the random permutation of the node priorities. */
+    private final int seed = ThreadLocalRandom.current().nextInt();
+
+    @Override
+    public int size() {
+        return this.indices.size();
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return key != null && this.indices.containsKey(key);
+    }
+
+    @Override
+    public K find(K key) {
+        Integer index = this.indices.get(key);
+        if (index == null) return key;
+        return keyOf(findRoot(index));
+    }
+
+    @Override
+    public boolean isSameSet(K key1, K key2) {
+        Integer index1 = this.indices.get(key1);
+        Integer index2 = this.indices.get(key2);
+        if (index1 == null || index2 == null) return key1.equals(key2);
+        // The roots may change while we look for them, so we retry until the first root is still a root.
+        while (true) {
+            int root1 = findRoot(index1);
+            int root2 = findRoot(index2);
+            if (root1 == root2) return true;
+            if (parentOf(root1) == root1 && !isAbsorbed(root1)) return false;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(K key) {
+        Integer index = this.indices.get(key);
+        if (index == null) return null;
+        int node = index;
+        while (true) {
+            node = findRoot(node);
+            Object cell = cellOf(node);
+            if (cell instanceof Root) {
+                return ((Root<V>)cell).value;
+            }
+            // A reserved root that was not yet absorbed still holds the value of its set.
+            Pending<V> pending = (Pending<V>)cell;
+            if (!isAbsorbed(pending) && parentOf(node) == node) return pending.value;
+        }
+    }
+
+    @Override
+    public @Nullable V put(K key, @Nullable V value) {
+        int node = indexOrAdd(key);
+        while (true) {
+            node = findRoot(node);
+            Object cell = cellOf(node);
+            if (cell instanceof Pending) {
+                help((Pending<?>)cell);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Root<V> root = (Root<V>)cell;
+            completeAbsorbed(root);
+            if (chunkOf(node).cells.compareAndSet(offsetOf(node), root, new Root<V>(value, null))) {
+                return root.value;
+            }
+        }
+    }
+
+    @Override
+    public K union(K key1, K key2, BinaryOperator<V> merge) {
+        int index1 = indexOrAdd(key1);
+        int index2 = indexOrAdd(key2);
+        while (true) {
+            int root1 = findRoot(index1);
+            int root2 = findRoot(index2);
+            if (root1 == root2) return keyOf(root1);
+
+            // Link the root of lower priority to the root of higher priority.
+            boolean firstIsChild = priorityOf(root1) < priorityOf(root2);
+            int child = firstIsChild ? root1 : root2;
+            int parent = firstIsChild ? root2 : root1;
+
+            Object cell = cellOf(child);
+            if (cell instanceof Pending) {
+                help((Pending<?>)cell);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Root<V> root = (Root<V>)cell;
+            completeAbsorbed(root);
+            Pending<V> pending = new Pending<>(child, parent, root.value, merge, firstIsChild);
+            if (!chunkOf(child).cells.compareAndSet(offsetOf(child), root, pending)) continue;
+
+            help(pending);
+            // When the reservation was aborted because the parent stopped being a root, we try again.
+            if (pending.state.get() == Pending.COMPLETED) return keyOf(findRoot(parent));
+        }
+    }
+
+    /**
+     * Finds the root of the tree that contains the specified node.
+     *
+     * This is lock-free, but not wait-free. Each step along the parent links moves to a node of higher priority,
+     * but when a concurrent union links or reserves the root that was found, the search continues from there.
+     *
+     * @param node the index of the node
+     * @return the index of the root
+     */
+    private int findRoot(int node) {
+        while (true) {
+            int parent = parentOf(node);
+            if (parent != node) {
+                int grandparent = parentOf(parent);
+                if (grandparent != parent) {
+                    // Path splitting. When this fails, another thread already moved the node up.
+                    chunkOf(node).parents.compareAndSet(offsetOf(node), parent, grandparent);
+                }
+                node = parent;
+                continue;
+            }
+            Object cell = cellOf(node);
+            if (cell instanceof Pending && isAbsorbed((Pending<?>)cell)) {
+                // The union took effect, but the node was not linked yet.
+                Pending<?> pending = (Pending<?>)cell;
+                complete(pending);
+                node = pending.parent;
+                continue;
+            }
+            if (parentOf(node) != node) continue;
+            return node;
+        }
+    }
+
+    /**
+     * Determines whether the reserved root at the specified node was absorbed by its parent.
+     *
+     * @param node the index of the node
+     * @return {@code true} when the node is a reserved root that was absorbed; otherwise, {@code false}
+     */
+    private boolean isAbsorbed(int node) {
+        Object cell = cellOf(node);
+        return cell instanceof Pending && isAbsorbed((Pending<?>)cell);
+    }
+
+    /**
+     * Determines whether the specified reservation took effect.
+     *
+     * A reservation takes effect when its value is merged into the parent. Before the cell of the parent
+     * is replaced again, the reservation is completed. Therefore, when the cell of the parent doesn't refer
+     * to the reservation, the reservation took effect iff it was completed.
+     *
+     * @param pending the reservation
+     * @return {@code true} when the reservation took effect; otherwise, {@code false}
+     */
+    private boolean isAbsorbed(Pending<?> pending) {
+        Object parentCell = cellOf(pending.parent);
+        if (parentCell instanceof Root && ((Root<?>)parentCell).absorbed == pending) return true;
+        return pending.state.get() == Pending.COMPLETED;
+    }
+
+    /**
+     * Completes or aborts the specified reservation.
+     *
+     * @param pending the reservation
+     * @param <V> the type of values
+     */
+    private <V> void help(Pending<V> pending) {
+        int parent = pending.parent;
+        Chunk parentChunk = chunkOf(parent);
+        while (true) {
+            int state = pending.state.get();
+            if (state == Pending.COMPLETED) {
+                link(pending);
+                return;
+            } else if (state == Pending.ABORTED) {
+                restore(pending);
+                return;
+            }
+
+            if (parentOf(parent) != parent) {
+                // The parent was linked, so its cell never becomes a root cell again, and the reservation
+                // didn't take effect (otherwise it would have been completed before the parent was reserved).
+                // We abort, and the union is retried with the new roots.
+                if (pending.state.compareAndSet(Pending.ACTIVE, Pending.ABORTED)) restore(pending);
+                continue;
+            }
+            Object cell = cellOf(parent);
+            if (cell instanceof Pending) {
+                // The parent is reserved. We can't abort yet, because when that reservation is aborted,
+                // the parent becomes a root again, and a slower helper of our reservation could still merge into it.
+                help((Pending<?>)cell);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Root<V> root = (Root<V>)cell;
+            if (root.absorbed == pending) {
+                complete(pending);
+                return;
+            }
+            // The reservation may have been merged and completed after we read its state, and the parent's cell
+            // replaced since. Reading the state again after the cell tells whether it's safe to merge.
+            if (pending.state.get() != Pending.ACTIVE) continue;
+            completeAbsorbed(root);
+            Root<V> merged = new Root<>(pending.merge(root.value), pending);
+            if (parentChunk.cells.compareAndSet(offsetOf(parent), root, merged)) {
+                complete(pending);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Completes the reservation that the specified root absorbed, if any,
+     * such that the root can be replaced.
+     *
+     * @param root the root cell
+     */
+    private void completeAbsorbed(Root<?> root) {
+        @Nullable Pending<?> absorbed = root.absorbed;
+        if (absorbed != null) complete(absorbed);
+    }
+
+    /**
+     * Completes a reservation that took effect, by linking the child to the parent.
+     *
+     * @param pending the reservation
+     */
+    private void complete(Pending<?> pending) {
+        // A reservation that took effect cannot have been aborted.
+        pending.state.compareAndSet(Pending.ACTIVE, Pending.COMPLETED);
+        link(pending);
+    }
+
+    /**
+     * Links the child of a completed reservation to the parent.
+     *
+     * @param pending the reservation
+     */
+    private void link(Pending<?> pending) {
+        int child = pending.child;
+        chunkOf(child).parents.compareAndSet(offsetOf(child), child, pending.parent);
+    }
+
+    /**
+     * Replaces the cell of the child of an aborted reservation by a root cell.
+     *
+     * @param pending the reservation
+     */
+    private void restore(Pending<?> pending) {
+        int child = pending.child;
+        chunkOf(child).cells.compareAndSet(offsetOf(child), pending, new Root<>(pending.value, null));
+    }
+
+    /**
+     * Gets the index of the node of the specified key, adding a node when the key is not in the map.
+     *
+     * @param key the key
+     * @return the index of the node
+     */
+    private int indexOrAdd(K key) {
+        Integer index = this.indices.get(key);
+        if (index != null) return index;
+
+        int newIndex = this.nodeCount.getAndIncrement();
+        Chunk chunk = chunkOf(newIndex);
+        int offset = offsetOf(newIndex);
+        // The node is initialized before it's published in the index map.
+        chunk.keys.set(offset, key);
+        chunk.cells.set(offset, new Root<V>(null, null));
+        chunk.parents.set(offset, newIndex);
+        Integer existing = this.indices.putIfAbsent(key, newIndex);
+        // When another thread added the key first, our node remains unused.
+        return existing != null ? existing : newIndex;
+    }
+
+    private int priorityOf(int node) {
+        // A bijective mix function, so that the priorities are distinct.
+        int h = node ^ this.seed;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyOf(int node) {
+        return (K)chunkOf(node).keys.get(offsetOf(node));
+    }
+
+    private int parentOf(int node) {
+        return chunkOf(node).parents.get(offsetOf(node));
+    }
+
+    private Object cellOf(int node) {
+        return chunkOf(node).cells.get(offsetOf(node));
+    }
+
+    /**
+     * Gets the chunk that holds the specified node, allocating it when needed.
+     *
+     * @param node the index of the node
+     * @return the chunk
+     */
+    private Chunk chunkOf(int node) {
+        int k = chunkIndexOf(node);
+        Chunk chunk = this.chunks.get(k);
+        if (chunk == null) {
+            Chunk newChunk = new Chunk(BASE_CHUNK_SIZE << k);
+            chunk = this.chunks.compareAndSet(k, null, newChunk) ? newChunk : this.chunks.get(k);
+        }
+        return chunk;
+    }
+
+    private static int chunkIndexOf(int node) {
+        // Chunk k holds the nodes from BASE_CHUNK_SIZE * (2^k - 1) up to BASE_CHUNK_SIZE * (2^(k+1) - 1).
+        return 31 - Integer.numberOfLeadingZeros(node / BASE_CHUNK_SIZE + 1);
+    }
+
+    private static int offsetOf(int node) {
+        return node - BASE_CHUNK_SIZE * ((1 << chunkIndexOf(node)) - 1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<K, Integer> entry : this.indices.entrySet()) {
+            if (!first) sb.append(", ");
+            first = false;
+            sb.append(entry.getKey()).append('=').append(keyOf(findRoot(entry.getValue())));
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * A chunk of nodes.
+     */
+    private static final class Chunk {
+        /** The key of each node. */
+        private final AtomicReferenceArray<Object> keys;
+        /** The index of the parent of each node; or its own index for a root. */
+        private final AtomicIntegerArray parents;
+        /** The {@link Root} or {@link Pending} cell of each root. */
+        private final AtomicReferenceArray<Object> cells;
+
+        private Chunk(int size) {
+            this.keys = new AtomicReferenceArray<>(size);
+            this.parents = new AtomicIntegerArray(size);
+            this.cells = new AtomicReferenceArray<>(size);
+        }
+    }
+
+    /**
+     * The cell of a root.
+     *
+     * @param <V> the type of values
+     */
+    private static final class Root<V> {
+        /** The value of the set; or {@code null}. */
+        @Nullable private final V value;
+        /** The reservation whose value was merged into this value, and which may not have been completed yet. */
+        @Nullable private final Pending<?> absorbed;
+
+        private Root(@Nullable V value, @Nullable Pending<?> absorbed) {
+            this.value = value;
+            this.absorbed = absorbed;
+        }
+    }
+
+    /**
+     * The cell of a root that is reserved to be linked to another root.
+     *
+     * @param <V> the type of values
+     */
+    private static final class Pending<V> {
+        /** The state of a reservation that may still take effect or be aborted. */
+        private static final int ACTIVE = 0;
+        /** The state of a reservation that took effect. */
+        private static final int COMPLETED = 1;
+        /** The state of a reservation that was aborted. */
+        private static final int ABORTED = 2;
+
+        /** The index of the root that is to be linked. */
+        private final int child;
+        /** The index of the root to link it to. */
+        private final int parent;
+        /** The value of the set of the child. */
+        @Nullable private final V value;
+        /** The function that merges the values. */
+        private final BinaryOperator<V> merge;
+        /** Whether the value of the child is the first argument of the merge function. */
+        private final boolean childIsFirst;
+        /** The state of the reservation, which only changes once, such that it's not both completed and aborted. */
+        private final AtomicInteger state = new AtomicInteger(ACTIVE);
+
+        private Pending(int child, int parent, @Nullable V value, BinaryOperator<V> merge, boolean childIsFirst) {
+            this.child = child;
+            this.parent = parent;
+            this.value = value;
+            this.merge = merge;
+            this.childIsFirst = childIsFirst;
+        }
+
+        /**
+         * Merges the value of the child with the specified value of the parent.
+         *
+         * @param parentValue the value of the parent
+         * @return the merged value
+         */
+        @Nullable private V merge(@Nullable V parentValue) {
+            if (this.value == null) return parentValue;
+            if (parentValue == null) return this.value;
+            return this.childIsFirst ? this.merge.apply(this.value, parentValue) : this.merge.apply(parentValue, this.value);
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A cuckoo filter, which is an approximate membership filter that supports removing elements.
+ *
+ * The filter is a hash table of buckets with four slots, each of which holds the fingerprint
+ * of an element: a few bits of its hash code. An element can be in one of two buckets, and the index
+ * of the other bucket can be computed from the index of either bucket and the fingerprint,
+ * so the filter can move fingerprints between their buckets to make room without knowing the elements.
+ * Looking up an element reads at most two buckets.
+ *
+ * The filter stores a fingerprint for each time an element is added, so an element that is added twice
+ * must be removed twice. Only remove elements that were added, or the filter may remove the fingerprint
+ * of another element and then report that element as not added.
+ *
+ * When the filter is too full, an element can no longer be added and {@link #add} returns {@code false}.
+ * The filter is sized such that this does not happen before the expected number of elements are added.
+ *
+ * The filter only sees the 32-bit hash codes of its elements, so elements with equal hash codes
+ * are indistinguishable to it.
+ *
+ * This class is not thread-safe. Lookups may be performed concurrently when no elements are being added or removed.
+ *
+ * @param <E> the type of elements in the filter
+ */
+public final class CuckooFilter<E> implements MembershipFilter<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of slots in a bucket. */
+    private static final int BUCKET_SIZE = 4;
+    /** The fraction of the slots that can be filled before insertions start failing. */
+    private static final double MAX_LOAD_FACTOR = 0.95;
+    /** The maximum number of buckets. */
+    private static final int MAX_BUCKET_COUNT = 1 << 28;
+    /** The maximum number of fingerprints moved to make room for an element. */
+    private static final int MAX_KICKS = 500;
+
+    /** The slots of the buckets, packed into longs; an empty slot is zero. */
+    private final long[] slots;
+    /** The number of buckets minus one; the number of buckets is a power of two. */
+    private final int bucketMask;
+    /** The number of bits in a fingerprint, which is 8, 16, or 32. */
+    private final int fingerprintBits;
+    /** The equality comparator of the elements. */
+    private final EqualityComparator<? super E> comparator;
+    /** The number of fingerprints in the filter, including the victim. */
+    private int size;
+    /** The fingerprint that could not be placed when the filter became full; or 0. */
+    private int victim;
+    /** The bucket index of the victim. */
+    private int victimBucket;
+    /** The state of the random number generator that picks the fingerprints to move. */
+    private int random = 0x2545F491;
+
+    /**
+     * Initializes a new instance of the {@link CuckooFilter} class
+     * that uses the default equality comparator.
+     *
+     * @param expectedSize the expected number of elements
+     * @param falsePositiveRate the desired probability that an element that was not added is reported as added,
+     *                          when the expected number of elements were added
+     */
+    public CuckooFilter(long expectedSize, double falsePositiveRate) {
+        this(expectedSize, falsePositiveRate, EqualityComparator.getDefault());
+    }
+
+    /**
+     * Initializes a new instance of the {@link CuckooFilter} class.
+     *
+     * @param expectedSize the expected number of elements
+     * @param falsePositiveRate the desired probability that an element that was not added is reported as added,
+     *                          when the expected number of elements were added
+     * @param comparator the equality comparator of the elements
+     */
+    public CuckooFilter(long expectedSize, double falsePositiveRate, EqualityComparator<? super E> comparator) {
+        if (expectedSize < 0) throw new IllegalArgumentException("Expected size is negative: " + expectedSize);
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) throw new IllegalArgumentException("False-positive rate out of range: " + falsePositiveRate);
+        long minBucketCount = Math.max(1, (long)Math.ceil(expectedSize / (BUCKET_SIZE * MAX_LOAD_FACTOR)));
+        if (minBucketCount > MAX_BUCKET_COUNT) throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+        int bucketCount = minBucketCount == 1 ? 1 : Integer.highestOneBit((int)minBucketCount - 1) << 1;
+        // A lookup compares the fingerprints in two buckets, so the false-positive rate
+        // is at most 2 * BUCKET_SIZE / 2^f for fingerprints of f bits.
+        double requiredBits = Math.log(2 * BUCKET_SIZE / falsePositiveRate) / Math.log(2);
+        this.fingerprintBits = requiredBits <= 8 ? 8 : requiredBits <= 16 ? 16 : 32;
+        this.bucketMask = bucketCount - 1;
+        this.slots = new long[(int)(((long)bucketCount * BUCKET_SIZE * this.fingerprintBits + Long.SIZE - 1) / Long.SIZE)];
+        this.comparator = comparator;
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.comparator;
+    }
+
+    /**
+     * Gets the number of elements in the filter.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of elements the filter has room for.
+     *
+     * @return the capacity
+     */
+    public long capacity() {
+        return (long)(this.bucketMask + 1) * BUCKET_SIZE;
+    }
+
+    @Override
+    public boolean mightContain(@Nullable Object element) {
+        @SuppressWarnings("unchecked")
+        long hash = BloomFilter.spread(this.comparator.hashCodeOf((E)element));
+        int fingerprint = fingerprintOf(hash);
+        int bucket1 = (int)hash & this.bucketMask;
+        int bucket2 = alternateBucketOf(bucket1, fingerprint);
+        return indexOf(bucket1, fingerprint) >= 0 || indexOf(bucket2, fingerprint) >= 0
+            || (this.victim == fingerprint && (this.victimBucket == bucket1 || this.victimBucket == bucket2));
+    }
+
+    @Override
+    public boolean add(@Nullable E element) {
+        // When there is a victim, the filter is full.
+        if (this.victim != 0) return false;
+        long hash = BloomFilter.spread(this.comparator.hashCodeOf(element));
+        int fingerprint = fingerprintOf(hash);
+        place((int)hash & this.bucketMask, fingerprint);
+        this.size += 1;
+        return true;
+    }
+
+    /**
+     * Removes the specified element from the filter.
+     *
+     * The element must have been added to the filter.
+     *
+     * @param element the element to remove
+     * @return {@code true} when a fingerprint of the element was removed;
+     * otherwise, {@code false}
+     */
+    public boolean remove(@Nullable Object element) {
+        @SuppressWarnings("unchecked")
+        long hash = BloomFilter.spread(this.comparator.hashCodeOf((E)element));
+        int fingerprint = fingerprintOf(hash);
+        int bucket1 = (int)hash & this.bucketMask;
+        int bucket2 = alternateBucketOf(bucket1, fingerprint);
+        if (this.victim == fingerprint && (this.victimBucket == bucket1 || this.victimBucket == bucket2)) {
+            this.victim = 0;
+            this.size -= 1;
+            return true;
+        }
+        int index = indexOf(bucket1, fingerprint);
+        if (index < 0) index = indexOf(bucket2, fingerprint);
+        if (index < 0) return false;
+        setSlot(index, 0);
+        this.size -= 1;
+        if (this.victim != 0) {
+            // There is room now, so we try to place the victim again.
+            int victim = this.victim;
+            this.victim = 0;
+            place(this.victimBucket, victim);
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.slots, 0L);
+        this.size = 0;
+        this.victim = 0;
+    }
+
+    /**
+     * Places a fingerprint in the specified bucket or its alternate bucket, moving other fingerprints
+     * to their alternate buckets to make room if necessary. When no room is found,
+     * the last fingerprint that was moved out of its bucket becomes the victim.
+     */
+    private void place(int bucket, int fingerprint) {
+        if (tryPlace(bucket, fingerprint)) return;
+        bucket = alternateBucketOf(bucket, fingerprint);
+        if (tryPlace(bucket, fingerprint)) return;
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            // Swap the fingerprint with a random fingerprint in the bucket.
+            int index = bucket * BUCKET_SIZE + nextRandom() % BUCKET_SIZE;
+            int evicted = getSlot(index);
+            setSlot(index, fingerprint);
+            fingerprint = evicted;
+            bucket = alternateBucketOf(bucket, fingerprint);
+            if (tryPlace(bucket, fingerprint)) return;
+        }
+        this.victim = fingerprint;
+        this.victimBucket = bucket;
+    }
+
+    /**
+     * Places a fingerprint in an empty slot of the specified bucket, if it has one.
+     */
+    private boolean tryPlace(int bucket, int fingerprint) {
+        int index = indexOf(bucket, 0);
+        if (index < 0) return false;
+        setSlot(index, fingerprint);
+        return true;
+    }
+
+    /**
+     * Finds the slot with the specified fingerprint in the specified bucket.
+     *
+     * @return the index of the slot; or -1 when not found
+     */
+    private int indexOf(int bucket, int fingerprint) {
+        int start = bucket * BUCKET_SIZE;
+        for (int index = start; index < start + BUCKET_SIZE; index++) {
+            if (getSlot(index) == fingerprint) return index;
+        }
+        return -1;
+    }
+
+    private int getSlot(int index) {
+        long bit = (long)index * this.fingerprintBits;
+        long mask = (1L << this.fingerprintBits) - 1;
+        return (int)((this.slots[(int)(bit >>> 6)] >>> bit) & mask);
+    }
+
+    private void setSlot(int index, int fingerprint) {
+        long bit = (long)index * this.fingerprintBits;
+        long mask = ((1L << this.fingerprintBits) - 1) << bit;
+        int word = (int)(bit >>> 6);
+        this.slots[word] = (this.slots[word] & ~mask) | (((long)fingerprint << bit) & mask);
+    }
+
+    /**
+     * Gets the non-zero fingerprint of the specified spread hash code.
+     */
+    private int fingerprintOf(long hash) {
+        // The fingerprint uses the high bits, as the low bits select the bucket.
+        int fingerprint = (int)(hash >>> (Long.SIZE - this.fingerprintBits));
+        return fingerprint != 0 ? fingerprint : 1;
+    }
+
+    /**
+     * Gets the other bucket of a fingerprint, given one of its buckets.
+     */
+    private int alternateBucketOf(int bucket, int fingerprint) {
+        return (bucket ^ (fingerprint * 0x5BD1E995)) & this.bucketMask;
+    }
+
+    private int nextRandom() {
+        // Xorshift32
+        int x = this.random;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        this.random = x;
+        return x >>> 1;
+    }
+
+}
@@ -1,4 +1,686 @@
 package mb.util.collections.specialized;
 
-public class Deque {
+import mb.util.collections.mutable.MutableListBase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * A mutable double-ended queue and list, implemented as a circular array.
+ *
+ * The elements are stored in an array whose length is a power of two, starting at a head index
+ * and wrapping around at the end of the array. Adding and removing elements at either end takes
+ * amortized constant time and allocates nothing, unlike a linked list that allocates a node per element.
+ * Any contiguous range of the deque occupies at most two segments of the array,
+ * so bulk operations copy at most two segments.
+ *
+ * When the array is full, it's replaced by an array of twice the length, to which the elements
+ * are copied in order. The array never shrinks automatically; call {@link #trimToSize()} to release
+ * unused capacity.
+ *
+ * This deque permits {@code null} elements. The methods of {@link java.util.Deque} that return
+ * {@code null} for an empty deque, such as {@link #poll()}, cannot distinguish an empty deque
+ * from a {@code null} element.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <E> the type of elements in the deque
+ */
+public final class Deque<E> extends MutableListBase<E> implements java.util.Deque<E>, RandomAccess {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The minimum capacity of the array, which must be a power of two. */
+    private static final int MIN_CAPACITY = 8;
+    /** The maximum capacity of the array, which must be a power of two. */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /** The elements, starting at {@link #head}; its length is a power of two. */
+    private transient Object[] elements;
+    /** The index in {@link #elements} of the first element. */
+    private transient int head;
+    /** The number of elements. */
+    private transient int size;
+
+    /**
+     * Initializes a new instance of the {@link Deque} class.
+     */
+    public Deque() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Initializes a new instance of the {@link Deque} class.
+     *
+     * @param capacity the initial number of elements the deque can hold without growing
+     */
+    public Deque(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity must be non-negative: " + capacity);
+        this.elements = new Object[capacityFor(capacity)];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Initializes a new instance of the {@link Deque} class.
+     *
+     * @param elements the initial elements of the deque
+     */
+    public Deque(Collection<? extends E> elements) {
+        this(elements.size());
+        addAll(elements);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of elements the deque can hold without growing.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return this.elements.length;
+    }
+
+    @Override
+    public E get(int index) {
+        checkIndex(index, this.size);
+        return elementAt(index);
+    }
+
+    @Override
+    public E set(int index, E element) {
+        checkIndex(index, this.size);
+        int i = slotOf(index);
+        @SuppressWarnings("unchecked")
+        E oldElement = (E)this.elements[i];
+        this.elements[i] = element;
+        return oldElement;
+    }
+
+    @Override
+    public boolean add(E element) {
+        addLast(element);
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, this.size + 1);
+        if (index == this.size) {
+            addLast(element);
+        } else if (index == 0) {
+            addFirst(element);
+        } else {
+            ensureCapacity(this.size + 1);
+            // Move the shorter part of the deque to make room.
+            if (index < this.size - index) {
+                this.head = (this.head - 1) & mask();
+                moveElements(1, 0, index);
+            } else {
+                moveElements(index, index + 1, this.size - index);
+            }
+            this.elements[slotOf(index)] = element;
+            this.size += 1;
+            this.modCount += 1;
+        }
+    }
+
+    @Override
+    public E remove(int index) {
+        checkIndex(index, this.size);
+        E oldElement = elementAt(index);
+        removeRange(index, index + 1);
+        return oldElement;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        int count = toIndex - fromIndex;
+        if (count <= 0) return;
+        // Move the shorter remaining part of the deque to close the gap.
+        if (fromIndex < this.size - toIndex) {
+            moveElements(0, count, fromIndex);
+            clearSlots(0, count);
+            this.head = (this.head + count) & mask();
+        } else {
+            moveElements(toIndex, fromIndex, this.size - toIndex);
+            clearSlots(this.size - count, count);
+        }
+        this.size -= count;
+        this.modCount += 1;
+    }
+
+    @Override
+    public void clear() {
+        if (this.size == 0) return;
+        clearSlots(0, this.size);
+        this.head = 0;
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+    @Override
+    public boolean addAll(@NotNull Collection<? extends E> elements) {
+        if (elements instanceof Deque && elements != this) {
+            Deque<? extends E> deque = (Deque<? extends E>)elements;
+            int count = deque.size;
+            if (count == 0) return false;
+            ensureCapacity(this.size + count);
+            // The source occupies at most two segments of its array.
+            int first = Math.min(count, deque.elements.length - deque.head);
+            copyIn(deque.elements, deque.head, this.size, first);
+            copyIn(deque.elements, 0, this.size + first, count - first);
+            this.size += count;
+            this.modCount += 1;
+            return true;
+        }
+        return addAllLast(elements.toArray());
+    }
+
+    @Override
+    public boolean addAll(int index, @NotNull Collection<? extends E> elements) {
+        checkIndex(index, this.size + 1);
+        if (index == this.size) return addAll(elements);
+        Object[] array = elements.toArray();
+        int count = array.length;
+        if (count == 0) return false;
+        ensureCapacity(this.size + count);
+        // Move the shorter part of the deque to make room.
+        if (index < this.size - index) {
+            this.head = (this.head - count) & mask();
+            moveElements(count, 0, index);
+        } else {
+            moveElements(index, index + count, this.size - index);
+        }
+        copyIn(array, 0, index, count);
+        this.size += count;
+        this.modCount += 1;
+        return true;
+    }
+
+    /**
+     * Adds the specified elements to the end of the deque.
+     *
+     * @param elements the elements to add
+     * @return {@code true} when the deque changed; otherwise, {@code false}
+     */
+    private boolean addAllLast(Object[] elements) {
+        int count = elements.length;
+        if (count == 0) return false;
+        ensureCapacity(this.size + count);
+        copyIn(elements, 0, this.size, count);
+        this.size += count;
+        this.modCount += 1;
+        return true;
+    }
+
+    /**
+     * Removes all elements from the deque and adds them, in order, to the specified collection.
+     *
+     * @param target the collection to add the elements to
+     * @return the number of elements that were moved
+     */
+    public int drainTo(Collection<? super E> target) {
+        return drainTo(target, this.size);
+    }
+
+    /**
+     * Removes at most the specified number of elements from the front of the deque
+     * and adds them, in order, to the specified collection.
+     *
+     * @param target the collection to add the elements to
+     * @param maxElements the maximum number of elements to move
+     * @return the number of elements that were moved
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> target, int maxElements) {
+        if (target == this) throw new IllegalArgumentException("Cannot drain a deque to itself.");
+        int count = Math.min(Math.max(maxElements, 0), this.size);
+        if (count == 0) return 0;
+        if (target instanceof Deque) {
+            // Copy straight between the arrays.
+            Deque<Object> deque = (Deque<Object>)target;
+            deque.ensureCapacity(deque.size + count);
+            int first = Math.min(count, this.elements.length - this.head);
+            deque.copyIn(this.elements, this.head, deque.size, first);
+            deque.copyIn(this.elements, 0, deque.size + first, count - first);
+            deque.size += count;
+            deque.modCount += 1;
+        } else {
+            Object[] array = new Object[count];
+            copyOut(0, array, 0, count);
+            target.addAll((Collection<? extends E>)Arrays.asList(array));
+        }
+        removeRange(0, count);
+        return count;
+    }
+
+    /**
+     * Reduces the capacity of the deque to the smallest power of two that holds its elements.
+     */
+    public void trimToSize() {
+        int capacity = capacityFor(this.size);
+        if (capacity < this.elements.length) resize(capacity);
+    }
+
+    // java.util.Deque
+
+    @Override
+    public void addFirst(E element) {
+        ensureCapacity(this.size + 1);
+        this.head = (this.head - 1) & mask();
+        this.elements[this.head] = element;
+        this.size += 1;
+        this.modCount += 1;
+    }
+
+    @Override
+    public void addLast(E element) {
+        ensureCapacity(this.size + 1);
+        this.elements[slotOf(this.size)] = element;
+        this.size += 1;
+        this.modCount += 1;
+    }
+
+    @Override
+    public boolean offerFirst(E element) {
+        addFirst(element);
+        return true;
+    }
+
+    @Override
+    public boolean offerLast(E element) {
+        addLast(element);
+        return true;
+    }
+
+    @Override
+    public E removeFirst() {
+        if (this.size == 0) throw new NoSuchElementException();
+        return unlinkFirst();
+    }
+
+    @Override
+    public E removeLast() {
+        if (this.size == 0) throw new NoSuchElementException();
+        return unlinkLast();
+    }
+
+    @Override
+    public @Nullable E pollFirst() {
+        return this.size != 0 ? unlinkFirst() : null;
+    }
+
+    @Override
+    public @Nullable E pollLast() {
+        return this.size != 0 ? unlinkLast() : null;
+    }
+
+    @Override
+    public E getFirst() {
+        if (this.size == 0) throw new NoSuchElementException();
+        return elementAt(0);
+    }
+
+    @Override
+    public E getLast() {
+        if (this.size == 0) throw new NoSuchElementException();
+        return elementAt(this.size - 1);
+    }
+
+    @Override
+    public @Nullable E peekFirst() {
+        return this.size != 0 ? elementAt(0) : null;
+    }
+
+    @Override
+    public @Nullable E peekLast() {
+        return this.size != 0 ? elementAt(this.size - 1) : null;
+    }
+
+    @Override
+    public boolean removeFirstOccurrence(@Nullable Object element) {
+        int index = indexOf(element);
+        if (index < 0) return false;
+        removeRange(index, index + 1);
+        return true;
+    }
+
+    @Override
+    public boolean removeLastOccurrence(@Nullable Object element) {
+        int index = lastIndexOf(element);
+        if (index < 0) return false;
+        removeRange(index, index + 1);
+        return true;
+    }
+
+    @Override
+    public boolean remove(@Nullable Object element) {
+        return removeFirstOccurrence(element);
+    }
+
+    @Override
+    public boolean offer(E element) {
+        return offerLast(element);
+    }
+
+    @Override
+    public E remove() {
+        return removeFirst();
+    }
+
+    @Override
+    public @Nullable E poll() {
+        return pollFirst();
+    }
+
+    @Override
+    public E element() {
+        return getFirst();
+    }
+
+    @Override
+    public @Nullable E peek() {
+        return peekFirst();
+    }
+
+    @Override
+    public void push(E element) {
+        addFirst(element);
+    }
+
+    @Override
+    public E pop() {
+        return removeFirst();
+    }
+
+    @Override
+    public @NotNull Iterator<E> descendingIterator() {
+        return new DescendingIterator();
+    }
+
+    /**
+     * Performs the specified action for each element, from the last element to the first.
+     *
+     * Unlike {@link #descendingIterator()}, this allocates nothing.
+     *
+     * @param action the action to perform
+     */
+    public void forEachDescending(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = this.modCount;
+        for (int i = this.size - 1; i >= 0; i--) {
+            action.accept(elementAt(i));
+        }
+        if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = this.modCount;
+        for (int i = 0; i < this.size; i++) {
+            action.accept(elementAt(i));
+        }
+        if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    @Override
+    public int indexOf(@Nullable Object element) {
+        for (int i = 0; i < this.size; i++) {
+            if (Objects.equals(element, this.elements[slotOf(i)])) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(@Nullable Object element) {
+        for (int i = this.size - 1; i >= 0; i--) {
+            if (Objects.equals(element, this.elements[slotOf(i)])) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return indexOf(element) >= 0;
+    }
+
+    @NotNull
+    @Override
+    public Object[] toArray() {
+        Object[] array = new Object[this.size];
+        copyOut(0, array, 0, this.size);
+        return array;
+    }
+
+    @NotNull
+    @Override
+    public <T> T[] toArray(@NotNull T[] a) {
+        @SuppressWarnings("unchecked")
+        T[] array = a.length >= this.size ? a : (T[])Array.newInstance(a.getClass().getComponentType(), this.size);
+        copyOut(0, array, 0, this.size);
+        if (array.length > this.size) array[this.size] = null;
+        return array;
+    }
+
+    private E unlinkFirst() {
+        @SuppressWarnings("unchecked")
+        E element = (E)this.elements[this.head];
+        this.elements[this.head] = null;
+        this.head = (this.head + 1) & mask();
+        this.size -= 1;
+        this.modCount += 1;
+        return element;
+    }
+
+    private E unlinkLast() {
+        int i = slotOf(this.size - 1);
+        @SuppressWarnings("unchecked")
+        E element = (E)this.elements[i];
+        this.elements[i] = null;
+        this.size -= 1;
+        this.modCount += 1;
+        return element;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int index) {
+        return (E)this.elements[slotOf(index)];
+    }
+
+    /**
+     * Gets the index in the array of the element at the specified index in the deque.
+     *
+     * @param index the zero-based index in the deque
+     * @return the zero-based index in the array
+     */
+    private int slotOf(int index) {
+        return (this.head + index) & mask();
+    }
+
+    private int mask() {
+        return this.elements.length - 1;
+    }
+
+    /**
+     * Moves a range of elements within the deque; the ranges may overlap.
+     *
+     * @param fromIndex the zero-based index in the deque of the first element to move
+     * @param toIndex the zero-based index in the deque to move the first element to
+     * @param count the number of elements to move
+     */
+    private void moveElements(int fromIndex, int toIndex, int count) {
+        if (toIndex < fromIndex) {
+            for (int i = 0; i < count; i++) {
+                this.elements[slotOf(toIndex + i)] = this.elements[slotOf(fromIndex + i)];
+            }
+        } else {
+            for (int i = count - 1; i >= 0; i--) {
+                this.elements[slotOf(toIndex + i)] = this.elements[slotOf(fromIndex + i)];
+            }
+        }
+    }
+
+    /**
+     * Sets a range of slots to {@code null}, such that their elements can be garbage collected.
+     *
+     * @param index the zero-based index in the deque of the first slot
+     * @param count the number of slots
+     */
+    private void clearSlots(int index, int count) {
+        int start = slotOf(index);
+        int first = Math.min(count, this.elements.length - start);
+        Arrays.fill(this.elements, start, start + first, null);
+        Arrays.fill(this.elements, 0, count - first, null);
+    }
+
+    /**
+     * Copies elements from an array into the deque, in at most two segments.
+     *
+     * The capacity of the deque must be sufficient.
+     *
+     * @param source the source array
+     * @param sourceIndex the zero-based index in the source array of the first element to copy
+     * @param index the zero-based index in the deque to copy the first element to
+     * @param count the number of elements to copy
+     */
+    private void copyIn(Object[] source, int sourceIndex, int index, int count) {
+        if (count == 0) return;
+        int start = slotOf(index);
+        int first = Math.min(count, this.elements.length - start);
+        System.arraycopy(source, sourceIndex, this.elements, start, first);
+        System.arraycopy(source, sourceIndex + first, this.elements, 0, count - first);
+    }
+
+    /**
+     * Copies elements from the deque into an array, in at most two segments.
+     *
+     * @param index the zero-based index in the deque of the first element to copy
+     * @param target the target array
+     * @param targetIndex the zero-based index in the target array to copy the first element to
+     * @param count the number of elements to copy
+     */
+    private void copyOut(int index, Object[] target, int targetIndex, int count) {
+        if (count == 0) return;
+        int start = slotOf(index);
+        int first = Math.min(count, this.elements.length - start);
+        System.arraycopy(this.elements, start, target, targetIndex, first);
+        System.arraycopy(this.elements, 0, target, targetIndex + first, count - first);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0) throw new OutOfMemoryError("Deque too large.");
+        if (capacity <= this.elements.length) return;
+        resize(capacityFor(capacity));
+    }
+
+    /**
+     * Replaces the array by an array of the specified length, to which the elements are copied in order.
+     *
+     * @param capacity the new capacity, which must be a power of two that holds the elements
+     */
+    private void resize(int capacity) {
+        Object[] newElements = new Object[capacity];
+        copyOut(0, newElements, 0, this.size);
+        this.elements = newElements;
+        this.head = 0;
+    }
+
+    /**
+     * Gets the smallest valid capacity that holds the specified number of elements.
+     *
+     * @param count the number of elements
+     * @return the capacity, which is a power of two
+     */
+    private static int capacityFor(int count) {
+        if (count <= MIN_CAPACITY) return MIN_CAPACITY;
+        if (count > MAX_CAPACITY) throw new OutOfMemoryError("Deque too large.");
+        return Integer.highestOneBit(count - 1) << 1;
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+    }
+
+    /**
+     * Iterates over the elements from the last element to the first.
+     */
+    private final class DescendingIterator implements Iterator<E> {
+
+        /** The zero-based index of the next element to return. */
+        private int index = Deque.this.size - 1;
+        /** The zero-based index of the last element returned; or -1. */
+        private int lastIndex = -1;
+        private int expectedModCount = Deque.this.modCount;
+
+        @Override
+        public boolean hasNext() {
+            return this.index >= 0;
+        }
+
+        @Override
+        public E next() {
+            if (Deque.this.modCount != this.expectedModCount) throw new ConcurrentModificationException();
+            if (this.index < 0) throw new NoSuchElementException();
+            this.lastIndex = this.index;
+            this.index -= 1;
+            return elementAt(this.lastIndex);
+        }
+
+        @Override
+        public void remove() {
+            if (this.lastIndex < 0) throw new IllegalStateException();
+            if (Deque.this.modCount != this.expectedModCount) throw new ConcurrentModificationException();
+            removeRange(this.lastIndex, this.lastIndex + 1);
+            this.lastIndex = -1;
+            this.expectedModCount = Deque.this.modCount;
+        }
+
+    }
+
+    // Serialization
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(this.size);
+        for (int i = 0; i < this.size; i++) {
+            out.writeObject(this.elements[slotOf(i)]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        if (size < 0) throw new InvalidObjectException("Negative size: " + size);
+        // We don't trust the size to allocate the whole array up front,
+        // as a corrupt stream could otherwise make us allocate a huge array.
+        Object[] elements = new Object[capacityFor(Math.min(size, 1024))];
+        for (int i = 0; i < size; i++) {
+            if (i == elements.length) elements = Arrays.copyOf(elements, capacityFor(i + 1));
+            elements[i] = in.readObject();
+        }
+        this.elements = elements;
+        this.head = 0;
+        this.size = size;
+    }
+
 }
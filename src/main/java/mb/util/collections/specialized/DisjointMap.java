@@ -1,4 +1,81 @@
 package mb.util.collections.specialized;
 
-public class DisjointMap {
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A map from disjoint sets of keys to values.
+ *
+ * Each key in the map belongs to exactly one set, and each set is associated with at most one value.
+ * A set is identified by one of its keys, its representative.
+ * This is also known as a union-find data structure, and is used, for example,
+ * to represent the equivalence classes of variables in unification.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public interface DisjointMap<K, V> {
+
+    /**
+     * Gets the number of keys in the map.
+     *
+     * @return the number of keys
+     */
+    int size();
+
+    /**
+     * Gets whether the map has no keys.
+     *
+     * @return {@code true} when the map is empty; otherwise, {@code false}
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets the equality comparator of the keys.
+     *
+     * @return the equality comparator
+     */
+    default EqualityComparator<? super K> getComparator() {
+        return EqualityComparator.getDefault();
+    }
+
+    /**
+     * Determines whether the map contains the specified key.
+     *
+     * @param key the key to look for
+     * @return {@code true} when the key is in the map; otherwise, {@code false}
+     */
+    boolean containsKey(@Nullable Object key);
+
+    /**
+     * Finds the representative of the set that contains the specified key.
+     *
+     * @param key the key
+     * @return the representative; or the key itself when it's not in the map
+     */
+    K find(K key);
+
+    /**
+     * Determines whether the specified keys are in the same set.
+     *
+     * A key that is not in the map is only in the same set as itself.
+     *
+     * @param key1 the first key
+     * @param key2 the second key
+     * @return {@code true} when the keys are in the same set; otherwise, {@code false}
+     */
+    default boolean isSameSet(K key1, K key2) {
+        return getComparator().equals(find(key1), find(key2));
+    }
+
+    /**
+     * Gets the value associated with the set that contains the specified key.
+     *
+     * @param key the key
+     * @return the value; or {@code null} when the set has no value or the key is not in the map
+     */
+    @Nullable V get(K key);
+
 }
@@ -0,0 +1,177 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.SetView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A set view that puts a {@link MembershipFilter} in front of another set view.
+ *
+ * A lookup first asks the filter, and only asks the set when the filter reports that the element
+ * might be in it. When most lookups are for elements that are not in the set, this avoids
+ * most lookups in the set, which is useful when the set is large, remote, or stored on disk.
+ * All other operations are delegated to the set.
+ *
+ * The filter must contain every element of the set, and must use the same equality comparator.
+ * When the set is modified, the filter must be updated accordingly.
+ *
+ * @param <E> the type of elements in the set
+ */
+public final class FilteredSetView<E> implements SetView<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The filtered set. */
+    private final SetView<E> set;
+    /** The filter, which contains every element of the set. */
+    private final MembershipFilter<? super E> filter;
+
+    /**
+     * Initializes a new instance of the {@link FilteredSetView} class.
+     *
+     * @param set the set to filter
+     * @param filter the filter, which must contain every element of the set
+     * @throws IllegalArgumentException the filter and the set have different equality comparators
+     */
+    public FilteredSetView(SetView<E> set, MembershipFilter<? super E> filter) {
+        if (!filter.getComparator().equals(set.getComparator()))
+            throw new IllegalArgumentException("The filter and the set must have the same equality comparator.");
+        this.set = set;
+        this.filter = filter;
+    }
+
+    /**
+     * Creates a view that puts a new Bloom filter in front of the specified set.
+     *
+     * The filter is sized for the current elements of the set, so the set should not be modified.
+     *
+     * @param set the set to filter
+     * @param falsePositiveRate the desired probability that the set is looked up for an element that is not in it
+     * @param <E> the type of elements in the set
+     * @return the filtered set view
+     */
+    public static <E> FilteredSetView<E> of(SetView<E> set, double falsePositiveRate) {
+        return of(set, set.size(), falsePositiveRate);
+    }
+
+    /**
+     * Creates a view that puts a new Bloom filter in front of the specified set.
+     *
+     * @param set the set to filter
+     * @param expectedSize the expected number of elements in the set
+     * @param falsePositiveRate the desired probability that the set is looked up for an element that is not in it
+     * @param <E> the type of elements in the set
+     * @return the filtered set view
+     */
+    public static <E> FilteredSetView<E> of(SetView<E> set, long expectedSize, double falsePositiveRate) {
+        BloomFilter<E> filter = new BloomFilter<>(Math.max(expectedSize, set.size()), falsePositiveRate, set.getComparator());
+        for (E element : set) {
+            filter.add(element);
+        }
+        return new FilteredSetView<>(set, filter);
+    }
+
+    /**
+     * Gets the filtered set.
+     *
+     * @return the filtered set
+     */
+    public SetView<E> getSet() {
+        return this.set;
+    }
+
+    /**
+     * Gets the filter.
+     *
+     * @return the filter
+     */
+    public MembershipFilter<? super E> getFilter() {
+        return this.filter;
+    }
+
+    @Override
+    public int size() {
+        return this.set.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.set.isEmpty();
+    }
+
+    @Override
+    public EqualityComparator<? super E> getComparator() {
+        return this.set.getComparator();
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return this.filter.mightContain(element) && this.set.contains(element);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return this.set.iterator();
+    }
+
+    @Override
+    public Set<E> asUnmodifiable() {
+        return new AsSet<>(this);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        return this.set.equals(obj instanceof FilteredSetView<?> ? ((FilteredSetView<?>)obj).set : obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.set.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.set.toString();
+    }
+
+    /**
+     * A set that views a filtered set view.
+     *
+     * @param <E> the type of elements in the set
+     */
+    private static final class AsSet<E> extends AbstractSet<E> {
+
+        private final FilteredSetView<E> set;
+
+        private AsSet(FilteredSetView<E> set) {
+            this.set = set;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.set.contains(o);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            return this.set.iterator();
+        }
+
+    }
+
+}
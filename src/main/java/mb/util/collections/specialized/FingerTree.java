@@ -0,0 +1,597 @@
+package mb.util.collections.specialized;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A 2-3 finger tree annotated with sizes, as described by Hinze and Paterson.
+ *
+ * A tree is either empty, a single item, or a deep tree with a prefix and a suffix of one to four items
+ * (the digits) and a middle tree of nodes. Each node groups two or three items, so the items of
+ * the middle tree of a tree of elements are nodes of elements, the items of its middle tree are nodes
+ * of nodes of elements, and so on. The ends of the tree are at the digits, so adding or removing an
+ * item at either end takes amortized constant time. Each node and deep tree caches its size,
+ * so finding or splitting at an index descends along a single path and takes logarithmic time.
+ *
+ * The items are either elements or {@link Node} instances. Since the node class is private,
+ * an element can never be mistaken for a node.
+ *
+ * This class is immutable and thread-safe.
+ */
+/* package private */ abstract class FingerTree {
+
+    /** The empty tree. */
+    /* package private */ static final FingerTree EMPTY = new Empty();
+
+    private FingerTree() {
+        // Only the nested classes can extend this class.
+    }
+
+    /**
+     * Gets the number of elements in the tree.
+     *
+     * @return the number of elements
+     */
+    /* package private */ abstract int size();
+
+    /**
+     * Adds an item at the front of the tree.
+     *
+     * @param item the item to add
+     * @return the resulting tree
+     */
+    /* package private */ abstract FingerTree pushFront(Object item);
+
+    /**
+     * Adds an item at the back of the tree.
+     *
+     * @param item the item to add
+     * @return the resulting tree
+     */
+    /* package private */ abstract FingerTree pushBack(Object item);
+
+    /**
+     * Gets the item at the front of a non-empty tree.
+     *
+     * @return the item
+     */
+    /* package private */ abstract Object front();
+
+    /**
+     * Gets the item at the back of a non-empty tree.
+     *
+     * @return the item
+     */
+    /* package private */ abstract Object back();
+
+    /**
+     * Removes the item at the front of a non-empty tree.
+     *
+     * @return the resulting tree
+     */
+    /* package private */ abstract FingerTree popFront();
+
+    /**
+     * Removes the item at the back of a non-empty tree.
+     *
+     * @return the resulting tree
+     */
+    /* package private */ abstract FingerTree popBack();
+
+    /**
+     * Gets the element at the specified index.
+     *
+     * @param index the zero-based index of the element, which must be in range
+     * @return the element
+     */
+    /* package private */ abstract Object get(int index);
+
+    /**
+     * Splits a non-empty tree around the item that contains the element at the specified index.
+     *
+     * @param index the zero-based index of the element, which must be in range
+     * @return the split, whose item contains the element at the index
+     */
+    /* package private */ abstract Split split(int index);
+
+    /**
+     * Splits the tree into the elements before the specified index and the elements from the specified index.
+     *
+     * @param index the zero-based index, from 0 up to and including the size
+     * @return the trees before and from the index
+     */
+    /* package private */ final FingerTree[] splitAt(int index) {
+        if (index == 0) return new FingerTree[] { EMPTY, this };
+        if (index == size()) return new FingerTree[] { this, EMPTY };
+        // The items of the tree are elements, so the item of the split is the element at the index.
+        Split split = split(index);
+        return new FingerTree[] { split.left, split.right.pushFront(split.item) };
+    }
+
+    /**
+     * Concatenates two trees.
+     *
+     * This takes logarithmic time in the size of the smaller tree.
+     *
+     * @param left the left tree
+     * @param right the right tree
+     * @return the concatenated tree
+     */
+    /* package private */ static FingerTree concat(FingerTree left, FingerTree right) {
+        return concat(left, new Object[0], right);
+    }
+
+    /**
+     * Concatenates two trees with some items in between.
+     *
+     * @param left the left tree
+     * @param items the items in between
+     * @param right the right tree
+     * @return the concatenated tree
+     */
+    private static FingerTree concat(FingerTree left, Object[] items, FingerTree right) {
+        if (left instanceof Empty) {
+            FingerTree tree = right;
+            for (int i = items.length - 1; i >= 0; i--) tree = tree.pushFront(items[i]);
+            return tree;
+        } else if (right instanceof Empty) {
+            FingerTree tree = left;
+            for (Object item : items) tree = tree.pushBack(item);
+            return tree;
+        } else if (left instanceof Single) {
+            return concat(EMPTY, items, right).pushFront(((Single)left).item);
+        } else if (right instanceof Single) {
+            return concat(left, items, EMPTY).pushBack(((Single)right).item);
+        } else {
+            Deep deepLeft = (Deep)left;
+            Deep deepRight = (Deep)right;
+            // The inner digits and the items in between become nodes in the concatenated middle tree.
+            Object[] inner = new Object[deepLeft.suffix.length + items.length + deepRight.prefix.length];
+            System.arraycopy(deepLeft.suffix, 0, inner, 0, deepLeft.suffix.length);
+            System.arraycopy(items, 0, inner, deepLeft.suffix.length, items.length);
+            System.arraycopy(deepRight.prefix, 0, inner, deepLeft.suffix.length + items.length, deepRight.prefix.length);
+            FingerTree middle = concat(deepLeft.middle, nodes(inner), deepRight.middle);
+            return new Deep(deepLeft.prefix, middle, deepRight.suffix);
+        }
+    }
+
+    /**
+     * Groups between 2 and 12 items into nodes of two or three items.
+     *
+     * @param items the items
+     * @return the nodes
+     */
+    private static Object[] nodes(Object[] items) {
+        int count = items.length;
+        // Use nodes of three items, except for the last one or two nodes when the count is not a multiple of three.
+        int nodeCount = (count + 2) / 3;
+        Object[] nodes = new Object[nodeCount];
+        int twos = nodeCount * 3 - count;
+        int offset = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            int length = i >= nodeCount - twos ? 2 : 3;
+            nodes[i] = new Node(Arrays.copyOfRange(items, offset, offset + length));
+            offset += length;
+        }
+        return nodes;
+    }
+
+    /**
+     * Creates a tree from a range of items of a digit.
+     *
+     * @param digit the digit
+     * @param from the zero-based index of the first item, inclusive
+     * @param to the zero-based index of the last item, exclusive
+     * @return the tree
+     */
+    private static FingerTree fromDigit(Object[] digit, int from, int to) {
+        FingerTree tree = EMPTY;
+        for (int i = from; i < to; i++) tree = tree.pushBack(digit[i]);
+        return tree;
+    }
+
+    /**
+     * Creates a deep tree whose prefix may be empty.
+     *
+     * @param prefix the prefix, which may be empty
+     * @param middle the middle tree
+     * @param suffix the suffix
+     * @return the tree
+     */
+    private static FingerTree deepLeft(Object[] prefix, FingerTree middle, Object[] suffix) {
+        if (prefix.length > 0) return new Deep(prefix, middle, suffix);
+        if (middle instanceof Empty) return fromDigit(suffix, 0, suffix.length);
+        // Borrow the first node of the middle tree as the prefix.
+        return new Deep(((Node)middle.front()).children, middle.popFront(), suffix);
+    }
+
+    /**
+     * Creates a deep tree whose suffix may be empty.
+     *
+     * @param prefix the prefix
+     * @param middle the middle tree
+     * @param suffix the suffix, which may be empty
+     * @return the tree
+     */
+    private static FingerTree deepRight(Object[] prefix, FingerTree middle, Object[] suffix) {
+        if (suffix.length > 0) return new Deep(prefix, middle, suffix);
+        if (middle instanceof Empty) return fromDigit(prefix, 0, prefix.length);
+        // Borrow the last node of the middle tree as the suffix.
+        return new Deep(prefix, middle.popBack(), ((Node)middle.back()).children);
+    }
+
+    /**
+     * Gets the number of elements in the specified item.
+     *
+     * @param item the item
+     * @return the number of elements
+     */
+    private static int sizeOf(Object item) {
+        return item instanceof Node ? ((Node)item).size : 1;
+    }
+
+    /**
+     * Gets the number of elements in a range of items.
+     *
+     * @param items the items
+     * @param from the zero-based index of the first item, inclusive
+     * @param to the zero-based index of the last item, exclusive
+     * @return the number of elements
+     */
+    private static int sizeOf(Object[] items, int from, int to) {
+        int size = 0;
+        for (int i = from; i < to; i++) size += sizeOf(items[i]);
+        return size;
+    }
+
+    /**
+     * Finds the item that contains the element at the specified index.
+     *
+     * @param items the items
+     * @param index the zero-based index of the element, which must be in range
+     * @return the zero-based index of the item
+     */
+    private static int indexOfItem(Object[] items, int index) {
+        int remaining = index;
+        for (int i = 0; i < items.length - 1; i++) {
+            int size = sizeOf(items[i]);
+            if (remaining < size) return i;
+            remaining -= size;
+        }
+        return items.length - 1;
+    }
+
+    /**
+     * Gets the element at the specified index in an item.
+     *
+     * @param item the item
+     * @param index the zero-based index of the element in the item, which must be in range
+     * @return the element
+     */
+    private static Object getInItem(Object item, int index) {
+        Object current = item;
+        int remaining = index;
+        while (current instanceof Node) {
+            Object[] children = ((Node)current).children;
+            int i = indexOfItem(children, remaining);
+            remaining -= sizeOf(children, 0, i);
+            current = children[i];
+        }
+        return current;
+    }
+
+    private static Object[] prepend(Object item, Object[] digit) {
+        Object[] newDigit = new Object[digit.length + 1];
+        newDigit[0] = item;
+        System.arraycopy(digit, 0, newDigit, 1, digit.length);
+        return newDigit;
+    }
+
+    private static Object[] append(Object[] digit, Object item) {
+        Object[] newDigit = Arrays.copyOf(digit, digit.length + 1);
+        newDigit[digit.length] = item;
+        return newDigit;
+    }
+
+    /**
+     * Iterates over the elements of the tree, from front to back.
+     *
+     * @return the iterator
+     */
+    /* package private */ final Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            /** The trees, items, and elements that remain, with the next one on top. */
+            private final Stack<Object> pending = new Stack<>();
+            {
+                if (!(FingerTree.this instanceof Empty)) this.pending.push(FingerTree.this);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !this.pending.isEmpty();
+            }
+
+            @Override
+            public Object next() {
+                if (this.pending.isEmpty()) throw new NoSuchElementException();
+                while (true) {
+                    Object top = this.pending.pop();
+                    if (top instanceof Deep) {
+                        Deep deep = (Deep)top;
+                        pushReversed(deep.suffix);
+                        if (!(deep.middle instanceof Empty)) this.pending.push(deep.middle);
+                        pushReversed(deep.prefix);
+                    } else if (top instanceof Single) {
+                        this.pending.push(((Single)top).item);
+                    } else if (top instanceof Node) {
+                        pushReversed(((Node)top).children);
+                    } else {
+                        return top;
+                    }
+                }
+            }
+
+            private void pushReversed(Object[] items) {
+                for (int i = items.length - 1; i >= 0; i--) this.pending.push(items[i]);
+            }
+        };
+    }
+
+    /**
+     * The result of splitting a tree.
+     */
+    /* package private */ static final class Split {
+        /** The tree of items before the item. */
+        /* package private */ final FingerTree left;
+        /** The item that contains the index. */
+        /* package private */ final Object item;
+        /** The tree of items after the item. */
+        /* package private */ final FingerTree right;
+
+        private Split(FingerTree left, Object item, FingerTree right) {
+            this.left = left;
+            this.item = item;
+            this.right = right;
+        }
+    }
+
+    /**
+     * A node of two or three items.
+     */
+    private static final class Node {
+        /** The number of elements in the node. */
+        private final int size;
+        /** The two or three items. */
+        private final Object[] children;
+
+        private Node(Object[] children) {
+            this.size = sizeOf(children, 0, children.length);
+            this.children = children;
+        }
+    }
+
+    /**
+     * The empty tree.
+     */
+    private static final class Empty extends FingerTree {
+
+        @Override
+        int size() {
+            return 0;
+        }
+
+        @Override
+        FingerTree pushFront(Object item) {
+            return new Single(item);
+        }
+
+        @Override
+        FingerTree pushBack(Object item) {
+            return new Single(item);
+        }
+
+        @Override
+        Object front() {
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        Object back() {
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        FingerTree popFront() {
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        FingerTree popBack() {
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        Object get(int index) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        Split split(int index) {
+            throw new IndexOutOfBoundsException();
+        }
+
+    }
+
+    /**
+     * A tree of a single item.
+     */
+    private static final class Single extends FingerTree {
+
+        private final Object item;
+
+        private Single(Object item) {
+            this.item = item;
+        }
+
+        @Override
+        int size() {
+            return sizeOf(this.item);
+        }
+
+        @Override
+        FingerTree pushFront(Object item) {
+            return new Deep(new Object[] { item }, EMPTY, new Object[] { this.item });
+        }
+
+        @Override
+        FingerTree pushBack(Object item) {
+            return new Deep(new Object[] { this.item }, EMPTY, new Object[] { item });
+        }
+
+        @Override
+        Object front() {
+            return this.item;
+        }
+
+        @Override
+        Object back() {
+            return this.item;
+        }
+
+        @Override
+        FingerTree popFront() {
+            return EMPTY;
+        }
+
+        @Override
+        FingerTree popBack() {
+            return EMPTY;
+        }
+
+        @Override
+        Object get(int index) {
+            return getInItem(this.item, index);
+        }
+
+        @Override
+        Split split(int index) {
+            return new Split(EMPTY, this.item, EMPTY);
+        }
+
+    }
+
+    /**
+     * A tree with a prefix, a middle tree of nodes, and a suffix.
+     */
+    private static final class Deep extends FingerTree {
+
+        /** The number of elements in the tree. */
+        private final int size;
+        /** The one to four items at the front. */
+        private final Object[] prefix;
+        /** The tree of nodes in the middle. */
+        private final FingerTree middle;
+        /** The one to four items at the back. */
+        private final Object[] suffix;
+
+        private Deep(Object[] prefix, FingerTree middle, Object[] suffix) {
+            this.size = sizeOf(prefix, 0, prefix.length) + middle.size() + sizeOf(suffix, 0, suffix.length);
+            this.prefix = prefix;
+            this.middle = middle;
+            this.suffix = suffix;
+        }
+
+        @Override
+        int size() {
+            return this.size;
+        }
+
+        @Override
+        FingerTree pushFront(Object item) {
+            if (this.prefix.length < 4) return new Deep(prepend(item, this.prefix), this.middle, this.suffix);
+            // The prefix is full, so three of its items move into the middle tree as a node.
+            Object[] p = this.prefix;
+            return new Deep(new Object[] { item, p[0] }, this.middle.pushFront(new Node(new Object[] { p[1], p[2], p[3] })), this.suffix);
+        }
+
+        @Override
+        FingerTree pushBack(Object item) {
+            if (this.suffix.length < 4) return new Deep(this.prefix, this.middle, append(this.suffix, item));
+            // The suffix is full, so three of its items move into the middle tree as a node.
+            Object[] s = this.suffix;
+            return new Deep(this.prefix, this.middle.pushBack(new Node(new Object[] { s[0], s[1], s[2] })), new Object[] { s[3], item });
+        }
+
+        @Override
+        Object front() {
+            return this.prefix[0];
+        }
+
+        @Override
+        Object back() {
+            return this.suffix[this.suffix.length - 1];
+        }
+
+        @Override
+        FingerTree popFront() {
+            return deepLeft(Arrays.copyOfRange(this.prefix, 1, this.prefix.length), this.middle, this.suffix);
+        }
+
+        @Override
+        FingerTree popBack() {
+            return deepRight(this.prefix, this.middle, Arrays.copyOf(this.suffix, this.suffix.length - 1));
+        }
+
+        @Override
+        Object get(int index) {
+            int prefixSize = sizeOf(this.prefix, 0, this.prefix.length);
+            if (index < prefixSize) {
+                int i = indexOfItem(this.prefix, index);
+                return getInItem(this.prefix[i], index - sizeOf(this.prefix, 0, i));
+            }
+            int remaining = index - prefixSize;
+            int middleSize = this.middle.size();
+            if (remaining < middleSize) return this.middle.get(remaining);
+            remaining -= middleSize;
+            int i = indexOfItem(this.suffix, remaining);
+            return getInItem(this.suffix[i], remaining - sizeOf(this.suffix, 0, i));
+        }
+
+        @Override
+        Split split(int index) {
+            int prefixSize = sizeOf(this.prefix, 0, this.prefix.length);
+            if (index < prefixSize) {
+                int i = indexOfItem(this.prefix, index);
+                return new Split(
+                    fromDigit(this.prefix, 0, i),
+                    this.prefix[i],
+                    deepLeft(Arrays.copyOfRange(this.prefix, i + 1, this.prefix.length), this.middle, this.suffix)
+                );
+            }
+            int remaining = index - prefixSize;
+            int middleSize = this.middle.size();
+            if (remaining < middleSize) {
+                // Split the middle tree, and then split the node that contains the index.
+                Split middleSplit = this.middle.split(remaining);
+                remaining -= middleSplit.left.size();
+                Object[] children = ((Node)middleSplit.item).children;
+                int i = indexOfItem(children, remaining);
+                return new Split(
+                    deepRight(this.prefix, middleSplit.left, Arrays.copyOf(children, i)),
+                    children[i],
+                    deepLeft(Arrays.copyOfRange(children, i + 1, children.length), middleSplit.right, this.suffix)
+                );
+            }
+            remaining -= middleSize;
+            int i = indexOfItem(this.suffix, remaining);
+            return new Split(
+                deepRight(this.prefix, this.middle, Arrays.copyOf(this.suffix, i)),
+                this.suffix[i],
+                fromDigit(this.suffix, i + 1, this.suffix.length)
+            );
+        }
+
+    }
+
+}
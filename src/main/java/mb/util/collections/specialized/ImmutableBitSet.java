@@ -0,0 +1,181 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.immutable.ImmutableSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * An immutable set over a small, fixed universe of elements, stored as bits.
+ *
+ * This class is immutable and thread-safe.
+ *
+ * @param <E> the type of elements in the set
+ */
+public final class ImmutableBitSet<E> extends BitSetView<E> implements ImmutableSet<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /* package private */ ImmutableBitSet(Universe<E> universe, long[] words) {
+        super(universe, words);
+    }
+
+    /**
+     * Creates an empty set over the specified universe.
+     *
+     * @param universe the universe of elements
+     * @param <E> the type of elements in the set
+     * @return the empty set
+     */
+    public static <E> ImmutableBitSet<E> noneOf(Universe<E> universe) {
+        return new ImmutableBitSet<>(universe, new long[wordCountOf(universe)]);
+    }
+
+    /**
+     * Creates a set of all elements of the specified universe.
+     *
+     * @param universe the universe of elements
+     * @param <E> the type of elements in the set
+     * @return the set of all elements
+     */
+    public static <E> ImmutableBitSet<E> allOf(Universe<E> universe) {
+        long[] words = new long[wordCountOf(universe)];
+        Arrays.fill(words, -1L);
+        clearUnusedBits(words, universe.size());
+        return new ImmutableBitSet<>(universe, words);
+    }
+
+    /**
+     * Creates a set of the specified enum constants.
+     *
+     * @param first the first element
+     * @param rest the other elements
+     * @param <E> the type of elements in the set
+     * @return the set
+     */
+    @SafeVarargs public static <E extends Enum<E>> ImmutableBitSet<E> of(E first, E... rest) {
+        ImmutableBitSet<E> set = noneOf(Universe.ofEnum(first.getDeclaringClass()));
+        set.words[first.ordinal() >>> 6] |= 1L << first.ordinal();
+        for (E element : rest) {
+            set.words[element.ordinal() >>> 6] |= 1L << element.ordinal();
+        }
+        return set;
+    }
+
+    /**
+     * Creates a set by copying the specified elements, which must be in the specified universe.
+     *
+     * @param universe the universe of elements
+     * @param elements the elements to copy
+     * @param <E> the type of elements in the set
+     * @return the set
+     * @throws IllegalArgumentException an element is not in the universe
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> ImmutableBitSet<E> copyOf(Universe<E> universe, Iterable<? extends E> elements) {
+        if (elements instanceof BitSetView<?> && ((BitSetView<?>)elements).universe.equals(universe)) {
+            if (elements instanceof ImmutableBitSet<?>) {
+                return (ImmutableBitSet<E>)elements;
+            }
+            return new ImmutableBitSet<>(universe, ((BitSetView<?>)elements).words.clone());
+        }
+        long[] words = new long[wordCountOf(universe)];
+        for (E element : elements) {
+            int index = universe.indexOf(element);
+            if (index < 0) throw new IllegalArgumentException("Element not in the universe: " + element);
+            words[index >>> 6] |= 1L << index;
+        }
+        return new ImmutableBitSet<>(universe, words);
+    }
+
+    /**
+     * Creates a set of the specified elements when they are all constants of the same enum type.
+     *
+     * When they are not, this method may already have iterated over some of the elements,
+     * so the caller should only fall back to iterating over them again when the iterable can be iterated again.
+     *
+     * @param elements the elements
+     * @param <E> the type of elements in the set
+     * @return the set; or {@code null} when the elements are not all constants of the same enum type
+     */
+    public static <E> @Nullable ImmutableBitSet<E> tryOfEnums(Iterable<? extends E> elements) {
+        Iterator<? extends E> iterator = elements.iterator();
+        if (!iterator.hasNext()) return null;
+        Object first = iterator.next();
+        if (!(first instanceof Enum<?>)) return null;
+        @SuppressWarnings("unchecked")
+        Universe<E> universe = (Universe<E>)Universe.ofEnum(((Enum<?>)first).getDeclaringClass());
+        long[] words = new long[wordCountOf(universe)];
+        int index = ((Enum<?>)first).ordinal();
+        words[index >>> 6] |= 1L << index;
+        while (iterator.hasNext()) {
+            index = universe.indexOf(iterator.next());
+            if (index < 0) return null;
+            words[index >>> 6] |= 1L << index;
+        }
+        return new ImmutableBitSet<>(universe, words);
+    }
+
+    /**
+     * Returns a mutable copy of this set.
+     *
+     * @return the mutable set
+     */
+    public MutableBitSet<E> toMutable() {
+        return new MutableBitSet<>(this.universe, this.words.clone());
+    }
+
+    @Override
+    public ImmutableBitSet<E> freeze() {
+        // Looking up an element is already a single bit test.
+        return this;
+    }
+
+    @Override
+    public Set<E> asUnmodifiable() {
+        return new AsSet<>(this);
+    }
+
+    /**
+     * Gets the number of longs needed for the bits of the specified universe.
+     */
+    /* package private */ static int wordCountOf(Universe<?> universe) {
+        return (universe.size() + 63) >>> 6;
+    }
+
+    /**
+     * A set that views an immutable bit set.
+     *
+     * @param <E> the type of elements in the set
+     */
+    private static final class AsSet<E> extends AbstractSet<E> {
+
+        private final ImmutableBitSet<E> set;
+
+        private AsSet(ImmutableBitSet<E> set) {
+            this.set = set;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return this.set.contains(o);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<E> iterator() {
+            return this.set.iterator();
+        }
+
+    }
+
+}
@@ -0,0 +1,404 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.ListView;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable map from intervals of offsets to values, such as from source regions to AST nodes.
+ *
+ * The intervals are half-open: the interval from {@code start} to {@code end} contains the offsets
+ * from {@code start} up to but not including {@code end}. Intervals may overlap and nest,
+ * and the same interval may occur more than once.
+ *
+ * The intervals are stored in arrays, sorted by their start offset, and intervals with the same start
+ * by their end offset in descending order, so an enclosing interval comes before the intervals
+ * that it encloses. The sorted arrays are the in-order layout of an implicit balanced binary search tree,
+ * whose nodes are augmented with the maximum end offset in their subtrees. A query skips every subtree
+ * whose intervals all start after the query range or all end before it, so it visits
+ * O(log n) nodes plus O(log n) nodes per reported interval, and typically close to O(log n + k)
+ * for the k reported intervals. The results are reported in the sorted order.
+ *
+ * Use a {@link Builder} to create the map. When the intervals are added in sorted order,
+ * the map is built in linear time.
+ *
+ * This class is immutable and thread-safe.
+ *
+ * @param <V> the type of values in the map
+ */
+public final class IntervalMap<V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty map. */
+    private static final IntervalMap<?> EMPTY = new IntervalMap<>(new int[0], new int[0], new Object[0]);
+
+    /** The start offsets of the intervals, inclusive. */
+    private final int[] starts;
+    /** The end offsets of the intervals, exclusive. */
+    private final int[] ends;
+    /** The values of the intervals. */
+    private final Object[] values;
+    /** For each node of the implicit tree, the maximum end offset in its subtree. */
+    private final int[] maxEnds;
+
+    private IntervalMap(int[] starts, int[] ends, Object[] values) {
+        this.starts = starts;
+        this.ends = ends;
+        this.values = values;
+        this.maxEnds = new int[starts.length];
+        computeMaxEnds(0, starts.length);
+    }
+
+    /**
+     * Gets the empty interval map.
+     *
+     * @param <V> the type of values in the map
+     * @return the empty interval map
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> IntervalMap<V> of() {
+        return (IntervalMap<V>)EMPTY;
+    }
+
+    /**
+     * Creates a builder for an interval map.
+     *
+     * @param <V> the type of values in the map
+     * @return the builder
+     */
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Computes the maximum end offsets of the subtree of the specified range.
+     *
+     * @param from the zero-based index of the first interval in the range, inclusive
+     * @param to the zero-based index of the last interval in the range, exclusive
+     * @return the maximum end offset in the range; or {@link Integer#MIN_VALUE} when the range is empty
+     */
+    private int computeMaxEnds(int from, int to) {
+        if (from >= to) return Integer.MIN_VALUE;
+        int mid = (from + to) >>> 1;
+        int maxEnd = Math.max(this.ends[mid], Math.max(computeMaxEnds(from, mid), computeMaxEnds(mid + 1, to)));
+        this.maxEnds[mid] = maxEnd;
+        return maxEnd;
+    }
+
+    /**
+     * Gets the number of intervals in the map.
+     *
+     * @return the number of intervals
+     */
+    public int size() {
+        return this.starts.length;
+    }
+
+    /**
+     * Gets whether the map is empty.
+     *
+     * @return {@code true} when the map is empty; otherwise, {@code false}
+     */
+    public boolean isEmpty() {
+        return this.starts.length == 0;
+    }
+
+    /**
+     * Gets the start offset of the interval at the specified index in the sorted order.
+     *
+     * @param index the zero-based index
+     * @return the start offset, inclusive
+     */
+    public int getStart(int index) {
+        checkIndex(index);
+        return this.starts[index];
+    }
+
+    /**
+     * Gets the end offset of the interval at the specified index in the sorted order.
+     *
+     * @param index the zero-based index
+     * @return the end offset, exclusive
+     */
+    public int getEnd(int index) {
+        checkIndex(index);
+        return this.ends[index];
+    }
+
+    /**
+     * Gets the value of the interval at the specified index in the sorted order.
+     *
+     * @param index the zero-based index
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    public V getValue(int index) {
+        checkIndex(index);
+        return (V)this.values[index];
+    }
+
+    /**
+     * Performs the specified action for each interval that contains the specified offset.
+     *
+     * This allocates nothing.
+     *
+     * @param offset the offset
+     * @param action the action to perform
+     */
+    public void forEachContaining(int offset, IntervalConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        search(0, this.starts.length, offset, (long)offset + 1, action);
+    }
+
+    /**
+     * Performs the specified action for each interval that overlaps the specified range.
+     *
+     * An interval overlaps the range when they have at least one offset in common,
+     * so intervals that only touch the range are not included.
+     *
+     * This allocates nothing.
+     *
+     * @param from the start offset of the range, inclusive
+     * @param to the end offset of the range, exclusive
+     * @param action the action to perform
+     */
+    public void forEachOverlapping(int from, int to, IntervalConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        if (from >= to) return;
+        search(0, this.starts.length, from, to, action);
+    }
+
+    /**
+     * Gets the values of the intervals that contain the specified offset,
+     * from the outermost interval to the innermost interval.
+     *
+     * @param offset the offset
+     * @return the values
+     */
+    public ListView<V> getContaining(int offset) {
+        List<V> result = new ArrayList<>();
+        forEachContaining(offset, (start, end, value) -> result.add(value));
+        return ListView.from(result);
+    }
+
+    /**
+     * Gets the values of the intervals that overlap the specified range, in the sorted order.
+     *
+     * @param from the start offset of the range, inclusive
+     * @param to the end offset of the range, exclusive
+     * @return the values
+     */
+    public ListView<V> getOverlapping(int from, int to) {
+        List<V> result = new ArrayList<>();
+        forEachOverlapping(from, to, (start, end, value) -> result.add(value));
+        return ListView.from(result);
+    }
+
+    /**
+     * Gets the value of the innermost interval that contains the specified offset.
+     *
+     * The innermost interval is the containing interval with the greatest start offset,
+     * and of those the one with the least end offset.
+     *
+     * @param offset the offset
+     * @return the value of the innermost interval; or {@code null} when no interval contains the offset
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable public V getInnermost(int offset) {
+        int index = innermost(0, this.starts.length, offset);
+        return index >= 0 ? (V)this.values[index] : null;
+    }
+
+    /**
+     * Reports the intervals in the subtree of the specified range that overlap the query range.
+     *
+     * @param from the zero-based index of the first interval in the subtree, inclusive
+     * @param to the zero-based index of the last interval in the subtree, exclusive
+     * @param queryStart the start offset of the query range, inclusive
+     * @param queryEnd the end offset of the query range, exclusive
+     * @param action the action to perform for each overlapping interval
+     */
+    @SuppressWarnings("unchecked")
+    private void search(int from, int to, int queryStart, long queryEnd, IntervalConsumer<? super V> action) {
+        if (from >= to) return;
+        int mid = (from + to) >>> 1;
+        // No interval in this subtree ends after the query range starts.
+        if (this.maxEnds[mid] <= queryStart) return;
+        search(from, mid, queryStart, queryEnd, action);
+        // This interval and all intervals in the right subtree start after the query range ends.
+        if (this.starts[mid] >= queryEnd) return;
+        // An empty interval has no offsets, so it overlaps nothing.
+        if (this.ends[mid] > queryStart && this.starts[mid] < this.ends[mid]) {
+            action.accept(this.starts[mid], this.ends[mid], (V)this.values[mid]);
+        }
+        search(mid + 1, to, queryStart, queryEnd, action);
+    }
+
+    /**
+     * Finds the last interval in the sorted order, within the subtree of the specified range,
+     * that contains the specified offset.
+     *
+     * @param from the zero-based index of the first interval in the subtree, inclusive
+     * @param to the zero-based index of the last interval in the subtree, exclusive
+     * @param offset the offset
+     * @return the zero-based index of the interval; or -1 when no interval contains the offset
+     */
+    private int innermost(int from, int to, int offset) {
+        if (from >= to) return -1;
+        int mid = (from + to) >>> 1;
+        if (this.maxEnds[mid] <= offset) return -1;
+        // Search the later intervals first, so we can stop at the first interval that we find.
+        if (this.starts[mid] <= offset) {
+            int index = innermost(mid + 1, to, offset);
+            if (index >= 0) return index;
+            if (this.ends[mid] > offset) return mid;
+        }
+        return innermost(from, mid, offset);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.starts.length)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + this.starts.length);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof IntervalMap<?>)) return false;
+        IntervalMap<?> other = (IntervalMap<?>)obj;
+        return Arrays.equals(this.starts, other.starts)
+            && Arrays.equals(this.ends, other.ends)
+            && Arrays.equals(this.values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 17;
+        hashCode = 31 * hashCode + Arrays.hashCode(this.starts);
+        hashCode = 31 * hashCode + Arrays.hashCode(this.ends);
+        hashCode = 31 * hashCode + Arrays.hashCode(this.values);
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        for (int i = 0; i < this.starts.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('[').append(this.starts[i]).append(", ").append(this.ends[i]).append(")=").append(this.values[i]);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * An action on an interval and its value.
+     *
+     * @param <V> the type of value
+     */
+    @FunctionalInterface
+    public interface IntervalConsumer<V> {
+
+        /**
+         * Performs the action.
+         *
+         * @param start the start offset of the interval, inclusive
+         * @param end the end offset of the interval, exclusive
+         * @param value the value of the interval
+         */
+        void accept(int start, int end, V value);
+
+    }
+
+    /**
+     * A builder for an interval map.
+     *
+     * This class is not thread-safe.
+     *
+     * @param <V> the type of values in the map
+     */
+    public static final class Builder<V> {
+
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private Object[] values = new Object[16];
+        private int size = 0;
+        /** Whether the intervals were added in sorted order. */
+        private boolean sorted = true;
+
+        private Builder() {
+            // Use IntervalMap.builder().
+        }
+
+        /**
+         * Adds an interval.
+         *
+         * @param start the start offset of the interval, inclusive
+         * @param end the end offset of the interval, exclusive
+         * @param value the value of the interval
+         * @return this builder
+         * @throws IllegalArgumentException the end offset is less than the start offset
+         */
+        public Builder<V> add(int start, int end, V value) {
+            if (end < start) throw new IllegalArgumentException("Interval [" + start + ", " + end + ") ends before it starts.");
+            if (this.size == this.starts.length) {
+                int capacity = this.size + (this.size >> 1);
+                this.starts = Arrays.copyOf(this.starts, capacity);
+                this.ends = Arrays.copyOf(this.ends, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
+            }
+            if (this.size > 0 && compare(this.size - 1, start, end) > 0) this.sorted = false;
+            this.starts[this.size] = start;
+            this.ends[this.size] = end;
+            this.values[this.size] = value;
+            this.size += 1;
+            return this;
+        }
+
+        private int compare(int index, int start, int end) {
+            int result = Integer.compare(this.starts[index], start);
+            // Enclosing intervals come first.
+            return result != 0 ? result : Integer.compare(end, this.ends[index]);
+        }
+
+        /**
+         * Builds the interval map.
+         *
+         * This takes linear time when the intervals were added in sorted order,
+         * and O(n log n) time otherwise.
+         *
+         * @return the interval map
+         */
+        public IntervalMap<V> build() {
+            if (this.size == 0) return of();
+            if (this.sorted) {
+                return new IntervalMap<>(
+                    Arrays.copyOf(this.starts, this.size),
+                    Arrays.copyOf(this.ends, this.size),
+                    Arrays.copyOf(this.values, this.size)
+                );
+            }
+            Integer[] order = new Integer[this.size];
+            for (int i = 0; i < this.size; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> compare(a, this.starts[b], this.ends[b]));
+            int[] sortedStarts = new int[this.size];
+            int[] sortedEnds = new int[this.size];
+            Object[] sortedValues = new Object[this.size];
+            for (int i = 0; i < this.size; i++) {
+                sortedStarts[i] = this.starts[order[i]];
+                sortedEnds[i] = this.ends[order[i]];
+                sortedValues[i] = this.values[order[i]];
+            }
+            return new IntervalMap<>(sortedStarts, sortedEnds, sortedValues);
+        }
+
+    }
+
+}
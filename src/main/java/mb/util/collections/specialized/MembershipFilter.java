@@ -0,0 +1,57 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+
+/**
+ * An approximate membership filter, which can tell that an element was definitely not added,
+ * but can only tell that an element was probably added.
+ *
+ * A filter has no false negatives: {@link #mightContain} returns {@code true} for every element that
+ * was added (and, where supported, not removed). It may also return {@code true} for other elements,
+ * with a probability that is bounded by the false-positive rate it was created with,
+ * as long as no more elements were added than the filter was sized for.
+ *
+ * A filter stores only a few bits per element, so it can be kept in front of a large or slow
+ * collection to avoid looking up most of the elements that are not in it.
+ *
+ * The elements are hashed using the equality comparator of the filter, which must be the same
+ * as the equality comparator of the collection it is in front of.
+ *
+ * @param <E> the type of elements in the filter
+ */
+public interface MembershipFilter<E> extends Serializable {
+
+    /**
+     * Gets the equality comparator whose hash codes the filter uses.
+     *
+     * @return the equality comparator
+     */
+    EqualityComparator<? super E> getComparator();
+
+    /**
+     * Determines whether the specified element might have been added to the filter.
+     *
+     * @param element the element to check
+     * @return {@code true} when the element might have been added;
+     * {@code false} when the element was definitely not added
+     */
+    boolean mightContain(@Nullable Object element);
+
+    /**
+     * Adds the specified element to the filter.
+     *
+     * @param element the element to add
+     * @return {@code true} when the element was added;
+     * {@code false} when the filter is too full to add it
+     */
+    boolean add(@Nullable E element);
+
+    /**
+     * Removes all elements from the filter.
+     */
+    void clear();
+
+}
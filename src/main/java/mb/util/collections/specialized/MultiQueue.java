@@ -0,0 +1,344 @@
+package mb.util.collections.specialized;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A relaxed concurrent priority queue, implemented as a MultiQueue.
+ *
+ * The elements are spread over a number of sequential {@link PriorityQueue} heaps, each behind its own lock.
+ * An element is offered to a random heap whose lock is free. Polling compares the least elements of two random heaps
+ * and polls the heap with the lesser one. On this fast path, threads only try to take a lock:
+ * when the chosen lock is taken, they choose again. With a few heaps per thread, contention is rare
+ * and throughput scales nearly linearly with the number of threads. The fallback scan of {@link #poll},
+ * {@link #clear}, and {@link #iterator} wait for the lock of each heap in turn, so they may block.
+ *
+ * The ordering is relaxed: {@link #poll} returns one of the least elements, but not necessarily the least element.
+ * The rank of the polled element is small in expectation. This suits algorithms that tolerate
+ * speculative work, such as parallel best-first search. When the queue is nearly empty, {@link #poll}
+ * checks every heap, one at a time, before it returns {@code null}. As other threads may offer and poll
+ * elements while it checks, it may return {@code null} even though the queue was never empty during the call.
+ *
+ * The size, {@link #peek}, and the iterator are weakly consistent. The iterator returns the elements
+ * in no particular order. Removing an element through the iterator or with {@link #remove(Object)}
+ * removes one equal element from the queue, if there still is one.
+ *
+ * All methods may be called by any thread. The queue does not permit {@code null} elements.
+ *
+ * @param <E> the type of elements in the queue
+ */
+public final class MultiQueue<E> extends AbstractQueue<E> {
+
+    /** The number of pairs of heaps that {@link #poll} tries before it checks every heap. */
+    private static final int POLL_ATTEMPTS = 8;
+
+    /** The comparator; or {@code null} to use the natural ordering. */
+    @Nullable private final Comparator<? super E> comparator;
+    /** The heaps. */
+    private final Heap<E>[] heaps;
+
+    /**
+     * Initializes a new instance of the {@link MultiQueue} class
+     * that orders its elements according to their natural ordering,
+     * with two heaps per available processor.
+     */
+    public MultiQueue() {
+        this(null);
+    }
+
+    /**
+     * Initializes a new instance of the {@link MultiQueue} class,
+     * with two heaps per available processor.
+     *
+     * @param comparator the comparator; or {@code null} to use the natural ordering of the elements
+     */
+    public MultiQueue(@Nullable Comparator<? super E> comparator) {
+        this(2 * Runtime.getRuntime().availableProcessors(), comparator);
+    }
+
+    /**
+     * Initializes a new instance of the {@link MultiQueue} class.
+     *
+     * More heaps reduce contention, but make the ordering more relaxed.
+     * A good choice is a small multiple of the number of threads that use the queue.
+     *
+     * @param heapCount the number of heaps, at least 2
+     * @param comparator the comparator; or {@code null} to use the natural ordering of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public MultiQueue(int heapCount, @Nullable Comparator<? super E> comparator) {
+        if (heapCount < 2) throw new IllegalArgumentException("Heap count must be at least 2: " + heapCount);
+        this.comparator = comparator;
+        this.heaps = (Heap<E>[])new Heap<?>[heapCount];
+        for (int i = 0; i < heapCount; i++) {
+            this.heaps[i] = new Heap<>(comparator);
+        }
+    }
+
+    /**
+     * Gets the comparator.
+     *
+     * @return the comparator; or {@code null} when the natural ordering of the elements is used
+     */
+    @Nullable public Comparator<? super E> comparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Heap<E> heap : this.heaps) {
+            size += heap.size;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Heap<E> heap : this.heaps) {
+            if (heap.size > 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            Heap<E> heap = this.heaps[random.nextInt(this.heaps.length)];
+            if (!heap.tryLock()) continue;
+            try {
+                heap.queue.offer(element);
+                heap.update();
+                return true;
+            } finally {
+                heap.unlock();
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public E poll() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < POLL_ATTEMPTS; attempt++) {
+            Heap<E> first = this.heaps[random.nextInt(this.heaps.length)];
+            Heap<E> second = this.heaps[random.nextInt(this.heaps.length)];
+            // Compare the cached least elements, so that we only need to lock one heap.
+            E firstTop = first.top;
+            E secondTop = second.top;
+            Heap<E> heap;
+            if (firstTop == null && secondTop == null) continue;
+            else if (firstTop == null) heap = second;
+            else if (secondTop == null) heap = first;
+            else heap = compare(firstTop, secondTop) <= 0 ? first : second;
+
+            if (!heap.tryLock()) continue;
+            try {
+                E element = heap.queue.poll();
+                if (element != null) {
+                    heap.update();
+                    return element;
+                }
+            } finally {
+                heap.unlock();
+            }
+        }
+        // The queue may be nearly empty, so we check every heap.
+        for (Heap<E> heap : this.heaps) {
+            if (heap.size == 0) continue;
+            heap.lock();
+            try {
+                E element = heap.queue.poll();
+                if (element != null) {
+                    heap.update();
+                    return element;
+                }
+            } finally {
+                heap.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the least of the least elements of the heaps.
+     *
+     * This reads the cached least element of each heap without locking it,
+     * so the returned element may already have been polled by another thread.
+     *
+     * @return the least element; or {@code null} when the queue is empty
+     */
+    @Nullable
+    @Override
+    public E peek() {
+        E least = null;
+        for (Heap<E> heap : this.heaps) {
+            E top = heap.top;
+            if (top != null && (least == null || compare(top, least) < 0)) least = top;
+        }
+        return least;
+    }
+
+    @Override
+    public void clear() {
+        for (Heap<E> heap : this.heaps) {
+            heap.lock();
+            try {
+                heap.queue.clear();
+                heap.update();
+            } finally {
+                heap.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes one occurrence of the specified element from the queue.
+     *
+     * This locks each heap in turn until it finds the element.
+     *
+     * @param element the element to remove
+     * @return {@code true} when the element was removed; otherwise, {@code false}
+     */
+    @Override
+    public boolean remove(@Nullable Object element) {
+        if (element == null) return false;
+        for (Heap<E> heap : this.heaps) {
+            if (heap.size == 0) continue;
+            heap.lock();
+            try {
+                if (heap.queue.remove(element)) {
+                    heap.update();
+                    return true;
+                }
+            } finally {
+                heap.unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the elements that satisfy the specified predicate.
+     *
+     * This locks each heap in turn, so elements offered concurrently may or may not be tested.
+     *
+     * @param filter the predicate
+     * @return {@code true} when any elements were removed; otherwise, {@code false}
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        boolean removed = false;
+        for (Heap<E> heap : this.heaps) {
+            heap.lock();
+            try {
+                if (heap.queue.removeIf(filter)) {
+                    heap.update();
+                    removed = true;
+                }
+            } finally {
+                heap.unlock();
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> elements) {
+        Objects.requireNonNull(elements);
+        return removeIf(elements::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> elements) {
+        Objects.requireNonNull(elements);
+        return removeIf(element -> !elements.contains(element));
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        // We iterate over a snapshot of the heaps, each taken while its lock is held.
+        List<E> snapshot = new ArrayList<>();
+        for (Heap<E> heap : this.heaps) {
+            heap.lock();
+            try {
+                snapshot.addAll(heap.queue);
+            } finally {
+                heap.unlock();
+            }
+        }
+        // Removing through the iterator removes the element from the queue.
+        Iterator<E> iterator = snapshot.iterator();
+        return new Iterator<E>() {
+            @Nullable private E last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                this.last = iterator.next();
+                return this.last;
+            }
+
+            @Override
+            public void remove() {
+                if (this.last == null) throw new IllegalStateException();
+                MultiQueue.this.remove(this.last);
+                this.last = null;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        if (this.comparator != null) return this.comparator.compare(a, b);
+        return ((Comparable<? super E>)a).compareTo(b);
+    }
+
+    /**
+     * A sequential heap and its lock.
+     */
+    private static final class Heap<E> extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The heap, which is only accessed while the lock is held. */
+        private final PriorityQueue<E> queue;
+        /** The least element of the heap, which can be read without the lock; or {@code null} when it is empty. */
+        @Nullable private volatile E top;
+        /** The size of the heap, which can be read without the lock. */
+        private volatile int size;
+
+        private Heap(@Nullable Comparator<? super E> comparator) {
+            this.queue = new PriorityQueue<>(comparator);
+        }
+
+        /**
+         * Updates the cached least element and size, while the lock is held.
+         */
+        private void update() {
+            this.top = this.queue.peek();
+            this.size = this.queue.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,198 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.mutable.MutableSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A mutable set over a small, fixed universe of elements, stored as bits.
+ *
+ * Adding, removing, or retaining the elements of another bit set over the same universe,
+ * with {@link #orWith}, {@link #andNotWith}, and {@link #andWith}, is performed word by word.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <E> the type of elements in the set
+ */
+public final class MutableBitSet<E> extends BitSetView<E> implements MutableSet<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Initializes a new instance of the {@link MutableBitSet} class, which is empty.
+     *
+     * @param universe the universe of elements
+     */
+    public MutableBitSet(Universe<E> universe) {
+        this(universe, new long[ImmutableBitSet.wordCountOf(universe)]);
+    }
+
+    /* package private */ MutableBitSet(Universe<E> universe, long[] words) {
+        super(universe, words);
+    }
+
+    /**
+     * Creates an empty set of constants of the specified enum type.
+     *
+     * @param type the enum type
+     * @param <E> the type of elements in the set
+     * @return the empty set
+     */
+    public static <E extends Enum<E>> MutableBitSet<E> noneOf(Class<E> type) {
+        return new MutableBitSet<>(Universe.ofEnum(type));
+    }
+
+    /**
+     * Returns an immutable copy of this set.
+     *
+     * @return the immutable set
+     */
+    public ImmutableBitSet<E> toImmutable() {
+        return new ImmutableBitSet<>(this.universe, this.words.clone());
+    }
+
+    /**
+     * Adds the specified element to the set.
+     *
+     * @param element the element to add
+     * @return {@code true} when the element was added; {@code false} when the set already contained it
+     * @throws IllegalArgumentException the element is not in the universe
+     */
+    @Override
+    public boolean add(E element) {
+        int index = this.universe.indexOf(element);
+        if (index < 0) throw new IllegalArgumentException("Element not in the universe: " + element);
+        long word = this.words[index >>> 6];
+        this.words[index >>> 6] = word | (1L << index);
+        return (word & (1L << index)) == 0;
+    }
+
+    @Override
+    public boolean remove(@Nullable Object element) {
+        int index = this.universe.indexOf(element);
+        if (index < 0) return false;
+        long word = this.words[index >>> 6];
+        this.words[index >>> 6] = word & ~(1L << index);
+        return (word & (1L << index)) != 0;
+    }
+
+    @Override
+    public boolean addAll(@NotNull Collection<? extends E> elements) {
+        if (elements instanceof BitSetView<?> && ((BitSetView<?>)elements).universe.equals(this.universe)) {
+            //noinspection unchecked
+            return orWith((BitSetView<? extends E>)elements);
+        }
+        boolean changed = false;
+        for (E element : elements) {
+            changed |= add(element);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean removeAll(@NotNull Collection<?> elements) {
+        if (elements instanceof BitSetView<?> && ((BitSetView<?>)elements).universe.equals(this.universe)) {
+            return andNotWith((BitSetView<?>)elements);
+        }
+        boolean changed = false;
+        for (Object element : elements) {
+            changed |= remove(element);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll(@NotNull Collection<?> elements) {
+        if (elements instanceof BitSetView<?> && ((BitSetView<?>)elements).universe.equals(this.universe)) {
+            return andWith((BitSetView<?>)elements);
+        }
+        return removeIf(element -> !elements.contains(element));
+    }
+
+    /**
+     * Adds the elements of the specified set to this set.
+     *
+     * @param other the other set, which must have the same universe
+     * @return {@code true} when this set changed; otherwise, {@code false}
+     */
+    public boolean orWith(BitSetView<? extends E> other) {
+        long[] otherWords = wordsOf(other);
+        boolean changed = false;
+        for (int i = 0; i < this.words.length; i++) {
+            long word = this.words[i] | otherWords[i];
+            changed |= word != this.words[i];
+            this.words[i] = word;
+        }
+        return changed;
+    }
+
+    /**
+     * Removes the elements that are not in the specified set from this set.
+     *
+     * @param other the other set, which must have the same universe
+     * @return {@code true} when this set changed; otherwise, {@code false}
+     */
+    public boolean andWith(BitSetView<?> other) {
+        long[] otherWords = wordsOf(other);
+        boolean changed = false;
+        for (int i = 0; i < this.words.length; i++) {
+            long word = this.words[i] & otherWords[i];
+            changed |= word != this.words[i];
+            this.words[i] = word;
+        }
+        return changed;
+    }
+
+    /**
+     * Removes the elements of the specified set from this set.
+     *
+     * @param other the other set, which must have the same universe
+     * @return {@code true} when this set changed; otherwise, {@code false}
+     */
+    public boolean andNotWith(BitSetView<?> other) {
+        long[] otherWords = wordsOf(other);
+        boolean changed = false;
+        for (int i = 0; i < this.words.length; i++) {
+            long word = this.words[i] & ~otherWords[i];
+            changed |= word != this.words[i];
+            this.words[i] = word;
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        boolean changed = false;
+        for (int i = 0; i < this.words.length; i++) {
+            long word = this.words[i];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                if (filter.test(this.universe.get((i << 6) + bit))) {
+                    this.words[i] &= ~(1L << bit);
+                    changed = true;
+                }
+                word &= word - 1;
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.words, 0L);
+    }
+
+    @Override
+    /* package private */ void removeIndex(int index) {
+        this.words[index >>> 6] &= ~(1L << index);
+    }
+
+    @Override
+    public Set<E> asUnmodifiable() {
+        return Collections.unmodifiableSet(this);
+    }
+
+}
@@ -0,0 +1,40 @@
+package mb.util.collections.specialized;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.BinaryOperator;
+
+/**
+ * A mutable map from disjoint sets of keys to values.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public interface MutableDisjointMap<K, V> extends DisjointMap<K, V> {
+
+    /**
+     * Associates the set that contains the specified key with the specified value.
+     *
+     * When the key is not in the map, it is added in a set of its own.
+     *
+     * @param key the key
+     * @param value the value; or {@code null} to remove the value
+     * @return the previous value of the set; or {@code null} when it had none
+     */
+    @Nullable V put(K key, @Nullable V value);
+
+    /**
+     * Merges the sets that contain the specified keys.
+     *
+     * Keys that are not in the map are added first. When only one of the sets has a value,
+     * the merged set gets that value. When both sets have a value, the merged set gets
+     * the result of the specified function.
+     *
+     * @param key1 the first key
+     * @param key2 the second key
+     * @param merge the function that merges the values of the sets
+     * @return the representative of the merged set
+     */
+    K union(K key1, K key2, BinaryOperator<V> merge);
+
+}
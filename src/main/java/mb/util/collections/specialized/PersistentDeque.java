@@ -0,0 +1,422 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.ListView;
+import mb.util.collections.immutable.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A persistent deque, implemented as a 2-3 finger tree annotated with sizes.
+ *
+ * Adding or removing an element at either end takes amortized constant time,
+ * accessing the element at an index and splitting the deque at an index take logarithmic time,
+ * and concatenating two deques takes logarithmic time in the size of the smaller deque.
+ * Every operation returns a new deque that shares most of its structure with this deque.
+ *
+ * The middle of the tree is built eagerly, so the amortized bounds hold when each version of
+ * the deque is only modified once, such as when it is used as a queue. When an old version is modified
+ * again, an operation takes at most logarithmic time.
+ *
+ * This class is immutable and thread-safe.
+ *
+ * @param <E> the type of elements in the deque
+ */
+public final class PersistentDeque<E> implements ImmutableList<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty deque. */
+    private static final PersistentDeque<?> EMPTY = new PersistentDeque<>(FingerTree.EMPTY);
+
+    /** The tree of elements. */
+    private final FingerTree tree;
+
+    private PersistentDeque(FingerTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Gets the empty persistent deque.
+     *
+     * @param <E> the type of elements in the deque
+     * @return the empty persistent deque
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentDeque<E> of() {
+        return (PersistentDeque<E>)EMPTY;
+    }
+
+    /**
+     * Creates a persistent deque with the specified elements.
+     *
+     * @param elements the elements in the deque, from the front to the back
+     * @param <E> the type of elements in the deque
+     * @return the persistent deque
+     */
+    @SafeVarargs public static <E> PersistentDeque<E> of(E... elements) {
+        FingerTree tree = FingerTree.EMPTY;
+        for (E element : elements) {
+            tree = tree.pushBack(element);
+        }
+        return wrap(tree);
+    }
+
+    /**
+     * Creates a persistent deque with the elements of the specified iterable.
+     *
+     * @param elements the elements in the deque, from the front to the back
+     * @param <E> the type of elements in the deque
+     * @return the persistent deque
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentDeque<E> from(Iterable<? extends E> elements) {
+        if (elements instanceof PersistentDeque<?>) {
+            return (PersistentDeque<E>)elements;
+        }
+        FingerTree tree = FingerTree.EMPTY;
+        for (E element : elements) {
+            tree = tree.pushBack(element);
+        }
+        return wrap(tree);
+    }
+
+    private static <E> PersistentDeque<E> wrap(FingerTree tree) {
+        if (tree.size() == 0) return of();
+        return new PersistentDeque<>(tree);
+    }
+
+    /**
+     * Adds an element at the front of the deque.
+     *
+     * @param element the element to add
+     * @return the resulting deque
+     */
+    public PersistentDeque<E> pushFront(E element) {
+        return new PersistentDeque<>(this.tree.pushFront(element));
+    }
+
+    /**
+     * Adds an element at the back of the deque.
+     *
+     * @param element the element to add
+     * @return the resulting deque
+     */
+    public PersistentDeque<E> pushBack(E element) {
+        return new PersistentDeque<>(this.tree.pushBack(element));
+    }
+
+    /**
+     * Removes the element at the front of the deque.
+     *
+     * @return the resulting deque
+     * @throws NoSuchElementException the deque is empty
+     */
+    public PersistentDeque<E> popFront() {
+        return wrap(this.tree.popFront());
+    }
+
+    /**
+     * Removes the element at the back of the deque.
+     *
+     * @return the resulting deque
+     * @throws NoSuchElementException the deque is empty
+     */
+    public PersistentDeque<E> popBack() {
+        return wrap(this.tree.popBack());
+    }
+
+    /**
+     * Gets the element at the front of the deque.
+     *
+     * @return the element at the front
+     * @throws NoSuchElementException the deque is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peekFront() {
+        return (E)this.tree.front();
+    }
+
+    /**
+     * Gets the element at the back of the deque.
+     *
+     * @return the element at the back
+     * @throws NoSuchElementException the deque is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peekBack() {
+        return (E)this.tree.back();
+    }
+
+    /**
+     * Concatenates this deque with the specified deque.
+     *
+     * This takes logarithmic time in the size of the smaller deque.
+     *
+     * @param other the deque whose elements come after the elements of this deque
+     * @return the concatenated deque
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentDeque<E> concat(PersistentDeque<? extends E> other) {
+        if (other.isEmpty()) return this;
+        if (this.isEmpty()) {
+            return (PersistentDeque<E>)other;
+        }
+        return new PersistentDeque<>(FingerTree.concat(this.tree, other.tree));
+    }
+
+    /**
+     * Gets the deque of the first elements of this deque.
+     *
+     * This takes logarithmic time.
+     *
+     * @param count the number of elements to take
+     * @return the deque of the first {@code count} elements
+     */
+    public PersistentDeque<E> take(int count) {
+        checkRange(count);
+        return wrap(this.tree.splitAt(count)[0]);
+    }
+
+    /**
+     * Gets the deque of the elements of this deque after the first elements.
+     *
+     * This takes logarithmic time.
+     *
+     * @param count the number of elements to skip
+     * @return the deque without the first {@code count} elements
+     */
+    public PersistentDeque<E> drop(int count) {
+        checkRange(count);
+        return wrap(this.tree.splitAt(count)[1]);
+    }
+
+    /**
+     * Splits the deque at the specified index.
+     *
+     * This takes logarithmic time.
+     *
+     * @param index the zero-based index, from 0 up to and including the size
+     * @return a list of two deques: the elements before the index and the elements from the index
+     */
+    public List<PersistentDeque<E>> splitAt(int index) {
+        checkRange(index);
+        FingerTree[] trees = this.tree.splitAt(index);
+        return ListView.of(PersistentDeque.<E>wrap(trees[0]), PersistentDeque.<E>wrap(trees[1])).asUnmodifiable();
+    }
+
+    private void checkRange(int index) {
+        if (index < 0 || index > size())
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+    }
+
+    @Override
+    public int size() {
+        return this.tree.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.tree.size() == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        return (E)this.tree.get(index);
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return indexOf(element) >= 0;
+    }
+
+    @Override
+    public int indexOf(@Nullable Object element) {
+        int index = 0;
+        for (E e : this) {
+            if (Objects.equals(e, element)) return index;
+            index += 1;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(@Nullable Object element) {
+        int lastIndex = -1;
+        int index = 0;
+        for (E e : this) {
+            if (Objects.equals(e, element)) lastIndex = index;
+            index += 1;
+        }
+        return lastIndex;
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] array = new Object[size()];
+        int index = 0;
+        for (E e : this) {
+            array[index] = e;
+            index += 1;
+        }
+        return array;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        T[] array = (T[])Array.newInstance(a.getClass().getComponentType(), size());
+        int index = 0;
+        for (E e : this) {
+            array[index] = (T)e;
+            index += 1;
+        }
+        return array;
+    }
+
+    @NotNull
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        return (Iterator<E>)this.tree.iterator();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ListIterator<E> listIterator(int index) {
+        // The tree cannot iterate backwards, so we iterate over a copy of the elements.
+        return ListView.of((E[])toArray()).listIterator(index);
+    }
+
+    @Override
+    public PersistentDeque<E> subListView(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + ") out of bounds for length " + size());
+        if (fromIndex == 0 && toIndex == size()) return this;
+        return wrap(this.tree.splitAt(toIndex)[0].splitAt(fromIndex)[1]);
+    }
+
+    @Override
+    public List<E> asUnmodifiable() {
+        return new AbstractList<E>() {
+            @Override
+            public int size() {
+                return PersistentDeque.this.size();
+            }
+
+            @Override
+            public E get(int index) {
+                return PersistentDeque.this.get(index);
+            }
+
+            @NotNull
+            @Override
+            public Iterator<E> iterator() {
+                return PersistentDeque.this.iterator();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof Iterable<?>)) return false;
+        if (obj instanceof PersistentDeque<?> && ((PersistentDeque<?>)obj).size() != this.size()) return false;
+
+        Iterator<E> e1 = this.iterator();
+        Iterator<?> e2 = ((Iterable<?>)obj).iterator();
+        while (e1.hasNext() && e2.hasNext()) {
+            if (!Objects.equals(e1.next(), e2.next())) return false;
+        }
+        return !(e1.hasNext() || e2.hasNext());
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 17;
+        for (E e : this) {
+            hashCode = 31 * hashCode + (e != null ? e.hashCode() : 0);
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        boolean first = true;
+        for (E e : this) {
+            if (!first) sb.append(", ");
+            sb.append(e == this ? "(this collection)" : e);
+            first = false;
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        // The tree is an implementation detail, so we write only the elements.
+        return new SerializedForm(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required.");
+    }
+
+    /**
+     * The serialized form of a {@link PersistentDeque}, which writes the elements from the front to the back.
+     */
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The deque that was written or read. */
+        private transient PersistentDeque<?> deque;
+
+        private SerializedForm(PersistentDeque<?> deque) {
+            this.deque = deque;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(this.deque.size());
+            for (Object element : this.deque) {
+                out.writeObject(element);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            int size = in.readInt();
+            if (size < 0) throw new InvalidObjectException("Negative size: " + size);
+            FingerTree tree = FingerTree.EMPTY;
+            for (int i = 0; i < size; i++) {
+                tree = tree.pushBack(in.readObject());
+            }
+            this.deque = wrap(tree);
+        }
+
+        private Object readResolve() {
+            return this.deque;
+        }
+
+    }
+
+}
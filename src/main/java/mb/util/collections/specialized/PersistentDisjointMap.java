@@ -0,0 +1,67 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.BinaryOperator;
+
+/**
+ * A persistent map from disjoint sets of keys to values.
+ *
+ * Each modification returns a new version of the map, and all older versions remain valid.
+ * The versions share most of their structure, so forking a map is free.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+public interface PersistentDisjointMap<K, V> extends DisjointMap<K, V> {
+
+    /**
+     * Creates an empty persistent disjoint map.
+     *
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent disjoint map
+     */
+    static <K, V> PersistentDisjointMap<K, V> of() {
+        return PersistentHashDisjointMap.empty(EqualityComparator.getDefault());
+    }
+
+    /**
+     * Creates an empty persistent disjoint map that uses the specified equality comparator.
+     *
+     * @param comparator the equality comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the persistent disjoint map
+     */
+    static <K, V> PersistentDisjointMap<K, V> withComparator(EqualityComparator<? super K> comparator) {
+        return PersistentHashDisjointMap.empty(comparator);
+    }
+
+    /**
+     * Associates the set that contains the specified key with the specified value.
+     *
+     * When the key is not in the map, it is added in a set of its own.
+     *
+     * @param key the key
+     * @param value the value; or {@code null} to remove the value
+     * @return the resulting map
+     */
+    PersistentDisjointMap<K, V> put(K key, @Nullable V value);
+
+    /**
+     * Merges the sets that contain the specified keys.
+     *
+     * Keys that are not in the map are added first. When only one of the sets has a value,
+     * the merged set gets that value. When both sets have a value, the merged set gets
+     * the result of the specified function.
+     *
+     * @param key1 the first key
+     * @param key2 the second key
+     * @param merge the function that merges the values of the sets
+     * @return the resulting map
+     */
+    PersistentDisjointMap<K, V> union(K key1, K key2, BinaryOperator<V> merge);
+
+}
@@ -0,0 +1,183 @@
+package mb.util.collections.specialized;
+
+import mb.util.EqualityComparator;
+import mb.util.collections.immutable.PersistentMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.function.BinaryOperator;
+
+/**
+ * A persistent union-find map implemented on a persistent hash map.
+ *
+ * The map associates each key with a node: either a link to its parent key,
+ * or, for the representative of a set, the rank and the value of the set.
+ * Sets are merged by linking the root of lower rank to the root of higher rank,
+ * so the trees have logarithmic height and finding a representative takes
+ * a logarithmic number of lookups. Paths are not compressed, because that would
+ * require a new version of the map for each lookup.
+ *
+ * Each modification copies only the paths in the hash trie to the changed keys,
+ * so older versions share most of their structure with newer versions.
+ *
+ * @param <K> the type of keys in the map
+ * @param <V> the type of values in the map
+ */
+/* package private */ final class PersistentHashDisjointMap<K, V> implements PersistentDisjointMap<K, V> {
+
+    /** The empty map that uses the default equality comparator. */
+    private static final PersistentHashDisjointMap<?, ?> EMPTY = new PersistentHashDisjointMap<>(PersistentMap.of());
+
+    /** The node of each key. */
+    private final PersistentMap<K, Node> nodes;
+
+    private PersistentHashDisjointMap(PersistentMap<K, Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Gets an empty map.
+     *
+     * @param comparator the equality comparator of the keys
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ static <K, V> PersistentHashDisjointMap<K, V> empty(EqualityComparator<? super K> comparator) {
+        if (comparator == EqualityComparator.getDefault()) {
+            return (PersistentHashDisjointMap<K, V>)EMPTY;
+        } else {
+            return new PersistentHashDisjointMap<>(PersistentMap.withComparator(comparator));
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.nodes.size();
+    }
+
+    @Override
+    public EqualityComparator<? super K> getComparator() {
+        return this.nodes.getComparator();
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return this.nodes.containsKey(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K find(K key) {
+        K current = key;
+        Node node = this.nodes.get(current);
+        while (node instanceof Link<?>) {
+            current = ((Link<K>)node).parent;
+            node = this.nodes.get(current);
+        }
+        return current;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(K key) {
+        Node node = this.nodes.get(find(key));
+        return node != null ? ((Root<V>)node).value : null;
+    }
+
+    @Override
+    public PersistentHashDisjointMap<K, V> put(K key, @Nullable V value) {
+        K root = find(key);
+        @SuppressWarnings("unchecked")
+        Root<V> node = (Root<V>)this.nodes.get(root);
+        if (node == null) {
+            return new PersistentHashDisjointMap<>(this.nodes.put(key, new Root<>(0, value)));
+        }
+        if (node.value == value) return this;
+        return new PersistentHashDisjointMap<>(this.nodes.put(root, new Root<>(node.rank, value)));
+    }
+
+    @Override
+    public PersistentHashDisjointMap<K, V> union(K key1, K key2, BinaryOperator<V> merge) {
+        K root1 = find(key1);
+        K root2 = find(key2);
+        @SuppressWarnings("unchecked")
+        Root<V> node1 = (Root<V>)this.nodes.get(root1);
+        @SuppressWarnings("unchecked")
+        Root<V> node2 = (Root<V>)this.nodes.get(root2);
+        if (node1 != null && node1 == node2) return this;
+        if (node1 == null && node2 == null && getComparator().equals(root1, root2)) {
+            // The key is united with itself.
+            return new PersistentHashDisjointMap<>(this.nodes.put(root1, new Root<>(0, null)));
+        }
+
+        @Nullable V value1 = node1 != null ? node1.value : null;
+        @Nullable V value2 = node2 != null ? node2.value : null;
+        @Nullable V value = value1 == null ? value2 : value2 == null ? value1 : merge.apply(value1, value2);
+        int rank1 = node1 != null ? node1.rank : 0;
+        int rank2 = node2 != null ? node2.rank : 0;
+
+        // Link the root of lower rank to the root of higher rank.
+        K root = rank1 >= rank2 ? root1 : root2;
+        K child = rank1 >= rank2 ? root2 : root1;
+        int rank = rank1 == rank2 ? rank1 + 1 : Math.max(rank1, rank2);
+        PersistentMap<K, Node> newNodes = this.nodes
+            .put(child, new Link<>(root))
+            .put(root, new Root<>(rank, value));
+        return new PersistentHashDisjointMap<>(newNodes);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<K, Node> entry : this.nodes) {
+            if (!first) sb.append(", ");
+            first = false;
+            K key = entry.getKey();
+            K root = find(key);
+            sb.append(key).append('=').append(root);
+            @Nullable V value = get(root);
+            if (value != null) sb.append(':').append(value);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /** The node of a key. */
+    private interface Node {}
+
+    /**
+     * The node of a key that is not the representative of its set.
+     *
+     * @param <K> the type of keys
+     */
+    private static final class Link<K> implements Node {
+        /** The parent key. */
+        private final K parent;
+
+        private Link(K parent) {
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * The node of a key that is the representative of its set.
+     *
+     * @param <V> the type of values
+     */
+    private static final class Root<V> implements Node {
+        /** An upper bound on the height of the tree of the set. */
+        private final int rank;
+        /** The value of the set; or {@code null}. */
+        @Nullable private final V value;
+
+        private Root(int rank, @Nullable V value) {
+            this.rank = rank;
+            this.value = value;
+        }
+    }
+
+}
@@ -0,0 +1,481 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.ListView;
+import mb.util.collections.immutable.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.AbstractSequentialList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A persistent FIFO queue, implemented as Okasaki's real-time queue.
+ *
+ * The queue consists of a lazy front stream, from which elements are dequeued, and a rear stack,
+ * onto which elements are enqueued. When the rear becomes longer than the front, the rear is rotated
+ * onto the end of the front. Instead of performing the rotation at once, the rotation is suspended
+ * and each later operation forces one more cell of the front stream. This guarantees that every
+ * {@link #enqueue} and {@link #dequeue} takes constant time in the worst case, even when old versions
+ * of the queue are reused, so there are no pauses when a rotation would otherwise occur.
+ *
+ * As a list, the element at index 0 is the front of the queue. Accessing the element at index {@code i}
+ * walks {@code i} elements, so this list is not efficient at random access, and the methods that would
+ * otherwise access the elements by index are implemented with iterators instead.
+ *
+ * This class is immutable and thread-safe.
+ *
+ * @param <E> the type of elements in the queue
+ */
+public final class PersistentQueue<E> implements ImmutableList<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty queue. */
+    private static final PersistentQueue<?> EMPTY = new PersistentQueue<>(Stream.EMPTY, 0, PersistentStack.of(), Stream.EMPTY);
+
+    /** The front of the queue, from which elements are dequeued. */
+    private final Stream front;
+    /** The number of elements in the front stream. */
+    private final int frontSize;
+    /** The rear of the queue, from the last element to the first; its size is at most the front size. */
+    private final PersistentStack<E> rear;
+    /** The suffix of the front stream whose cells are not forced yet; its length is the front size minus the rear size. */
+    private final Stream schedule;
+
+    private PersistentQueue(Stream front, int frontSize, PersistentStack<E> rear, Stream schedule) {
+        this.front = front;
+        this.frontSize = frontSize;
+        this.rear = rear;
+        this.schedule = schedule;
+    }
+
+    /**
+     * Gets the empty persistent queue.
+     *
+     * @param <E> the type of elements in the queue
+     * @return the empty persistent queue
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentQueue<E> of() {
+        return (PersistentQueue<E>)EMPTY;
+    }
+
+    /**
+     * Creates a persistent queue with the specified elements.
+     *
+     * @param elements the elements in the queue, from the front to the back
+     * @param <E> the type of elements in the queue
+     * @return the persistent queue
+     */
+    @SafeVarargs public static <E> PersistentQueue<E> of(E... elements) {
+        PersistentQueue<E> queue = of();
+        for (E element : elements) {
+            queue = queue.enqueue(element);
+        }
+        return queue;
+    }
+
+    /**
+     * Creates a persistent queue with the elements of the specified iterable.
+     *
+     * @param elements the elements in the queue, from the front to the back
+     * @param <E> the type of elements in the queue
+     * @return the persistent queue
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentQueue<E> from(Iterable<? extends E> elements) {
+        if (elements instanceof PersistentQueue<?>) {
+            return (PersistentQueue<E>)elements;
+        }
+        PersistentQueue<E> queue = of();
+        for (E element : elements) {
+            queue = queue.enqueue(element);
+        }
+        return queue;
+    }
+
+    /**
+     * Adds an element at the back of the queue.
+     *
+     * This takes constant time in the worst case.
+     *
+     * @param element the element to add
+     * @return the resulting queue
+     */
+    public PersistentQueue<E> enqueue(E element) {
+        return step(this.front, this.frontSize, this.rear.push(element), this.schedule);
+    }
+
+    /**
+     * Removes the element at the front of the queue.
+     *
+     * This takes constant time in the worst case.
+     *
+     * @return the resulting queue
+     * @throws NoSuchElementException the queue is empty
+     */
+    public PersistentQueue<E> dequeue() {
+        Cell cell = this.front.force();
+        if (cell == null) throw new NoSuchElementException();
+        return step(cell.tail, this.frontSize - 1, this.rear, this.schedule);
+    }
+
+    /**
+     * Gets the element at the front of the queue.
+     *
+     * @return the element at the front
+     * @throws NoSuchElementException the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        Cell cell = this.front.force();
+        if (cell == null) throw new NoSuchElementException();
+        return (E)cell.head;
+    }
+
+    /**
+     * Creates a queue after an element was enqueued or dequeued,
+     * which made the schedule one cell longer than the front size minus the rear size.
+     *
+     * Either forces the next cell of the schedule, or starts a new rotation when the schedule is empty.
+     */
+    private static <E> PersistentQueue<E> step(Stream front, int frontSize, PersistentStack<E> rear, Stream schedule) {
+        Cell next = schedule.force();
+        if (next != null) return new PersistentQueue<>(front, frontSize, rear, next.tail);
+        // The rear is one element longer than the front, so we rotate it onto the end of the front.
+        Stream rotated = new Stream(new Rotation(front, rear, Stream.EMPTY));
+        return new PersistentQueue<>(rotated, frontSize + rear.size(), PersistentStack.of(), rotated);
+    }
+
+    @Override
+    public int size() {
+        return this.frontSize + this.rear.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        Iterator<E> iterator = iterator();
+        for (int i = 0; i < index; i++) {
+            iterator.next();
+        }
+        return iterator.next();
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return indexOf(element) >= 0;
+    }
+
+    @Override
+    public int indexOf(@Nullable Object element) {
+        int index = 0;
+        for (E e : this) {
+            if (Objects.equals(e, element)) return index;
+            index += 1;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(@Nullable Object element) {
+        int lastIndex = -1;
+        int index = 0;
+        for (E e : this) {
+            if (Objects.equals(e, element)) lastIndex = index;
+            index += 1;
+        }
+        return lastIndex;
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] array = new Object[size()];
+        int index = 0;
+        for (E e : this) {
+            array[index] = e;
+            index += 1;
+        }
+        return array;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        T[] array = (T[])Array.newInstance(a.getClass().getComponentType(), size());
+        int index = 0;
+        for (E e : this) {
+            array[index] = (T)e;
+            index += 1;
+        }
+        return array;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            /** The remaining front stream. */
+            private Stream stream = PersistentQueue.this.front;
+            /** The rear, in queue order; or {@code null} while iterating the front stream. */
+            @Nullable private Iterator<E> rearIterator = null;
+
+            @Override
+            public boolean hasNext() {
+                if (this.rearIterator != null) return this.rearIterator.hasNext();
+                return this.stream.force() != null || !PersistentQueue.this.rear.isEmpty();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (this.rearIterator == null) {
+                    Cell cell = this.stream.force();
+                    if (cell != null) {
+                        this.stream = cell.tail;
+                        return (E)cell.head;
+                    }
+                    this.rearIterator = PersistentQueue.this.rear.reverse().iterator();
+                }
+                return this.rearIterator.next();
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ListIterator<E> listIterator(int index) {
+        // A stream cannot iterate backwards, so we iterate over a copy of the elements.
+        return ListView.of((E[])toArray()).listIterator(index);
+    }
+
+    @Override
+    public PersistentQueue<E> subListView(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + ") out of bounds for length " + size());
+        if (fromIndex == 0 && toIndex == size()) return this;
+        PersistentQueue<E> queue = of();
+        Iterator<E> iterator = iterator();
+        for (int i = 0; i < toIndex; i++) {
+            E element = iterator.next();
+            if (i >= fromIndex) queue = queue.enqueue(element);
+        }
+        return queue;
+    }
+
+    @Override
+    public List<E> asUnmodifiable() {
+        return new AbstractSequentialList<E>() {
+            @Override
+            public int size() {
+                return PersistentQueue.this.size();
+            }
+
+            @Override
+            public E get(int index) {
+                return PersistentQueue.this.get(index);
+            }
+
+            @NotNull
+            @Override
+            public Iterator<E> iterator() {
+                return PersistentQueue.this.iterator();
+            }
+
+            @NotNull
+            @Override
+            public ListIterator<E> listIterator(int index) {
+                return PersistentQueue.this.listIterator(index);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof Iterable<?>)) return false;
+        if (obj instanceof PersistentQueue<?> && ((PersistentQueue<?>)obj).size() != this.size()) return false;
+
+        Iterator<E> e1 = this.iterator();
+        Iterator<?> e2 = ((Iterable<?>)obj).iterator();
+        while (e1.hasNext() && e2.hasNext()) {
+            if (!Objects.equals(e1.next(), e2.next())) return false;
+        }
+        return !(e1.hasNext() || e2.hasNext());
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 17;
+        for (E e : this) {
+            hashCode = 31 * hashCode + (e != null ? e.hashCode() : 0);
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        boolean first = true;
+        for (E e : this) {
+            if (!first) sb.append(", ");
+            sb.append(e == this ? "(this collection)" : e);
+            first = false;
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * A lazy stream, whose first cell is computed when it is first forced.
+     */
+    private static final class Stream {
+
+        /** The empty stream. */
+        private static final Stream EMPTY = new Stream(null);
+
+        private static final AtomicReferenceFieldUpdater<Stream, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(Stream.class, Object.class, "state");
+
+        /** The {@link Cell} of the stream when it has been forced, the {@link Rotation} to perform otherwise;
+         * or {@code null} for the empty stream. */
+        @Nullable private volatile Object state;
+
+        private Stream(@Nullable Object state) {
+            this.state = state;
+        }
+
+        /**
+         * Forces the first cell of the stream.
+         *
+         * This takes constant time, because the front stream of a rotation is always forced completely
+         * before the rotation starts.
+         *
+         * @return the first cell; or {@code null} when the stream is empty
+         */
+        @Nullable private Cell force() {
+            Object state = this.state;
+            if (!(state instanceof Rotation)) return (Cell)state;
+            Cell cell = ((Rotation)state).step();
+            // When another thread forced the stream first, we use its cell, so that every reader
+            // and every schedule see the same tail streams.
+            if (STATE.compareAndSet(this, state, cell)) return cell;
+            return (Cell)this.state;
+        }
+
+    }
+
+    /**
+     * A forced cell of a stream.
+     */
+    private static final class Cell {
+        /** The element. */
+        @Nullable private final Object head;
+        /** The rest of the stream. */
+        private final Stream tail;
+
+        private Cell(@Nullable Object head, Stream tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+
+    /**
+     * A suspended rotation, which appends the reverse of the rear to the front, followed by an accumulator.
+     */
+    private static final class Rotation {
+        /** The front stream, which has been forced completely. */
+        private final Stream front;
+        /** The rear, which is one element longer than the front stream. */
+        private final PersistentStack<?> rear;
+        /** The reversed part of the rear that was already rotated. */
+        private final Stream accumulator;
+
+        private Rotation(Stream front, PersistentStack<?> rear, Stream accumulator) {
+            this.front = front;
+            this.rear = rear;
+            this.accumulator = accumulator;
+        }
+
+        /**
+         * Computes the first cell of the rotated stream.
+         *
+         * @return the first cell
+         */
+        private Cell step() {
+            Cell frontCell = this.front.force();
+            Stream accumulator = new Stream(new Cell(this.rear.peek(), this.accumulator));
+            if (frontCell == null) return accumulator.force();
+            return new Cell(frontCell.head, new Stream(new Rotation(frontCell.tail, this.rear.pop(), accumulator)));
+        }
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        // The streams are an implementation detail, so we write only the elements.
+        return new SerializedForm(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required.");
+    }
+
+    /**
+     * The serialized form of a {@link PersistentQueue}, which writes the elements from the front to the back.
+     */
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The queue that was written or read. */
+        private transient PersistentQueue<?> queue;
+
+        private SerializedForm(PersistentQueue<?> queue) {
+            this.queue = queue;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(this.queue.size());
+            for (Object element : this.queue) {
+                out.writeObject(element);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            int size = in.readInt();
+            if (size < 0) throw new InvalidObjectException("Negative size: " + size);
+            PersistentQueue<Object> queue = of();
+            for (int i = 0; i < size; i++) {
+                queue = queue.enqueue(in.readObject());
+            }
+            this.queue = queue;
+        }
+
+        private Object readResolve() {
+            return this.queue;
+        }
+
+    }
+
+}
@@ -0,0 +1,384 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.ListView;
+import mb.util.collections.immutable.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.AbstractSequentialList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A persistent stack, implemented as a linked list of cons cells.
+ *
+ * Pushing an element creates one cell that points to the existing stack, so it takes constant time,
+ * and all stacks that were pushed onto the same stack share it as their tail. Forking a stack is free.
+ *
+ * As a list, the element at index 0 is the top of the stack. Accessing the element at index {@code i}
+ * walks {@code i} cells, so this list is not efficient at random access, and the methods that would
+ * otherwise access the elements by index are implemented with iterators instead.
+ *
+ * This class is immutable and thread-safe.
+ *
+ * @param <E> the type of elements in the stack
+ */
+public final class PersistentStack<E> implements ImmutableList<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The empty stack. */
+    private static final PersistentStack<?> EMPTY = new PersistentStack<>(null, null, 0);
+
+    /** The element on top of the stack; or {@code null} for the empty stack. */
+    @Nullable private final E head;
+    /** The stack below the top element; or {@code null} for the empty stack. */
+    @Nullable private final PersistentStack<E> tail;
+    /** The number of elements. */
+    private final int size;
+
+    private PersistentStack(@Nullable E head, @Nullable PersistentStack<E> tail, int size) {
+        this.head = head;
+        this.tail = tail;
+        this.size = size;
+    }
+
+    /**
+     * Gets the empty persistent stack.
+     *
+     * @param <E> the type of elements in the stack
+     * @return the empty persistent stack
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentStack<E> of() {
+        return (PersistentStack<E>)EMPTY;
+    }
+
+    /**
+     * Creates a persistent stack with the specified elements.
+     *
+     * @param elements the elements in the stack, from the top to the bottom
+     * @param <E> the type of elements in the stack
+     * @return the persistent stack
+     */
+    @SafeVarargs public static <E> PersistentStack<E> of(E... elements) {
+        PersistentStack<E> stack = of();
+        for (int i = elements.length - 1; i >= 0; i--) {
+            stack = stack.push(elements[i]);
+        }
+        return stack;
+    }
+
+    /**
+     * Creates a persistent stack with the elements of the specified iterable.
+     *
+     * @param elements the elements in the stack, from the top to the bottom
+     * @param <E> the type of elements in the stack
+     * @return the persistent stack
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentStack<E> from(Iterable<? extends E> elements) {
+        if (elements instanceof PersistentStack<?>) {
+            return (PersistentStack<E>)elements;
+        }
+        PersistentStack<E> reversed = of();
+        for (E element : elements) {
+            reversed = reversed.push(element);
+        }
+        return reversed.reverse();
+    }
+
+    /**
+     * Pushes an element on top of the stack.
+     *
+     * @param element the element to push
+     * @return the resulting stack, whose tail is this stack
+     */
+    public PersistentStack<E> push(E element) {
+        return new PersistentStack<>(element, this, this.size + 1);
+    }
+
+    /**
+     * Pops the element on top of the stack.
+     *
+     * @return the stack below the top element
+     * @throws NoSuchElementException the stack is empty
+     */
+    public PersistentStack<E> pop() {
+        if (this.tail == null) throw new NoSuchElementException();
+        return this.tail;
+    }
+
+    /**
+     * Gets the element on top of the stack.
+     *
+     * @return the element on top of the stack
+     * @throws NoSuchElementException the stack is empty
+     */
+    public E peek() {
+        if (this.tail == null) throw new NoSuchElementException();
+        return this.head;
+    }
+
+    /**
+     * Creates a stack with the elements of this stack in reverse order.
+     *
+     * @return the reversed stack
+     */
+    public PersistentStack<E> reverse() {
+        PersistentStack<E> reversed = of();
+        for (PersistentStack<E> cell = this; cell.tail != null; cell = cell.tail) {
+            reversed = reversed.push(cell.head);
+        }
+        return reversed;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + this.size);
+        return drop(index).head;
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return indexOf(element) >= 0;
+    }
+
+    @Override
+    public int indexOf(@Nullable Object element) {
+        int index = 0;
+        for (PersistentStack<E> cell = this; cell.tail != null; cell = cell.tail) {
+            if (Objects.equals(cell.head, element)) return index;
+            index += 1;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(@Nullable Object element) {
+        int lastIndex = -1;
+        int index = 0;
+        for (PersistentStack<E> cell = this; cell.tail != null; cell = cell.tail) {
+            if (Objects.equals(cell.head, element)) lastIndex = index;
+            index += 1;
+        }
+        return lastIndex;
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] array = new Object[this.size];
+        int index = 0;
+        for (PersistentStack<E> cell = this; cell.tail != null; cell = cell.tail) {
+            array[index] = cell.head;
+            index += 1;
+        }
+        return array;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        T[] array = (T[])Array.newInstance(a.getClass().getComponentType(), this.size);
+        int index = 0;
+        for (PersistentStack<E> cell = this; cell.tail != null; cell = cell.tail) {
+            array[index] = (T)cell.head;
+            index += 1;
+        }
+        return array;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private PersistentStack<E> cell = PersistentStack.this;
+
+            @Override
+            public boolean hasNext() {
+                return this.cell.tail != null;
+            }
+
+            @Override
+            public E next() {
+                if (this.cell.tail == null) throw new NoSuchElementException();
+                E element = this.cell.head;
+                this.cell = this.cell.tail;
+                return element;
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ListIterator<E> listIterator(int index) {
+        // A cons list cannot iterate backwards, so we iterate over a copy of the elements.
+        return ListView.of((E[])toArray()).listIterator(index);
+    }
+
+    @Override
+    public PersistentStack<E> subListView(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > this.size || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + ") out of bounds for length " + this.size);
+        PersistentStack<E> suffix = drop(fromIndex);
+        // A suffix of the stack is shared.
+        if (toIndex == this.size) return suffix;
+        PersistentStack<E> reversed = of();
+        for (int i = fromIndex; i < toIndex; i++) {
+            reversed = reversed.push(suffix.head);
+            suffix = suffix.tail;
+        }
+        return reversed.reverse();
+    }
+
+    /**
+     * Gets the stack below the specified number of elements.
+     *
+     * @param count the number of elements to skip
+     * @return the stack below the skipped elements
+     */
+    private PersistentStack<E> drop(int count) {
+        PersistentStack<E> cell = this;
+        for (int i = 0; i < count; i++) {
+            cell = cell.tail;
+        }
+        return cell;
+    }
+
+    @Override
+    public List<E> asUnmodifiable() {
+        return new AbstractSequentialList<E>() {
+            @Override
+            public int size() {
+                return PersistentStack.this.size;
+            }
+
+            @Override
+            public E get(int index) {
+                return PersistentStack.this.get(index);
+            }
+
+            @NotNull
+            @Override
+            public Iterator<E> iterator() {
+                return PersistentStack.this.iterator();
+            }
+
+            @NotNull
+            @Override
+            public ListIterator<E> listIterator(int index) {
+                return PersistentStack.this.listIterator(index);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof Iterable<?>)) return false;
+        if (obj instanceof PersistentStack<?> && ((PersistentStack<?>)obj).size != this.size) return false;
+
+        Iterator<E> e1 = this.iterator();
+        Iterator<?> e2 = ((Iterable<?>)obj).iterator();
+        while (e1.hasNext() && e2.hasNext()) {
+            if (!Objects.equals(e1.next(), e2.next())) return false;
+        }
+        return !(e1.hasNext() || e2.hasNext());
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 17;
+        for (PersistentStack<E> cell = this; cell.tail != null; cell = cell.tail) {
+            hashCode = 31 * hashCode + (cell.head != null ? cell.head.hashCode() : 0);
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (PersistentStack<E> cell = this; cell.tail != null; cell = cell.tail) {
+            if (cell != this) sb.append(", ");
+            sb.append(cell.head == this ? "(this collection)" : cell.head);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    // Serialization
+
+    private Object writeReplace() {
+        // Serializing the cells would recurse once per element.
+        return new SerializedForm(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required.");
+    }
+
+    /**
+     * The serialized form of a {@link PersistentStack}, which writes the elements from the top to the bottom.
+     */
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The stack that was written or read. */
+        private transient PersistentStack<?> stack;
+
+        private SerializedForm(PersistentStack<?> stack) {
+            this.stack = stack;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(this.stack.size);
+            for (Object element : this.stack) {
+                out.writeObject(element);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            int size = in.readInt();
+            if (size < 0) throw new InvalidObjectException("Negative size: " + size);
+            // We don't trust the size to allocate the whole array up front,
+            // as a corrupt stream could otherwise make us allocate a huge array.
+            Object[] elements = new Object[Math.min(size, 1024)];
+            for (int i = 0; i < size; i++) {
+                if (i == elements.length) elements = Arrays.copyOf(elements, (int)Math.min(size, i * 2L));
+                elements[i] = in.readObject();
+            }
+            this.stack = PersistentStack.of(elements);
+        }
+
+        private Object readResolve() {
+            return this.stack;
+        }
+
+    }
+
+}
@@ -1,4 +1,353 @@
 package mb.util.collections.specialized;
 
-public class PriorityQueue {
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A priority queue, implemented as a binary heap in an array.
+ *
+ * The head of the queue is the least element according to the comparator,
+ * or according to the natural ordering of the elements when there is no comparator.
+ * Offering and polling elements take logarithmic time; peeking takes constant time.
+ * Removing an arbitrary element with {@link #remove(Object)} takes linear time to find the element.
+ * The iterator returns the elements in no particular order, and supports removal.
+ *
+ * For a priority queue that can be used by many threads at once, use {@link MultiQueue}.
+ * Both classes implement {@link java.util.Queue}, including the removal of arbitrary elements,
+ * so one can be substituted for the other where the relaxed ordering of {@link MultiQueue} is acceptable.
+ *
+ * This class is not thread-safe. The queue does not permit {@code null} elements.
+ *
+ * @param <E> the type of elements in the queue
+ */
+public final class PriorityQueue<E> extends AbstractQueue<E> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The comparator; or {@code null} to use the natural ordering. */
+    @Nullable private final Comparator<? super E> comparator;
+    /** The heap, where the children of the element at index {@code i} are at {@code 2i + 1} and {@code 2i + 2}. */
+    private transient Object[] elements;
+    /** The number of elements. */
+    private transient int size;
+    /** The number of structural modifications. */
+    private transient int modCount;
+
+    /**
+     * Initializes a new instance of the {@link PriorityQueue} class
+     * that orders its elements according to their natural ordering.
+     */
+    public PriorityQueue() {
+        this(null);
+    }
+
+    /**
+     * Initializes a new instance of the {@link PriorityQueue} class.
+     *
+     * @param comparator the comparator; or {@code null} to use the natural ordering of the elements
+     */
+    public PriorityQueue(@Nullable Comparator<? super E> comparator) {
+        this(11, comparator);
+    }
+
+    /**
+     * Initializes a new instance of the {@link PriorityQueue} class.
+     *
+     * @param capacity the initial number of elements the queue can hold without growing
+     * @param comparator the comparator; or {@code null} to use the natural ordering of the elements
+     */
+    public PriorityQueue(int capacity, @Nullable Comparator<? super E> comparator) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity must be non-negative: " + capacity);
+        this.comparator = comparator;
+        this.elements = new Object[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Gets the comparator.
+     *
+     * @return the comparator; or {@code null} when the natural ordering of the elements is used
+     */
+    @Nullable public Comparator<? super E> comparator() {
+        return this.comparator;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        if (this.size == this.elements.length) {
+            this.elements = Arrays.copyOf(this.elements, Math.max(this.size + 1, this.size + (this.size >> 1)));
+        }
+        siftUp(this.size, element);
+        this.size += 1;
+        this.modCount += 1;
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public E poll() {
+        if (this.size == 0) return null;
+        @SuppressWarnings("unchecked")
+        E head = (E)this.elements[0];
+        this.size -= 1;
+        Object last = this.elements[this.size];
+        this.elements[this.size] = null;
+        if (this.size > 0) siftDown(0, last);
+        this.modCount += 1;
+        return head;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return this.size > 0 ? (E)this.elements[0] : null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.elements, 0, this.size, null);
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+    @NotNull
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOf(this.elements, this.size);
+    }
+
+    /**
+     * Removes one occurrence of the specified element from the queue.
+     *
+     * Finding the element takes linear time; removing it takes logarithmic time.
+     *
+     * @param element the element to remove
+     * @return {@code true} when the element was removed; otherwise, {@code false}
+     */
+    @Override
+    public boolean remove(@Nullable Object element) {
+        int index = indexOf(element);
+        if (index < 0) return false;
+        removeAt(index);
+        return true;
+    }
+
+    @Override
+    public boolean contains(@Nullable Object element) {
+        return indexOf(element) >= 0;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<E> iterator() {
+        return new HeapIterator();
+    }
+
+    /**
+     * Gets the index of the specified element in the heap.
+     *
+     * @param element the element to find
+     * @return the zero-based index of the element; or -1 when it is not in the queue
+     */
+    private int indexOf(@Nullable Object element) {
+        if (element == null) return -1;
+        for (int i = 0; i < this.size; i++) {
+            if (element.equals(this.elements[i])) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the element at the specified index in the heap.
+     *
+     * The last element of the heap fills the hole. Usually it is sifted down, but when it is less than
+     * the parent of the hole, it is sifted up, to before the hole in the array.
+     *
+     * @param index the zero-based index of the element to remove
+     * @return the last element when it moved to before the hole; otherwise, {@code null}
+     */
+    @Nullable private Object removeAt(int index) {
+        this.size -= 1;
+        this.modCount += 1;
+        Object last = this.elements[this.size];
+        this.elements[this.size] = null;
+        if (index == this.size) return null;
+        siftDown(index, last);
+        if (this.elements[index] == last) {
+            siftUp(index, last);
+            if (this.elements[index] != last) return last;
+        }
+        return null;
+    }
+
+    /**
+     * Moves an element up from the specified hole until its parent is not greater.
+     *
+     * @param index the zero-based index of the hole
+     * @param element the element to put in the hole
+     */
+    private void siftUp(int index, Object element) {
+        int hole = index;
+        while (hole > 0) {
+            int parent = (hole - 1) >>> 1;
+            Object parentElement = this.elements[parent];
+            if (compare(element, parentElement) >= 0) break;
+            this.elements[hole] = parentElement;
+            hole = parent;
+        }
+        this.elements[hole] = element;
+    }
+
+    /**
+     * Moves an element down from the specified hole until its children are not less.
+     *
+     * @param index the zero-based index of the hole
+     * @param element the element to put in the hole
+     */
+    private void siftDown(int index, Object element) {
+        int hole = index;
+        int half = this.size >>> 1;
+        while (hole < half) {
+            int child = 2 * hole + 1;
+            Object childElement = this.elements[child];
+            int right = child + 1;
+            if (right < this.size && compare(this.elements[right], childElement) < 0) {
+                child = right;
+                childElement = this.elements[right];
+            }
+            if (compare(element, childElement) <= 0) break;
+            this.elements[hole] = childElement;
+            hole = child;
+        }
+        this.elements[hole] = element;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b) {
+        if (this.comparator != null) {
+            return this.comparator.compare((E)a, (E)b);
+        }
+        return ((Comparable<Object>)a).compareTo(b);
+    }
+
+    // Serialization
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(this.size);
+        for (int i = 0; i < this.size; i++) {
+            out.writeObject(this.elements[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        if (size < 0) throw new InvalidObjectException("Negative size: " + size);
+        // The elements were written in heap order, so they form a heap again.
+        // We don't trust the size to allocate the whole array up front,
+        // as a corrupt stream could otherwise make us allocate a huge array.
+        Object[] elements = new Object[Math.min(size, 1024)];
+        for (int i = 0; i < size; i++) {
+            if (i == elements.length) elements = Arrays.copyOf(elements, (int)Math.min(size, i * 2L));
+            elements[i] = in.readObject();
+        }
+        this.elements = elements;
+        this.size = size;
+    }
+
+    /**
+     * Iterates over the elements in the heap, in the order of the array.
+     *
+     * Removing an element may move the last element of the heap to before the cursor.
+     * Such elements are remembered and returned after the elements of the array.
+     */
+    private final class HeapIterator implements Iterator<E> {
+
+        /** The index of the next element in the array. */
+        private int cursor = 0;
+        /** The index of the last returned element; or -1 when it was not returned from the array or was removed. */
+        private int last = -1;
+        /** The elements that moved to before the cursor; or {@code null} when there are none. */
+        @Nullable private ArrayDeque<Object> movedElements;
+        /** The last returned element when it was one of the moved elements; otherwise, {@code null}. */
+        @Nullable private Object lastMovedElement;
+        /** The expected number of structural modifications of the queue. */
+        private int expectedModCount = PriorityQueue.this.modCount;
+
+        @Override
+        public boolean hasNext() {
+            return this.cursor < PriorityQueue.this.size
+                || (this.movedElements != null && !this.movedElements.isEmpty());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (PriorityQueue.this.modCount != this.expectedModCount) throw new ConcurrentModificationException();
+            if (this.cursor < PriorityQueue.this.size) {
+                this.last = this.cursor;
+                this.cursor += 1;
+                return (E)PriorityQueue.this.elements[this.last];
+            }
+            if (this.movedElements != null) {
+                this.last = -1;
+                this.lastMovedElement = this.movedElements.poll();
+                if (this.lastMovedElement != null) return (E)this.lastMovedElement;
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void remove() {
+            if (PriorityQueue.this.modCount != this.expectedModCount) throw new ConcurrentModificationException();
+            if (this.last >= 0) {
+                Object moved = removeAt(this.last);
+                this.last = -1;
+                if (moved == null) {
+                    // The hole was filled by an element that we have not returned yet.
+                    this.cursor -= 1;
+                } else {
+                    if (this.movedElements == null) this.movedElements = new ArrayDeque<>();
+                    this.movedElements.add(moved);
+                }
+            } else if (this.lastMovedElement != null) {
+                // The element is compared by identity, as the queue may hold equal elements.
+                for (int i = 0; i < PriorityQueue.this.size; i++) {
+                    if (PriorityQueue.this.elements[i] == this.lastMovedElement) {
+                        removeAt(i);
+                        break;
+                    }
+                }
+                this.lastMovedElement = null;
+            } else {
+                throw new IllegalStateException();
+            }
+            this.expectedModCount = PriorityQueue.this.modCount;
+        }
+
+    }
+
+
 }
@@ -1,4 +1,231 @@
 package mb.util.collections.specialized;
 
-public class Queue {
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * An unbounded lock-free multi-producer single-consumer queue.
+ *
+ * The elements are stored in a linked list of fixed-size chunks. A producer claims a slot
+ * with a single {@code getAndIncrement} of the producer index, and then stores its element
+ * in that slot. A producer whose slot lies beyond the last chunk links a new chunk with a compare-and-set;
+ * when several producers race to link the same chunk, the losers discard the chunk they allocated
+ * and use the winner's. So producers never retry claiming a slot, and the queue allocates about one chunk
+ * per {@value #CHUNK_SIZE} elements instead of a node per element.
+ *
+ * The single consumer reads the slots in order. A slot that was claimed but not yet stored is
+ * not available; {@link #poll()} waits for the producer to store it, while {@link #drain} stops there.
+ *
+ * The methods {@link #offer} and {@link #size} may be called by any thread. The methods {@link #poll},
+ * {@link #peek}, {@link #drain}, and {@link #isEmpty} may only be called by the consumer thread.
+ * The queue does not permit {@code null} elements.
+ *
+ * @param <E> the type of elements in the queue
+ */
+public final class Queue<E> {
+
+    /** The number of slots in a chunk, which must be a power of two. */
+    private static final int CHUNK_SIZE = 1024;
+    private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+
+    /** The index of the next slot to claim. */
+    private final AtomicLong producerIndex = new AtomicLong();
+    /** A recent chunk of the producers, from which they find the chunk of their slot. */
+    private final AtomicReference<Chunk<E>> producerChunk;
+    /** The chunk of the consumer, which precedes or is the chunk of every unconsumed slot. */
+    private volatile Chunk<E> consumerChunk;
+    /** The index of the next slot to consume, which is only accessed by the consumer. */
+    private long consumerIndex = 0;
+
+    /**
+     * Initializes a new instance of the {@link Queue} class.
+     */
+    public Queue() {
+        Chunk<E> chunk = new Chunk<>(0);
+        this.producerChunk = new AtomicReference<>(chunk);
+        this.consumerChunk = chunk;
+    }
+
+    /**
+     * Adds an element at the end of the queue.
+     *
+     * This method may be called by any thread.
+     *
+     * @param element the element to add
+     */
+    public void offer(E element) {
+        Objects.requireNonNull(element);
+        long index = this.producerIndex.getAndIncrement();
+        Chunk<E> chunk = chunkOf(index >>> CHUNK_SHIFT);
+        chunk.slots.lazySet((int)index & (CHUNK_SIZE - 1), element);
+    }
+
+    /**
+     * Removes the element at the front of the queue.
+     *
+     * When a producer claimed the front slot but didn't store its element yet,
+     * this waits for the element.
+     *
+     * This method may only be called by the consumer thread.
+     *
+     * @return the removed element; or {@code null} when the queue is empty
+     */
+    public @Nullable E poll() {
+        if (this.consumerIndex >= this.producerIndex.get()) return null;
+        E element;
+        while ((element = takeAvailable()) == null) {
+            // The producer is between claiming the slot and storing its element.
+            Thread.yield();
+        }
+        return element;
+    }
+
+    /**
+     * Gets the element at the front of the queue without removing it.
+     *
+     * This method may only be called by the consumer thread.
+     *
+     * @return the element; or {@code null} when the queue is empty or the front element was not yet stored
+     */
+    public @Nullable E peek() {
+        Chunk<E> chunk = currentConsumerChunk();
+        return chunk != null ? chunk.slots.get((int)this.consumerIndex & (CHUNK_SIZE - 1)) : null;
+    }
+
+    /**
+     * Removes at most the specified number of elements from the front of the queue,
+     * and passes them to the specified action in order.
+     *
+     * This stops at the first slot that a producer claimed but didn't store yet.
+     *
+     * This method may only be called by the consumer thread.
+     *
+     * @param action the action that receives the removed elements
+     * @param limit the maximum number of elements to remove
+     * @return the number of elements that were removed
+     */
+    public int drain(Consumer<? super E> action, int limit) {
+        Objects.requireNonNull(action);
+        int count = 0;
+        while (count < limit) {
+            @Nullable E element = takeAvailable();
+            if (element == null) break;
+            action.accept(element);
+            count += 1;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the approximate number of elements in the queue.
+     *
+     * This method may be called by any thread, but only gives an estimate
+     * when it's not called by the consumer thread.
+     *
+     * @return the number of claimed slots that were not consumed
+     */
+    public int size() {
+        long size = this.producerIndex.get() - this.consumerIndex;
+        return size > 0 ? (int)Math.min(size, Integer.MAX_VALUE) : 0;
+    }
+
+    /**
+     * Determines whether the queue is empty.
+     *
+     * This method may only be called by the consumer thread.
+     *
+     * @return {@code true} when no slots were claimed that were not consumed; otherwise, {@code false}
+     */
+    public boolean isEmpty() {
+        return this.consumerIndex >= this.producerIndex.get();
+    }
+
+    /**
+     * Removes the element at the front of the queue, if it was stored.
+     *
+     * @return the removed element; or {@code null}
+     */
+    private @Nullable E takeAvailable() {
+        Chunk<E> chunk = currentConsumerChunk();
+        if (chunk == null) return null;
+        int slot = (int)this.consumerIndex & (CHUNK_SIZE - 1);
+        E element = chunk.slots.get(slot);
+        if (element == null) return null;
+        chunk.slots.lazySet(slot, null);
+        this.consumerIndex += 1;
+        return element;
+    }
+
+    /**
+     * Gets the chunk of the front slot, moving the consumer to the next chunk when needed.
+     *
+     * @return the chunk; or {@code null} when the next chunk was not linked yet
+     */
+    private @Nullable Chunk<E> currentConsumerChunk() {
+        Chunk<E> chunk = this.consumerChunk;
+        if (chunk.number != this.consumerIndex >>> CHUNK_SHIFT) {
+            // All slots in the current chunk were consumed.
+            Chunk<E> next = chunk.next.get();
+            if (next == null) return null;
+            this.consumerChunk = next;
+            chunk = next;
+        }
+        return chunk;
+    }
+
+    /**
+     * Finds the chunk with the specified number, linking new chunks when needed.
+     *
+     * @param number the number of the chunk
+     * @return the chunk
+     */
+    private Chunk<E> chunkOf(long number) {
+        Chunk<E> chunk = this.producerChunk.get();
+        if (chunk.number > number) {
+            // Other producers moved ahead, but the consumer can't pass our unstored slot.
+            chunk = this.consumerChunk;
+        }
+        while (chunk.number < number) {
+            Chunk<E> next = chunk.next.get();
+            if (next == null) {
+                Chunk<E> newChunk = new Chunk<>(chunk.number + 1);
+                // When this fails, another producer linked the next chunk.
+                next = chunk.next.compareAndSet(null, newChunk) ? newChunk : chunk.next.get();
+            }
+            chunk = next;
+        }
+        // Move the hint forward, unless another producer moved it further.
+        Chunk<E> hint = this.producerChunk.get();
+        if (hint.number < number) this.producerChunk.compareAndSet(hint, chunk);
+        return chunk;
+    }
+
+    @Override
+    public String toString() {
+        return "Queue(size=" + size() + ")";
+    }
+
+    /**
+     * A chunk of slots.
+     *
+     * @param <E> the type of elements
+     */
+    private static final class Chunk<E> {
+        /** The number of the chunk, such that it holds the slots from {@code number * CHUNK_SIZE}. */
+        private final long number;
+        /** The elements in the slots; or {@code null} for slots that were not stored or were consumed. */
+        private final AtomicReferenceArray<E> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+        /** The next chunk; or {@code null} when it wasn't linked yet. */
+        private final AtomicReference<Chunk<E>> next = new AtomicReference<>();
+
+        private Chunk(long number) {
+            this.number = number;
+        }
+    }
+
 }
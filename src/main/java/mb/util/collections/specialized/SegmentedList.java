@@ -0,0 +1,378 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.mutable.MutableListBase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * A mutable list, implemented as a sequence of fixed-size chunks, that never copies its elements when it grows.
+ *
+ * An array-backed list such as {@link java.util.ArrayList} copies all its elements to a new array
+ * whenever it grows, and a large array is allocated directly in the old generation by some garbage collectors.
+ * This list instead appends a new chunk when it is full, so adding an element at the end takes constant time
+ * without any amortization, no array is larger than one chunk, and an element stays in the same chunk
+ * until elements are inserted or removed before it. Only the first chunk grows by copying,
+ * and only until it reaches the chunk size, so that small lists do not waste a whole chunk.
+ *
+ * The chunk size is a power of two, so finding the chunk and the offset of an index is a shift and a mask.
+ * Inserting or removing an element other than at the end shifts the elements after it,
+ * as in an array-backed list. Bulk operations such as {@link #toArray} and {@link #addAll}
+ * copy whole chunks at a time. Iterating over the elements with {@link #forEach} allocates nothing.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <E> the type of elements in the list
+ */
+public final class SegmentedList<E> extends MutableListBase<E> implements RandomAccess {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The default base-2 logarithm of the chunk size; 4096 elements per chunk. */
+    private static final int DEFAULT_CHUNK_SHIFT = 12;
+    /** The largest base-2 logarithm of the chunk size. */
+    private static final int MAX_CHUNK_SHIFT = 30;
+    /** The initial capacity of the first chunk. */
+    private static final int MIN_FIRST_CHUNK_LENGTH = 10;
+
+    /** The base-2 logarithm of the number of elements in a chunk. */
+    private final int chunkShift;
+    /** The chunks; only the first {@code chunkCount} are used. All chunks except the first have the chunk size. */
+    private transient Object[][] chunks;
+    /** The number of chunks. */
+    private transient int chunkCount;
+    /** The number of elements. */
+    private transient int size;
+
+    /**
+     * Initializes a new instance of the {@link SegmentedList} class.
+     */
+    public SegmentedList() {
+        this(1 << DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Initializes a new instance of the {@link SegmentedList} class.
+     *
+     * @param chunkSize the number of elements in a chunk, which is rounded up to a power of two
+     */
+    public SegmentedList(int chunkSize) {
+        if (chunkSize < 1 || chunkSize > 1 << MAX_CHUNK_SHIFT)
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + (1 << MAX_CHUNK_SHIFT) + ": " + chunkSize);
+        this.chunkShift = 32 - Integer.numberOfLeadingZeros(chunkSize - 1);
+        this.chunks = new Object[4][];
+        this.chunkCount = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Gets the number of elements in a chunk.
+     *
+     * @return the chunk size
+     */
+    public int getChunkSize() {
+        return 1 << this.chunkShift;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, this.size);
+        return (E)this.chunks[index >>> this.chunkShift][index & mask()];
+    }
+
+    @Override
+    public E set(int index, E element) {
+        checkIndex(index, this.size);
+        Object[] chunk = this.chunks[index >>> this.chunkShift];
+        int offset = index & mask();
+        @SuppressWarnings("unchecked")
+        E oldElement = (E)chunk[offset];
+        chunk[offset] = element;
+        return oldElement;
+    }
+
+    @Override
+    public boolean add(E element) {
+        int index = this.size;
+        if (index == capacity()) grow(index + 1);
+        this.chunks[index >>> this.chunkShift][index & mask()] = element;
+        this.size = index + 1;
+        this.modCount += 1;
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, this.size + 1);
+        if (this.size == capacity()) grow(this.size + 1);
+        move(index, index + 1, this.size - index);
+        this.chunks[index >>> this.chunkShift][index & mask()] = element;
+        this.size += 1;
+        this.modCount += 1;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> elements) {
+        return addAll(this.size, elements);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> elements) {
+        checkIndex(index, this.size + 1);
+        Object[] array = elements.toArray();
+        int count = array.length;
+        if (count == 0) return false;
+        if (count > Integer.MAX_VALUE - this.size) throw new OutOfMemoryError("List too large.");
+        if (this.size + count > capacity()) grow(this.size + count);
+        move(index, index + count, this.size - index);
+        int copied = 0;
+        while (copied < count) {
+            int target = index + copied;
+            Object[] chunk = this.chunks[target >>> this.chunkShift];
+            int offset = target & mask();
+            int length = Math.min(count - copied, chunk.length - offset);
+            System.arraycopy(array, copied, chunk, offset, length);
+            copied += length;
+        }
+        this.size += count;
+        this.modCount += 1;
+        return true;
+    }
+
+    @Override
+    public E remove(int index) {
+        checkIndex(index, this.size);
+        @SuppressWarnings("unchecked")
+        E oldElement = (E)this.chunks[index >>> this.chunkShift][index & mask()];
+        removeRange(index, index + 1);
+        return oldElement;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) return;
+        move(toIndex, fromIndex, this.size - toIndex);
+        int newSize = this.size - (toIndex - fromIndex);
+        fill(newSize, this.size);
+        this.size = newSize;
+        this.modCount += 1;
+    }
+
+    @Override
+    public void clear() {
+        if (this.size == 0) return;
+        fill(0, this.size);
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+    /**
+     * Performs the specified action for each element, in order.
+     *
+     * This allocates nothing.
+     *
+     * @param action the action to perform
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = this.modCount;
+        int remaining = this.size;
+        for (int i = 0; remaining > 0; i++) {
+            Object[] chunk = this.chunks[i];
+            int length = Math.min(remaining, chunk.length);
+            for (int j = 0; j < length; j++) {
+                action.accept((E)chunk[j]);
+            }
+            remaining -= length;
+        }
+        if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    @NotNull
+    @Override
+    public Object[] toArray() {
+        return copyTo(new Object[this.size]);
+    }
+
+    @NotNull
+    @Override
+    public <T> T[] toArray(@NotNull T[] a) {
+        T[] array = a.length >= this.size ? a : Arrays.copyOf(a, this.size);
+        copyTo(array);
+        if (array.length > this.size) array[this.size] = null;
+        return array;
+    }
+
+    /**
+     * Releases the chunks that hold no elements, and reduces the first chunk to the size
+     * of the list when the list fits in it.
+     */
+    public void trimToSize() {
+        int neededChunks = (int)(((long)this.size + mask()) >>> this.chunkShift);
+        Arrays.fill(this.chunks, neededChunks, this.chunkCount, null);
+        this.chunkCount = neededChunks;
+        if (neededChunks == 1 && this.chunks[0].length > this.size) {
+            this.chunks[0] = Arrays.copyOf(this.chunks[0], this.size);
+        }
+        if (this.chunks.length > Math.max(neededChunks, 1)) {
+            this.chunks = Arrays.copyOf(this.chunks, Math.max(neededChunks, 1));
+        }
+    }
+
+    /**
+     * Copies the elements to the start of the specified array, which must be large enough.
+     */
+    private <T> T[] copyTo(T[] array) {
+        int copied = 0;
+        for (int i = 0; copied < this.size; i++) {
+            Object[] chunk = this.chunks[i];
+            int length = Math.min(this.size - copied, chunk.length);
+            //noinspection SuspiciousSystemArraycopy
+            System.arraycopy(chunk, 0, array, copied, length);
+            copied += length;
+        }
+        return array;
+    }
+
+    /**
+     * Moves a range of elements to another index, chunk by chunk.
+     * The ranges may overlap, and the target range must be within the capacity.
+     *
+     * @param fromIndex the index of the first element to move
+     * @param toIndex the index to move the first element to
+     * @param count the number of elements to move
+     */
+    private void move(int fromIndex, int toIndex, int count) {
+        if (count <= 0 || fromIndex == toIndex) return;
+        int mask = mask();
+        if (toIndex < fromIndex) {
+            // Moving down, so copy from the first element to the last.
+            int moved = 0;
+            while (moved < count) {
+                int source = fromIndex + moved;
+                int target = toIndex + moved;
+                Object[] sourceChunk = this.chunks[source >>> this.chunkShift];
+                Object[] targetChunk = this.chunks[target >>> this.chunkShift];
+                int sourceOffset = source & mask;
+                int targetOffset = target & mask;
+                int length = Math.min(count - moved, Math.min(sourceChunk.length - sourceOffset, targetChunk.length - targetOffset));
+                System.arraycopy(sourceChunk, sourceOffset, targetChunk, targetOffset, length);
+                moved += length;
+            }
+        } else {
+            // Moving up, so copy from the last element to the first.
+            int remaining = count;
+            while (remaining > 0) {
+                int source = fromIndex + remaining - 1;
+                int target = toIndex + remaining - 1;
+                Object[] sourceChunk = this.chunks[source >>> this.chunkShift];
+                Object[] targetChunk = this.chunks[target >>> this.chunkShift];
+                int sourceOffset = source & mask;
+                int targetOffset = target & mask;
+                int length = Math.min(remaining, Math.min(sourceOffset, targetOffset) + 1);
+                System.arraycopy(sourceChunk, sourceOffset - length + 1, targetChunk, targetOffset - length + 1, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    /**
+     * Clears the elements in the specified range, so that they can be garbage collected.
+     */
+    private void fill(int fromIndex, int toIndex) {
+        int index = fromIndex;
+        while (index < toIndex) {
+            Object[] chunk = this.chunks[index >>> this.chunkShift];
+            int offset = index & mask();
+            int length = Math.min(toIndex - index, chunk.length - offset);
+            Arrays.fill(chunk, offset, offset + length, null);
+            index += length;
+        }
+    }
+
+    /**
+     * Gets the number of elements the list can hold without allocating another chunk.
+     */
+    private long capacity() {
+        if (this.chunkCount == 0) return 0;
+        // Only the first chunk may be smaller than the chunk size, and only when it is the only chunk.
+        return ((long)(this.chunkCount - 1) << this.chunkShift) + this.chunks[this.chunkCount - 1].length;
+    }
+
+    /**
+     * Grows the list such that it can hold at least the specified number of elements.
+     */
+    private void grow(int capacity) {
+        int chunkSize = 1 << this.chunkShift;
+        if (this.chunkCount == 0) {
+            this.chunks[0] = new Object[Math.min(chunkSize, Math.max(capacity, MIN_FIRST_CHUNK_LENGTH))];
+            this.chunkCount = 1;
+        } else if (this.chunkCount == 1 && this.chunks[0].length < chunkSize) {
+            // The first chunk grows like an array until it reaches the chunk size, so it is never copied when large.
+            Object[] first = this.chunks[0];
+            int length = (int)Math.min(chunkSize, Math.max(capacity, (long)first.length + (first.length >> 1)));
+            this.chunks[0] = Arrays.copyOf(first, length);
+        }
+        while (capacity() < capacity) {
+            if (this.chunkCount == this.chunks.length) {
+                this.chunks = Arrays.copyOf(this.chunks, this.chunks.length * 2);
+            }
+            this.chunks[this.chunkCount] = new Object[chunkSize];
+            this.chunkCount += 1;
+        }
+    }
+
+    private int mask() {
+        return (1 << this.chunkShift) - 1;
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+    }
+
+    // Serialization
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(this.size);
+        int expectedModCount = this.modCount;
+        for (int i = 0; i < this.size; i++) {
+            out.writeObject(this.chunks[i >>> this.chunkShift][i & mask()]);
+        }
+        if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (this.chunkShift < 0 || this.chunkShift > MAX_CHUNK_SHIFT)
+            throw new InvalidObjectException("Invalid chunk shift: " + this.chunkShift);
+        int size = in.readInt();
+        if (size < 0) throw new InvalidObjectException("Negative size: " + size);
+        this.chunks = new Object[4][];
+        this.chunkCount = 0;
+        this.size = 0;
+        for (int i = 0; i < size; i++) {
+            add((E)in.readObject());
+        }
+    }
+
+}
@@ -1,4 +1,256 @@
 package mb.util.collections.specialized;
 
-public class Stack {
+import mb.util.collections.mutable.MutableListBase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.EmptyStackException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * A mutable stack, implemented as an array.
+ *
+ * Unlike {@link java.util.Stack}, this stack is not synchronized. As a list, the element at index 0
+ * is the bottom of the stack and the element at index {@code size() - 1} is the top,
+ * so pushing and popping elements is the same as adding and removing elements at the end of the list.
+ * Iterating over the elements with {@link #forEach} or {@link #forEachFromTop} allocates nothing.
+ *
+ * For a stack that can be forked cheaply, use {@link PersistentStack}.
+ *
+ * This class is not thread-safe.
+ *
+ * @param <E> the type of elements in the stack
+ */
+public final class Stack<E> extends MutableListBase<E> implements RandomAccess {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The elements, from the bottom to the top. */
+    private transient Object[] elements;
+    /** The number of elements. */
+    private transient int size;
+
+    /**
+     * Initializes a new instance of the {@link Stack} class.
+     */
+    public Stack() {
+        this(10);
+    }
+
+    /**
+     * Initializes a new instance of the {@link Stack} class.
+     *
+     * @param capacity the initial number of elements the stack can hold without growing
+     */
+    public Stack(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity must be non-negative: " + capacity);
+        this.elements = new Object[capacity];
+        this.size = 0;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Pushes an element on top of the stack.
+     *
+     * @param element the element to push
+     */
+    public void push(E element) {
+        if (this.size == this.elements.length) grow(this.size + 1);
+        this.elements[this.size] = element;
+        this.size += 1;
+        this.modCount += 1;
+    }
+
+    /**
+     * Pops the element on top of the stack.
+     *
+     * @return the popped element
+     * @throws EmptyStackException the stack is empty
+     */
+    public E pop() {
+        if (this.size == 0) throw new EmptyStackException();
+        this.size -= 1;
+        @SuppressWarnings("unchecked")
+        E element = (E)this.elements[this.size];
+        this.elements[this.size] = null;
+        this.modCount += 1;
+        return element;
+    }
+
+    /**
+     * Gets the element on top of the stack without removing it.
+     *
+     * @return the element on top of the stack
+     * @throws EmptyStackException the stack is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        if (this.size == 0) throw new EmptyStackException();
+        return (E)this.elements[this.size - 1];
+    }
+
+    /**
+     * Gets the element at the specified depth from the top of the stack.
+     *
+     * @param depth the zero-based depth, where 0 is the top of the stack
+     * @return the element at the specified depth
+     */
+    @SuppressWarnings("unchecked")
+    public E peek(int depth) {
+        checkIndex(depth, this.size);
+        return (E)this.elements[this.size - 1 - depth];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, this.size);
+        return (E)this.elements[index];
+    }
+
+    @Override
+    public E set(int index, E element) {
+        checkIndex(index, this.size);
+        @SuppressWarnings("unchecked")
+        E oldElement = (E)this.elements[index];
+        this.elements[index] = element;
+        return oldElement;
+    }
+
+    @Override
+    public boolean add(E element) {
+        push(element);
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, this.size + 1);
+        if (this.size == this.elements.length) grow(this.size + 1);
+        System.arraycopy(this.elements, index, this.elements, index + 1, this.size - index);
+        this.elements[index] = element;
+        this.size += 1;
+        this.modCount += 1;
+    }
+
+    @Override
+    public E remove(int index) {
+        checkIndex(index, this.size);
+        @SuppressWarnings("unchecked")
+        E oldElement = (E)this.elements[index];
+        removeRange(index, index + 1);
+        return oldElement;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) return;
+        System.arraycopy(this.elements, toIndex, this.elements, fromIndex, this.size - toIndex);
+        int newSize = this.size - (toIndex - fromIndex);
+        Arrays.fill(this.elements, newSize, this.size, null);
+        this.size = newSize;
+        this.modCount += 1;
+    }
+
+    @Override
+    public void clear() {
+        if (this.size == 0) return;
+        Arrays.fill(this.elements, 0, this.size, null);
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+    /**
+     * Performs the specified action for each element, from the bottom of the stack to the top.
+     *
+     * This allocates nothing.
+     *
+     * @param action the action to perform
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = this.modCount;
+        for (int i = 0; i < this.size; i++) {
+            action.accept((E)this.elements[i]);
+        }
+        if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Performs the specified action for each element, from the top of the stack to the bottom.
+     *
+     * This allocates nothing.
+     *
+     * @param action the action to perform
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachFromTop(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = this.modCount;
+        for (int i = this.size - 1; i >= 0; i--) {
+            action.accept((E)this.elements[i]);
+        }
+        if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    @NotNull
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOf(this.elements, this.size);
+    }
+
+    /**
+     * Reduces the capacity of the stack to its size.
+     */
+    public void trimToSize() {
+        if (this.size < this.elements.length) this.elements = Arrays.copyOf(this.elements, this.size);
+    }
+
+    private void grow(int capacity) {
+        this.elements = Arrays.copyOf(this.elements, Math.max(capacity, this.elements.length + (this.elements.length >> 1)));
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+    }
+
+    // Serialization
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(this.size);
+        for (int i = 0; i < this.size; i++) {
+            out.writeObject(this.elements[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        if (size < 0) throw new InvalidObjectException("Negative size: " + size);
+        // We don't trust the size to allocate the whole array up front,
+        // as a corrupt stream could otherwise make us allocate a huge array.
+        Object[] elements = new Object[Math.min(size, 1024)];
+        for (int i = 0; i < size; i++) {
+            if (i == elements.length) elements = Arrays.copyOf(elements, (int)Math.min(size, i * 2L));
+            elements[i] = in.readObject();
+        }
+        this.elements = elements;
+        this.size = size;
+    }
+
 }
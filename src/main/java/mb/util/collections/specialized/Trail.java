@@ -0,0 +1,182 @@
+package mb.util.collections.specialized;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A log of the changes made to backtrackable data structures, which can be undone.
+ *
+ * Multiple data structures can share a trail, such that the whole state of, for example,
+ * a constraint solver can be checkpointed and rolled back at once.
+ *
+ * While there are no checkpoints, nothing is recorded.
+ *
+ * This class is not thread-safe.
+ */
+public final class Trail implements Backtrackable {
+
+    /** The stamp of a data structure that has not recorded anything for any checkpoint. */
+    /* package private */ static final int NO_STAMP = -1;
+
+    /** The data structures that can undo the entries. */
+    private Undoable[] owners = new Undoable[16];
+    /** The operation and index of each entry. */
+    private int[] operations = new int[32];
+    /** The two arguments of each entry. */
+    private Object[] arguments = new Object[32];
+    /** The number of entries. */
+    private int length = 0;
+
+    /** The number of entries at each open checkpoint. */
+    private int[] marks = new int[8];
+    /** The stamp of each open checkpoint, which is also its handle; in increasing order. */
+    private int[] stamps = new int[8];
+    /** The number of open checkpoints. */
+    private int depth = 0;
+    /** The stamp of the next checkpoint. */
+    private int nextStamp = 0;
+
+    @Override
+    public int checkpoint() {
+        if (this.depth == this.marks.length) {
+            this.marks = Arrays.copyOf(this.marks, this.depth * 2);
+            this.stamps = Arrays.copyOf(this.stamps, this.depth * 2);
+        }
+        this.marks[this.depth] = this.length;
+        // Each checkpoint gets a new stamp, so that the handle of a discarded checkpoint is never reused.
+        if (this.nextStamp == Integer.MAX_VALUE) throw new IllegalStateException("Too many checkpoints.");
+        int stamp = this.nextStamp++;
+        this.stamps[this.depth] = stamp;
+        this.depth += 1;
+        return stamp;
+    }
+
+    @Override
+    public void rollback(int checkpoint) {
+        int level = levelOf(checkpoint);
+        int mark = this.marks[level];
+        while (this.length > mark) {
+            this.length -= 1;
+            int i = this.length;
+            Undoable owner = this.owners[i];
+            Object a = this.arguments[2 * i];
+            Object b = this.arguments[2 * i + 1];
+            // Clear the entry, so that it doesn't keep the old state alive.
+            this.owners[i] = null;
+            this.arguments[2 * i] = null;
+            this.arguments[2 * i + 1] = null;
+            owner.undo(this.operations[2 * i], this.operations[2 * i + 1], a, b);
+        }
+        this.depth = level;
+    }
+
+    @Override
+    public void commit(int checkpoint) {
+        this.depth = levelOf(checkpoint);
+        if (this.depth == 0) {
+            // No checkpoint can roll back these entries anymore.
+            Arrays.fill(this.owners, 0, this.length, null);
+            Arrays.fill(this.arguments, 0, 2 * this.length, null);
+            this.length = 0;
+        }
+    }
+
+    /**
+     * Gets the number of open checkpoints.
+     *
+     * @return the number of open checkpoints
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * Gets the number of recorded changes.
+     *
+     * @return the number of recorded changes
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Gets the nesting level of the specified open checkpoint.
+     *
+     * @param checkpoint the checkpoint
+     * @return the zero-based nesting level
+     * @throws IllegalArgumentException the checkpoint is unknown or was already discarded
+     */
+    private int levelOf(int checkpoint) {
+        int level = Arrays.binarySearch(this.stamps, 0, this.depth, checkpoint);
+        if (level < 0) throw new IllegalArgumentException("Unknown or discarded checkpoint: " + checkpoint);
+        return level;
+    }
+
+    /**
+     * Gets whether changes must be recorded, because there are open checkpoints.
+     *
+     * @return {@code true} when changes must be recorded; otherwise, {@code false}
+     */
+    /* package private */ boolean isRecording() {
+        return this.depth > 0;
+    }
+
+    /**
+     * Gets the stamp of the innermost open checkpoint.
+     *
+     * A data structure that records its whole state instead of individual changes
+     * has to record it only once per checkpoint. It can compare this stamp to the stamp
+     * of the checkpoint for which it last recorded its state.
+     *
+     * @return the stamp; or {@link #NO_STAMP} when there are no open checkpoints
+     */
+    /* package private */ int getStamp() {
+        return this.depth > 0 ? this.stamps[this.depth - 1] : NO_STAMP;
+    }
+
+    /**
+     * Records an entry that undoes a change.
+     *
+     * @param owner the data structure that undoes the change
+     * @param operation the operation that undoes the change
+     * @param index the index argument of the operation
+     * @param a the first argument of the operation
+     * @param b the second argument of the operation
+     */
+    /* package private */ void record(Undoable owner, int operation, int index, @Nullable Object a, @Nullable Object b) {
+        assert isRecording();
+        if (this.length == this.owners.length) {
+            this.owners = Arrays.copyOf(this.owners, this.length * 2);
+            this.operations = Arrays.copyOf(this.operations, this.length * 4);
+            this.arguments = Arrays.copyOf(this.arguments, this.length * 4);
+        }
+        int i = this.length;
+        this.owners[i] = owner;
+        this.operations[2 * i] = operation;
+        this.operations[2 * i + 1] = index;
+        this.arguments[2 * i] = a;
+        this.arguments[2 * i + 1] = b;
+        this.length += 1;
+    }
+
+    /**
+     * A data structure that can undo the changes it recorded.
+     */
+    /* package private */ interface Undoable {
+
+        /**
+         * Undoes a change.
+         *
+         * This must not record any changes.
+         *
+         * @param operation the operation that undoes the change
+         * @param index the index argument of the operation
+         * @param a the first argument of the operation
+         * @param b the second argument of the operation
+         */
+        void undo(int operation, int index, @Nullable Object a, @Nullable Object b);
+
+    }
+
+}
@@ -0,0 +1,216 @@
+package mb.util.collections.specialized;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A work-stealing deque, as described by Chase and Lev.
+ *
+ * The deque has one owner thread, which pushes and pops elements at the bottom without locking.
+ * Any other thread can steal elements from the top, which takes a compare-and-set on the top index.
+ * The owner only has to synchronize with thieves when it pops the last element.
+ * This makes the deque suitable for the per-worker worklists of a scheduler:
+ * each worker processes its own work in last-in first-out order, and idle workers
+ * steal the oldest work of other workers, which tends to be the largest.
+ *
+ * The elements are stored in a circular array whose length is a power of two. When the array is full,
+ * the owner replaces it by an array of twice the length. Thieves that still read the old array
+ * find the same elements there, so growing doesn't have to synchronize with them.
+ * The array never shrinks.
+ *
+ * The methods {@link #push}, {@link #pushAll}, and {@link #pop} may only be called by the owner thread.
+ * The methods {@link #steal}, {@link #stealBatch}, {@link #size}, and {@link #isEmpty} may be called by any thread.
+ * The deque does not permit {@code null} elements.
+ *
+ * @param <E> the type of elements in the deque
+ */
+public final class WorkStealingDeque<E> {
+
+    /** The initial capacity of the array, which must be a power of two. */
+    private static final int INITIAL_CAPACITY = 32;
+    /** The maximum capacity of the array, which must be a power of two. */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /** The index of the top element, which is the next element to steal. */
+    private final AtomicLong top = new AtomicLong();
+    /** The index one past the bottom element, which is only written by the owner. */
+    private volatile long bottom = 0;
+    /** The elements, where the element at index {@code i} is stored at {@code i & (length - 1)}. */
+    private volatile AtomicReferenceArray<E> array = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /**
+     * Gets the approximate number of elements in the deque.
+     *
+     * @return the number of elements at some point during the call
+     */
+    public int size() {
+        long size = this.bottom - this.top.get();
+        return size > 0 ? (int)Math.min(size, Integer.MAX_VALUE) : 0;
+    }
+
+    /**
+     * Determines whether the deque is empty.
+     *
+     * @return {@code true} when the deque was empty at some point during the call; otherwise, {@code false}
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Pushes an element at the bottom of the deque.
+     *
+     * This method may only be called by the owner thread.
+     *
+     * @param element the element to push
+     */
+    public void push(E element) {
+        Objects.requireNonNull(element);
+        long b = this.bottom;
+        long t = this.top.get();
+        AtomicReferenceArray<E> a = this.array;
+        if (b - t >= a.length()) a = grow(a, t, b);
+        a.lazySet(slotOf(b, a), element);
+        // Publishes the element to thieves.
+        this.bottom = b + 1;
+    }
+
+    /**
+     * Pushes the specified elements at the bottom of the deque, in order.
+     *
+     * Thieves see either none or all of the elements,
+     * because they are published by a single write of the bottom index.
+     * For example, a scheduler can push the elements of a partition of a {@link mb.util.collections.CollectionView}.
+     *
+     * This method may only be called by the owner thread.
+     *
+     * @param elements the elements to push
+     */
+    public void pushAll(Iterable<? extends E> elements) {
+        long b = this.bottom;
+        // A stale top index may only cause the array to grow early.
+        long t = this.top.get();
+        AtomicReferenceArray<E> a = this.array;
+        for (E element : elements) {
+            Objects.requireNonNull(element);
+            if (b - t >= a.length()) a = grow(a, t, b);
+            a.lazySet(slotOf(b, a), element);
+            b += 1;
+        }
+        this.bottom = b;
+    }
+
+    /**
+     * Pops the element at the bottom of the deque, which is the element that was pushed last.
+     *
+     * This method may only be called by the owner thread.
+     *
+     * @return the popped element; or {@code null} when the deque is empty
+     */
+    public @Nullable E pop() {
+        long b = this.bottom - 1;
+        AtomicReferenceArray<E> a = this.array;
+        // Reserve the bottom element before reading the top index,
+        // such that a thief either sees the reservation or we see the thief's steal.
+        this.bottom = b;
+        long t = this.top.get();
+        if (t > b) {
+            // The deque is empty.
+            this.bottom = b + 1;
+            return null;
+        }
+        int slot = slotOf(b, a);
+        E element = a.get(slot);
+        if (t < b) {
+            // There are more elements, so no thief can take this one.
+            a.lazySet(slot, null);
+            return element;
+        }
+        // This is the last element, which we race for with the thieves.
+        boolean won = this.top.compareAndSet(t, t + 1);
+        this.bottom = b + 1;
+        // When we lost, the thief already read the element, so we can clear the slot either way.
+        a.lazySet(slot, null);
+        return won ? element : null;
+    }
+
+    /**
+     * Steals the element at the top of the deque, which is the oldest element.
+     *
+     * This method may be called by any thread.
+     *
+     * @return the stolen element; or {@code null} when the deque is empty
+     */
+    public @Nullable E steal() {
+        while (true) {
+            long t = this.top.get();
+            long b = this.bottom;
+            if (t >= b) return null;
+            // The array is read after the bottom index, so it holds the element at the top.
+            AtomicReferenceArray<E> a = this.array;
+            E element = a.get(slotOf(t, a));
+            // When this fails, another thief or the owner took the element, and we try the next one.
+            if (element != null && this.top.compareAndSet(t, t + 1)) return element;
+        }
+    }
+
+    /**
+     * Steals at most the specified number of elements from the top of the deque,
+     * and passes them to the specified action in the order in which they were pushed.
+     *
+     * Each element is stolen with its own compare-and-set, so other threads may take
+     * elements in between. This avoids a race with the owner, which pops elements
+     * without synchronizing while it doesn't reach the top.
+     *
+     * This method may be called by any thread.
+     *
+     * @param action the action that receives the stolen elements
+     * @param maxElements the maximum number of elements to steal
+     * @return the number of elements that were stolen
+     */
+    public int stealBatch(Consumer<? super E> action, int maxElements) {
+        Objects.requireNonNull(action);
+        int count = 0;
+        while (count < maxElements) {
+            @Nullable E element = steal();
+            if (element == null) break;
+            action.accept(element);
+            count += 1;
+        }
+        return count;
+    }
+
+    /**
+     * Replaces the array by an array of twice the length, to which the elements are copied.
+     *
+     * The old array keeps its elements, so thieves that still read it find the same elements.
+     *
+     * @param a the current array
+     * @param t the index of the top element
+     * @param b the index one past the bottom element
+     * @return the new array
+     */
+    private AtomicReferenceArray<E> grow(AtomicReferenceArray<E> a, long t, long b) {
+        if (a.length() >= MAX_CAPACITY) throw new IllegalStateException("Deque too large.");
+        AtomicReferenceArray<E> newArray = new AtomicReferenceArray<>(a.length() * 2);
+        for (long i = t; i < b; i++) {
+            newArray.lazySet(slotOf(i, newArray), a.get(slotOf(i, a)));
+        }
+        this.array = newArray;
+        return newArray;
+    }
+
+    private static int slotOf(long index, AtomicReferenceArray<?> a) {
+        return (int)index & (a.length() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "WorkStealingDeque(size=" + size() + ")";
+    }
+
+}
@@ -0,0 +1,68 @@
+package mb.util.collections;
+
+import mb.util.collections.specialized.PersistentStack;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexedListViewTests {
+
+    @Test
+    public void lookupsAgreeWithScanningBeforeAndAfterIndexing() {
+        Random random = new Random(11);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            expected.add(random.nextInt(500));
+        }
+        expected.add(null);
+        Integer[] array = expected.toArray(new Integer[0]);
+        ListView<Integer> list = ListView.of(array).indexed(3);
+
+        for (int i = -10; i < 600; i++) {
+            Integer element = i < 0 ? null : i;
+            assertEquals(expected.indexOf(element), list.indexOf(element));
+            assertEquals(expected.lastIndexOf(element), list.lastIndexOf(element));
+            assertEquals(expected.contains(element), list.contains(element));
+        }
+        assertFalse(list.contains("1"));
+        assertSame(list, list.indexed());
+        assertEquals(expected, list);
+    }
+
+    @Test
+    public void indexesStringsWithCollidingHashCodes() {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i % 2 == 0 ? "Aa" : "BB");
+            expected.add("s" + i);
+        }
+        ListView<String> list = ListView.of(expected.toArray(new String[0])).indexed(0);
+
+        assertEquals(0, list.indexOf("Aa"));
+        assertEquals(2, list.indexOf("BB"));
+        assertEquals(196, list.lastIndexOf("Aa"));
+        assertEquals(198, list.lastIndexOf("BB"));
+        assertEquals(99, list.indexOf("s49"));
+        assertEquals(-1, list.indexOf("C#"));
+    }
+
+    @Test
+    public void indexesListsWithoutRandomAccess() {
+        PersistentStack<Integer> stack = PersistentStack.of();
+        for (int i = 0; i < 5000; i++) {
+            stack = stack.push(i % 1000);
+        }
+        List<Integer> expected = new ArrayList<>(stack.asUnmodifiable());
+        ListView<Integer> list = stack.indexed(0);
+
+        for (int i = 0; i < 1001; i++) {
+            assertEquals(expected.indexOf(i), list.indexOf(i));
+            assertEquals(expected.lastIndexOf(i), list.lastIndexOf(i));
+        }
+    }
+
+}
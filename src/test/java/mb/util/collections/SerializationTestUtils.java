@@ -0,0 +1,41 @@
+package mb.util.collections;
+
+import java.io.*;
+
+/**
+ * Helper methods for testing the serialized forms of the collections.
+ */
+public final class SerializationTestUtils {
+
+    private SerializationTestUtils() {}
+
+    /**
+     * Serializes the specified object to a byte array.
+     *
+     * @param obj the object to serialize
+     * @return the serialized bytes
+     */
+    public static byte[] serialize(Object obj) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(obj);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Serializes the specified object and deserializes the result.
+     *
+     * @param obj the object to serialize
+     * @param <T> the static type of the object, which the deserialized object must also have
+     * @return the deserialized copy of the object
+     */
+    public static <T> T roundTrip(T obj) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(obj)))) {
+            @SuppressWarnings("unchecked")
+            T copy = (T)in.readObject();
+            return copy;
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package mb.util.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static mb.util.collections.SerializationTestUtils.serialize;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerializationTests {
+
+    @Test
+    public void deserializedEmptyListIsSingletonInstance() throws Exception {
+        ListView<String> list = ListView.of();
+
+        Object result = roundTrip(list);
+
+        assertSame(list, result);
+    }
+
+    @Test
+    public void serializeSingletonList() throws Exception {
+        ListView<String> list = ListView.of("a");
+
+        Object result = roundTrip(list);
+
+        assertEquals(Collections.singletonList("a"), result);
+    }
+
+    @Test
+    public void serializeArrayList() throws Exception {
+        ListView<String> list = ListView.of("a", "b", "c");
+
+        Object result = roundTrip(list);
+
+        assertEquals(Arrays.asList("a", "b", "c"), result);
+    }
+
+    @Test
+    public void serializeSubListOnlyWritesRange() throws Exception {
+        String[] elements = new String[1000];
+        Arrays.fill(elements, "element");
+        ListView<String> list = ListView.of(elements);
+        ListView<String> subList = list.subListView(10, 13);
+
+        Object result = roundTrip(subList);
+
+        assertEquals(Arrays.asList("element", "element", "element"), result);
+        assertTrue(serialize(subList).length < serialize(list).length);
+    }
+
+    @Test
+    public void serializeListOfLists() throws Exception {
+        ListView<ListView<String>> list = ListView.of(ListView.of("a", "b"), ListView.of());
+
+        Object result = roundTrip(list);
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Collections.emptyList()), result);
+    }
+
+    @Test
+    public void varIntRoundTrips() throws Exception {
+        for (int value : new int[] { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SerializationProxy.writeVarInt(new DataOutputStream(bytes), value);
+
+            int result = SerializationProxy.readVarInt(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+            assertEquals(value, result);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package mb.util.collections.immutable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrozenHashSetTests {
+
+    @Test
+    public void containsSameElementsAsHashSet() {
+        Random random = new Random(23);
+        for (int n : new int[] { 0, 1, 2, 10, 1000, 50000 }) {
+            HashSet<Integer> expected = new HashSet<>();
+            PersistentSet.Builder<Integer> builder = PersistentSet.<Integer>of().builder();
+            for (int i = 0; i < n; i++) {
+                int element = random.nextInt();
+                expected.add(element);
+                builder.add(element);
+            }
+            ImmutableSet<Integer> frozen = builder.build().freeze();
+
+            assertEquals(expected.size(), frozen.size());
+            assertEquals(expected, frozen.asUnmodifiable());
+            assertEquals(expected.hashCode(), frozen.hashCode());
+            assertSame(frozen, frozen.freeze());
+            for (int i = 0; i < 1000; i++) {
+                int element = random.nextInt();
+                assertEquals(expected.contains(element), frozen.contains(element));
+            }
+        }
+    }
+
+    @Test
+    public void handlesCollidingHashCodesAndNull() {
+        // "Aa" and "BB" have the same hash code, and so do "AaAa", "AaBB", "BBAa", and "BBBB".
+        List<String> elements = Arrays.asList("Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB", "x", null);
+        ImmutableSet<String> frozen = PersistentSet.<String>of().addAll(elements).freeze();
+
+        assertEquals(new HashSet<>(elements), frozen.asUnmodifiable());
+        for (String element : elements) {
+            assertTrue(frozen.contains(element));
+        }
+        assertFalse(frozen.contains("C#"));
+        assertFalse(frozen.contains("y"));
+    }
+
+    @Test
+    public void mapHasSameEntriesAsHashMap() {
+        Map<String, Integer> expected = new HashMap<>();
+        PersistentMap<String, Integer> map = PersistentMap.of();
+        for (int i = 0; i < 5000; i++) {
+            String key = Integer.toString(i * 7, 36);
+            expected.put(key, i);
+            map = map.put(key, i);
+        }
+        expected.put("Aa", 1);
+        expected.put("BB", null);
+        map = map.put("Aa", 1).put("BB", null);
+        ImmutableMap<String, Integer> frozen = map.freeze();
+
+        assertEquals(expected, frozen.asUnmodifiable());
+        assertEquals(expected.hashCode(), frozen.hashCode());
+        assertEquals(Integer.valueOf(1), frozen.get("Aa"));
+        assertNull(frozen.get("BB"));
+        assertTrue(frozen.containsKey("BB"));
+        assertFalse(frozen.containsKey("C#"));
+        assertNull(frozen.get("missing"));
+    }
+
+    @Test
+    public void sortedCollectionsKeepTheirComparatorWhenFrozen() {
+        ImmutableSortedSet<String> set = ImmutableSortedSet.from(Arrays.asList("b", "A"), String.CASE_INSENSITIVE_ORDER);
+        PersistentSortedMap<String, Integer> map = PersistentSortedMap.<String, Integer>withComparator(String.CASE_INSENSITIVE_ORDER).put("b", 1);
+
+        assertSame(set, set.freeze());
+        assertTrue(set.freeze().contains("a"));
+        assertSame(map, map.freeze());
+        assertEquals(Integer.valueOf(1), map.freeze().get("B"));
+    }
+
+    @Test
+    public void serializationRebuildsTheTable() throws Exception {
+        ImmutableSet<String> set = PersistentSet.<String>of().addAll(Arrays.asList("Aa", "BB", "c")).freeze();
+        ImmutableMap<String, Integer> map = PersistentMap.<String, Integer>of().put("Aa", 1).put("BB", 2).freeze();
+
+        ImmutableSet<String> setCopy = roundTrip(set);
+        ImmutableMap<String, Integer> mapCopy = roundTrip(map);
+
+        assertEquals(set, setCopy);
+        assertTrue(setCopy.contains("BB"));
+        assertEquals(map, mapCopy);
+        assertEquals(Integer.valueOf(2), mapCopy.get("BB"));
+    }
+
+}
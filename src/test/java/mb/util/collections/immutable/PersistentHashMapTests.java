@@ -0,0 +1,152 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentHashMapTests {
+
+    @Test
+    public void putAndGet() {
+        PersistentMap<Integer, String> map = PersistentMap.of();
+        for (int i = 0; i < 1000; i++) {
+            map = map.put(i, "v" + i);
+        }
+
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("v" + i, map.get(i));
+        }
+        assertNull(map.get(1000));
+    }
+
+    @Test
+    public void putSameValueReturnsSameMap() {
+        PersistentMap<String, String> map = PersistentMap.of("a", "1");
+
+        assertSame(map, map.put("a", "1"));
+    }
+
+    @Test
+    public void removeAllReturnsEmptyMap() {
+        PersistentMap<Integer, Integer> map = PersistentMap.of();
+        for (int i = 0; i < 100; i++) {
+            map = map.put(i, i);
+        }
+        for (int i = 0; i < 100; i++) {
+            map = map.remove(i);
+        }
+
+        assertSame(PersistentMap.of(), map);
+    }
+
+    @Test
+    public void setWithCollidingHashCodes() {
+        PersistentSet<String> set = PersistentSet.withComparator(new ConstantHashComparator());
+        set = set.add("a").add("b").add("c").remove("b");
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains("a"));
+        assertFalse(set.contains("b"));
+        assertTrue(set.contains("c"));
+    }
+
+    @Test
+    public void setEqualsJavaSet() {
+        PersistentSet<String> set = PersistentSet.of("a", "b", "c");
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), set.asUnmodifiable());
+        assertEquals(set, PersistentSet.of("c", "b", "a"));
+    }
+
+    @Test
+    public void mapDiff() {
+        PersistentMap<Integer, String> oldMap = PersistentMap.of();
+        for (int i = 0; i < 500; i++) {
+            oldMap = oldMap.put(i, "v" + i);
+        }
+        PersistentMap<Integer, String> newMap = oldMap.remove(3).put(7, "changed").put(600, "new");
+
+        MapDiff<Integer, String> diff = PersistentMap.diff(oldMap, newMap);
+
+        assertEquals(3, diff.size());
+        List<String> changes = new ArrayList<>();
+        diff.accept(new MapDiff.Visitor<Integer, String>() {
+            @Override
+            public void inserted(Integer key, String value) {
+                changes.add("+" + key);
+            }
+
+            @Override
+            public void removed(Integer key, String value) {
+                changes.add("-" + key);
+            }
+
+            @Override
+            public void changed(Integer key, String oldValue, String newValue) {
+                changes.add("~" + key);
+            }
+        });
+        Collections.sort(changes);
+        assertEquals(Arrays.asList("+600", "-3", "~7"), changes);
+        assertEquals(newMap, diff.apply(oldMap));
+        assertEquals(oldMap, diff.inverse().apply(newMap));
+    }
+
+    @Test
+    public void diffOfSameMapIsEmpty() {
+        PersistentMap<String, String> map = PersistentMap.of("a", "1");
+
+        assertTrue(PersistentMap.diff(map, map).isEmpty());
+    }
+
+    @Test
+    public void setDiff() {
+        PersistentSet<String> oldSet = PersistentSet.of("a", "b", "c");
+        PersistentSet<String> newSet = oldSet.remove("a").add("d");
+
+        SetDiff<String> diff = PersistentSet.diff(oldSet, newSet);
+
+        assertEquals(Collections.singletonList("d"), diff.getAdded().asUnmodifiable());
+        assertEquals(Collections.singletonList("a"), diff.getRemoved().asUnmodifiable());
+        assertEquals(newSet, diff.apply(oldSet));
+    }
+
+    @Test
+    public void serializeMap() throws Exception {
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>of().put("a", 1).put("b", 2);
+
+        Object result = roundTrip(map);
+
+        assertEquals(map, result);
+    }
+
+    @Test
+    public void serializeSetWithIdentityComparator() throws Exception {
+        PersistentSet<String> set = PersistentSet.<String>withComparator(EqualityComparator.getIdentity()).add("a");
+
+        PersistentSet<String> result = roundTrip(set);
+
+        assertSame(EqualityComparator.getIdentity(), result.getComparator());
+        assertEquals(1, result.size());
+    }
+
+    private static final class ConstantHashComparator implements EqualityComparator<String> {
+
+        @Override
+        public boolean equals(String x, String y) {
+            return Objects.equals(x, y);
+        }
+
+        @Override
+        public int hashCodeOf(String obj) {
+            return 42;
+        }
+
+    }
+
+}
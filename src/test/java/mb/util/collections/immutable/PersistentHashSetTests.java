@@ -0,0 +1,125 @@
+package mb.util.collections.immutable;
+
+import mb.util.EqualityComparator;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentHashSetTests {
+
+    @Test
+    public void unionOfOverlappingSets() {
+        assertSetAlgebra(EqualityComparator.getDefault(), 1000);
+    }
+
+    @Test
+    public void unionOfSetsWithCollidingHashCodes() {
+        // Only 8 distinct hash codes, so most elements end up in hash collision nodes.
+        assertSetAlgebra(new EqualityComparator<Integer>() {
+            @Override
+            public boolean equals(Integer x, Integer y) {
+                return Objects.equals(x, y);
+            }
+
+            @Override
+            public int hashCodeOf(Integer obj) {
+                return obj & 7;
+            }
+        }, 100);
+    }
+
+    @Test
+    public void unionWithSubsetReturnsSameSet() {
+        PersistentSet<Integer> set = range(0, 1000);
+        PersistentSet<Integer> subset = set.removeAll(Arrays.asList(1, 500, 999));
+
+        assertSame(set, set.addAll(subset));
+        assertSame(set, subset.addAll(set));
+    }
+
+    @Test
+    public void intersectionWithSupersetReturnsSameSet() {
+        PersistentSet<Integer> set = range(0, 1000);
+        PersistentSet<Integer> subset = set.removeAll(Arrays.asList(1, 500, 999));
+
+        assertSame(subset, subset.retainAll(set));
+        assertSame(subset, set.retainAll(subset));
+    }
+
+    @Test
+    public void differenceWithItselfIsEmpty() {
+        PersistentSet<Integer> set = range(0, 1000);
+
+        assertSame(PersistentSet.of(), set.removeAll(set));
+    }
+
+    @Test
+    public void mapRetainAndRemoveKeys() {
+        PersistentMap<Integer, String> map = PersistentMap.of();
+        for (int i = 0; i < 100; i++) {
+            map = map.put(i, "v" + i);
+        }
+        PersistentSet<Integer> keys = range(50, 150);
+
+        PersistentMap<Integer, String> retained = map.retainAll(keys);
+        PersistentMap<Integer, String> removed = map.removeAll(keys);
+
+        assertEquals(50, retained.size());
+        assertEquals("v50", retained.get(50));
+        assertFalse(retained.containsKey(49));
+        assertEquals(50, removed.size());
+        assertEquals("v49", removed.get(49));
+        assertFalse(removed.containsKey(50));
+        assertEquals(map, retained.putAll(removed));
+    }
+
+    private static void assertSetAlgebra(EqualityComparator<? super Integer> comparator, int range) {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            PersistentSet<Integer> base = PersistentSet.withComparator(comparator);
+            for (int i = 0; i < range / 2; i++) {
+                base = base.add(random.nextInt(range));
+            }
+            // Derive both operands from the same set, so that they share sub-tries.
+            PersistentSet<Integer> a = base;
+            PersistentSet<Integer> b = base;
+            for (int i = 0; i < range / 10; i++) {
+                a = random.nextBoolean() ? a.add(random.nextInt(range)) : a.remove(random.nextInt(range));
+                b = random.nextBoolean() ? b.add(random.nextInt(range)) : b.remove(random.nextInt(range));
+            }
+            Set<Integer> expectedA = new HashSet<>(a.asUnmodifiable());
+            Set<Integer> expectedB = new HashSet<>(b.asUnmodifiable());
+
+            Set<Integer> union = new HashSet<>(expectedA);
+            union.addAll(expectedB);
+            Set<Integer> intersection = new HashSet<>(expectedA);
+            intersection.retainAll(expectedB);
+            Set<Integer> difference = new HashSet<>(expectedA);
+            difference.removeAll(expectedB);
+
+            assertSetEquals(union, a.addAll(b));
+            assertSetEquals(intersection, a.retainAll(b));
+            assertSetEquals(difference, a.removeAll(b));
+        }
+    }
+
+    private static void assertSetEquals(Set<Integer> expected, PersistentSet<Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, new HashSet<>(actual.asUnmodifiable()));
+        // The result must have the same shape as a set built element by element.
+        PersistentSet<Integer> rebuilt = PersistentSet.<Integer>withComparator(actual.getComparator()).addAll(new ArrayList<>(expected));
+        assertTrue(PersistentSet.diff(rebuilt, actual).isEmpty());
+        assertEquals(rebuilt, actual);
+    }
+
+    private static PersistentSet<Integer> range(int from, int to) {
+        PersistentSet<Integer> set = PersistentSet.of();
+        for (int i = from; i < to; i++) {
+            set = set.add(i);
+        }
+        return set;
+    }
+
+}
@@ -0,0 +1,59 @@
+package mb.util.collections.immutable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentLinkedHashMapTests {
+
+    @Test
+    public void iteratesInInsertionOrderLikeLinkedHashMap() {
+        Random random = new Random(17);
+        LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<>();
+        PersistentMap<Integer, Integer> map = PersistentMap.insertionOrdered();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+
+        assertEquals(expected, map.asUnmodifiable());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.asUnmodifiable().entrySet()));
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        PersistentMap<Integer, Integer> retained = map.retainAll(Arrays.asList(1, 2, 3, 4, 5));
+        expected.keySet().retainAll(Arrays.asList(1, 2, 3, 4, 5));
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(retained.asUnmodifiable().keySet()));
+    }
+
+    @Test
+    public void setKeepsFirstInsertionPosition() {
+        PersistentSet<String> set = PersistentSet.<String>insertionOrdered().addAll(Arrays.asList("c", "a", "b", "a"));
+        assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<>(set.asUnmodifiable()));
+        set = set.remove("c").add("c").add("a");
+        assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(set.asUnmodifiable()));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), set.asUnmodifiable());
+        assertEquals(Arrays.asList("A", "B", "C"), new ArrayList<>(set.replaceAll(String::toUpperCase).asUnmodifiable()));
+    }
+
+    @Test
+    public void serializesInInsertionOrder() throws Exception {
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>insertionOrdered().put("z", 1).put("a", 2).put("m", 3);
+        PersistentSet<Integer> set = PersistentSet.<Integer>insertionOrdered().add(30).add(10).add(20);
+
+        PersistentMap<String, Integer> mapCopy = roundTrip(map);
+        PersistentSet<Integer> setCopy = roundTrip(set);
+
+        assertEquals(Arrays.asList("z", "a", "m"), new ArrayList<>(mapCopy.asUnmodifiable().keySet()));
+        assertEquals(Arrays.asList(30, 10, 20), new ArrayList<>(setCopy.asUnmodifiable()));
+    }
+
+}
@@ -0,0 +1,96 @@
+package mb.util.collections.immutable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentRelationTests {
+
+    @Test
+    public void keepsBothIndexesInSync() {
+        Random random = new Random(3);
+        Set<List<Integer>> expected = new HashSet<>();
+        PersistentRelation<Integer, Integer> relation = PersistentRelation.of();
+        PersistentSetMultimap<Integer, Integer> multimap = PersistentSetMultimap.of();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(200);
+            int value = random.nextInt(50);
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1:
+                    expected.add(Arrays.asList(key, value));
+                    relation = relation.put(key, value);
+                    multimap = multimap.put(key, value);
+                    break;
+                case 2:
+                    expected.remove(Arrays.asList(key, value));
+                    relation = relation.remove(key, value);
+                    multimap = multimap.remove(key, value);
+                    break;
+                case 3:
+                    expected.removeIf(pair -> pair.get(0) == key);
+                    relation = relation.removeAll(key);
+                    multimap = multimap.removeAll(key);
+                    break;
+                default:
+                    expected.removeIf(pair -> pair.get(1) == value);
+                    for (Integer k : relation.getKeys(value)) multimap = multimap.remove(k, value);
+                    relation = relation.removeAllKeys(value);
+                    break;
+            }
+        }
+
+        Set<List<Integer>> actual = new HashSet<>();
+        for (Map.Entry<Integer, Integer> entry : relation) {
+            assertTrue(actual.add(Arrays.asList(entry.getKey(), entry.getValue())));
+        }
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), relation.size());
+        assertEquals(relation, multimap);
+        assertEquals(multimap, relation);
+        assertEquals(multimap.hashCode(), relation.hashCode());
+
+        PersistentRelation<Integer, Integer> inverse = relation.inverse();
+        for (List<Integer> pair : expected) {
+            assertTrue(relation.containsEntry(pair.get(0), pair.get(1)));
+            assertTrue(relation.get(pair.get(0)).contains(pair.get(1)));
+            assertTrue(relation.getKeys(pair.get(1)).contains(pair.get(0)));
+            assertTrue(inverse.containsEntry(pair.get(1), pair.get(0)));
+        }
+        int keys = 0;
+        for (Integer key : relation.keys()) {
+            keys += 1;
+            assertEquals(relation.get(key).size(), multimap.get(key).size());
+        }
+        assertEquals(relation.keyCount(), keys);
+        assertEquals(inverse.keyCount(), relation.valueCount());
+    }
+
+    @Test
+    public void storesSingleValuesInline() {
+        PersistentSet<String> set = PersistentSet.of("nested");
+        PersistentSetMultimap<String, Object> multimap = PersistentSetMultimap.<String, Object>of()
+            .put("a", set).put("b", null).put("c", 1).put("c", 2).remove("c", 1);
+        assertEquals(PersistentSet.of(set), multimap.get("a"));
+        assertTrue(multimap.containsEntry("b", null));
+        assertEquals(PersistentSet.of(2), multimap.get("c"));
+        assertEquals(3, multimap.size());
+        assertTrue(multimap.get("d").isEmpty());
+        assertEquals(2, multimap.removeAll("a").size());
+    }
+
+    @Test
+    public void relationSerializesPairs() throws Exception {
+        PersistentRelation<String, Integer> relation = PersistentRelation.<String, Integer>of()
+            .put("x", 1).put("x", 2).put("y", 1);
+
+        PersistentRelation<String, Integer> copy = roundTrip(relation);
+
+        assertEquals(relation, copy);
+        assertEquals(PersistentSet.of("x", "y"), copy.getKeys(1));
+    }
+
+}
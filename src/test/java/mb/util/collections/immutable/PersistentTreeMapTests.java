@@ -0,0 +1,89 @@
+package mb.util.collections.immutable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentTreeMapTests {
+
+    @Test
+    public void putAndRemoveLikeTreeMap() {
+        Random random = new Random(11);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.of();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+
+        assertEquals(expected, map.asUnmodifiable());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.asUnmodifiable().entrySet()));
+        assertEquals(expected.firstKey(), map.firstKey());
+        assertEquals(expected.lastKey(), map.lastKey());
+        int index = 0;
+        for (Integer key : expected.keySet()) {
+            assertEquals(key, map.getEntry(index).getKey());
+            assertEquals(index, map.indexOfKey(key));
+            index += 1;
+        }
+        assertEquals(-1, map.indexOfKey(-1));
+    }
+
+    @Test
+    public void rangeViewsShareTheTree() {
+        List<Map.Entry<Integer, String>> entries = new ArrayList<>();
+        for (int i = 0; i < 10000; i += 2) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(i, "v" + i));
+        }
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.fromSorted(entries, Comparator.naturalOrder());
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (Map.Entry<Integer, String> entry : entries) expected.put(entry.getKey(), entry.getValue());
+
+        assertEquals(expected.headMap(777), map.headMap(777).asUnmodifiable());
+        assertEquals(expected.tailMap(9000), map.tailMap(9000).asUnmodifiable());
+        PersistentSortedMap<Integer, String> range = map.subMap(1001, 3001);
+        assertEquals(expected.subMap(1001, 3001), range.asUnmodifiable());
+        assertEquals(Integer.valueOf(1002), range.firstKey());
+        assertEquals("v1500", range.get(1500));
+        assertNull(range.get(3002));
+
+        // A slice can be updated like any other map.
+        PersistentSortedMap<Integer, String> updated = range.put(1, "one").remove(2000);
+        assertEquals(expected.subMap(1001, 3001).size(), updated.size());
+        assertEquals(Integer.valueOf(1), updated.firstKey());
+        assertFalse(updated.containsKey(2000));
+
+        ImmutableSortedSet<Integer> keys = map.keySet().subSet(10, 20);
+        assertEquals(Arrays.asList(10, 12, 14, 16, 18), new ArrayList<>(keys.asUnmodifiable()));
+        assertEquals(Integer.valueOf(14), keys.get(2));
+        assertEquals(3, keys.indexOf(16));
+
+        assertThrows(IllegalArgumentException.class, () -> PersistentSortedMap.fromSorted(Arrays.asList(
+            new AbstractMap.SimpleImmutableEntry<>(2, "b"), new AbstractMap.SimpleImmutableEntry<>(1, "a")), Comparator.<Integer>naturalOrder()));
+    }
+
+    @Test
+    public void sortedSetSerializesInOrder() throws Exception {
+        ImmutableSortedSet<String> set = ImmutableSortedSet.from(Arrays.asList("c", "a", "b", "a"), Comparator.reverseOrder());
+        assertEquals(Arrays.asList("c", "b", "a"), new ArrayList<>(set.asUnmodifiable()));
+
+        PersistentSortedMap<String, Integer> map = PersistentSortedMap.<String, Integer>of().put("x", 1).put("y", 2);
+
+        ImmutableSortedSet<String> setCopy = roundTrip(set);
+        PersistentSortedMap<String, Integer> mapCopy = roundTrip(map);
+
+        assertEquals(set, setCopy);
+        assertEquals("c", setCopy.first());
+        assertEquals(PersistentSortedMap.<String, Integer>of().put("y", 2).put("x", 1), mapCopy);
+    }
+
+}
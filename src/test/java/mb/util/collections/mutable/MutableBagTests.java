@@ -0,0 +1,87 @@
+package mb.util.collections.mutable;
+
+import mb.util.collections.immutable.PersistentBag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MutableBagTests {
+
+    @Test
+    public void countsLikeHashMap() {
+        Random random = new Random(5);
+        Map<Integer, Integer> expected = new HashMap<>();
+        MutableBag<Integer> bag = MutableBag.of();
+        PersistentBag<Integer> persistent = PersistentBag.of();
+        for (int i = 0; i < 20000; i++) {
+            Integer element = random.nextInt(500);
+            int n = random.nextInt(4);
+            int old = expected.getOrDefault(element, 0);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(old, bag.add(element, n));
+                    persistent = persistent.add(element, n);
+                    if (old + n > 0) expected.put(element, old + n);
+                    break;
+                case 1:
+                    assertEquals(old, bag.remove(element, n));
+                    persistent = persistent.remove(element, n);
+                    if (old - n > 0) expected.put(element, old - n); else expected.remove(element);
+                    break;
+                default:
+                    assertEquals(old, bag.setCount(element, n));
+                    persistent = persistent.setCount(element, n);
+                    if (n > 0) expected.put(element, n); else expected.remove(element);
+                    break;
+            }
+        }
+
+        int size = 0;
+        for (int count : expected.values()) size += count;
+        assertEquals(size, bag.size());
+        assertEquals(expected.size(), bag.distinctSize());
+        Set<Integer> distinct = new HashSet<>();
+        for (Integer element : bag) {
+            assertTrue(distinct.add(element));
+            assertEquals(expected.get(element), Integer.valueOf(bag.count(element)));
+        }
+        assertEquals(expected.keySet(), distinct);
+        assertEquals(0, bag.count(-1));
+
+        assertEquals(bag, persistent);
+        assertEquals(persistent, bag);
+        assertEquals(bag.hashCode(), persistent.hashCode());
+        assertEquals(persistent, PersistentBag.from(bag));
+    }
+
+    @Test
+    public void supportsNullAndRejectsNegativeCounts() {
+        MutableBag<String> bag = MutableBag.copyFrom(Arrays.asList("a", null, "b", null, "a", null));
+        assertEquals(6, bag.size());
+        assertEquals(3, bag.count(null));
+        assertEquals(3, bag.remove(null));
+        assertEquals(2, bag.count(null));
+        assertThrows(IllegalArgumentException.class, () -> bag.add("a", -1));
+        assertThrows(IllegalArgumentException.class, () -> bag.setCount("a", -1));
+        bag.clear();
+        assertTrue(bag.isEmpty());
+        assertFalse(bag.contains("a"));
+    }
+
+    @Test
+    public void serializesCounts() throws Exception {
+        MutableBag<String> bag = MutableBag.copyFrom(Arrays.asList("x", "y", "x", "z", "x"));
+        PersistentBag<String> persistent = PersistentBag.from(bag);
+
+        MutableBag<String> bagCopy = roundTrip(bag);
+        PersistentBag<String> persistentCopy = roundTrip(persistent);
+
+        assertEquals(bag, bagCopy);
+        assertEquals(3, bagCopy.count("x"));
+        assertEquals(persistent, persistentCopy);
+    }
+
+}
@@ -0,0 +1,135 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BacktrackableTests {
+
+    @Test
+    public void rollbackList() {
+        BacktrackableList<String> list = new BacktrackableList<>();
+        list.addAll(Arrays.asList("a", "b", "c"));
+
+        int checkpoint = list.checkpoint();
+        list.add(1, "x");
+        list.remove("c");
+        list.set(0, "y");
+        list.subListView(0, 2).clear();
+        list.add("z");
+        list.clear();
+        list.add("w");
+        list.rollback(checkpoint);
+
+        assertEquals(Arrays.asList("a", "b", "c"), list);
+    }
+
+    @Test
+    public void nestedCheckpoints() {
+        Trail trail = new Trail();
+        BacktrackableSet<String> set = new BacktrackableSet<>(trail);
+        BacktrackableMap<String, Integer> map = new BacktrackableMap<>(trail);
+        set.add("a");
+        map.put("a", 1);
+
+        int outer = trail.checkpoint();
+        set.add("b");
+        map.put("a", 2);
+        int inner = trail.checkpoint();
+        set.add("c");
+        set.remove("a");
+        map.put("c", 3);
+        trail.rollback(inner);
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), set);
+        assertEquals(Collections.singletonMap("a", 2), new HashMap<>(map));
+
+        trail.rollback(outer);
+
+        assertEquals(Collections.singleton("a"), set);
+        assertEquals(Collections.singletonMap("a", 1), new HashMap<>(map));
+        assertEquals(0, trail.getLength());
+    }
+
+    @Test
+    public void setRecordsOncePerCheckpoint() {
+        BacktrackableSet<Integer> set = new BacktrackableSet<>();
+
+        set.checkpoint();
+        for (int i = 0; i < 100; i++) {
+            set.add(i);
+        }
+
+        assertEquals(1, set.getTrail().getLength());
+    }
+
+    @Test
+    public void commitInnerCheckpointKeepsOuter() {
+        BacktrackableSet<String> set = new BacktrackableSet<>();
+
+        int outer = set.checkpoint();
+        set.add("a");
+        int inner = set.checkpoint();
+        set.add("b");
+        set.commit(inner);
+        set.add("c");
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), set);
+
+        set.rollback(outer);
+
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void commitOutermostCheckpointDiscardsTrail() {
+        BacktrackableList<String> list = new BacktrackableList<>();
+
+        int checkpoint = list.checkpoint();
+        list.add("a");
+        list.add("b");
+        list.commit(checkpoint);
+
+        assertEquals(0, list.getTrail().getLength());
+        assertEquals(Arrays.asList("a", "b"), list);
+        assertThrows(IllegalArgumentException.class, () -> list.rollback(checkpoint));
+
+        // A new checkpoint at the same level does not revive the discarded one.
+        int next = list.checkpoint();
+        assertThrows(IllegalArgumentException.class, () -> list.rollback(checkpoint));
+        assertThrows(IllegalArgumentException.class, () -> list.commit(checkpoint));
+        list.add("c");
+        list.rollback(next);
+        assertEquals(Arrays.asList("a", "b"), list);
+    }
+
+    @Test
+    public void rollbackDisjointMap() {
+        BacktrackableDisjointMap<String, Integer> map = new BacktrackableDisjointMap<>();
+        map.union("a", "b", Integer::sum);
+        map.put("a", 1);
+
+        int checkpoint = map.checkpoint();
+        map.put("c", 2);
+        map.union("b", "c", Integer::sum);
+        map.union("d", "e", Integer::sum);
+
+        assertTrue(map.isSameSet("a", "c"));
+        assertEquals(Integer.valueOf(3), map.get("c"));
+        assertEquals(5, map.size());
+
+        map.rollback(checkpoint);
+
+        assertTrue(map.isSameSet("a", "b"));
+        assertFalse(map.isSameSet("a", "c"));
+        assertFalse(map.containsKey("c"));
+        assertEquals(Integer.valueOf(1), map.get("b"));
+        assertEquals(2, map.size());
+    }
+
+}
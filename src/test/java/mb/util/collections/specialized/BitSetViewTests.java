@@ -0,0 +1,91 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.SetView;
+import mb.util.collections.immutable.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitSetViewTests {
+
+    private enum Flag { A, B, C, D }
+
+    @Test
+    public void factoriesSelectBitSetsForEnums() {
+        SetView<Flag> set = SetView.of(Flag.A, Flag.C);
+        assertTrue(set instanceof ImmutableBitSet<?>);
+        assertTrue(ImmutableSet.of(Flag.B) instanceof ImmutableBitSet<?>);
+        assertTrue(ImmutableSet.from(EnumSet.of(Flag.A, Flag.D)) instanceof ImmutableBitSet<?>);
+        assertFalse(ImmutableSet.of("a", "b") instanceof ImmutableBitSet<?>);
+
+        assertEquals(EnumSet.of(Flag.A, Flag.C), set.asUnmodifiable());
+        assertEquals(set, new HashSet<>(Arrays.asList(Flag.C, Flag.A)));
+        assertEquals(EnumSet.of(Flag.A, Flag.C).hashCode(), set.hashCode());
+        assertEquals(Arrays.asList(Flag.A, Flag.C), new ArrayList<>(set.asUnmodifiable()));
+        assertFalse(set.contains("A"));
+        assertFalse(set.contains(null));
+    }
+
+    @Test
+    public void fromIterableCopiesMixedElementsOfAOneShotIterable() {
+        Iterator<Object> iterator = Arrays.<Object>asList(Flag.A, "b", Flag.C).iterator();
+        Iterable<Object> oneShot = () -> iterator;
+        ImmutableSet<Object> set = ImmutableSet.from(oneShot);
+        assertEquals(new HashSet<>(Arrays.asList(Flag.A, "b", Flag.C)), set.asUnmodifiable());
+
+        ImmutableSet<Object> mixed = ImmutableSet.from(Arrays.<Object>asList(Flag.A, "b", Flag.C));
+        assertEquals(new HashSet<>(Arrays.asList(Flag.A, "b", Flag.C)), mixed.asUnmodifiable());
+        assertTrue(ImmutableSet.from(Arrays.asList(Flag.B, Flag.D)) instanceof ImmutableBitSet<?>);
+    }
+
+    @Test
+    public void setAlgebraIsWordWise() {
+        BitSetView.Universe<Integer> universe = BitSetView.Universe.ofRange(200);
+        ImmutableBitSet<Integer> evens = ImmutableBitSet.copyOf(universe, range(0, 200, 2));
+        ImmutableBitSet<Integer> low = ImmutableBitSet.copyOf(universe, range(0, 100, 1));
+
+        assertEquals(new HashSet<>(range(0, 100, 2)), evens.and(low).asUnmodifiable());
+        assertEquals(150, evens.or(low).size());
+        assertEquals(new HashSet<>(range(100, 200, 2)), evens.andNot(low).asUnmodifiable());
+        assertEquals(new HashSet<>(range(1, 200, 2)), evens.complement().asUnmodifiable());
+        assertEquals(200, ImmutableBitSet.allOf(universe).size());
+        assertThrows(IllegalArgumentException.class, () -> evens.and(ImmutableBitSet.noneOf(BitSetView.Universe.ofRange(10))));
+    }
+
+    @Test
+    public void mutableBitSetSupportsSetOperations() throws Exception {
+        MutableBitSet<Flag> set = MutableBitSet.noneOf(Flag.class);
+        assertTrue(set.add(Flag.B));
+        assertFalse(set.add(Flag.B));
+        assertTrue(set.orWith(ImmutableBitSet.of(Flag.C, Flag.D)));
+        assertEquals(EnumSet.of(Flag.B, Flag.C, Flag.D), set);
+        assertTrue(set.retainAll(EnumSet.of(Flag.B, Flag.D)));
+        assertEquals(EnumSet.of(Flag.B, Flag.D), set);
+
+        Iterator<Flag> iterator = set.iterator();
+        assertEquals(Flag.B, iterator.next());
+        iterator.remove();
+        assertEquals(EnumSet.of(Flag.D), set);
+        assertTrue(set.andNotWith(ImmutableBitSet.of(Flag.D)));
+        assertFalse(set.addAll(MutableBitSet.noneOf(Flag.class)));
+        assertTrue(set.isEmpty());
+
+        set.add(Flag.A);
+        ImmutableBitSet<Flag> frozen = set.toImmutable();
+
+        ImmutableBitSet<Flag> copy = roundTrip(frozen);
+
+        assertEquals(frozen, copy);
+        assertSame(frozen.getUniverse(), copy.getUniverse());
+    }
+
+    private static List<Integer> range(int from, int to, int step) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = from; i < to; i += step) values.add(i);
+        return values;
+    }
+
+}
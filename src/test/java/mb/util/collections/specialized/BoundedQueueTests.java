@@ -0,0 +1,95 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedQueueTests {
+
+    @Test
+    public void offerFailsWhenFullAndPollWhenEmpty() throws InterruptedException {
+        BoundedQueue<String> queue = new BoundedQueue<>(3);
+        assertEquals(4, queue.capacity());
+
+        assertEquals(3, queue.offerAll(Arrays.asList("a", "b", "c")));
+        assertTrue(queue.offer("d"));
+        assertFalse(queue.offer("e"));
+        assertFalse(queue.offer("e", 1, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.offerAll(Arrays.asList("e", "f")));
+
+        assertEquals("a", queue.poll());
+        assertEquals(1, queue.offerAll(Arrays.asList("e", "f")));
+
+        List<String> drained = new ArrayList<>();
+        assertEquals(3, queue.drain(drained::add, 3));
+        assertEquals(Arrays.asList("b", "c", "d"), drained);
+        assertEquals("e", queue.take());
+        assertNull(queue.poll());
+        assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void concurrentProducersAndConsumersTransferEachElementOnce() throws InterruptedException {
+        BoundedQueue<Integer> queue = new BoundedQueue<>(64);
+        int threadCount = 3;
+        int elementsPerProducer = 30000;
+        AtomicIntegerArray received = new AtomicIntegerArray(threadCount * elementsPerProducer);
+
+        Thread[] threads = new Thread[2 * threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int first = t * elementsPerProducer;
+            boolean batched = t % 2 == 0;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < elementsPerProducer; ) {
+                        if (batched) {
+                            List<Integer> batch = new ArrayList<>();
+                            for (int j = i; j < Math.min(i + 8, elementsPerProducer); j++) batch.add(first + j);
+                            int offered = queue.offerAll(batch);
+                            // Don't hot-spin while the queue is full.
+                            if (offered == 0) Thread.yield();
+                            i += offered;
+                        } else {
+                            queue.put(first + i);
+                            i += 1;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads[threadCount + t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < elementsPerProducer; ) {
+                        if (batched) {
+                            int drained = queue.drain(e -> received.incrementAndGet(e), Math.min(8, elementsPerProducer - i));
+                            // Don't hot-spin while the queue is empty.
+                            if (drained == 0) Thread.yield();
+                            i += drained;
+                        } else {
+                            received.incrementAndGet(queue.take());
+                            i += 1;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        for (int i = 0; i < received.length(); i++) {
+            assertEquals(1, received.get(i));
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+}
@@ -0,0 +1,102 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedIntSetTests {
+
+    @Test
+    public void behavesLikeTreeSetForSparseAndDenseValues() {
+        Random random = new Random(3);
+        TreeSet<Integer> expected = new TreeSet<>();
+        CompressedIntSet set = new CompressedIntSet();
+        for (int i = 0; i < 60000; i++) {
+            // Dense values in one chunk, sparse values in all chunks, and negative values.
+            int value = i % 3 == 0 ? random.nextInt(70000) : i % 3 == 1 ? random.nextInt() : -random.nextInt(10000);
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+
+        assertEquals(expected.size(), set.cardinality());
+        assertArrayEquals(toArray(expected), set.toArray());
+        List<Integer> iterated = new ArrayList<>();
+        set.iterator().forEachRemaining((java.util.function.IntConsumer)iterated::add);
+        assertEquals(new ArrayList<>(expected), iterated);
+        for (int i = -10000; i < 70000; i++) {
+            assertEquals(expected.contains(i), set.contains(i));
+        }
+
+        CompressedIntSet frozen = set.freeze();
+        assertTrue(frozen.isFrozen());
+        assertEquals(set, frozen);
+        assertEquals(set.hashCode(), frozen.hashCode());
+        assertArrayEquals(set.toArray(), frozen.toArray());
+        assertThrows(UnsupportedOperationException.class, () -> frozen.add(1));
+    }
+
+    @Test
+    public void setOperationsAgreeWithTreeSet() {
+        Random random = new Random(8);
+        for (int round = 0; round < 20; round++) {
+            TreeSet<Integer> a = new TreeSet<>();
+            TreeSet<Integer> b = new TreeSet<>();
+            int bound = round % 2 == 0 ? 200000 : 20000;
+            for (int i = 0; i < 15000; i++) a.add(random.nextInt(bound));
+            for (int i = 0; i < 8000; i++) b.add(random.nextInt(bound));
+            // A long run, so frozen sets use run containers.
+            for (int i = 1000; i < 30000; i++) b.add(i);
+            CompressedIntSet setA = fromSet(a);
+            CompressedIntSet setB = round < 10 ? fromSet(b) : fromSet(b).freeze();
+
+            TreeSet<Integer> and = new TreeSet<>(a);
+            and.retainAll(b);
+            TreeSet<Integer> or = new TreeSet<>(a);
+            or.addAll(b);
+            TreeSet<Integer> andNot = new TreeSet<>(a);
+            andNot.removeAll(b);
+
+            assertArrayEquals(toArray(and), setA.and(setB).toArray());
+            assertArrayEquals(toArray(and), setB.and(setA).toArray());
+            assertEquals(and.size(), setA.andCardinality(setB));
+            assertArrayEquals(toArray(or), setA.or(setB).toArray());
+            assertArrayEquals(toArray(andNot), setA.andNot(setB).toArray());
+            TreeSet<Integer> bNotA = new TreeSet<>(b);
+            bNotA.removeAll(a);
+            assertArrayEquals(toArray(bNotA), setB.andNot(setA).toArray());
+        }
+    }
+
+    @Test
+    public void rangesAcrossChunksAreFrozenAsRuns() {
+        CompressedIntSet set = CompressedIntSet.range(-70000, 200000);
+        assertEquals(270000, set.cardinality());
+        assertTrue(set.contains(-70000));
+        assertFalse(set.contains(200000));
+
+        CompressedIntSet frozen = set.freeze();
+        assertEquals(set, frozen);
+        CompressedIntSet copy = new CompressedIntSet(frozen);
+        assertTrue(copy.remove(65536));
+        assertFalse(copy.contains(65536));
+        assertTrue(frozen.contains(65536));
+        assertEquals(269999, copy.cardinality());
+        assertEquals("{1, 2, 3}", CompressedIntSet.of(3, 1, 2).freeze().toString());
+    }
+
+    private static CompressedIntSet fromSet(Set<Integer> values) {
+        CompressedIntSet set = new CompressedIntSet();
+        for (int value : values) set.add(value);
+        return set;
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+}
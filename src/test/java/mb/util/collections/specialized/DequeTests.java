@@ -0,0 +1,115 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DequeTests {
+
+    @Test
+    public void randomOperationsMatchArrayList() {
+        Random random = new Random(42);
+        Deque<Integer> deque = new Deque<>();
+        List<Integer> expected = new ArrayList<>();
+
+        for (int i = 0; i < 5000; i++) {
+            int size = expected.size();
+            switch (random.nextInt(8)) {
+                case 0:
+                    deque.push(i);
+                    expected.add(0, i);
+                    break;
+                case 1:
+                    deque.add(i);
+                    expected.add(i);
+                    break;
+                case 2:
+                    if (size > 0) assertEquals(expected.remove(0), deque.pop());
+                    break;
+                case 3:
+                    if (size > 0) assertEquals(expected.remove(size - 1), deque.removeLast());
+                    break;
+                case 4: {
+                    int index = random.nextInt(size + 1);
+                    deque.add(index, i);
+                    expected.add(index, i);
+                    break;
+                }
+                case 5:
+                    if (size > 0) {
+                        int index = random.nextInt(size);
+                        assertEquals(expected.remove(index), deque.remove(index));
+                    }
+                    break;
+                case 6: {
+                    int index = random.nextInt(size + 1);
+                    List<Integer> elements = Arrays.asList(i, i + 1, i + 2);
+                    deque.addAll(index, elements);
+                    expected.addAll(index, elements);
+                    break;
+                }
+                case 7: {
+                    int from = random.nextInt(size + 1);
+                    int to = from + random.nextInt(size - from + 1);
+                    deque.subList(from, to).clear();
+                    expected.subList(from, to).clear();
+                    break;
+                }
+            }
+            assertEquals(expected, deque);
+        }
+    }
+
+    @Test
+    public void drainToDequeWrapsAround() {
+        Deque<Integer> source = new Deque<>();
+        Deque<Integer> target = new Deque<>();
+        for (int i = 0; i < 6; i++) {
+            source.add(i);
+            target.add(-i);
+        }
+        // Move the heads, such that both deques wrap around the end of their arrays.
+        for (int i = 0; i < 5; i++) {
+            source.add(source.pop());
+            target.add(target.pop());
+        }
+
+        assertEquals(4, source.drainTo(target, 4));
+        assertEquals(Arrays.asList(-5, 0, -1, -2, -3, -4, 5, 0, 1, 2), target);
+        assertEquals(Arrays.asList(3, 4), source);
+
+        List<Integer> list = new ArrayList<>();
+        assertEquals(2, source.drainTo(list));
+        assertEquals(Arrays.asList(3, 4), list);
+        assertTrue(source.isEmpty());
+    }
+
+    @Test
+    public void descendingIterationAndTrim() {
+        Deque<String> deque = new Deque<>(100);
+        deque.addAll(Arrays.asList("a", "b", "c"));
+        deque.push("z");
+
+        List<String> reversed = new ArrayList<>();
+        deque.forEachDescending(reversed::add);
+        assertEquals(Arrays.asList("c", "b", "a", "z"), reversed);
+
+        Iterator<String> iterator = deque.descendingIterator();
+        iterator.next();
+        iterator.next();
+        iterator.remove();
+        assertEquals(Arrays.asList("z", "a", "c"), deque);
+
+        assertEquals(128, deque.capacity());
+        deque.trimToSize();
+        assertEquals(8, deque.capacity());
+        assertEquals(Arrays.asList("z", "a", "c"), deque);
+    }
+
+}
@@ -0,0 +1,143 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DisjointMapTests {
+
+    @Test
+    public void persistentDisjointMapKeepsOldVersions() {
+        PersistentDisjointMap<String, Integer> map = PersistentDisjointMap.<String, Integer>of()
+            .union("a", "b", Integer::sum)
+            .put("a", 1);
+
+        PersistentDisjointMap<String, Integer> left = map.put("c", 2).union("b", "c", Integer::sum);
+        PersistentDisjointMap<String, Integer> right = map.union("c", "d", Integer::sum);
+
+        assertTrue(left.isSameSet("a", "c"));
+        assertEquals(Integer.valueOf(3), left.get("c"));
+        assertFalse(right.isSameSet("a", "c"));
+        assertTrue(right.isSameSet("c", "d"));
+        assertFalse(map.containsKey("c"));
+        assertEquals(Integer.valueOf(1), map.get("b"));
+        assertEquals(map.find("a"), map.find("b"));
+    }
+
+    @Test
+    public void persistentDisjointMapUnitesSetsOfEqualSize() {
+        PersistentDisjointMap<Integer, String> map = PersistentDisjointMap.of();
+        for (int i = 1; i < 1024; i *= 2) {
+            // Unite sets of equal size, which creates the highest trees.
+            for (int j = 0; j < 1024; j += 2 * i) {
+                map = map.union(j, j + i, (a, b) -> a);
+            }
+        }
+
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(map.isSameSet(0, i));
+        }
+        assertEquals(1024, map.size());
+    }
+
+    @Test
+    public void unionWithItselfAddsKey() {
+        PersistentDisjointMap<String, Integer> map = PersistentDisjointMap.<String, Integer>of().union("a", "a", Integer::sum);
+
+        assertTrue(map.containsKey("a"));
+        assertEquals("a", map.find("a"));
+        assertSame(map, map.union("a", "a", Integer::sum));
+    }
+
+    @Test
+    public void concurrentUnionsMergeEveryValueOnce() throws InterruptedException {
+        ConcurrentDisjointMap<Integer, Integer> map = new ConcurrentDisjointMap<>();
+        int threadCount = 4;
+        int keyCount = 2000;
+        for (int i = 0; i < keyCount; i++) {
+            map.put(i, 1);
+        }
+
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                // The threads unite the keys in different orders, so their unions overlap.
+                for (int i = 0; i < keyCount - 1; i++) {
+                    int j = (i * (offset + 1)) % (keyCount - 1);
+                    map.union(j, j + 1, Integer::sum);
+                }
+            });
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        for (int i = 0; i < keyCount; i++) {
+            assertTrue(map.isSameSet(0, i));
+        }
+        assertEquals(Integer.valueOf(keyCount), map.get(keyCount - 1));
+        assertEquals(keyCount, map.size());
+        assertEquals(map.find(0), map.find(keyCount - 1));
+    }
+
+    @Test
+    public void contendedUnionsMergeEachSetOnce() throws InterruptedException {
+        int threadCount = 8;
+        int keyCount = 64;
+        for (int round = 0; round < 200; round++) {
+            ConcurrentDisjointMap<Integer, Long> map = new ConcurrentDisjointMap<>();
+            for (int i = 0; i < keyCount; i++) {
+                map.put(i, 1L << i);
+            }
+            // Each value is the bit set of the keys in its set, so merging a value twice makes the two values overlap.
+            AtomicInteger overlaps = new AtomicInteger();
+            AtomicInteger merges = new AtomicInteger();
+            BinaryOperator<Long> merge = (a, b) -> {
+                merges.incrementAndGet();
+                // Yielding between reading the parent's value and replacing it lets other threads interleave there.
+                Thread.yield();
+                if ((a & b) != 0) overlaps.incrementAndGet();
+                return a | b;
+            };
+
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                Random random = new Random(round * threadCount + t);
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // Few keys and many threads, so the threads often unite the same sets at the same time.
+                    for (int i = 0; i < 24; i++) {
+                        map.union(random.nextInt(keyCount), random.nextInt(keyCount), merge);
+                    }
+                });
+                threads[t].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) thread.join();
+
+            assertEquals(0, overlaps.get());
+            int sets = 0;
+            for (int i = 0; i < keyCount; i++) {
+                long expected = 0;
+                for (int j = 0; j < keyCount; j++) {
+                    if (map.isSameSet(i, j)) expected |= 1L << j;
+                }
+                assertEquals(Long.valueOf(expected), map.get(i));
+                if (map.find(i) == i) sets += 1;
+            }
+            // Every union that took effect merged one value, and aborted attempts may have merged more.
+            assertTrue(merges.get() >= keyCount - sets);
+        }
+    }
+
+}
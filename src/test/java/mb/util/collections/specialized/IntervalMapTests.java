@@ -0,0 +1,83 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntervalMapTests {
+
+    @Test
+    public void findsNestedRegions() {
+        IntervalMap<String> map = IntervalMap.<String>builder()
+            .add(0, 100, "module")
+            .add(10, 50, "function")
+            .add(20, 30, "call")
+            .add(60, 70, "other")
+            .build();
+
+        assertEquals(Arrays.asList("module", "function", "call"), map.getContaining(25).asUnmodifiable());
+        assertEquals("call", map.getInnermost(25));
+        assertEquals("module", map.getInnermost(55));
+        assertNull(map.getInnermost(100));
+        assertEquals(Arrays.asList("module", "function", "other"), map.getOverlapping(45, 65).asUnmodifiable());
+        assertTrue(map.getOverlapping(30, 30).isEmpty());
+    }
+
+    @Test
+    public void emptyIntervalsOverlapNothing() {
+        IntervalMap<String> map = IntervalMap.<String>builder()
+            .add(0, 10, "outer")
+            .add(5, 5, "empty")
+            .add(10, 10, "end")
+            .build();
+
+        assertEquals(Arrays.asList("outer"), map.getOverlapping(3, 7).asUnmodifiable());
+        assertEquals(Arrays.asList("outer"), map.getOverlapping(0, 20).asUnmodifiable());
+        assertEquals(Arrays.asList("outer"), map.getContaining(5).asUnmodifiable());
+        assertEquals("outer", map.getInnermost(5));
+        assertTrue(map.getOverlapping(10, 20).isEmpty());
+    }
+
+    @Test
+    public void queriesMatchLinearScan() {
+        Random random = new Random(5);
+        int count = 2000;
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        IntervalMap.Builder<Integer> builder = IntervalMap.builder();
+        for (int i = 0; i < count; i++) {
+            starts[i] = random.nextInt(10000);
+            ends[i] = starts[i] + random.nextInt(200);
+            builder.add(starts[i], ends[i], i);
+        }
+        IntervalMap<Integer> map = builder.build();
+
+        for (int q = 0; q < 500; q++) {
+            int from = random.nextInt(10300) - 100;
+            int to = from + random.nextInt(100) + 1;
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (starts[i] < to && ends[i] > from && starts[i] < ends[i]) expected.add(i);
+            }
+            List<Integer> actual = new ArrayList<>(map.getOverlapping(from, to).asUnmodifiable());
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals(expected, actual);
+
+            List<Integer> containing = new ArrayList<>();
+            map.forEachContaining(from, (start, end, value) -> {
+                assertTrue(start <= from && from < end);
+                containing.add(value);
+            });
+            for (int i = 0; i < count; i++) {
+                if (starts[i] <= from && from < ends[i]) assertTrue(containing.contains(i));
+            }
+        }
+    }
+
+}
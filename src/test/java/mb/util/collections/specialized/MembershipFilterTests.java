@@ -0,0 +1,144 @@
+package mb.util.collections.specialized;
+
+import mb.util.collections.SetView;
+import mb.util.collections.immutable.PersistentSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MembershipFilterTests {
+
+    @Test
+    public void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+        BloomFilter<Integer> filter = new BloomFilter<>(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(i * 2);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(i * 2));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(i * 2 + 1)) falsePositives += 1;
+        }
+        // The filter is sized such that the rate is at most 1%; this allows for random variation.
+        assertTrue(falsePositives < 130, "False positives: " + falsePositives);
+        assertTrue(filter.estimateFalsePositiveRate() < 0.013);
+
+        filter.clear();
+        assertFalse(filter.mightContain(0));
+    }
+
+    @Test
+    public void cuckooFilterSupportsRemoval() {
+        CuckooFilter<Integer> filter = new CuckooFilter<>(10000, 0.001);
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.add(i * 2));
+        }
+        assertEquals(10000, filter.size());
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(i * 2));
+            if (filter.mightContain(i * 2 + 1)) falsePositives += 1;
+        }
+        assertTrue(falsePositives < 30, "False positives: " + falsePositives);
+
+        for (int i = 0; i < 10000; i += 2) {
+            assertTrue(filter.remove(i * 2));
+        }
+        assertEquals(5000, filter.size());
+        for (int i = 1; i < 10000; i += 2) {
+            assertTrue(filter.mightContain(i * 2));
+        }
+        int remaining = 0;
+        for (int i = 0; i < 10000; i += 2) {
+            if (filter.mightContain(i * 2)) remaining += 1;
+        }
+        assertTrue(remaining < 30, "Remaining: " + remaining);
+    }
+
+    @Test
+    public void cuckooFilterRejectsElementsWhenFull() {
+        CuckooFilter<Integer> filter = new CuckooFilter<>(100, 0.01);
+        List<Integer> added = new ArrayList<>();
+        for (int i = 0; filter.add(i); i++) {
+            added.add(i);
+        }
+        assertTrue(added.size() >= 100);
+        assertTrue(added.size() <= filter.capacity() + 1);
+        for (int element : added) {
+            assertTrue(filter.mightContain(element));
+        }
+        // Removing an element makes room again.
+        assertTrue(filter.remove(added.get(0)));
+        for (int element : added.subList(1, added.size())) {
+            assertTrue(filter.mightContain(element));
+        }
+    }
+
+    @Test
+    public void filteredSetViewOnlyLooksUpElementsThatPassTheFilter() {
+        Random random = new Random(5);
+        PersistentSet.Builder<Integer> builder = PersistentSet.<Integer>of().builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.add(random.nextInt(100000));
+        }
+        PersistentSet<Integer> elements = builder.build();
+        int[] lookups = new int[1];
+        SetView<Integer> counting = new CountingSetView<>(elements, lookups);
+        FilteredSetView<Integer> set = FilteredSetView.of(counting, 0.01);
+
+        assertEquals(elements.size(), set.size());
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(elements.contains(i), set.contains(i));
+        }
+        int misses = 100000 - elements.size();
+        assertTrue(lookups[0] - elements.size() < misses / 20, "Lookups: " + lookups[0]);
+        assertEquals(set.asUnmodifiable(), elements.asUnmodifiable());
+    }
+
+    /**
+     * A set view that counts its lookups.
+     */
+    private static final class CountingSetView<E> implements SetView<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PersistentSet<E> set;
+        private final int[] lookups;
+
+        private CountingSetView(PersistentSet<E> set, int[] lookups) {
+            this.set = set;
+            this.lookups = lookups;
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public boolean contains(Object element) {
+            this.lookups[0] += 1;
+            return this.set.contains(element);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return this.set.iterator();
+        }
+
+        @Override
+        public Collection<E> asUnmodifiable() {
+            return this.set.asUnmodifiable();
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentDequeTests {
+
+    @Test
+    public void pushesAndPopsAtBothEnds() {
+        PersistentDeque<String> deque = PersistentDeque.<String>of().pushBack("b").pushFront("a").pushBack("c");
+
+        assertEquals(Arrays.asList("a", "b", "c"), deque.asUnmodifiable());
+        assertEquals("a", deque.peekFront());
+        assertEquals("c", deque.peekBack());
+        assertEquals(PersistentDeque.of("b", "c"), deque.popFront());
+        assertEquals(PersistentDeque.of("a", "b"), deque.popBack());
+        assertTrue(deque.popFront().popFront().popFront().isEmpty());
+    }
+
+    @Test
+    public void splitsAndConcatenatesLikeAList() {
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<>();
+        PersistentDeque<Integer> deque = PersistentDeque.of();
+        for (int i = 0; i < 2000; i++) {
+            if (random.nextBoolean()) {
+                deque = deque.pushBack(i);
+                expected.add(i);
+            } else {
+                deque = deque.pushFront(i);
+                expected.add(0, i);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            int index = random.nextInt(expected.size() + 1);
+            List<PersistentDeque<Integer>> halves = deque.splitAt(index);
+            assertEquals(expected.subList(0, index), halves.get(0).asUnmodifiable());
+            assertEquals(expected.subList(index, expected.size()), halves.get(1).asUnmodifiable());
+            assertEquals(deque, halves.get(0).concat(halves.get(1)));
+            if (index < expected.size()) assertEquals(expected.get(index), deque.get(index));
+        }
+
+        PersistentDeque<Integer> doubled = deque.concat(deque);
+        assertEquals(4000, doubled.size());
+        assertEquals(expected, doubled.subListView(2000, 4000).asUnmodifiable());
+        assertEquals(expected.subList(100, 1100), deque.subListView(100, 1100).asUnmodifiable());
+    }
+
+    @Test
+    public void serializesTheElements() throws Exception {
+        PersistentDeque<Integer> deque = PersistentDeque.of();
+        for (int i = 0; i < 1000; i++) {
+            deque = deque.pushBack(i);
+        }
+
+        Object copy = roundTrip(deque);
+
+        assertEquals(deque, copy);
+        assertEquals(deque.hashCode(), copy.hashCode());
+    }
+
+}
@@ -0,0 +1,56 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentQueueTests {
+
+    @Test
+    public void dequeuesInFifoOrder() {
+        PersistentQueue<String> queue = PersistentQueue.of("a", "b").enqueue("c");
+
+        assertEquals(Arrays.asList("a", "b", "c"), queue.asUnmodifiable());
+        assertEquals("a", queue.peek());
+        assertEquals(PersistentQueue.of("b", "c"), queue.dequeue());
+        assertEquals("c", queue.get(2));
+        assertTrue(queue.dequeue().dequeue().dequeue().isEmpty());
+        assertThrows(NoSuchElementException.class, () -> PersistentQueue.of().dequeue());
+    }
+
+    @Test
+    public void oldVersionsAreUnaffectedByLaterOperations() {
+        Random random = new Random(7);
+        List<PersistentQueue<Integer>> versions = new ArrayList<>();
+        List<List<Integer>> expected = new ArrayList<>();
+        versions.add(PersistentQueue.of());
+        expected.add(new ArrayList<>());
+        for (int i = 0; i < 3000; i++) {
+            // Continue from a random earlier version, so rotations are forced from many versions.
+            int from = random.nextInt(versions.size());
+            PersistentQueue<Integer> queue = versions.get(from);
+            ArrayDeque<Integer> elements = new ArrayDeque<>(expected.get(from));
+            if (!elements.isEmpty() && random.nextInt(3) == 0) {
+                assertEquals(elements.poll(), queue.peek());
+                queue = queue.dequeue();
+            } else {
+                elements.add(i);
+                queue = queue.enqueue(i);
+            }
+            versions.add(queue);
+            expected.add(new ArrayList<>(elements));
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(expected.get(i), versions.get(i).asUnmodifiable());
+        }
+    }
+
+}
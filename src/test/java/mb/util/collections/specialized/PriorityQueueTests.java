@@ -0,0 +1,113 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PriorityQueueTests {
+
+    @Test
+    public void pollsElementsInOrder() {
+        Random random = new Random(3);
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Comparator.reverseOrder());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            int element = random.nextInt(500);
+            queue.offer(element);
+            expected.add(element);
+        }
+        expected.sort(Comparator.reverseOrder());
+
+        List<Integer> polled = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            assertEquals(queue.peek(), queue.peek());
+            polled.add(queue.poll());
+        }
+        assertEquals(expected, polled);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void removesArbitraryElements() {
+        List<java.util.Queue<Integer>> queues = Arrays.asList(new PriorityQueue<>(), new MultiQueue<>(4, null));
+        for (java.util.Queue<Integer> queue : queues) {
+            Random random = new Random(4);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                int element = random.nextInt(500);
+                queue.offer(element);
+                expected.add(element);
+            }
+            for (int i = 0; i < 100; i++) {
+                Integer element = random.nextInt(500);
+                assertEquals(expected.remove(element), queue.remove(element));
+            }
+            assertTrue(queue.removeIf(element -> element % 3 == 0));
+            expected.removeIf(element -> element % 3 == 0);
+            assertTrue(queue.removeAll(Arrays.asList(1, 2, 4)));
+            expected.removeAll(Arrays.asList(1, 2, 4));
+            Iterator<Integer> iterator = queue.iterator();
+            expected.remove(iterator.next());
+            iterator.remove();
+            assertEquals(expected.size(), queue.size());
+            for (Integer element : expected) {
+                assertTrue(queue.contains(element));
+            }
+
+            Collections.sort(expected);
+            List<Integer> polled = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                polled.add(queue.poll());
+            }
+            // The multi-queue polls in a relaxed order.
+            Collections.sort(polled);
+            assertEquals(expected, polled);
+        }
+    }
+
+    @Test
+    public void multiQueuePollsEveryElementOnce() throws InterruptedException {
+        MultiQueue<Integer> queue = new MultiQueue<>(8, null);
+        int threadCount = 4;
+        int perThread = 5000;
+        ConcurrentLinkedQueue<Integer> polled = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t * perThread;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    queue.offer(offset + i);
+                    // Poll about half as often as we offer.
+                    if (i % 2 == 0) {
+                        Integer element = queue.poll();
+                        if (element != null) polled.add(element);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(threadCount * perThread - polled.size(), queue.size());
+        Integer element;
+        while ((element = queue.poll()) != null) polled.add(element);
+        assertTrue(queue.isEmpty());
+
+        List<Integer> sorted = new ArrayList<>(polled);
+        Collections.sort(sorted);
+        assertEquals(threadCount * perThread, sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(Integer.valueOf(i), sorted.get(i));
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueueTests {
+
+    @Test
+    public void drainRemovesInOrderUpToLimit() {
+        Queue<Integer> queue = new Queue<>();
+        for (int i = 0; i < 3000; i++) {
+            queue.offer(i);
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2500, queue.drain(drained::add, 2500));
+        assertEquals(Integer.valueOf(2500), queue.peek());
+        assertEquals(Integer.valueOf(2500), queue.poll());
+        assertEquals(499, queue.size());
+        for (int i = 0; i < 2500; i++) {
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+
+        assertEquals(499, queue.drain(drained::add, Integer.MAX_VALUE));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertEquals(0, queue.drain(drained::add, 10));
+    }
+
+    @Test
+    public void concurrentProducersKeepTheirOrder() throws InterruptedException {
+        Queue<int[]> queue = new Queue<>();
+        int producerCount = 4;
+        int elementCount = 50000;
+
+        Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++) {
+            int producer = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < elementCount; i++) {
+                    queue.offer(new int[] { producer, i });
+                }
+            });
+            producers[p].start();
+        }
+
+        int[] next = new int[producerCount];
+        int received = 0;
+        while (received < producerCount * elementCount) {
+            received += queue.drain(e -> {
+                // The elements of each producer arrive in the order in which they were offered.
+                assertEquals(next[e[0]], e[1]);
+                next[e[0]] += 1;
+            }, 100);
+        }
+        for (Thread producer : producers) producer.join();
+
+        assertTrue(queue.isEmpty());
+        int[] expected = new int[producerCount];
+        Arrays.fill(expected, elementCount);
+        assertArrayEquals(expected, next);
+    }
+
+}
@@ -0,0 +1,94 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentedListTests {
+
+    @Test
+    public void chunkSizeIsRoundedUpToAPowerOfTwo() {
+        assertEquals(4096, new SegmentedList<>().getChunkSize());
+        assertEquals(1, new SegmentedList<>(1).getChunkSize());
+        assertEquals(8, new SegmentedList<>(5).getChunkSize());
+        assertThrows(IllegalArgumentException.class, () -> new SegmentedList<>(0));
+    }
+
+    @Test
+    public void addingAtTheEndSpansChunks() {
+        SegmentedList<Integer> list = new SegmentedList<>(8);
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+        }
+        assertEquals(100, list.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), list.get(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(100));
+        List<Integer> seen = new ArrayList<>();
+        list.forEach(seen::add);
+        assertEquals(list, seen);
+        assertArrayEquals(seen.toArray(), list.toArray());
+        assertArrayEquals(seen.toArray(new Integer[0]), list.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void behavesLikeArrayListUnderRandomChanges() {
+        Random random = new Random(7);
+        SegmentedList<Integer> list = new SegmentedList<>(4);
+        List<Integer> expected = new ArrayList<>();
+        for (int step = 0; step < 5000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 4) {
+                list.add(step);
+                expected.add(step);
+            } else if (operation < 6) {
+                int index = random.nextInt(expected.size() + 1);
+                list.add(index, step);
+                expected.add(index, step);
+            } else if (operation < 7) {
+                int index = random.nextInt(expected.size() + 1);
+                List<Integer> elements = Arrays.asList(step, step + 1, step + 2, step + 3, step + 4, step + 5);
+                list.addAll(index, elements);
+                expected.addAll(index, elements);
+            } else if (operation < 9 && !expected.isEmpty()) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), list.remove(index));
+            } else if (!expected.isEmpty()) {
+                int fromIndex = random.nextInt(expected.size());
+                int toIndex = fromIndex + random.nextInt(Math.min(10, expected.size() - fromIndex) + 1);
+                list.subList(fromIndex, toIndex).clear();
+                expected.subList(fromIndex, toIndex).clear();
+            }
+            if (step % 500 == 0) list.trimToSize();
+            assertEquals(expected.size(), list.size());
+        }
+        assertEquals(expected, list);
+        assertArrayEquals(expected.toArray(), list.toArray());
+
+        list.clear();
+        assertTrue(list.isEmpty());
+        list.add(1);
+        assertEquals(Arrays.asList(1), list);
+    }
+
+    @Test
+    public void serializesItsElements() throws Exception {
+        SegmentedList<String> list = new SegmentedList<>(16);
+        for (int i = 0; i < 50; i++) {
+            list.add("e" + i);
+        }
+
+        SegmentedList<String> copy = roundTrip(list);
+
+        assertEquals(list, copy);
+        assertEquals(16, copy.getChunkSize());
+    }
+
+}
@@ -0,0 +1,66 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.List;
+
+import static mb.util.collections.SerializationTestUtils.roundTrip;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StackTests {
+
+    @Test
+    public void arrayStackPushesAndPopsAtTheEnd() {
+        Stack<String> stack = new Stack<>(1);
+        stack.push("a");
+        stack.push("b");
+        stack.add("c");
+
+        assertEquals("c", stack.peek());
+        assertEquals("a", stack.peek(2));
+        assertEquals(Arrays.asList("a", "b", "c"), stack);
+
+        List<String> fromTop = new ArrayList<>();
+        stack.forEachFromTop(fromTop::add);
+        assertEquals(Arrays.asList("c", "b", "a"), fromTop);
+
+        assertEquals("c", stack.pop());
+        assertEquals("b", stack.pop());
+        assertEquals("a", stack.pop());
+        assertThrows(EmptyStackException.class, stack::pop);
+    }
+
+    @Test
+    public void persistentStackForksShareTails() {
+        PersistentStack<String> base = PersistentStack.of("b", "a");
+        PersistentStack<String> left = base.push("x");
+        PersistentStack<String> right = base.push("y").push("z");
+
+        assertEquals(Arrays.asList("x", "b", "a"), left.asUnmodifiable());
+        assertEquals(Arrays.asList("z", "y", "b", "a"), right.asUnmodifiable());
+        assertSame(base, left.pop());
+        assertSame(base, right.subListView(2, 4));
+        assertEquals(PersistentStack.of("y", "b"), right.subListView(1, 3));
+        assertEquals("a", right.get(3));
+        assertEquals(2, right.indexOf("b"));
+        assertArrayEquals(new Object[] { "x", "b", "a" }, left.toArray());
+        assertEquals(Arrays.asList("a", "b", "x"), left.reverse().asUnmodifiable());
+    }
+
+    @Test
+    public void persistentStackSerializesWithoutRecursion() throws Exception {
+        PersistentStack<Integer> stack = PersistentStack.of();
+        for (int i = 0; i < 100000; i++) {
+            stack = stack.push(i);
+        }
+
+        Object copy = roundTrip(stack);
+
+        assertEquals(stack, copy);
+        assertEquals(stack.hashCode(), copy.hashCode());
+    }
+
+}
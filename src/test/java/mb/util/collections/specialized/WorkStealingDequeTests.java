@@ -0,0 +1,70 @@
+package mb.util.collections.specialized;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkStealingDequeTests {
+
+    @Test
+    public void ownerPopsNewestAndThiefStealsOldest() {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        for (int i = 0; i < 100; i++) {
+            deque.push(i);
+        }
+
+        assertEquals(Integer.valueOf(99), deque.pop());
+        assertEquals(Integer.valueOf(0), deque.steal());
+        List<Integer> stolen = new ArrayList<>();
+        assertEquals(3, deque.stealBatch(stolen::add, 3));
+        assertEquals(Arrays.asList(1, 2, 3), stolen);
+        assertEquals(95, deque.size());
+
+        deque.pushAll(Arrays.asList(100, 101));
+        assertEquals(Integer.valueOf(101), deque.pop());
+        assertEquals(Integer.valueOf(100), deque.pop());
+        assertEquals(Integer.valueOf(98), deque.pop());
+    }
+
+    @Test
+    public void concurrentStealsTakeEachElementOnce() throws InterruptedException {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        int elementCount = 100000;
+        AtomicIntegerArray taken = new AtomicIntegerArray(elementCount);
+        AtomicBoolean done = new AtomicBoolean();
+
+        Thread[] thieves = new Thread[3];
+        for (int t = 0; t < thieves.length; t++) {
+            thieves[t] = new Thread(() -> {
+                while (true) {
+                    boolean finished = done.get();
+                    int count = deque.stealBatch(e -> taken.incrementAndGet(e), 4);
+                    if (count == 0 && finished && deque.isEmpty()) return;
+                }
+            });
+            thieves[t].start();
+        }
+
+        // The owner pushes and pops, so it races the thieves for the last elements.
+        for (int i = 0; i < elementCount; i++) {
+            deque.push(i);
+            if (i % 3 == 0) {
+                Integer element = deque.pop();
+                if (element != null) taken.incrementAndGet(element);
+            }
+        }
+        done.set(true);
+        for (Thread thief : thieves) thief.join();
+
+        for (int i = 0; i < elementCount; i++) {
+            assertEquals(1, taken.get(i));
+        }
+    }
+
+}